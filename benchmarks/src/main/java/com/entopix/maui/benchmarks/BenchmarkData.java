@@ -0,0 +1,151 @@
+package com.entopix.maui.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.filters.MauiFilter.MauiFilterException;
+import com.entopix.maui.filters.MauiPhraseFilter;
+import com.entopix.maui.main.MauiModelBuilder;
+import com.entopix.maui.stemmers.PorterStemmer;
+import com.entopix.maui.stopwords.StopwordsEnglish;
+import com.entopix.maui.util.DataLoader;
+import com.entopix.maui.util.MauiDocument;
+import com.entopix.maui.vocab.Vocabulary;
+
+/**
+ * Loads the test corpora and the sample vocabulary bundled with Maui,
+ * and the models built from them, for the benchmarks.
+ *
+ * The data directory is src/test/resources/data of the project, found
+ * from the project root or from the benchmarks directory, or set with
+ * the system property maui.data.
+ */
+public final class BenchmarkData {
+
+	/** Documents of the term assignment test set */
+	public static final String TEST_DOCUMENTS = "term_assignment/test";
+
+	/** Documents that the vocabulary model is trained on */
+	public static final String VOCABULARY_TRAINING_DOCUMENTS = "term_assignment/train";
+
+	/** Documents that the free indexing model is trained on */
+	public static final String FREE_TRAINING_DOCUMENTS = "automatic_tagging/train";
+
+	public static final String VOCABULARY = "vocabularies/agrovoc_sample.rdf";
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * Returns the directory of the bundled test data.
+	 */
+	public static File getDataDirectory() {
+		String property = System.getProperty("maui.data");
+		if (property != null) {
+			return new File(property);
+		}
+		for (String candidate : new String[] {"src/test/resources/data", "../src/test/resources/data"}) {
+			File directory = new File(candidate);
+			if (new File(directory, VOCABULARY).exists()) {
+				return directory;
+			}
+		}
+		throw new IllegalStateException("Cannot find the test data of Maui, set -Dmaui.data=<directory>");
+	}
+
+	public static String getPath(String name) {
+		return new File(getDataDirectory(), name).getPath();
+	}
+
+	public static List<MauiDocument> loadDocuments(String name) {
+		return DataLoader.loadTestDocuments(getPath(name));
+	}
+
+	/**
+	 * Returns the texts of the test documents.
+	 */
+	public static String[] loadTexts() {
+		List<MauiDocument> documents = loadDocuments(TEST_DOCUMENTS);
+		String[] texts = new String[documents.size()];
+		for (int i = 0; i < texts.length; i++) {
+			texts[i] = documents.get(i).getTextContent();
+		}
+		return texts;
+	}
+
+	/**
+	 * Returns the distinct words of the test documents, in the order in
+	 * which they first occur.
+	 */
+	public static String[] loadWords() {
+		Set<String> words = new LinkedHashSet<String>();
+		for (String phrase : loadPhrases(1)) {
+			words.add(phrase);
+		}
+		return words.toArray(new String[words.size()]);
+	}
+
+	/**
+	 * Returns all word sequences of one to maxLength words within the
+	 * phrases of the tokenized test documents, as candidate phrases.
+	 */
+	public static List<String> loadPhrases(int maxLength) {
+		MauiPhraseFilter phraseFilter = new MauiPhraseFilter();
+		List<String> phrases = new ArrayList<String>();
+		for (String text : loadTexts()) {
+			for (String line : phraseFilter.tokenize(text).split("\n")) {
+				String[] words = line.trim().split("\\s+");
+				for (int start = 0; start < words.length; start++) {
+					if (words[start].length() == 0) {
+						continue;
+					}
+					StringBuilder phrase = new StringBuilder();
+					for (int end = start; end < words.length && end < start + maxLength; end++) {
+						if (end > start) {
+							phrase.append(' ');
+						}
+						phrase.append(words[end]);
+						phrases.add(phrase.toString());
+					}
+				}
+			}
+		}
+		return phrases;
+	}
+
+	/**
+	 * Loads the sample vocabulary with the default stemmer and stopwords.
+	 */
+	public static Vocabulary loadVocabulary() {
+		Vocabulary vocabulary = new Vocabulary();
+		vocabulary.setStemmer(new PorterStemmer());
+		vocabulary.setStopwords(new StopwordsEnglish());
+		vocabulary.setLanguage("en");
+		vocabulary.initializeVocabulary(getPath(VOCABULARY), "skos");
+		return vocabulary;
+	}
+
+	/**
+	 * Builds a model for term assignment with the sample vocabulary.
+	 */
+	public static MauiFilter buildVocabularyModel() throws MauiFilterException {
+		MauiModelBuilder modelBuilder = new MauiModelBuilder();
+		modelBuilder.vocabularyName = getPath(VOCABULARY);
+		modelBuilder.vocabularyFormat = "skos";
+		modelBuilder.minNumOccur = 2;
+		return modelBuilder.buildModel(loadDocuments(VOCABULARY_TRAINING_DOCUMENTS));
+	}
+
+	/**
+	 * Builds a model for free indexing, without a vocabulary.
+	 */
+	public static MauiFilter buildFreeModel() throws MauiFilterException {
+		MauiModelBuilder modelBuilder = new MauiModelBuilder();
+		modelBuilder.minNumOccur = 2;
+		return modelBuilder.buildModel(loadDocuments(FREE_TRAINING_DOCUMENTS));
+	}
+}
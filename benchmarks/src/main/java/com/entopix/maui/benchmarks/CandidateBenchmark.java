@@ -0,0 +1,59 @@
+package com.entopix.maui.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.filters.MauiPhraseFilter;
+
+/**
+ * Extracts the candidate topics of the tokenized test documents with
+ * MauiFilter.getCandidates, in free indexing, where each phrase is a
+ * candidate, and with the sample vocabulary, where candidates are the
+ * vocabulary terms that phrases map to. Each operation processes all
+ * test documents.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class CandidateBenchmark {
+
+	@Param({"free", "vocabulary"})
+	public String mode;
+
+	private MauiFilter filter;
+	private String[] documents;
+
+	@Setup
+	public void setUp() throws Exception {
+		filter = mode.equals("free") ? BenchmarkData.buildFreeModel() : BenchmarkData.buildVocabularyModel();
+		MauiPhraseFilter phraseFilter = new MauiPhraseFilter();
+		String[] texts = BenchmarkData.loadTexts();
+		documents = new String[texts.length];
+		for (int i = 0; i < texts.length; i++) {
+			documents[i] = phraseFilter.tokenize(texts[i]);
+		}
+	}
+
+	@Benchmark
+	public void getCandidates(Blackhole blackhole) {
+		for (String document : documents) {
+			blackhole.consume(filter.getCandidates(document));
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.entopix.maui.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.entopix.maui.main.MauiWrapper;
+
+/**
+ * Extracts the topics of the test documents end to end with
+ * MauiWrapper.extractTopicsFromText, in free indexing and with the
+ * sample vocabulary. Each operation processes all test documents.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ExtractionBenchmark {
+
+	private static final int TOPICS_PER_DOCUMENT = 10;
+
+	@Param({"free", "vocabulary"})
+	public String mode;
+
+	private MauiWrapper wrapper;
+	private String[] texts;
+
+	@Setup
+	public void setUp() throws Exception {
+		if (mode.equals("free")) {
+			wrapper = new MauiWrapper(null, BenchmarkData.buildFreeModel());
+		} else {
+			wrapper = new MauiWrapper(BenchmarkData.loadVocabulary(), BenchmarkData.buildVocabularyModel());
+		}
+		texts = BenchmarkData.loadTexts();
+	}
+
+	@Benchmark
+	public void extractTopicsFromText(Blackhole blackhole) throws Exception {
+		for (String text : texts) {
+			blackhole.consume(wrapper.extractTopicsFromText(text, TOPICS_PER_DOCUMENT));
+		}
+	}
+}
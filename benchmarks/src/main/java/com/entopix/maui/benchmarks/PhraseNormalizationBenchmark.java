@@ -0,0 +1,62 @@
+package com.entopix.maui.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.vocab.Vocabulary;
+
+/**
+ * Normalizes the candidate phrases of the test documents, of up to three
+ * words, with MauiFilter.pseudoPhrase in free indexing and with
+ * Vocabulary.normalizePhrase with a vocabulary. Each operation
+ * normalizes all phrases.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class PhraseNormalizationBenchmark {
+
+	private static final int MAX_PHRASE_LENGTH = 3;
+
+	private String[] phrases;
+	private MauiFilter filter;
+	private Vocabulary vocabulary;
+
+	@Setup
+	public void setUp() throws Exception {
+		List<String> candidates = BenchmarkData.loadPhrases(MAX_PHRASE_LENGTH);
+		phrases = candidates.toArray(new String[candidates.size()]);
+		filter = BenchmarkData.buildFreeModel();
+		vocabulary = BenchmarkData.loadVocabulary();
+	}
+
+	@Benchmark
+	public void pseudoPhrase(Blackhole blackhole) {
+		for (String phrase : phrases) {
+			blackhole.consume(filter.pseudoPhrase(phrase));
+		}
+	}
+
+	@Benchmark
+	public void normalizePhrase(Blackhole blackhole) {
+		for (String phrase : phrases) {
+			blackhole.consume(vocabulary.normalizePhrase(phrase));
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package com.entopix.maui.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.entopix.maui.stemmers.Stemmer;
+
+/**
+ * Stems the distinct lower case words of the test documents with each
+ * stemmer. Each operation stems all words.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class StemmerBenchmark {
+
+	@Param({"PorterStemmer", "SremovalStemmer", "LovinsStemmer", "IteratedLovinsStemmer",
+			"FrenchStemmer", "GermanStemmer", "SpanishStemmer", "NoStemmer"})
+	public String stemmerName;
+
+	private Stemmer stemmer;
+	private String[] words;
+
+	@Setup
+	public void setUp() throws Exception {
+		stemmer = (Stemmer) Class.forName("com.entopix.maui.stemmers." + stemmerName).newInstance();
+		words = BenchmarkData.loadWords();
+		for (int i = 0; i < words.length; i++) {
+			words[i] = words[i].toLowerCase();
+		}
+	}
+
+	@Benchmark
+	public void stem(Blackhole blackhole) {
+		for (String word : words) {
+			blackhole.consume(stemmer.stem(word));
+		}
+	}
+}
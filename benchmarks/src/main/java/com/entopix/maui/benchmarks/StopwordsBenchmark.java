@@ -0,0 +1,53 @@
+package com.entopix.maui.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.entopix.maui.stopwords.Stopwords;
+
+/**
+ * Looks up the distinct words of the test documents in each list of
+ * stopwords. Each operation looks up all words.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class StopwordsBenchmark {
+
+	@Param({"StopwordsEnglish", "StopwordsFrench", "StopwordsGerman", "StopwordsSpanish", "StopwordsPortuguese"})
+	public String stopwordsName;
+
+	private Stopwords stopwords;
+	private String[] words;
+
+	@Setup
+	public void setUp() throws Exception {
+		stopwords = (Stopwords) Class.forName("com.entopix.maui.stopwords." + stopwordsName).newInstance();
+		words = BenchmarkData.loadWords();
+	}
+
+	@Benchmark
+	public int isStopword() {
+		int count = 0;
+		for (String word : words) {
+			if (stopwords.isStopword(word)) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
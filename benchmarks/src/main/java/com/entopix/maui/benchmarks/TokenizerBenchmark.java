@@ -0,0 +1,82 @@
+package com.entopix.maui.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import com.entopix.maui.filters.MauiPhraseFilter;
+import com.entopix.maui.filters.NumbersFilter;
+
+/**
+ * Splits the test documents into phrases with MauiPhraseFilter, and
+ * removes the numbers from the phrases with NumbersFilter, as MauiFilter
+ * does for each document in free indexing. Each operation processes all
+ * test documents.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class TokenizerBenchmark {
+
+	private String[] texts;
+	private MauiPhraseFilter phraseFilter;
+	private NumbersFilter numbersFilter;
+
+	/** Tokenized documents, in the input format of MauiFilter */
+	private Instances documents;
+
+	@Setup
+	public void setUp() throws Exception {
+		texts = BenchmarkData.loadTexts();
+		phraseFilter = new MauiPhraseFilter();
+
+		FastVector atts = new FastVector(3);
+		atts.addElement(new Attribute("filename", (FastVector) null));
+		atts.addElement(new Attribute("doc", (FastVector) null));
+		atts.addElement(new Attribute("keyphrases", (FastVector) null));
+		documents = new Instances("documents", atts, texts.length);
+		for (String text : texts) {
+			double[] values = new double[3];
+			values[0] = documents.attribute(0).addStringValue("document");
+			values[1] = documents.attribute(1).addStringValue(phraseFilter.tokenize(text));
+			values[2] = Instance.missingValue();
+			documents.add(new Instance(1.0, values));
+		}
+		numbersFilter = new NumbersFilter();
+		numbersFilter.setInputFormat(documents);
+	}
+
+	@Benchmark
+	public void tokenize(Blackhole blackhole) {
+		for (String text : texts) {
+			blackhole.consume(phraseFilter.tokenize(text));
+		}
+	}
+
+	@Benchmark
+	public void filterNumbers(Blackhole blackhole) throws Exception {
+		for (int i = 0; i < documents.numInstances(); i++) {
+			numbersFilter.input(documents.instance(i));
+			numbersFilter.batchFinished();
+			blackhole.consume(numbersFilter.output());
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.entopix.maui.benchmarks;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.entopix.maui.vocab.Vocabulary;
+import com.entopix.maui.vocab.VocabularyStore;
+import com.entopix.maui.vocab.VocabularyStoreFactory;
+
+/**
+ * Looks up the sample vocabulary with each type of vocabulary store: the
+ * senses of the normalized candidate phrases of the test documents, most
+ * of which are not in the vocabulary, and the terms and related terms of
+ * the senses found. Each operation looks up all phrases or senses.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class VocabularyStoreBenchmark {
+
+	private static final int MAX_PHRASE_LENGTH = 3;
+
+	@Param({"VocabularyStore_HT", "VocabularyStore_Original"})
+	public String storeName;
+
+	private VocabularyStore store;
+	private String[] phrases;
+	private String[] ids;
+
+	@Setup
+	public void setUp() throws Exception {
+		VocabularyStoreFactory.setPrefferedVocabStoreType(Class.forName("com.entopix.maui.vocab." + storeName));
+		Vocabulary vocabulary = BenchmarkData.loadVocabulary();
+		store = vocabulary.getVocabularyStore();
+
+		Set<String> normalized = new LinkedHashSet<String>();
+		for (String phrase : BenchmarkData.loadPhrases(MAX_PHRASE_LENGTH)) {
+			String normalizedPhrase = vocabulary.normalizePhrase(phrase);
+			if (normalizedPhrase != null && normalizedPhrase.length() > 0) {
+				normalized.add(normalizedPhrase);
+			}
+		}
+		phrases = normalized.toArray(new String[normalized.size()]);
+
+		Set<String> senses = new LinkedHashSet<String>();
+		for (String phrase : phrases) {
+			List<String> phraseSenses = store.getSensesForPhrase(phrase);
+			if (phraseSenses != null) {
+				senses.addAll(phraseSenses);
+			}
+		}
+		ids = senses.toArray(new String[senses.size()]);
+	}
+
+	@Benchmark
+	public void getSensesForPhrase(Blackhole blackhole) {
+		for (String phrase : phrases) {
+			blackhole.consume(store.getSensesForPhrase(phrase));
+		}
+	}
+
+	@Benchmark
+	public void getTerm(Blackhole blackhole) {
+		for (String id : ids) {
+			blackhole.consume(store.getTerm(id));
+		}
+	}
+
+	@Benchmark
+	public void getRelatedTerms(Blackhole blackhole) {
+		for (String id : ids) {
+			blackhole.consume(store.getRelatedTerms(id));
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.entopix.maui.classifiers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.meta.Bagging;
+import weka.core.Instances;
+import weka.core.Randomizable;
+
+/**
+ * Bagging that builds the classifiers of the ensemble on several threads.
+ *
+ * The bootstrap samples and the seeds of the classifiers are drawn from
+ * one random number generator in the order of the iterations, exactly as
+ * {@link Bagging} does, so the ensemble is the same as the one Bagging
+ * builds with the same options. Only the building of the classifiers,
+ * which does not use that generator, runs in parallel. The samples are
+ * drawn for as many iterations at a time as there are threads, so at most
+ * that many samples are in memory.
+ *
+ * With out-of-bag error estimation, or with one thread, the ensemble is
+ * built by Bagging itself.
+ */
+public class ParallelBagging extends Bagging {
+
+	private static final long serialVersionUID = 1L;
+
+	/** number of threads, not part of the model */
+	private transient int numThreads = 1;
+
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	public void buildClassifier(Instances data) throws Exception {
+
+		if (numThreads <= 1 || getCalcOutOfBag()) {
+			super.buildClassifier(data);
+			return;
+		}
+
+		// the same steps as Bagging.buildClassifier
+		getCapabilities().testWithFail(data);
+		data = new Instances(data);
+		data.deleteWithMissingClass();
+
+		if (m_Classifier == null) {
+			throw new Exception("A base classifier has not been specified!");
+		}
+		m_Classifiers = Classifier.makeCopies(m_Classifier, m_NumIterations);
+
+		int bagSize = data.numInstances() * m_BagSizePercent / 100;
+		Random random = new Random(m_Seed);
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, m_Classifiers.length));
+		try {
+			for (int first = 0; first < m_Classifiers.length; first += numThreads) {
+				int last = Math.min(first + numThreads, m_Classifiers.length);
+				List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+				for (int j = first; j < last; j++) {
+					Instances bagData = data.resampleWithWeights(random);
+					if (bagSize < data.numInstances()) {
+						bagData.randomize(random);
+						bagData = new Instances(bagData, 0, bagSize);
+					}
+					if (m_Classifier instanceof Randomizable) {
+						((Randomizable) m_Classifiers[j]).setSeed(random.nextInt());
+					}
+					tasks.add(buildTask(m_Classifiers[j], bagData));
+				}
+				for (Future<Object> future : executor.invokeAll(tasks)) {
+					future.get();
+				}
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static Callable<Object> buildTask(final Classifier classifier, final Instances bagData) {
+		return new Callable<Object>() {
+			public Object call() throws Exception {
+				classifier.buildClassifier(bagData);
+				return null;
+			}
+		};
+	}
+}
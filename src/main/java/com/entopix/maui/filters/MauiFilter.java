@@ -18,19 +18,38 @@ package com.entopix.maui.filters;
  *    along with this program; if not, write to the Free Software
  *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
  */
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import weka.classifiers.Classifier;
-import weka.classifiers.meta.Bagging;
+import weka.classifiers.UpdateableClassifier;
 import weka.core.Attribute;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
@@ -40,12 +59,25 @@ import weka.core.Instances;
 import weka.core.Utils;
 import weka.filters.Filter;
 
+import com.entopix.maui.classifiers.ParallelBagging;
 import com.entopix.maui.stemmers.PorterStemmer;
 import com.entopix.maui.stemmers.Stemmer;
 import com.entopix.maui.stopwords.Stopwords;
 import com.entopix.maui.stopwords.StopwordsEnglish;
+import com.entopix.maui.util.BlockInputStream;
+import com.entopix.maui.util.BlockOutputStream;
 import com.entopix.maui.util.Candidate;
+import com.entopix.maui.util.CorpusStatistics;
+import com.entopix.maui.util.CountMinSketch;
 import com.entopix.maui.util.Counter;
+import com.entopix.maui.util.ExternalCounter;
+import com.entopix.maui.util.FeatureCache;
+import com.entopix.maui.util.FeatureMatrix;
+import com.entopix.maui.util.FrequencyDictionary;
+import com.entopix.maui.util.MauiDocument;
+import com.entopix.maui.util.ModelFile;
+import com.entopix.maui.util.NegativeSampler;
+import com.entopix.maui.util.TrainingDocument;
 import com.entopix.maui.vocab.Vocabulary;
 import com.entopix.maui.wikifeatures.WikiFeatures;
 
@@ -76,6 +108,14 @@ public class MauiFilter extends Filter {
 
 	private static final long serialVersionUID = 1L;
 
+	/** Names of the sections of a model file */
+	static final String SETTINGS_SECTION = "settings";
+	static final String TEXT_SECTION = "stemmerAndStopwords";
+	static final String DOCUMENT_FREQUENCIES_SECTION = "documentFrequencies";
+	static final String KEYPHRASE_FREQUENCIES_SECTION = "keyphraseFrequencies";
+	static final String CLASSIFIER_SECTION = "classifier";
+	static final String WIKIPEDIA_SECTION = "wikipediaFeatures";
+
 	/**
 	 * Index of attribute containing the name of the file
 	 */
@@ -121,6 +161,68 @@ public class MauiFilter extends Filter {
 	 */
 	private int minOccurFrequency = 1;
 
+	/**
+	 * Number of threads that extract candidates from the training documents,
+	 * not part of the model
+	 */
+	private transient int numThreads = 1;
+
+	/**
+	 * Number of distinct phrases counted in memory before the counts are
+	 * written to disk, when training out of core
+	 */
+	private transient int maxCountsInMemory = 1000000;
+
+	/**
+	 * Structure of the documents before the phrase filter, to convert
+	 * documents into instances when training out of core
+	 */
+	private transient Instances documentFormat = null;
+
+	/**
+	 * File to write the feature values of the training candidates to, or null
+	 */
+	private transient File featureCacheFile = null;
+
+	/**
+	 * Whether all features are computed, whichever are used, for the feature cache
+	 */
+	private transient boolean computeAllFeatures = false;
+
+	/**
+	 * Fraction of the negative candidates the classifier is trained on,
+	 * not part of the model
+	 */
+	private transient double negativeSampleRate = 1.0;
+
+	/**
+	 * Number of bands and seed of the sample of negative candidates
+	 */
+	private transient int negativeSampleBands = NegativeSampler.DEFAULT_NUM_BANDS;
+	private transient long negativeSampleSeed = NegativeSampler.DEFAULT_SEED;
+
+	/**
+	 * First row of each document in classifierData, to sample the negative
+	 * candidates of each document separately
+	 */
+	private transient ArrayList<Integer> documentStarts = null;
+
+	/**
+	 * Width of the Count-Min sketch of the rare document frequencies,
+	 * or 0 to count all document frequencies exactly
+	 */
+	private transient int documentFrequencySketchWidth = 0;
+
+	/**
+	 * Depth of the Count-Min sketch of the rare document frequencies
+	 */
+	private transient int documentFrequencySketchDepth = 4;
+
+	/**
+	 * Smallest document frequency that is counted exactly when a sketch is used
+	 */
+	private transient int minExactDocumentFrequency = 5;
+
 	/**
 	 * Number of manually specified keyphrases
 	 */
@@ -209,12 +311,18 @@ public class MauiFilter extends Filter {
 	/**
 	 * The dictionary containing the document frequencies
 	 */
-	public HashMap<String, Counter> globalDictionary = null;
+	public FrequencyDictionary globalDictionary = null;
+
+	/**
+	 * Approximate document frequencies of the phrases that are not in
+	 * globalDictionary, or null if all are counted exactly
+	 */
+	private CountMinSketch documentFrequencySketch = null;
 
 	/**
 	 * The dictionary containing the keyphrases
 	 */
-	private HashMap<String, Counter> keyphraseDictionary = null;
+	private FrequencyDictionary keyphraseDictionary = null;
 
 	transient HashMap<Instance, HashMap<String, Candidate>> allCandidates = null;
 
@@ -244,9 +352,10 @@ public class MauiFilter extends Filter {
 	public String documentLanguage = "en";
 
 	/**
-	 * Vocabulary object
+	 * Vocabulary object, can be replaced by an updated vocabulary while extracting.
+	 * It is read once for each document, which uses that vocabulary throughout.
 	 */
-	transient Vocabulary vocabulary;
+	transient volatile Vocabulary vocabulary;
 
 	/**
 	 * Vocabulary name
@@ -322,6 +431,56 @@ public class MauiFilter extends Filter {
 		this.numIndexers = numIndexers;
 	}
 
+	/**
+	 * Sets the number of threads used to extract candidates and count
+	 * document frequencies while training. The model does not depend on it.
+	 */
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * Sets a file that training writes the feature values of all candidates
+	 * to, so that models can be built from it with buildFromFeatureCache.
+	 */
+	public void setFeatureCacheFile(File featureCacheFile) {
+		this.featureCacheFile = featureCacheFile;
+	}
+
+	/**
+	 * Sets the fraction of the negative candidates of each document that
+	 * the classifier is trained on; all positive candidates are used.
+	 * See NegativeSampler.
+	 *
+	 * @param rate fraction of the negatives to keep, 1 to keep all
+	 * @param numBands number of TFxIDF bands the negatives of a document are split into
+	 * @param seed seed of the random sample
+	 */
+	public void setNegativeSampling(double rate, int numBands, long seed) {
+		this.negativeSampleRate = rate;
+		this.negativeSampleBands = numBands;
+		this.negativeSampleSeed = seed;
+	}
+
+	/**
+	 * Counts the document frequencies of phrases in fewer than
+	 * minExactFrequency documents in a Count-Min sketch of the given size,
+	 * instead of exactly; a width of 0 counts all of them exactly.
+	 * The IDF of these phrases is then approximate. While counting, no
+	 * more than maxCountsInMemory phrases are held in memory; the other
+	 * counts are spilled to disk. When the model is updated, a phrase is
+	 * counted exactly once its estimate reaches minExactFrequency.
+	 */
+	public void setDocumentFrequencySketch(int width, int depth, int minExactFrequency) {
+		this.documentFrequencySketchWidth = width;
+		this.documentFrequencySketchDepth = depth;
+		this.minExactDocumentFrequency = minExactFrequency;
+	}
+
+	public void setMaxCountsInMemory(int maxCountsInMemory) {
+		this.maxCountsInMemory = maxCountsInMemory;
+	}
+
 	public void setMinNumOccur(int minNumOccur) {
 		this.minOccurFrequency = minNumOccur;
 	}
@@ -440,6 +599,8 @@ public class MauiFilter extends Filter {
 					+ "need to be string attributes.");
 		}
 
+		documentFormat = instanceInfo.stringFreeStructure();
+
 		try {
 			phraseFilter = new MauiPhraseFilter();
 			int[] arr = new int[1];
@@ -513,23 +674,7 @@ public class MauiFilter extends Filter {
 			log.info("-- Reading instance");
 		}
 
-		try {
-			phraseFilter.input(instance);
-			phraseFilter.batchFinished();
-			instance = phraseFilter.output();
-		} catch (Exception e) {
-			throw new MauiFilterException("Error applying PhraseFilter ");
-		}
-
-		if (vocabularyName.equals("none")) {
-			try {
-				numbersFilter.input(instance);
-				numbersFilter.batchFinished();
-				instance = numbersFilter.output();
-			} catch (Exception e) {
-				throw new MauiFilterException("Error applying NumbersFilter ");
-			}
-		}
+		instance = filterInstance(instance);
 
 		if (globalDictionary == null) {
 
@@ -549,6 +694,30 @@ public class MauiFilter extends Filter {
 
 	}
 
+	/**
+	 * Applies the phrase filter and, in free indexing, the numbers filter to an instance.
+	 */
+	private Instance filterInstance(Instance instance) throws MauiFilterException {
+		try {
+			phraseFilter.input(instance);
+			phraseFilter.batchFinished();
+			instance = phraseFilter.output();
+		} catch (Exception e) {
+			throw new MauiFilterException("Error applying PhraseFilter ");
+		}
+
+		if (vocabularyName.equals("none")) {
+			try {
+				numbersFilter.input(instance);
+				numbersFilter.batchFinished();
+				instance = numbersFilter.output();
+			} catch (Exception e) {
+				throw new MauiFilterException("Error applying NumbersFilter ");
+			}
+		}
+		return instance;
+	}
+
 	/**
 	 * Signify that this batch of input to the filter is finished. If the filter
 	 * requires all instances prior to filtering, output() may now be called to
@@ -574,7 +743,7 @@ public class MauiFilter extends Filter {
 		return (numPendingOutput() != 0);
 	}
 
-	private void selectCandidates() {
+	private void selectCandidates() throws MauiFilterException {
 
 		if (debugMode) {
 			log.info("--- Computing candidates...");
@@ -583,89 +752,890 @@ public class MauiFilter extends Filter {
 		allCandidates = new HashMap<Instance, HashMap<String, Candidate>>();
 
 		// Convert pending input instances into data for classifier
-		int totalDocuments = getInputFormat().numInstances();
+		final int totalDocuments = getInputFormat().numInstances();
+		ArrayList<Callable<HashMap<String, Candidate>>> tasks = new ArrayList<Callable<HashMap<String, Candidate>>>();
 		for (int i = 0; i < totalDocuments; i++) {
+			final int document = i;
+			tasks.add(new Callable<HashMap<String, Candidate>>() {
+				public HashMap<String, Candidate> call() {
+					return selectCandidates(document, totalDocuments);
+				}
+			});
+		}
 
-			Instance current = getInputFormat().instance(i);
+		// the candidates are added in the order of the documents,
+		// however many threads extracted them
+		List<HashMap<String, Candidate>> candidateLists = runTasks(tasks);
+		for (int i = 0; i < totalDocuments; i++) {
+			allCandidates.put(getInputFormat().instance(i), candidateLists.get(i));
+		}
 
-			String fileName = current.stringValue(fileNameAtt);
-			int j = i + 1;
-			if (debugMode) {
-				log.info("---- Processing document " + fileName
-						+ ", " + j + " out of " + totalDocuments + "...");
+	}
+
+	private HashMap<String, Candidate> selectCandidates(int document, int totalDocuments) {
+
+		Instance current = getInputFormat().instance(document);
+
+		String fileName = current.stringValue(fileNameAtt);
+		int j = document + 1;
+		if (debugMode) {
+			log.info("---- Processing document " + fileName
+					+ ", " + j + " out of " + totalDocuments + "...");
+		}
+
+		// Get the phrases for the document
+		String documentText = current.stringValue(documentAtt);
+
+		HashMap<String, Candidate> candidateList = getCandidates(documentText);
+
+		if (debugMode) {
+			log.info("---- " + candidateList.size() + " candidates");
+		}
+		return candidateList;
+	}
+
+	/**
+	 * Runs the tasks on numThreads threads, or in this thread if there is
+	 * only one, and returns their results in the order of the tasks.
+	 */
+	private <T> List<T> runTasks(List<Callable<T>> tasks) throws MauiFilterException {
+		ArrayList<T> results = new ArrayList<T>(tasks.size());
+		try {
+			if (numThreads <= 1 || tasks.size() <= 1) {
+				for (Callable<T> task : tasks) {
+					results.add(task.call());
+				}
+				return results;
+			}
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, tasks.size()));
+			try {
+				for (Future<T> future : executor.invokeAll(tasks)) {
+					results.add(future.get());
+				}
+			} finally {
+				executor.shutdownNow();
 			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			log.error("Error while computing candidates", e.getCause());
+			throw new MauiFilterException("Error while computing candidates: " + e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MauiFilterException("Interrupted while computing candidates");
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			log.error("Error while computing candidates", e);
+			throw new MauiFilterException("Error while computing candidates: " + e);
+		}
+		return results;
+	}
 
-			// Get the phrases for the document
-			String documentText = current.stringValue(documentAtt);
+	/**
+	 * Builds the global dictionaries.
+	 */
+	public void buildGlobalDictionaries() throws MauiFilterException {
+		if (debugMode) {
+			log.info("--- Building global frequency dictionary");
+		}
 
-			HashMap<String, Candidate> candidateList = getCandidates(documentText);
+		// Build a dictionary of candidates with associated
+		// document frequencies. Each task counts a range of documents,
+		// and the counts are merged in the order of the documents, so
+		// the dictionary is the same as if it was counted in one pass.
+		final int totalDocuments = getInputFormat().numInstances();
+		int numRanges = numThreads <= 1 ? 1 : 4 * numThreads;
+		final int rangeSize = Math.max(1, (totalDocuments + numRanges - 1) / numRanges);
+		HashMap<String, Counter> documentFrequencies = null;
+		ExternalCounter sketchedFrequencies = null;
+		if (documentFrequencySketchWidth > 0) {
+			// only the frequent phrases are kept, so the counts are not
+			// collected in one table, but each range spills its counts to
+			// disk while counting, and the runs of all ranges are merged
+			final int maxCountsPerRange = Math.max(1, maxCountsInMemory / Math.max(1, numThreads));
+			ArrayList<Callable<ExternalCounter>> tasks = new ArrayList<Callable<ExternalCounter>>();
+			for (int start = 0; start < totalDocuments; start += rangeSize) {
+				final int first = start;
+				tasks.add(new Callable<ExternalCounter>() {
+					public ExternalCounter call() {
+						ExternalCounter counter = new ExternalCounter(null, maxCountsPerRange);
+						for (int i = first; i < Math.min(first + rangeSize, totalDocuments); i++) {
+							for (String candidateName : allCandidates.get(getInputFormat().instance(i)).keySet()) {
+								counter.add(candidateName, 1);
+							}
+						}
+						counter.spill();
+						return counter;
+					}
+				});
+			}
+			sketchedFrequencies = new ExternalCounter(null, maxCountsInMemory);
+			for (ExternalCounter counter : runTasks(tasks)) {
+				sketchedFrequencies.addRuns(counter);
+			}
+		} else {
+			ArrayList<Callable<LinkedHashMap<String, Counter>>> tasks = new ArrayList<Callable<LinkedHashMap<String, Counter>>>();
+			for (int start = 0; start < totalDocuments; start += rangeSize) {
+				final int first = start;
+				tasks.add(new Callable<LinkedHashMap<String, Counter>>() {
+					public LinkedHashMap<String, Counter> call() {
+						return countDocumentFrequencies(first, Math.min(first + rangeSize, totalDocuments));
+					}
+				});
+			}
+			documentFrequencies = new HashMap<String, Counter>();
+			for (LinkedHashMap<String, Counter> frequencies : runTasks(tasks)) {
+				for (String candidateName : frequencies.keySet()) {
+					Counter counter = documentFrequencies.get(candidateName);
+					if (counter == null) {
+						documentFrequencies.put(candidateName, frequencies.get(candidateName));
+					} else {
+						counter.increment(frequencies.get(candidateName).value());
+					}
+				}
+			}
+		}
 
-			if (debugMode) {
-				log.info("---- " + candidateList.size() + " candidates");
+		if (debugMode) {
+			log.info("--- Building keyphraseness dictionary");
+		}
+		// Build a dictionary of candidates that occur as keyphrases
+		// with associated keyphrase frequencies
+		HashMap<String, Counter> keyphraseFrequencies = new HashMap<String, Counter>();
+		for (int i = 0; i < getInputFormat().numInstances(); i++) {
+			String str = getInputFormat().instance(i)
+					.stringValue(keyphrasesAtt);
+			HashMap<String, Counter> hash = getGivenKeyphrases(str, vocabulary);
+			if (hash != null) {
+				for (String term : hash.keySet()) {
+
+					Counter documentCount = hash.get(term);
+					Counter counter = keyphraseFrequencies.get(term);
+					if (counter == null) {
+						keyphraseFrequencies.put(term, new Counter(documentCount
+								.value()));
+					} else {
+						counter.increment(documentCount.value());
+					}
+				}
+			}
+		}
+
+		// freeze the counts into compact tables, which the model keeps
+		if (sketchedFrequencies != null) {
+			documentFrequencySketch = createDocumentFrequencySketch();
+			globalDictionary = FrequencyDictionary.freeze(
+					sketchedFrequencies.merge(minExactDocumentFrequency, documentFrequencySketch));
+		} else {
+			setDocumentFrequencies(documentFrequencies);
+		}
+		keyphraseDictionary = FrequencyDictionary.freeze(keyphraseFrequencies);
+
+		if (debugMode) {
+			log.info("--- Statistics about global dictionaries: ");
+			log.info("\t" + globalDictionary.size()
+					+ " terms in the global dictionary");
+			log.info("\t" + keyphraseDictionary.size()
+					+ " terms in the keyphrase dictionary");
+		}
+
+		// Set the number of documents in the global corpus
+		numDocs = getInputFormat().numInstances();
+	}
+
+	/**
+	 * Sets the document frequencies of the model. If a sketch is configured,
+	 * only the frequent phrases are kept exactly, and the others are added
+	 * to the sketch.
+	 */
+	private void setDocumentFrequencies(HashMap<String, Counter> documentFrequencies) {
+		documentFrequencySketch = createDocumentFrequencySketch();
+		if (documentFrequencySketch != null) {
+			HashMap<String, Counter> frequent = new HashMap<String, Counter>();
+			for (Map.Entry<String, Counter> entry : documentFrequencies.entrySet()) {
+				if (entry.getValue().value() >= minExactDocumentFrequency) {
+					frequent.put(entry.getKey(), entry.getValue());
+				} else {
+					documentFrequencySketch.add(entry.getKey(), entry.getValue().value());
+				}
+			}
+			documentFrequencies = frequent;
+		}
+		globalDictionary = FrequencyDictionary.freeze(documentFrequencies);
+	}
+
+	/**
+	 * Returns the number of training documents that contain a phrase,
+	 * which is an estimate if the phrase is rare and a sketch is used.
+	 */
+	public int getDocumentFrequency(String phrase) {
+		int frequency = globalDictionary.get(phrase);
+		if (frequency == 0 && documentFrequencySketch != null) {
+			frequency = documentFrequencySketch.estimate(phrase);
+		}
+		return frequency;
+	}
+
+	public FrequencyDictionary getKeyphraseDictionary() {
+		return keyphraseDictionary;
+	}
+
+	private CountMinSketch createDocumentFrequencySketch() {
+		if (documentFrequencySketchWidth <= 0) {
+			return null;
+		}
+		return new CountMinSketch(documentFrequencySketchWidth, documentFrequencySketchDepth);
+	}
+
+	/**
+	 * Counts the documents between first and last (exclusive) that contain
+	 * each candidate, in the order in which the candidates are first seen.
+	 */
+	private LinkedHashMap<String, Counter> countDocumentFrequencies(int first, int last) {
+		LinkedHashMap<String, Counter> frequencies = new LinkedHashMap<String, Counter>();
+		for (int i = first; i < last; i++) {
+			HashMap<String, Candidate> candidates = allCandidates.get(getInputFormat().instance(i));
+			for (String candidateName : candidates.keySet()) {
+				Counter counter = frequencies.get(candidateName);
+				if (counter == null) {
+					frequencies.put(candidateName, new Counter());
+				} else {
+					counter.increment();
+				}
+			}
+		}
+		return frequencies;
+	}
+
+	/**
+	 * Builds the model from documents that do not need to fit in memory,
+	 * instead of buffering them with input() and batchFinished().
+	 * The documents are read twice. The first pass counts the document
+	 * frequencies and keyphrase frequencies, spilling sorted counts to
+	 * disk, and the second pass writes the feature values of all candidates
+	 * to disk. Only the classifier is trained on data in memory, optionally
+	 * on a random sample of the candidates.
+	 *
+	 * @param documents training documents, iterated twice in the same order
+	 * @param workDirectory directory for temporary files, or null for the default one
+	 * @param sampleRate fraction of the candidates the classifier is trained on
+	 * @throws MauiFilterException
+	 */
+	public void buildOutOfCore(Iterable<MauiDocument> documents, File workDirectory,
+			double sampleRate) throws MauiFilterException {
+
+		if (getInputFormat() == null) {
+			throw new MauiFilterException("No input instance format defined");
+		}
+
+		log.info("--- Counting document frequencies");
+		ExternalCounter documentFrequencies = new ExternalCounter(workDirectory, maxCountsInMemory);
+		ExternalCounter keyphraseFrequencies = new ExternalCounter(workDirectory, maxCountsInMemory);
+		int totalDocuments = countCorpus(documents, documentFrequencies, keyphraseFrequencies);
+		documentFrequencySketch = createDocumentFrequencySketch();
+		globalDictionary = FrequencyDictionary.freeze(documentFrequencySketch == null ? documentFrequencies.merge()
+				: documentFrequencies.merge(minExactDocumentFrequency, documentFrequencySketch));
+		keyphraseDictionary = FrequencyDictionary.freeze(keyphraseFrequencies.merge());
+		numDocs = totalDocuments;
+
+		if (debugMode) {
+			log.info("--- Statistics about global dictionaries: ");
+			log.info("\t" + globalDictionary.size()
+					+ " terms in the global dictionary");
+			log.info("\t" + keyphraseDictionary.size()
+					+ " terms in the keyphrase dictionary");
+		}
+
+		log.info("--- Computing features");
+		classifierData = createClassifierFormat();
+		documentStarts = new ArrayList<Integer>();
+		FeatureMatrix features = new FeatureMatrix(workDirectory, numFeatures + 1);
+		FeatureCache.Writer featureCache = createFeatureCache(featureCacheFile);
+		try {
+			computeFeatures(documents, features, featureCache);
+		} catch (MauiFilterException e) {
+			features.delete();
+			discardFeatureCache(featureCache);
+			throw e;
+		} catch (RuntimeException e) {
+			features.delete();
+			discardFeatureCache(featureCache);
+			throw e;
+		}
+		closeFeatureCache(featureCache);
+		log.info("--- " + features.numRows() + " candidates, " + features.getNumBytes() + " bytes of features");
+		features.readInto(classifierData, sampleRate, 1);
+
+		trainClassifier();
+		setOutputFormat(createOutputFormat());
+	}
+
+	/**
+	 * Counts the document frequencies and keyphrase frequencies of the
+	 * documents, and returns the number of documents.
+	 */
+	private int countCorpus(Iterable<MauiDocument> documents, ExternalCounter documentFrequencies,
+			ExternalCounter keyphraseFrequencies) throws MauiFilterException {
+		Vocabulary vocabulary = this.vocabulary;
+		int totalDocuments = 0;
+		for (MauiDocument document : documents) {
+			Instance current = filterInstance(toInstance(document));
+			for (String candidateName : getCandidates(current.stringValue(documentAtt), vocabulary).keySet()) {
+				documentFrequencies.add(candidateName, 1);
+			}
+			HashMap<String, Counter> hashKeyphrases = getGivenKeyphrases(getKeyphrases(current), vocabulary);
+			if (hashKeyphrases != null) {
+				for (String term : hashKeyphrases.keySet()) {
+					keyphraseFrequencies.add(term, hashKeyphrases.get(term).value());
+				}
+			}
+			totalDocuments++;
+		}
+		return totalDocuments;
+	}
+
+	/**
+	 * Computes the feature values of the candidates of the documents with
+	 * the current dictionaries, and adds them to the feature matrix and
+	 * the feature cache, either of which may be null.
+	 */
+	private void computeFeatures(Iterable<MauiDocument> documents, FeatureMatrix features,
+			FeatureCache.Writer featureCache) throws MauiFilterException {
+		Vocabulary vocabulary = this.vocabulary;
+		for (MauiDocument document : documents) {
+			Instance current = filterInstance(toInstance(document));
+			if (featureCache != null) {
+				featureCache.addDocument(current.stringValue(fileNameAtt));
+			}
+			HashMap<String, Counter> hashKeyphrases = getGivenKeyphrases(getKeyphrases(current), vocabulary);
+			HashMap<String, Candidate> candidateList = getCandidates(current.stringValue(documentAtt), vocabulary);
+			BitSet candidateConcepts = getCandidateConcepts(candidateList);
+			for (Candidate candidate : candidateList.values()) {
+				if (candidate.getFrequency() < minOccurFrequency) {
+					continue;
+				}
+				double[] vals = computeFeatureValues(candidate, true,
+						hashKeyphrases, candidateList, candidateConcepts, vocabulary);
+				if (featureCache != null) {
+					featureCache.add(current.weight(), vals);
+				}
+				if (features != null) {
+					features.add(current.weight(), maskFeatures(vals));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts the document frequencies, keyphrase frequencies and number of
+	 * documents of a shard of the training corpus. The statistics of all
+	 * shards are merged with CorpusStatistics.merge and passed to
+	 * writeFeatureCache for each shard.
+	 *
+	 * @param documents documents of the shard
+	 * @param workDirectory directory for temporary files, or null for the default one
+	 * @throws MauiFilterException
+	 */
+	public CorpusStatistics countCorpusStatistics(Iterable<MauiDocument> documents, File workDirectory)
+			throws MauiFilterException {
+
+		if (getInputFormat() == null) {
+			throw new MauiFilterException("No input instance format defined");
+		}
+		ExternalCounter documentFrequencies = new ExternalCounter(workDirectory, maxCountsInMemory);
+		ExternalCounter keyphraseFrequencies = new ExternalCounter(workDirectory, maxCountsInMemory);
+		int totalDocuments = countCorpus(documents, documentFrequencies, keyphraseFrequencies);
+		return new CorpusStatistics(getFeatureCacheSettings(), totalDocuments,
+				FrequencyDictionary.freeze(documentFrequencies.merge()),
+				FrequencyDictionary.freeze(keyphraseFrequencies.merge()));
+	}
+
+	/**
+	 * Writes the feature values of the candidates of a shard of the
+	 * training corpus to a feature cache, computed with the statistics of
+	 * the whole corpus. A model is then built from the caches of all
+	 * shards with buildFromFeatureCaches.
+	 *
+	 * @param documents documents of the shard
+	 * @param statistics merged statistics of all shards
+	 * @param cacheFile feature cache to write
+	 * @throws MauiFilterException if the statistics were counted with other settings
+	 */
+	public void writeFeatureCache(Iterable<MauiDocument> documents, CorpusStatistics statistics,
+			File cacheFile) throws MauiFilterException {
+
+		if (getInputFormat() == null) {
+			throw new MauiFilterException("No input instance format defined");
+		}
+		if (!statistics.getSettings().equals(getFeatureCacheSettings())) {
+			throw new MauiFilterException("Corpus statistics were counted with other settings: "
+					+ statistics.getSettings());
+		}
+		globalDictionary = statistics.getDocumentFrequencies();
+		documentFrequencySketch = null;
+		keyphraseDictionary = statistics.getKeyphraseFrequencies();
+		numDocs = statistics.getNumDocs();
+
+		FeatureCache.Writer featureCache = createFeatureCache(cacheFile);
+		try {
+			computeFeatures(documents, null, featureCache);
+		} catch (MauiFilterException e) {
+			discardFeatureCache(featureCache);
+			throw e;
+		} catch (RuntimeException e) {
+			discardFeatureCache(featureCache);
+			throw e;
+		}
+		closeFeatureCache(featureCache);
+	}
+
+	/**
+	 * Updates the model with new training documents, without going over
+	 * the documents it was built from. The document frequencies and
+	 * keyphrase frequencies of the new documents are added to the global
+	 * dictionaries, and the feature values of their candidates are computed
+	 * with the updated dictionaries. An updateable classifier is then
+	 * updated with the new candidates only. Any other classifier is trained
+	 * again on the candidates in the feature cache written while building
+	 * the model, plus the new candidates.
+	 *
+	 * The feature cache, if given, is rewritten with the new candidates and
+	 * dictionaries, so that the model can be updated again. The old cache
+	 * is only replaced once the new one has been written completely. The cached
+	 * feature values of the earlier candidates are not recomputed, so
+	 * their IDF and keyphraseness reflect the counts of the earlier corpus.
+	 *
+	 * @param documents new training documents
+	 * @param cacheFile feature cache of the model, or null if the classifier is updateable
+	 * @throws MauiFilterException if the model has not been built, or its classifier
+	 *  cannot be updated without a feature cache, or the cache does not belong to the model
+	 */
+	public void update(Iterable<MauiDocument> documents, File cacheFile) throws MauiFilterException {
+
+		if (globalDictionary == null || classifier == null) {
+			throw new MauiFilterException("Only a model that has been built can be updated");
+		}
+		boolean updateable = classifier instanceof UpdateableClassifier;
+		if (!updateable && cacheFile == null) {
+			throw new MauiFilterException("A feature cache is needed to update a model with "
+					+ classifier.getClass().getName());
+		}
+		if (documentFormat == null) {
+			// the model was deserialized
+			documentFormat = getInputFormat().stringFreeStructure();
+		}
+
+		FeatureCache cache = null;
+		if (cacheFile != null) {
+			try {
+				cache = FeatureCache.read(cacheFile, -1L);
+			} catch (IOException e) {
+				log.error("Error while reading feature cache " + cacheFile, e);
+				throw new MauiFilterException("Error while reading feature cache " + cacheFile + ": " + e.getMessage());
+			}
+			if (!cache.getSettings().equals(getFeatureCacheSettings()) || cache.getNumDocs() != numDocs) {
+				throw new MauiFilterException("Feature cache " + cacheFile + " does not belong to this model");
+			}
+			if (!updateable && (getEnabledColumns() & ~cache.getComputedColumns()) != 0) {
+				throw new MauiFilterException("Feature cache " + cacheFile
+						+ " does not contain all features that are switched on");
+			}
+		}
+
+		// count the new documents, keeping their candidates for the second step
+		Vocabulary vocabulary = this.vocabulary;
+		HashMap<String, Counter> documentFrequencies = globalDictionary.toHashMap();
+		HashMap<String, Counter> keyphraseFrequencies = keyphraseDictionary.toHashMap();
+		ArrayList<Instance> newDocuments = new ArrayList<Instance>();
+		ArrayList<HashMap<String, Candidate>> newCandidates = new ArrayList<HashMap<String, Candidate>>();
+		for (MauiDocument document : documents) {
+			Instance current = filterInstance(toInstance(document));
+			HashMap<String, Candidate> candidateList = getCandidates(current.stringValue(documentAtt), vocabulary);
+			for (String candidateName : candidateList.keySet()) {
+				Counter counter = documentFrequencies.get(candidateName);
+				if (counter != null) {
+					counter.increment();
+				} else if (documentFrequencySketch == null) {
+					documentFrequencies.put(candidateName, new Counter());
+				} else {
+					documentFrequencySketch.add(candidateName, 1);
+					// a phrase that has become frequent is counted exactly from
+					// now on; its estimate in the sketch is no longer used
+					int estimate = documentFrequencySketch.estimate(candidateName);
+					if (estimate >= minExactDocumentFrequency) {
+						documentFrequencies.put(candidateName, new Counter(estimate));
+					}
+				}
+			}
+			HashMap<String, Counter> hashKeyphrases = getGivenKeyphrases(getKeyphrases(current), vocabulary);
+			if (hashKeyphrases != null) {
+				for (String term : hashKeyphrases.keySet()) {
+					Counter counter = keyphraseFrequencies.get(term);
+					if (counter == null) {
+						keyphraseFrequencies.put(term, new Counter(hashKeyphrases.get(term).value()));
+					} else {
+						counter.increment(hashKeyphrases.get(term).value());
+					}
+				}
+			}
+			newDocuments.add(current);
+			newCandidates.add(candidateList);
+		}
+		globalDictionary = FrequencyDictionary.freeze(documentFrequencies);
+		keyphraseDictionary = FrequencyDictionary.freeze(keyphraseFrequencies);
+		numDocs += newDocuments.size();
+
+		FeatureCache.Writer featureCache = null;
+		if (cache != null) {
+			computeAllFeatures = true;
+			featureCache = new FeatureCache.Writer(cacheFile, getFeatureCacheSettings(),
+					numFeatures + 1, cache.getComputedColumns() & getComputedColumns());
+			String lastDocument = null;
+			for (int row = 0; row < cache.numRows(); row++) {
+				if (!cache.getDocument(row).equals(lastDocument)) {
+					lastDocument = cache.getDocument(row);
+					featureCache.addDocument(lastDocument);
+				}
+				featureCache.add(cache.getWeight(row), cache.getValues(row));
+			}
+		}
+
+		classifierData = createClassifierFormat();
+		documentStarts = new ArrayList<Integer>();
+		try {
+			for (int i = 0; i < newDocuments.size(); i++) {
+				Instance current = newDocuments.get(i);
+				if (featureCache != null) {
+					featureCache.addDocument(current.stringValue(fileNameAtt));
+				}
+				documentStarts.add(classifierData.numInstances());
+				HashMap<String, Counter> hashKeyphrases = getGivenKeyphrases(getKeyphrases(current), vocabulary);
+				HashMap<String, Candidate> candidateList = newCandidates.get(i);
+				BitSet candidateConcepts = getCandidateConcepts(candidateList);
+				for (Candidate candidate : candidateList.values()) {
+					if (candidate.getFrequency() < minOccurFrequency) {
+						continue;
+					}
+					double[] vals = computeFeatureValues(candidate, true,
+							hashKeyphrases, candidateList, candidateConcepts, vocabulary);
+					if (featureCache != null) {
+						featureCache.add(current.weight(), vals);
+					}
+					classifierData.add(new Instance(current.weight(), maskFeatures(vals)));
+				}
+			}
+		} catch (RuntimeException e) {
+			discardFeatureCache(featureCache);
+			throw e;
+		}
+		closeFeatureCache(featureCache);
+		log.info("--- " + classifierData.numInstances() + " candidates in " + newDocuments.size() + " new documents");
+
+		if (updateable) {
+			try {
+				for (int i = 0; i < classifierData.numInstances(); i++) {
+					((UpdateableClassifier) classifier).updateClassifier(classifierData.instance(i));
+				}
+			} catch (Exception e) {
+				throw new MauiFilterException("Exception while updating classifier " + e.getMessage());
+			}
+			classifierData = new Instances(classifierData, 0);
+		} else {
+			Instances newData = classifierData;
+			ArrayList<Integer> newStarts = documentStarts;
+			classifierData = createClassifierFormat();
+			documentStarts = new ArrayList<Integer>();
+			addCachedRows(cache);
+			for (int start : newStarts) {
+				documentStarts.add(cache.numRows() + start);
+			}
+			for (int i = 0; i < newData.numInstances(); i++) {
+				classifierData.add(newData.instance(i));
+			}
+			trainClassifier();
+		}
+	}
+
+	/**
+	 * Extracts the candidates and given keyphrases of training documents on
+	 * numThreads threads, without training anything, so that they can be
+	 * used by buildFromTrainingDocuments.
+	 */
+	public List<TrainingDocument> extractTrainingDocuments(List<MauiDocument> documents)
+			throws MauiFilterException {
+
+		if (getInputFormat() == null) {
+			throw new MauiFilterException("No input instance format defined");
+		}
+		if (documentFormat == null) {
+			documentFormat = getInputFormat().stringFreeStructure();
+		}
+
+		// the phrase filters are not thread-safe, the candidate extraction is
+		final Vocabulary vocabulary = this.vocabulary;
+		ArrayList<Callable<TrainingDocument>> tasks = new ArrayList<Callable<TrainingDocument>>();
+		for (MauiDocument document : documents) {
+			final Instance current = filterInstance(toInstance(document));
+			tasks.add(new Callable<TrainingDocument>() {
+				public TrainingDocument call() {
+					return new TrainingDocument(current.stringValue(fileNameAtt), current.weight(),
+							getCandidates(current.stringValue(documentAtt), vocabulary),
+							getGivenKeyphrases(getKeyphrases(current), vocabulary));
+				}
+			});
+		}
+		return runTasks(tasks);
+	}
+
+	/**
+	 * Builds the model from extracted training documents and the dictionaries
+	 * counted from them, which the caller may have derived from the counts of
+	 * a larger corpus. The model is the same as the one built from the
+	 * documents themselves.
+	 *
+	 * @param documents training documents from extractTrainingDocuments
+	 * @param documentFrequencies number of the documents that contain each candidate
+	 * @param keyphraseFrequencies frequencies of the given keyphrases of the documents
+	 * @throws MauiFilterException
+	 */
+	public void buildFromTrainingDocuments(List<TrainingDocument> documents,
+			HashMap<String, Counter> documentFrequencies,
+			HashMap<String, Counter> keyphraseFrequencies) throws MauiFilterException {
+
+		if (getInputFormat() == null) {
+			throw new MauiFilterException("No input instance format defined");
+		}
+
+		setDocumentFrequencies(documentFrequencies);
+		keyphraseDictionary = FrequencyDictionary.freeze(keyphraseFrequencies);
+		numDocs = documents.size();
+
+		classifierData = createClassifierFormat();
+		documentStarts = new ArrayList<Integer>();
+		Vocabulary vocabulary = this.vocabulary;
+		for (TrainingDocument document : documents) {
+			documentStarts.add(classifierData.numInstances());
+			HashMap<String, Candidate> candidateList = document.getCandidates();
+			BitSet candidateConcepts = getCandidateConcepts(candidateList);
+			for (Candidate candidate : candidateList.values()) {
+				if (candidate.getFrequency() < minOccurFrequency) {
+					continue;
+				}
+				double[] vals = computeFeatureValues(candidate, true,
+						document.getKeyphrases(), candidateList, candidateConcepts, vocabulary);
+				classifierData.add(new Instance(document.getWeight(), maskFeatures(vals)));
+			}
+		}
+
+		trainClassifier();
+		setOutputFormat(createOutputFormat());
+	}
+
+	/**
+	 * Builds the model from the feature values in a cache written by an
+	 * earlier training run with the same settings, instead of from documents.
+	 * Features that are switched off are masked out of the cached values.
+	 *
+	 * @param cacheFile file written during training after setFeatureCacheFile
+	 * @throws MauiFilterException if the cache cannot be read, was computed with
+	 *  other settings, or lacks a feature that is switched on
+	 */
+	public void buildFromFeatureCache(File cacheFile) throws MauiFilterException {
+		buildFromFeatureCaches(Collections.singletonList(cacheFile));
+	}
+
+	/**
+	 * Builds the model from the feature values in the caches of the shards
+	 * of a corpus, written by writeFeatureCache with the same statistics,
+	 * which is checked with the checksum of the statistics in each cache.
+	 * The rows of the caches are used in the order of the files.
+	 *
+	 * @param cacheFiles files written for each shard
+	 * @throws MauiFilterException if a cache cannot be read, was computed with
+	 *  other settings or statistics, or lacks a feature that is switched on
+	 */
+	public void buildFromFeatureCaches(List<File> cacheFiles) throws MauiFilterException {
+
+		if (getInputFormat() == null) {
+			throw new MauiFilterException("No input instance format defined");
+		}
+
+		classifierData = createClassifierFormat();
+		documentStarts = new ArrayList<Integer>();
+		long fingerprint = 0;
+		for (int i = 0; i < cacheFiles.size(); i++) {
+			File cacheFile = cacheFiles.get(i);
+			FeatureCache cache;
+			try {
+				cache = FeatureCache.read(cacheFile, getEnabledColumns());
+			} catch (IOException e) {
+				log.error("Error while reading feature cache " + cacheFile, e);
+				throw new MauiFilterException("Error while reading feature cache " + cacheFile + ": " + e.getMessage());
+			}
+			if (!cache.getSettings().equals(getFeatureCacheSettings())) {
+				throw new MauiFilterException("Feature cache " + cacheFile + " was computed with other settings: "
+						+ cache.getSettings());
+			}
+			if ((getEnabledColumns() & ~cache.getComputedColumns()) != 0) {
+				throw new MauiFilterException("Feature cache " + cacheFile
+						+ " does not contain all features that are switched on");
 			}
-			allCandidates.put(current, candidateList);
 
+			if (i == 0) {
+				globalDictionary = cache.getGlobalDictionary();
+				documentFrequencySketch = cache.getDocumentFrequencySketch();
+				keyphraseDictionary = cache.getKeyphraseDictionary();
+				numDocs = cache.getNumDocs();
+				fingerprint = cache.getStatisticsFingerprint();
+			} else if (cache.getStatisticsFingerprint() != fingerprint) {
+				throw new MauiFilterException("Feature cache " + cacheFile
+						+ " was computed with other corpus statistics than " + cacheFiles.get(0));
+			}
+
+			addCachedRows(cache);
+			log.info("--- " + cache.numRows() + " candidates read from " + cacheFile);
+		}
+
+		trainClassifier();
+		setOutputFormat(createOutputFormat());
+	}
+
+	/**
+	 * Adds the rows of a feature cache to classifierData, marking where
+	 * each of its documents starts.
+	 */
+	private void addCachedRows(FeatureCache cache) {
+		String lastDocument = null;
+		for (int row = 0; row < cache.numRows(); row++) {
+			if (!cache.getDocument(row).equals(lastDocument)) {
+				lastDocument = cache.getDocument(row);
+				documentStarts.add(classifierData.numInstances());
+			}
+			classifierData.add(new Instance(cache.getWeight(row), maskFeatures(cache.getValues(row))));
+		}
+	}
+
+	private FeatureCache.Writer createFeatureCache(File cacheFile) {
+		if (cacheFile == null) {
+			return null;
+		}
+		computeAllFeatures = true;
+		return new FeatureCache.Writer(cacheFile, getFeatureCacheSettings(),
+				numFeatures + 1, getComputedColumns());
+	}
+
+	private void discardFeatureCache(FeatureCache.Writer featureCache) {
+		computeAllFeatures = false;
+		if (featureCache != null) {
+			featureCache.delete();
+		}
+	}
+
+	private void closeFeatureCache(FeatureCache.Writer featureCache) {
+		computeAllFeatures = false;
+		if (featureCache != null) {
+			featureCache.close(numDocs, globalDictionary, documentFrequencySketch, keyphraseDictionary);
+		}
+	}
+
+	/**
+	 * Describes the settings that the feature values depend on.
+	 */
+	String getFeatureCacheSettings() {
+		return "vocabulary=" + vocabularyName + " language=" + documentLanguage
+				+ " stemmer=" + stemmer.getClass().getName()
+				+ " stopwords=" + stopwords.getClass().getName()
+				+ " phraseLength=" + minPhraseLength + "-" + maxPhraseLength
+				+ " minOccur=" + minOccurFrequency + " numIndexers=" + numIndexers
+				+ " nominalClass=" + nominalClassValue;
+	}
+
+	/**
+	 * Returns a bit mask of the feature columns that are switched on.
+	 */
+	private long getEnabledColumns() {
+		long columns = 0;
+		if (useBasicFeatures) {
+			columns |= 1L << tfidfIndex | 1L << firstOccurIndex;
+		}
+		if (useFrequencyFeatures) {
+			columns |= 1L << tfIndex | 1L << idfIndex;
+		}
+		if (usePositionsFeatures) {
+			columns |= 1L << lastOccurIndex | 1L << spreadOccurIndex;
 		}
-
+		if (useKeyphrasenessFeature) {
+			columns |= 1L << domainKeyphIndex;
+		}
+		if (useLengthFeature) {
+			columns |= 1L << lengthIndex;
+		}
+		if (useThesaurusFeatures && vocabulary != null) {
+			columns |= 1L << nodeDegreeIndex | 1L << generalityIndex;
+		}
+		if (useWikipediaFeatures) {
+			columns |= 1L << totalWikipKeyphrIndex | 1L << invWikipFreqIndex | 1L << wikipGeneralityIndex;
+		}
+		return columns;
 	}
 
 	/**
-	 * Builds the global dictionaries.
+	 * Returns a bit mask of the feature columns that computeFeatureValues
+	 * computes when it computes all features.
 	 */
-	public void buildGlobalDictionaries() {
-		if (debugMode) {
-			log.info("--- Building global frequency dictionary");
+	private long getComputedColumns() {
+		long columns = (1L << numFeatures) - 1;
+		if (vocabulary == null) {
+			columns &= ~(1L << nodeDegreeIndex | 1L << generalityIndex);
+		}
+		if (!useWikipediaFeatures && wikiFeatures == null) {
+			columns &= ~(1L << totalWikipKeyphrIndex | 1L << invWikipFreqIndex | 1L << wikipGeneralityIndex);
 		}
+		return columns;
+	}
 
-		// Build a dictionary of candidates with associated
-		// document frequencies
-		globalDictionary = new HashMap<String, Counter>();
-		for (HashMap<String, Candidate> candidates : allCandidates.values()) {
-			for (String candidateName : candidates.keySet()) {
-				Counter counter = globalDictionary.get(candidateName);
-				if (counter == null) {
-					globalDictionary.put(candidateName, new Counter());
-				} else {
-					counter.increment();
-				}
+	/**
+	 * Sets the features that are switched off to zero, the value they have
+	 * when they are not computed.
+	 */
+	private double[] maskFeatures(double[] vals) {
+		long columns = getEnabledColumns();
+		for (int i = 0; i < numFeatures; i++) {
+			if ((columns & (1L << i)) == 0) {
+				vals[i] = 0;
 			}
 		}
+		return vals;
+	}
 
-		if (debugMode) {
-			log.info("--- Building keyphraseness dictionary");
+	/**
+	 * Converts a document into an instance of the input structure.
+	 */
+	private Instance toInstance(MauiDocument document) {
+		Instances data = documentFormat.stringFreeStructure();
+		double[] newInst = new double[data.numAttributes()];
+		newInst[fileNameAtt] = data.attribute(fileNameAtt).addStringValue(document.getFileName());
+		if (document.getTextContent().length() > 0) {
+			newInst[documentAtt] = data.attribute(documentAtt).addStringValue(document.getTextContent());
+		} else {
+			newInst[documentAtt] = Instance.missingValue();
 		}
-		// Build a dictionary of candidates that occur as keyphrases
-		// with associated keyphrase frequencies
-		keyphraseDictionary = new HashMap<String, Counter>();
-		for (int i = 0; i < getInputFormat().numInstances(); i++) {
-			String str = getInputFormat().instance(i)
-					.stringValue(keyphrasesAtt);
-			HashMap<String, Counter> hash = getGivenKeyphrases(str);
-			if (hash != null) {
-				for (String term : hash.keySet()) {
-
-					Counter documentCount = hash.get(term);
-					Counter counter = keyphraseDictionary.get(term);
-					if (counter == null) {
-						keyphraseDictionary.put(term, new Counter(documentCount
-								.value()));
-					} else {
-						counter.increment(documentCount.value());
-					}
-				}
-			}
+		if (document.getTopicsString().length() > 0) {
+			newInst[keyphrasesAtt] = data.attribute(keyphrasesAtt).addStringValue(document.getTopicsString());
+		} else {
+			newInst[keyphrasesAtt] = Instance.missingValue();
 		}
+		data.add(new Instance(1.0, newInst));
+		return data.instance(0);
+	}
 
-		if (debugMode) {
-			log.info("--- Statistics about global dictionaries: ");
-			log.info("\t" + globalDictionary.size()
-					+ " terms in the global dictionary");
-			log.info("\t" + keyphraseDictionary.size()
-					+ " terms in the keyphrase dictionary");
+	private String getKeyphrases(Instance instance) {
+		if (instance.isMissing(keyphrasesAtt)) {
+			return "";
 		}
-
-		// Set the number of documents in the global corpus
-		numDocs = getInputFormat().numInstances();
+		return instance.stringValue(keyphrasesAtt);
 	}
 
 	/**
@@ -674,55 +1644,31 @@ public class MauiFilter extends Filter {
 	 */
 	private void buildClassifier() throws MauiFilterException {
 
-		// Generate input format for classifier
-		FastVector atts = new FastVector();
-		for (int i = 0; i < getInputFormat().numAttributes(); i++) {
-			if (i == documentAtt) {
-				atts.addElement(new Attribute("Term_frequency")); // 0
-				atts.addElement(new Attribute("IDF")); // 1
-				atts.addElement(new Attribute("TFxIDF")); // 2 
-				atts.addElement(new Attribute("First_occurrence")); // 3
-				atts.addElement(new Attribute("Last_occurrence")); // 4
-				atts.addElement(new Attribute("Spread")); // 5
-				atts.addElement(new Attribute("Domain_keyphraseness")); // 6
-				atts.addElement(new Attribute("Length")); // 7
-				atts.addElement(new Attribute("Generality")); // 8
-				atts.addElement(new Attribute("Node_degree")); // 9
-				atts.addElement(new Attribute("Wikipedia_keyphraseness")); // 10
-				atts.addElement(new Attribute("Wikipedia_inlinks")); // 11
-				atts.addElement(new Attribute("Wikipedia_generality")); // 12
-
-			} else if (i == keyphrasesAtt) {
-				if (nominalClassValue) {
-					FastVector vals = new FastVector(2);
-					vals.addElement("False");
-					vals.addElement("True");
-					atts.addElement(new Attribute("Keyphrase?", vals));
-				} else {
-					atts.addElement(new Attribute("Keyphrase?"));
-				}
-			}
-		}
-
-		classifierData = new Instances("ClassifierData", atts, 0);
-
-		classifierData.setClassIndex(numFeatures);
+		classifierData = createClassifierFormat();
+		documentStarts = new ArrayList<Integer>();
+		FeatureCache.Writer featureCache = createFeatureCache(featureCacheFile);
 
 		if (debugMode) {
 			log.info("--- Converting instances for classifier");
 		}
 		int totalDocuments = getInputFormat().numInstances();
+		Vocabulary vocabulary = this.vocabulary;
 		// Convert pending input instances into data for classifier
 		for (int i = 0; i < totalDocuments; i++) {
 			Instance current = getInputFormat().instance(i);
+			documentStarts.add(classifierData.numInstances());
+			if (featureCache != null) {
+				featureCache.addDocument(current.stringValue(fileNameAtt));
+			}
 
 			// Get the key phrases for the document
 			String keyphrases = current.stringValue(keyphrasesAtt);
-			HashMap<String, Counter> hashKeyphrases = getGivenKeyphrases(keyphrases);
+			HashMap<String, Counter> hashKeyphrases = getGivenKeyphrases(keyphrases, vocabulary);
 
 			// Get the phrases for the document
 			HashMap<String, Candidate> candidateList = allCandidates
 					.get(current);
+			BitSet candidateConcepts = getCandidateConcepts(candidateList);
 
 			// Compute the feature values for each phrase and
 			// add the instance to the data for the classifier
@@ -742,20 +1688,71 @@ public class MauiFilter extends Filter {
 
 				// compute feature values
 				double[] vals = computeFeatureValues(candidate, true,
-						hashKeyphrases, candidateList);
+						hashKeyphrases, candidateList, candidateConcepts, vocabulary);
 
 				if (vals[vals.length - 1] == 0) {
 					countNeg++;
 				} else {
 					countPos++;
 				}
-				Instance inst = new Instance(current.weight(), vals);
+				if (featureCache != null) {
+					featureCache.add(current.weight(), vals);
+				}
+				Instance inst = new Instance(current.weight(), maskFeatures(vals));
 				// log.info(candidate + "\t" + inst);
 				classifierData.add(inst);
 
 			}
 			log.debug(countPos + " positive; " + countNeg + " negative instances");
 		}
+		closeFeatureCache(featureCache);
+
+		trainClassifier();
+	}
+
+	/**
+	 * Generates the input format for the classifier.
+	 */
+	private Instances createClassifierFormat() {
+		FastVector atts = new FastVector();
+		for (int i = 0; i < getInputFormat().numAttributes(); i++) {
+			if (i == documentAtt) {
+				atts.addElement(new Attribute("Term_frequency")); // 0
+				atts.addElement(new Attribute("IDF")); // 1
+				atts.addElement(new Attribute("TFxIDF")); // 2 
+				atts.addElement(new Attribute("First_occurrence")); // 3
+				atts.addElement(new Attribute("Last_occurrence")); // 4
+				atts.addElement(new Attribute("Spread")); // 5
+				atts.addElement(new Attribute("Domain_keyphraseness")); // 6
+				atts.addElement(new Attribute("Length")); // 7
+				atts.addElement(new Attribute("Generality")); // 8
+				atts.addElement(new Attribute("Node_degree")); // 9
+				atts.addElement(new Attribute("Wikipedia_keyphraseness")); // 10
+				atts.addElement(new Attribute("Wikipedia_inlinks")); // 11
+				atts.addElement(new Attribute("Wikipedia_generality")); // 12
+
+			} else if (i == keyphrasesAtt) {
+				if (nominalClassValue) {
+					FastVector vals = new FastVector(2);
+					vals.addElement("False");
+					vals.addElement("True");
+					atts.addElement(new Attribute("Keyphrase?", vals));
+				} else {
+					atts.addElement(new Attribute("Keyphrase?"));
+				}
+			}
+		}
+
+		Instances format = new Instances("ClassifierData", atts, 0);
+
+		format.setClassIndex(numFeatures);
+		return format;
+	}
+
+	/**
+	 * Builds the classifier from classifierData.
+	 */
+	private void trainClassifier() throws MauiFilterException {
 
 		log.debug("--- Building classifier");
 
@@ -767,7 +1764,7 @@ public class MauiFilter extends Filter {
 				//			fclass.setClassifier(new NaiveBayesSimple());
 				//			fclass.setFilter(new Discretize());
 				//			classifier = fclass;
-				classifier = new Bagging(); // try also //
+				classifier = new ParallelBagging(); // try also //
 				try {
 					classifier.setOptions(Utils.splitOptions("-P 10 -S 1 -I 10 -W weka.classifiers.trees.J48 -- -U -M 2"));
 				} catch (Exception e) {
@@ -776,7 +1773,7 @@ public class MauiFilter extends Filter {
 
 			} else {
 
-				classifier = new Bagging();
+				classifier = new ParallelBagging();
 				// try also
 				// classifier.setOptions(Utils.splitOptions("-P 10 -S 1 -I 10 -W
 				// weka.classifiers.trees.J48 -- -U -M 2")) ;
@@ -790,8 +1787,19 @@ public class MauiFilter extends Filter {
 
 			}
 		}
+		if (classifier instanceof ParallelBagging) {
+			// builds the bagged trees on the candidate extraction threads
+			((ParallelBagging) classifier).setNumThreads(numThreads);
+		}
+		Instances trainingData = classifierData;
+		if (negativeSampleRate < 1) {
+			trainingData = new NegativeSampler(negativeSampleRate, negativeSampleBands, negativeSampleSeed)
+					.sample(classifierData, documentStarts, tfidfIndex);
+			log.info("--- Training on " + trainingData.numInstances() + " of "
+					+ classifierData.numInstances() + " candidates");
+		}
 		try {
-			classifier.buildClassifier(classifierData);
+			classifier.buildClassifier(trainingData);
 		} catch (Exception e) {
 			throw new MauiFilterException("Exception while building classifier " + e.getMessage());
 		}
@@ -802,6 +1810,43 @@ public class MauiFilter extends Filter {
 
 		// Save space
 		classifierData = new Instances(classifierData, 0);
+		documentStarts = null;
+	}
+
+	/**
+	 * Retrieves the senses of a phrase, in the document language
+	 * if the vocabulary has labels in that language.
+	 */
+	private ArrayList<String> getSenses(Vocabulary vocabulary, String phrase) {
+		if (vocabulary.hasLanguage(documentLanguage)) {
+			return vocabulary.getSenses(phrase, documentLanguage);
+		}
+		return vocabulary.getSenses(phrase);
+	}
+
+	/**
+	 * Retrieves the term for a vocabulary id, in the document language
+	 * if the vocabulary has labels in that language.
+	 */
+	private String getTerm(Vocabulary vocabulary, String id) {
+		if (vocabulary.hasLanguage(documentLanguage)) {
+			return vocabulary.getTerm(id, documentLanguage);
+		}
+		return vocabulary.getTerm(id);
+	}
+
+	/**
+	 * Collects the concept ids of the candidates of a document,
+	 * so that the node degree can be computed on integer ids.
+	 */
+	private BitSet getCandidateConcepts(HashMap<String, Candidate> candidates) {
+		BitSet concepts = new BitSet();
+		for (Candidate candidate : candidates.values()) {
+			if (candidate.getConceptId() >= 0) {
+				concepts.set(candidate.getConceptId());
+			}
+		}
+		return concepts;
 	}
 
 	/**
@@ -809,7 +1854,7 @@ public class MauiFilter extends Filter {
 	 */
 	private double[] computeFeatureValues(Candidate candidate,
 			boolean training, HashMap<String, Counter> hashKeyphrases,
-			HashMap<String, Candidate> candidates) {
+			HashMap<String, Candidate> candidates, BitSet candidateConcepts, Vocabulary vocabulary) {
 
 		// Compute feature values
 		double[] newInst = new double[numFeatures + 1];
@@ -820,51 +1865,43 @@ public class MauiFilter extends Filter {
 		String title = candidate.getTitle();
 
 		// Compute TFxIDF
-		Counter counterGlobal = (Counter) globalDictionary.get(name);
-		double globalVal = 0;
-		if (counterGlobal != null) {
-			globalVal = counterGlobal.value();
-			if (training) {
-				globalVal = globalVal - 1;
-			}
+		double globalVal = getDocumentFrequency(name);
+		if (globalVal > 0 && training) {
+			globalVal = globalVal - 1;
 		}
 		double tf = candidate.getTermFrequency();
 		double idf = -Math.log((globalVal + 1) / ((double) numDocs + 1));
 
-		if (useBasicFeatures) {
+		if (useBasicFeatures || computeAllFeatures) {
 			newInst[tfidfIndex] = tf * idf;
 			newInst[firstOccurIndex] = candidate.getFirstOccurrence();
 		}
 
-		if (useFrequencyFeatures) {
+		if (useFrequencyFeatures || computeAllFeatures) {
 			newInst[tfIndex] = tf;
 			newInst[idfIndex] = idf;
 		}
 
-		if (usePositionsFeatures) {
+		if (usePositionsFeatures || computeAllFeatures) {
 			newInst[lastOccurIndex] = candidate.getLastOccurrence();
 			newInst[spreadOccurIndex] = candidate.getSpread();
 		}
 
-		if (useKeyphrasenessFeature) {
+		if (useKeyphrasenessFeature || computeAllFeatures) {
 			if (!vocabularyName.equals("none")) {
 				name = title;
 			}
-			Counter domainKeyphr = keyphraseDictionary.get(name);
+			int domainKeyphr = keyphraseDictionary.get(name);
 
 			if ((training) && (hashKeyphrases != null)
 					&& (hashKeyphrases.containsKey(name))) {
-				newInst[domainKeyphIndex] = domainKeyphr.value() - 1;
+				newInst[domainKeyphIndex] = domainKeyphr - 1;
 			} else {
-				if (domainKeyphr != null) {
-					newInst[domainKeyphIndex] = domainKeyphr.value();
-				} else {
-					newInst[domainKeyphIndex] = 0;
-				}
+				newInst[domainKeyphIndex] = domainKeyphr;
 			}
 		}
 
-		if (useLengthFeature) {
+		if (useLengthFeature || computeAllFeatures) {
 
 			if (original == null) {
 				log.warn("Warning! Problem with candidate " + name);
@@ -876,13 +1913,25 @@ public class MauiFilter extends Filter {
 			}
 		}
 
-		if (useThesaurusFeatures && vocabulary != null) {
+		if ((useThesaurusFeatures || computeAllFeatures) && vocabulary != null) {
 			int nodeDegree = 0;
-			ArrayList<String> relatedTerms = vocabulary.getRelated(id);
-			if (relatedTerms != null) {
-				for (String relatedTerm : relatedTerms) {
-					if (candidates.get(relatedTerm) != null) {
-						nodeDegree++;
+			if (candidate.getConceptId() >= 0) {
+				// number of related concepts that are also candidates
+				int[] relatedIds = vocabulary.getRelatedIds(candidate.getConceptId());
+				if (relatedIds != null) {
+					for (int relatedId : relatedIds) {
+						if (candidateConcepts.get(relatedId)) {
+							nodeDegree++;
+						}
+					}
+				}
+			} else {
+				ArrayList<String> relatedTerms = vocabulary.getRelated(id);
+				if (relatedTerms != null) {
+					for (String relatedTerm : relatedTerms) {
+						if (candidates.get(relatedTerm) != null) {
+							nodeDegree++;
+						}
 					}
 				}
 			}
@@ -890,11 +1939,15 @@ public class MauiFilter extends Filter {
 				//	log.info(candidate + " has node degree " + nodeDegree);
 			}
 			newInst[nodeDegreeIndex] = (double) nodeDegree;
-			newInst[generalityIndex] = vocabulary.getGenerality(id);
+			if (candidate.getConceptId() >= 0) {
+				newInst[generalityIndex] = vocabulary.getGenerality(candidate.getConceptId());
+			} else {
+				newInst[generalityIndex] = vocabulary.getGenerality(id);
+			}
 			
 		}
 
-		if (useWikipediaFeatures) {
+		if (useWikipediaFeatures || computeAllFeatures && wikiFeatures != null) {
 					
 			double totalWikipediaKeyphraseness = 0;
 			HashMap<String, Counter> fullForms = candidate.getFullForms();
@@ -955,7 +2008,24 @@ public class MauiFilter extends Filter {
 			log.info("--- Converting pending instances");
 		}
 
-		// Create output format for filter
+		setOutputFormat(createOutputFormat());
+
+		// Convert pending input instances into output data
+		for (int i = 0; i < getInputFormat().numInstances(); i++) {
+			Instance current = getInputFormat().instance(i);
+			FastVector vector = convertInstance(current, true);
+			Enumeration<Instance> en = vector.elements();
+			while (en.hasMoreElements()) {
+				Instance inst = (Instance) en.nextElement();
+				push(inst);
+			}
+		}
+	}
+
+	/**
+	 * Creates the output format for the filter.
+	 */
+	private Instances createOutputFormat() {
 		FastVector atts = new FastVector();
 		for (int i = 1; i < getInputFormat().numAttributes(); i++) {
 			if (i == documentAtt) {
@@ -995,19 +2065,7 @@ public class MauiFilter extends Filter {
 			}
 		}
 
-		Instances outFormat = new Instances("mauidata", atts, 0);
-		setOutputFormat(outFormat);
-
-		// Convert pending input instances into output data
-		for (int i = 0; i < getInputFormat().numInstances(); i++) {
-			Instance current = getInputFormat().instance(i);
-			FastVector vector = convertInstance(current, true);
-			Enumeration<Instance> en = vector.elements();
-			while (en.hasMoreElements()) {
-				Instance inst = (Instance) en.nextElement();
-				push(inst);
-			}
-		}
+		return new Instances("mauidata", atts, 0);
 	}
 
 	/**
@@ -1023,12 +2081,16 @@ public class MauiFilter extends Filter {
 			log.info("-- Converting instance for document " + fileName);
 		}
 
+		// the vocabulary is read once, so that a vocabulary replaced
+		// meanwhile is not mixed with the previous one in this document
+		Vocabulary vocabulary = this.vocabulary;
+
 		// Get the key phrases for the document
 		HashMap<String, Counter> hashKeyphrases = null;
 
 		if (!instance.isMissing(keyphrasesAtt)) {
 			String keyphrases = instance.stringValue(keyphrasesAtt);
-			hashKeyphrases = getGivenKeyphrases(keyphrases);
+			hashKeyphrases = getGivenKeyphrases(keyphrases, vocabulary);
 		}
 
 		// Get the document text
@@ -1039,8 +2101,9 @@ public class MauiFilter extends Filter {
 		if (allCandidates != null && allCandidates.containsKey(instance)) {
 			candidateList = allCandidates.get(instance);
 		} else {
-			candidateList = getCandidates(documentText);
+			candidateList = getCandidates(documentText, vocabulary);
 		}
+		BitSet candidateConcepts = getCandidateConcepts(candidateList);
 		if (debugMode) {
 			log.info(candidateList.size() + " candidates ");
 		}
@@ -1067,7 +2130,7 @@ public class MauiFilter extends Filter {
 			}
 
 			double[] vals = computeFeatureValues(candidate, training,
-					hashKeyphrases, candidateList);
+					hashKeyphrases, candidateList, candidateConcepts, vocabulary);
 
 			Instance inst = new Instance(instance.weight(), vals);
 
@@ -1243,6 +2306,15 @@ public class MauiFilter extends Filter {
 	 * @throws Exception
 	 */
 	public HashMap<String, Candidate> getCandidates(String text) {
+		return getCandidates(text, vocabulary);
+	}
+
+	/**
+	 * Extracts the candidates of a text with the given vocabulary, which is
+	 * read once for each document, so that a vocabulary replaced meanwhile
+	 * with setVocabulary is not mixed with the previous one.
+	 */
+	private HashMap<String, Candidate> getCandidates(String text, Vocabulary vocabulary) {
 
 		if (debugMode) {
 			log.info("---- Extracting candidates... ");
@@ -1330,9 +2402,9 @@ public class MauiFilter extends Filter {
 							//	log.info("...retrieving senses for form " + form);
 							// if a controlled vocabulary is used
 							// retrieve its senses
-							for (String sense : vocabulary.getSenses(form)) {
+							for (String sense : getSenses(vocabulary, form)) {
 								// mapping
-								log.debug(form + " => " + vocabulary.getTerm(sense)+" " + this.minOccurFrequency);
+								log.debug(form + " => " + getTerm(vocabulary, sense)+" " + this.minOccurFrequency);
 								candidateNames.add(sense);
 							}
 
@@ -1364,7 +2436,8 @@ public class MauiFilter extends Filter {
 									// retrieve how this topic is refered to
 									// by a descriptor
 									if (!vocabularyName.equals("none")) {
-										candidate.setTitle(vocabulary.getTerm(name));
+										candidate.setTitle(getTerm(vocabulary, name));
+										candidate.setConceptId(vocabulary.getConceptId(name));
 									}
 
 
@@ -1408,7 +2481,7 @@ public class MauiFilter extends Filter {
 	 * Collects all the topics assigned manually and puts them into the
 	 * hashtable. Also stores the counts for each topic, if they are available
 	 */
-	private HashMap<String, Counter> getGivenKeyphrases(String keyphraseListings) {
+	private HashMap<String, Counter> getGivenKeyphrases(String keyphraseListings, Vocabulary vocabulary) {
 
 		HashMap<String, Counter> keyphrases = new HashMap<String, Counter>();
 
@@ -1435,6 +2508,10 @@ public class MauiFilter extends Filter {
 			if (vocabularyName.equals("none")) {
 
 				keyphrase = pseudoPhrase(keyphrase);
+				if (keyphrase == null) {
+					// made only of stopwords, no candidate can match it
+					continue;
+				}
 				Counter counter = keyphrases.get(keyphrase);
 				if (counter == null) {
 					keyphrases.put(keyphrase, new Counter(frequency));
@@ -1446,8 +2523,8 @@ public class MauiFilter extends Filter {
 				if (colonIndex != -1) {
 					keyphrase = keyphrase.substring(colonIndex + 2);
 				}
-				for (String id : vocabulary.getSenses(keyphrase)) {
-					keyphrase = vocabulary.getTerm(id);
+				for (String id : getSenses(vocabulary, keyphrase)) {
+					keyphrase = getTerm(vocabulary, id);
 					Counter counter = keyphrases.get(keyphrase);
 					if (counter == null) {
 						keyphrases.put(keyphrase, new Counter(frequency));
@@ -1508,6 +2585,215 @@ public class MauiFilter extends Filter {
 		return null;
 	}
 
+	/**
+	 * Writes the model to a model file (see ModelFile), with a section each
+	 * for the settings, the stemmer and stop words, the document
+	 * frequencies, the keyphrase frequencies, the classifier and, if used,
+	 * the Wikipedia features. The state of the Weka filter is not stored;
+	 * readModel recreates it.
+	 */
+	public void writeModel(OutputStream output) throws IOException {
+		if (classifier == null || globalDictionary == null) {
+			throw new IllegalStateException("The model has not been built");
+		}
+		ModelFile.Writer modelFile = new ModelFile.Writer();
+
+		BlockOutputStream out = modelFile.addSection(SETTINGS_SECTION);
+		out.writeInt(fileNameAtt);
+		out.writeInt(documentAtt);
+		out.writeInt(keyphrasesAtt);
+		out.writeInt(minPhraseLength);
+		out.writeInt(maxPhraseLength);
+		out.writeInt(minOccurFrequency);
+		out.writeInt(numIndexers);
+		out.writeBoolean(nominalClassValue);
+		out.writeInt(numDocs);
+		out.writeBoolean(useBasicFeatures);
+		out.writeBoolean(useKeyphrasenessFeature);
+		out.writeBoolean(useFrequencyFeatures);
+		out.writeBoolean(usePositionsFeatures);
+		out.writeBoolean(useThesaurusFeatures);
+		out.writeBoolean(useLengthFeature);
+		out.writeBoolean(useWikipediaFeatures);
+		out.writeUTF(documentLanguage);
+		out.writeUTF(vocabularyName);
+		out.writeUTF(vocabularyFormat);
+
+		out = modelFile.addSection(TEXT_SECTION);
+		out.writeUTF(stemmer.getClass().getName());
+		out.writeUTF(stopwords.getClass().getName());
+		out.writeStringBlock(new TreeSet<String>(stopwords.getWords()));
+
+		out = modelFile.addSection(DOCUMENT_FREQUENCIES_SECTION);
+		globalDictionary.write(out);
+		out.writeBoolean(documentFrequencySketch != null);
+		if (documentFrequencySketch != null) {
+			documentFrequencySketch.write(out);
+		}
+
+		keyphraseDictionary.write(modelFile.addSection(KEYPHRASE_FREQUENCIES_SECTION));
+
+		// Weka classifiers can only be stored with Java serialization
+		writeObject(modelFile.addSection(CLASSIFIER_SECTION), classifier);
+		if (wikiFeatures != null) {
+			writeObject(modelFile.addSection(WIKIPEDIA_SECTION), wikiFeatures);
+		}
+
+		modelFile.write(output);
+	}
+
+	/**
+	 * Reads a model written by writeModel, ready to extract topics.
+	 * To read only some of its sections, use MauiModel.
+	 *
+	 * @throws IOException if a section is missing, corrupt or cannot be read
+	 */
+	public static MauiFilter readModel(ModelFile modelFile) throws IOException {
+		return new MauiModel(modelFile).getFilter();
+	}
+
+	/**
+	 * Reads the settings, stemmer and stop words of a model file, and
+	 * recreates the state of the Weka filter. The other sections are set
+	 * with setModelSections.
+	 */
+	static MauiFilter readSettings(ModelFile modelFile) throws IOException {
+		MauiFilter filter = new MauiFilter();
+
+		BlockInputStream in = modelFile.getSection(SETTINGS_SECTION);
+		filter.fileNameAtt = in.readInt();
+		filter.documentAtt = in.readInt();
+		filter.keyphrasesAtt = in.readInt();
+		filter.minPhraseLength = in.readInt();
+		filter.maxPhraseLength = in.readInt();
+		filter.minOccurFrequency = in.readInt();
+		filter.numIndexers = in.readInt();
+		filter.nominalClassValue = in.readBoolean();
+		filter.numDocs = in.readInt();
+		filter.useBasicFeatures = in.readBoolean();
+		filter.useKeyphrasenessFeature = in.readBoolean();
+		filter.useFrequencyFeatures = in.readBoolean();
+		filter.usePositionsFeatures = in.readBoolean();
+		filter.useThesaurusFeatures = in.readBoolean();
+		filter.useLengthFeature = in.readBoolean();
+		filter.useWikipediaFeatures = in.readBoolean();
+		filter.documentLanguage = in.readUTF();
+		filter.vocabularyName = in.readUTF();
+		filter.vocabularyFormat = in.readUTF();
+
+		in = modelFile.getSection(TEXT_SECTION);
+		filter.stemmer = (Stemmer) newInstance(in.readUTF());
+		filter.stopwords = createStopwords(in.readUTF(), Arrays.asList(in.readStringBlock()));
+
+		try {
+			filter.setInputFormat(createInputFormat());
+		} catch (MauiFilterException e) {
+			throw new IOException("Cannot recreate the filter state: " + e.getMessage());
+		}
+		filter.setOutputFormat(filter.createOutputFormat());
+		filter.classifierData = filter.createClassifierFormat();
+		return filter;
+	}
+
+	/**
+	 * Sets the sections of a model read with readSettings.
+	 */
+	void setModelSections(FrequencyDictionary globalDictionary, CountMinSketch documentFrequencySketch,
+			FrequencyDictionary keyphraseDictionary, Classifier classifier, WikiFeatures wikiFeatures) {
+		this.globalDictionary = globalDictionary;
+		this.documentFrequencySketch = documentFrequencySketch;
+		this.keyphraseDictionary = keyphraseDictionary;
+		this.classifier = classifier;
+		this.wikiFeatures = wikiFeatures;
+	}
+
+	int getNumDocs() {
+		return numDocs;
+	}
+
+	/**
+	 * Creates the input structure that MauiModelBuilder trains models with.
+	 */
+	private static Instances createInputFormat() {
+		FastVector atts = new FastVector(3);
+		atts.addElement(new Attribute("filename", (FastVector) null));
+		atts.addElement(new Attribute("document", (FastVector) null));
+		atts.addElement(new Attribute("keyphrases", (FastVector) null));
+		return new Instances("keyphrase_training_data", atts, 0);
+	}
+
+	private static Object newInstance(String className) throws IOException {
+		try {
+			return Class.forName(className).newInstance();
+		} catch (Exception e) {
+			throw new IOException("Cannot create " + className + " for the model", e);
+		}
+	}
+
+	/**
+	 * Creates the stop words of a model, of their original class if it can
+	 * be created without arguments.
+	 */
+	private static Stopwords createStopwords(String className, List<String> words) {
+		Stopwords stopwords;
+		try {
+			stopwords = (Stopwords) Class.forName(className).newInstance();
+		} catch (Exception e) {
+			log.warn("Cannot create " + className + ", using the stop words of the model without it");
+			stopwords = new Stopwords(words) {
+				private static final long serialVersionUID = 1L;
+			};
+		}
+		stopwords.setWords(words);
+		return stopwords;
+	}
+
+	private static void writeObject(OutputStream out, Object object) throws IOException {
+		ObjectOutputStream objects = new ObjectOutputStream(out);
+		objects.writeObject(object);
+		objects.flush();
+	}
+
+	/**
+	 * Reads a serialized filter. Filters serialized by earlier versions
+	 * kept the document and keyphrase frequencies in HashMaps, which are
+	 * frozen into frequency dictionaries here.
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		try {
+			for (Field field : MauiFilter.class.getDeclaredFields()) {
+				int modifiers = field.getModifiers();
+				if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+					continue;
+				}
+				field.setAccessible(true);
+				String name = field.getName();
+				Class<?> type = field.getType();
+				if (type == boolean.class) {
+					field.setBoolean(this, fields.get(name, false));
+				} else if (type == int.class) {
+					field.setInt(this, fields.get(name, 0));
+				} else if (type == long.class) {
+					field.setLong(this, fields.get(name, 0L));
+				} else if (type == double.class) {
+					field.setDouble(this, fields.get(name, 0.0));
+				} else if (type.isPrimitive()) {
+					throw new InvalidClassException("Cannot read the field " + name + " of type " + type);
+				} else {
+					Object value = fields.get(name, null);
+					if (type == FrequencyDictionary.class && value instanceof Map) {
+						value = FrequencyDictionary.freeze((Map<String, Counter>) value);
+					}
+					field.set(this, value);
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw new IOException("Cannot read the filter", e);
+		}
+	}
+
 	public class MauiFilterException extends Exception {
 		/**
 		 * 
@@ -0,0 +1,190 @@
+package com.entopix.maui.filters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import weka.classifiers.Classifier;
+
+import com.entopix.maui.util.BlockInputStream;
+import com.entopix.maui.util.CountMinSketch;
+import com.entopix.maui.util.FrequencyDictionary;
+import com.entopix.maui.util.ModelFile;
+import com.entopix.maui.wikifeatures.WikiFeatures;
+
+/**
+ * Handle on a model file whose sections are read when they are first
+ * needed, so that tools that only need part of a model, such as the
+ * keyphrase frequencies, do not read the classifier. The time each
+ * section takes to read and its size are logged.
+ */
+public class MauiModel {
+
+	private static final Logger log = LoggerFactory.getLogger(MauiModel.class);
+
+	private ModelFile modelFile;
+
+	/** filter with only the settings of the model */
+	private MauiFilter settings = null;
+
+	private FrequencyDictionary globalDictionary = null;
+	private CountMinSketch documentFrequencySketch = null;
+	private FrequencyDictionary keyphraseDictionary = null;
+	private Classifier classifier = null;
+	private WikiFeatures wikiFeatures = null;
+	private boolean wikiFeaturesRead = false;
+
+	private MauiFilter filter = null;
+
+	public MauiModel(ModelFile modelFile) {
+		this.modelFile = modelFile;
+	}
+
+	/**
+	 * Opens a model file, reading only its manifest.
+	 *
+	 * @throws IOException if the file cannot be read or is not a model file
+	 */
+	public static MauiModel open(File file) throws IOException {
+		return new MauiModel(ModelFile.open(file));
+	}
+
+	/**
+	 * Returns a description of the settings that the model was built with,
+	 * in the format of the feature cache settings.
+	 */
+	public synchronized String getSettings() throws IOException {
+		return getSettingsFilter().getFeatureCacheSettings();
+	}
+
+	/**
+	 * Returns the number of documents the model was built from.
+	 */
+	public synchronized int getNumDocs() throws IOException {
+		return getSettingsFilter().getNumDocs();
+	}
+
+	public synchronized FrequencyDictionary getGlobalDictionary() throws IOException {
+		if (globalDictionary == null) {
+			readDocumentFrequencies();
+		}
+		return globalDictionary;
+	}
+
+	/**
+	 * Returns the sketch of the rare document frequencies, or null if all
+	 * of them are in the global dictionary.
+	 */
+	public synchronized CountMinSketch getDocumentFrequencySketch() throws IOException {
+		if (globalDictionary == null) {
+			readDocumentFrequencies();
+		}
+		return documentFrequencySketch;
+	}
+
+	public synchronized FrequencyDictionary getKeyphraseDictionary() throws IOException {
+		if (keyphraseDictionary == null) {
+			long start = System.currentTimeMillis();
+			keyphraseDictionary = FrequencyDictionary.read(
+					modelFile.getSection(MauiFilter.KEYPHRASE_FREQUENCIES_SECTION));
+			logSection(MauiFilter.KEYPHRASE_FREQUENCIES_SECTION, start);
+		}
+		return keyphraseDictionary;
+	}
+
+	public synchronized Classifier getClassifier() throws IOException {
+		if (classifier == null) {
+			classifier = readClassifier();
+		}
+		return classifier;
+	}
+
+	/**
+	 * Returns the Wikipedia features, or null if the model has none.
+	 */
+	public synchronized WikiFeatures getWikiFeatures() throws IOException {
+		if (!wikiFeaturesRead && modelFile.hasSection(MauiFilter.WIKIPEDIA_SECTION)) {
+			long start = System.currentTimeMillis();
+			wikiFeatures = (WikiFeatures) readObject(modelFile.getSection(MauiFilter.WIKIPEDIA_SECTION));
+			logSection(MauiFilter.WIKIPEDIA_SECTION, start);
+		}
+		wikiFeaturesRead = true;
+		return wikiFeatures;
+	}
+
+	/**
+	 * Returns the filter of the model, ready to extract topics, reading
+	 * the sections that have not been read yet. The filter is created once.
+	 */
+	public synchronized MauiFilter getFilter() throws IOException {
+		if (filter == null) {
+			MauiFilter newFilter = readSettings();
+			newFilter.setModelSections(getGlobalDictionary(), getDocumentFrequencySketch(),
+					getKeyphraseDictionary(), getClassifier(), getWikiFeatures());
+			filter = newFilter;
+		}
+		return filter;
+	}
+
+	/**
+	 * Returns a new filter of the model, for extracting topics on another
+	 * thread. Filters and classifiers keep state while they process a
+	 * document, so each new filter gets its own copy of the classifier,
+	 * read again from the model file. The other sections are shared.
+	 */
+	public synchronized MauiFilter newFilter() throws IOException {
+		MauiFilter newFilter = readSettings();
+		newFilter.setModelSections(getGlobalDictionary(), getDocumentFrequencySketch(),
+				getKeyphraseDictionary(), readClassifier(), getWikiFeatures());
+		return newFilter;
+	}
+
+	private MauiFilter getSettingsFilter() throws IOException {
+		if (settings == null) {
+			settings = readSettings();
+		}
+		return settings;
+	}
+
+	private MauiFilter readSettings() throws IOException {
+		long start = System.currentTimeMillis();
+		MauiFilter settingsFilter = MauiFilter.readSettings(modelFile);
+		logSection(MauiFilter.SETTINGS_SECTION, start);
+		return settingsFilter;
+	}
+
+	private Classifier readClassifier() throws IOException {
+		long start = System.currentTimeMillis();
+		Classifier newClassifier = (Classifier) readObject(modelFile.getSection(MauiFilter.CLASSIFIER_SECTION));
+		logSection(MauiFilter.CLASSIFIER_SECTION, start);
+		return newClassifier;
+	}
+
+	private void readDocumentFrequencies() throws IOException {
+		long start = System.currentTimeMillis();
+		BlockInputStream in = modelFile.getSection(MauiFilter.DOCUMENT_FREQUENCIES_SECTION);
+		FrequencyDictionary dictionary = FrequencyDictionary.read(in);
+		if (in.readBoolean()) {
+			documentFrequencySketch = CountMinSketch.read(in);
+		}
+		globalDictionary = dictionary;
+		logSection(MauiFilter.DOCUMENT_FREQUENCIES_SECTION, start);
+	}
+
+	private void logSection(String name, long start) {
+		log.info("Read model section " + name + " of " + modelFile.getSectionLength(name)
+				+ " bytes in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	private static Object readObject(InputStream in) throws IOException {
+		try {
+			return new ObjectInputStream(in).readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Mismatch of the class in the model: " + e.getMessage(), e);
+		}
+	}
+}
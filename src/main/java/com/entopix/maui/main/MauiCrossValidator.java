@@ -0,0 +1,319 @@
+package com.entopix.maui.main;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import weka.core.Utils;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.filters.MauiFilter.MauiFilterException;
+import com.entopix.maui.util.Counter;
+import com.entopix.maui.util.Evaluator;
+import com.entopix.maui.util.MauiDocument;
+import com.entopix.maui.util.MauiTopics;
+import com.entopix.maui.util.TrainingDocument;
+
+/**
+ * Cross-validates the models of a MauiModelBuilder on a set of documents.
+ *
+ * The candidates of each document are extracted once, and the dictionaries
+ * of each fold are derived from the counts of all documents by subtracting
+ * the counts of the fold's test documents. The models of the folds are the
+ * same as the ones MauiModelBuilder builds from the fold's training
+ * documents. The folds are trained and evaluated on numThreads threads.
+ *
+ * Fold i tests on the documents from i * p to (i + 1) * p, where p is the
+ * number of documents divided by the number of folds, rounded down; the
+ * remaining documents are only used for training.
+ */
+public class MauiCrossValidator {
+
+	private static final Logger log = LoggerFactory.getLogger(MauiCrossValidator.class);
+
+	/**
+	 * Number of folds
+	 */
+	public int numFolds = 10;
+
+	/**
+	 * Number of threads that extract candidates and run folds
+	 */
+	public int numThreads = 1;
+
+	/**
+	 * Number of topics extracted per test document
+	 */
+	public int topicsPerDocument = 10;
+
+	private MauiModelBuilder modelBuilder;
+
+	/**
+	 * @param modelBuilder builder with the settings of the models to validate
+	 */
+	public MauiCrossValidator(MauiModelBuilder modelBuilder) {
+		this.modelBuilder = modelBuilder;
+	}
+
+	/**
+	 * Results of a cross-validation.
+	 */
+	public static class Result {
+
+		private double[][] foldPRF;
+		private long[] foldTrainingTimes;
+		private long[] foldEvaluationTimes;
+		private long extractionTime;
+		private long foldsTime;
+
+		/**
+		 * Returns precision, recall and F-measure of a fold, as computed by Evaluator.
+		 */
+		public double[] getFoldPRF(int fold) {
+			return foldPRF[fold];
+		}
+
+		/**
+		 * Returns the mean precision, recall and F-measure of the folds.
+		 */
+		public double[] getPRF() {
+			double[] prf = new double[3];
+			for (int i = 0; i < 3; i++) {
+				double[] values = new double[foldPRF.length];
+				for (int fold = 0; fold < foldPRF.length; fold++) {
+					values[fold] = foldPRF[fold][i];
+				}
+				prf[i] = Utils.mean(values);
+			}
+			return prf;
+		}
+
+		public int getNumFolds() {
+			return foldPRF.length;
+		}
+
+		/**
+		 * Milliseconds spent training the model of a fold.
+		 */
+		public long getFoldTrainingTime(int fold) {
+			return foldTrainingTimes[fold];
+		}
+
+		/**
+		 * Milliseconds spent training the models of all folds.
+		 */
+		public long getTrainingTime() {
+			long time = 0;
+			for (long foldTime : foldTrainingTimes) {
+				time += foldTime;
+			}
+			return time;
+		}
+
+		/**
+		 * Milliseconds spent extracting and evaluating the topics of a fold.
+		 */
+		public long getFoldEvaluationTime(int fold) {
+			return foldEvaluationTimes[fold];
+		}
+
+		/**
+		 * Wall-clock milliseconds of extracting candidates and counting the dictionaries.
+		 */
+		public long getExtractionTime() {
+			return extractionTime;
+		}
+
+		/**
+		 * Wall-clock milliseconds of training and evaluating all folds.
+		 */
+		public long getFoldsTime() {
+			return foldsTime;
+		}
+	}
+
+	/**
+	 * Cross-validates on the documents.
+	 *
+	 * @param documents documents with their topics, at least numFolds
+	 * @throws MauiFilterException
+	 */
+	public Result crossValidate(List<MauiDocument> documents) throws MauiFilterException {
+
+		if (documents.size() < numFolds) {
+			throw new IllegalArgumentException("At least " + numFolds + " documents are needed");
+		}
+		Result result = new Result();
+		result.foldPRF = new double[numFolds][];
+		result.foldTrainingTimes = new long[numFolds];
+		result.foldEvaluationTimes = new long[numFolds];
+
+		long startTime = System.currentTimeMillis();
+		log.info("-- Extracting candidates of " + documents.size() + " documents...");
+		MauiFilter extractor = modelBuilder.newFilter();
+		extractor.setNumThreads(numThreads);
+		List<TrainingDocument> trainingDocuments = extractor.extractTrainingDocuments(documents);
+
+		HashMap<String, Counter> documentFrequencies = new HashMap<String, Counter>();
+		HashMap<String, Counter> keyphraseFrequencies = new HashMap<String, Counter>();
+		for (TrainingDocument document : trainingDocuments) {
+			count(document, documentFrequencies, keyphraseFrequencies, 1);
+		}
+		result.extractionTime = System.currentTimeMillis() - startTime;
+
+		startTime = System.currentTimeMillis();
+		// the filters are created here, since the builder is not thread-safe
+		int part = documents.size() / numFolds;
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int fold = 0; fold < numFolds; fold++) {
+			MauiFilter mauiFilter = modelBuilder.newFilter();
+			mauiFilter.setNumThreads(numThreads > 1 ? 1 : modelBuilder.numThreads);
+			tasks.add(foldTask(result, fold, mauiFilter, documents, trainingDocuments,
+					fold * part, fold * part + part, documentFrequencies, keyphraseFrequencies));
+		}
+		runFolds(tasks);
+		result.foldsTime = System.currentTimeMillis() - startTime;
+
+		log.info("-- Cross-validation with " + numFolds + " folds:");
+		for (int fold = 0; fold < numFolds; fold++) {
+			log.info("Fold " + (fold + 1) + ": " + format(result.getFoldPRF(fold))
+					+ "; trained in " + result.getFoldTrainingTime(fold) + "ms, evaluated in "
+					+ result.getFoldEvaluationTime(fold) + "ms");
+		}
+		log.info("Mean: " + format(result.getPRF()) + "; trained in " + result.getTrainingTime()
+				+ "ms in total");
+		log.info("Extracted candidates in " + result.getExtractionTime() + "ms, ran folds in "
+				+ result.getFoldsTime() + "ms");
+		return result;
+	}
+
+	private Callable<Object> foldTask(final Result result, final int fold, final MauiFilter mauiFilter,
+			final List<MauiDocument> documents, final List<TrainingDocument> trainingDocuments,
+			final int startTest, final int endTest, final HashMap<String, Counter> documentFrequencies,
+			final HashMap<String, Counter> keyphraseFrequencies) {
+		return new Callable<Object>() {
+			public Object call() throws MauiFilterException {
+				long startTime = System.currentTimeMillis();
+				HashMap<String, Counter> foldDocumentFrequencies = copy(documentFrequencies);
+				HashMap<String, Counter> foldKeyphraseFrequencies = copy(keyphraseFrequencies);
+				List<TrainingDocument> train = new ArrayList<TrainingDocument>();
+				List<MauiDocument> test = new ArrayList<MauiDocument>();
+				for (int i = 0; i < documents.size(); i++) {
+					if (i >= startTest && i < endTest) {
+						test.add(documents.get(i));
+						count(trainingDocuments.get(i), foldDocumentFrequencies, foldKeyphraseFrequencies, -1);
+					} else {
+						train.add(trainingDocuments.get(i));
+					}
+				}
+				mauiFilter.buildFromTrainingDocuments(train, foldDocumentFrequencies, foldKeyphraseFrequencies);
+				result.foldTrainingTimes[fold] = System.currentTimeMillis() - startTime;
+
+				startTime = System.currentTimeMillis();
+				MauiTopicExtractor topicExtractor = new MauiTopicExtractor();
+				topicExtractor.vocabularyName = modelBuilder.vocabularyName;
+				topicExtractor.vocabularyFormat = modelBuilder.vocabularyFormat;
+				topicExtractor.documentLanguage = modelBuilder.documentLanguage;
+				topicExtractor.documentEncoding = modelBuilder.documentEncoding;
+				topicExtractor.stemmer = modelBuilder.stemmer;
+				topicExtractor.stopwords = modelBuilder.stopwords;
+				topicExtractor.topicsPerDocument = topicsPerDocument;
+				topicExtractor.setModel(mauiFilter);
+				List<MauiTopics> topics = topicExtractor.extractTopics(test);
+				result.foldPRF[fold] = Evaluator.evaluateTopics(topics);
+				result.foldEvaluationTimes[fold] = System.currentTimeMillis() - startTime;
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Adds (sign 1) or subtracts (sign -1) the counts of a document,
+	 * removing the candidates whose count drops to zero.
+	 */
+	private static void count(TrainingDocument document, HashMap<String, Counter> documentFrequencies,
+			HashMap<String, Counter> keyphraseFrequencies, int sign) {
+		for (String candidateName : document.getCandidates().keySet()) {
+			add(documentFrequencies, candidateName, sign);
+		}
+		HashMap<String, Counter> keyphrases = document.getKeyphrases();
+		if (keyphrases != null) {
+			for (String term : keyphrases.keySet()) {
+				add(keyphraseFrequencies, term, sign * keyphrases.get(term).value());
+			}
+		}
+	}
+
+	private static void add(HashMap<String, Counter> counts, String key, int count) {
+		Counter counter = counts.get(key);
+		if (counter == null) {
+			counts.put(key, new Counter(count));
+		} else {
+			counter.increment(count);
+			if (counter.value() == 0) {
+				counts.remove(key);
+			}
+		}
+	}
+
+	private static HashMap<String, Counter> copy(HashMap<String, Counter> counts) {
+		HashMap<String, Counter> copy = new HashMap<String, Counter>(counts.size() * 4 / 3 + 1);
+		for (String key : counts.keySet()) {
+			copy.put(key, new Counter(counts.get(key).value()));
+		}
+		return copy;
+	}
+
+	private void runFolds(List<Callable<Object>> tasks) throws MauiFilterException {
+		try {
+			if (numThreads <= 1) {
+				for (Callable<Object> task : tasks) {
+					task.call();
+				}
+				return;
+			}
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, tasks.size()));
+			try {
+				for (Future<Object> future : executor.invokeAll(tasks)) {
+					future.get();
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof MauiFilterException) {
+				throw (MauiFilterException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			log.error("Error while running folds", e.getCause());
+			throw new RuntimeException();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			log.error("Interrupted while running folds", e);
+			throw new RuntimeException();
+		} catch (MauiFilterException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			log.error("Error while running folds", e);
+			throw new RuntimeException();
+		}
+	}
+
+	private static String format(double[] prf) {
+		return "Precision " + Utils.doubleToString(prf[0] * 100, 2)
+				+ "; Recall " + Utils.doubleToString(prf[1] * 100, 2)
+				+ "; F-Measure " + Utils.doubleToString(prf[2] * 100, 2);
+	}
+}
@@ -19,8 +19,10 @@ package com.entopix.maui.main;
  *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
  */
 import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -44,8 +46,10 @@ import com.entopix.maui.stemmers.PorterStemmer;
 import com.entopix.maui.stemmers.Stemmer;
 import com.entopix.maui.stopwords.Stopwords;
 import com.entopix.maui.stopwords.StopwordsEnglish;
+import com.entopix.maui.util.CorpusStatistics;
 import com.entopix.maui.util.DataLoader;
 import com.entopix.maui.util.MauiDocument;
+import com.entopix.maui.util.NegativeSampler;
 import com.entopix.maui.vocab.Vocabulary;
 import com.entopix.maui.vocab.VocabularyStoreFactory;
 import com.entopix.maui.vocab.VocabularyStore_HT;
@@ -104,6 +108,34 @@ import com.entopix.maui.wikifeatures.WikiFeatures;
  * -t "stemmer class "<br>
  * Sets stemmer to use (default: PorterStemmer).
  * <p>
+ *
+ * -p "number of threads"<br>
+ * Sets the number of threads that extract candidates from the documents (default: 1).
+ * <p>
+ *
+ * -w "work directory"<br>
+ * Builds the model out of core: the documents are read twice from disk rather
+ * than kept in memory, and temporary files are written to the given directory.
+ * <p>
+ *
+ * -r "sample rate"<br>
+ * Sets the fraction of candidates the classifier is trained on out of core (default: 1.0).
+ * <p>
+ *
+ * -c "feature cache"<br>
+ * Writes the feature values of all training candidates to the given file.
+ * <p>
+ *
+ * -b "feature cache"<br>
+ * Builds the model from a feature cache written with -c and the same settings,
+ * instead of from documents; -l is then not needed.
+ * <p>
+ *
+ * -u "model path"<br>
+ * Updates the given model with the documents, rather than building a new one.
+ * The feature cache given with -c is extended, and is needed unless the
+ * classifier is updateable.
+ * <p>
  * 
  * -z "use serialization"<br>
  * If this option is used, the vocabulary is serialized for faster usage
@@ -167,6 +199,72 @@ public class MauiModelBuilder implements OptionHandler {
 	 */
 	public int minNumOccur = 1;
 
+	/**
+	 * Number of threads that extract candidates from the documents
+	 */
+	public int numThreads = 1;
+
+	/**
+	 * Directory for temporary files; if set, the model is built out of core
+	 */
+	public String workDirectoryName = null;
+
+	/**
+	 * Fraction of the candidates the classifier is trained on, when building out of core
+	 */
+	public double sampleRate = 1.0;
+
+	/**
+	 * Fraction of the negative candidates of each document the classifier is trained on
+	 */
+	public double negativeSampleRate = 1.0;
+
+	/**
+	 * Number of TFxIDF bands the negative candidates of a document are sampled from
+	 */
+	public int negativeSampleBands = NegativeSampler.DEFAULT_NUM_BANDS;
+
+	/**
+	 * Seed of the sample of negative candidates
+	 */
+	public long negativeSampleSeed = NegativeSampler.DEFAULT_SEED;
+
+	/**
+	 * Width of the Count-Min sketch of rare document frequencies, or 0 to count them exactly
+	 */
+	public int sketchWidth = 0;
+
+	/**
+	 * Depth of the Count-Min sketch of rare document frequencies
+	 */
+	public int sketchDepth = 4;
+
+	/**
+	 * Smallest document frequency that is counted exactly when a sketch is used
+	 */
+	public int minExactFrequency = 5;
+
+	/**
+	 * File to write the feature values of the training candidates to
+	 */
+	public String featureCacheOutput = null;
+
+	/**
+	 * File with feature values to build the model from, instead of documents
+	 */
+	public String featureCacheInput = null;
+
+	/**
+	 * Whether setOptions requires a model name, which tools that do not
+	 * save a model switch off
+	 */
+	boolean modelRequired = true;
+
+	/**
+	 * Model to update with the documents, instead of building a new one
+	 */
+	public String updateModelName = null;
+
 	/**
 	 * Classifier
 	 */
@@ -255,6 +353,10 @@ public class MauiModelBuilder implements OptionHandler {
 		this.vocabulary = vocabulary;
 	}
 
+	public void setClassifier(Classifier classifier) {
+		this.classifier = classifier;
+	}
+
 	public void setBasicFeatures(boolean useBasicFeatures) {
 		this.useBasicFeatures = useBasicFeatures;
 	}
@@ -343,12 +445,19 @@ public class MauiModelBuilder implements OptionHandler {
 	@Override
 	public void setOptions(String[] options) throws Exception {
 
+		String featureCacheInputString = Utils.getOption('b', options);
+		if (featureCacheInputString.length() > 0) {
+			this.featureCacheInput = featureCacheInputString;
+		}
+
 		String dirName = Utils.getOption('l', options);
 		if (dirName.length() > 0) {
 			inputDirectoryName = dirName;
 		} else {
 			inputDirectoryName = null;
-			throw new Exception("Name of directory required argument.");
+			if (featureCacheInput == null) {
+				throw new Exception("Name of directory required argument.");
+			}
 		}
 
 		String modelName = Utils.getOption('m', options);
@@ -356,7 +465,9 @@ public class MauiModelBuilder implements OptionHandler {
 			this.modelName = modelName;
 		} else {
 			this.modelName = null;
-			throw new Exception("Name of model required argument.");
+			if (modelRequired) {
+				throw new Exception("Name of model required argument.");
+			}
 		}
 
 		String vocabularyName = Utils.getOption('v', options);
@@ -418,6 +529,42 @@ public class MauiModelBuilder implements OptionHandler {
 			stemmerString = "maui.stemmers.".concat(stemmerString);
 			this.stemmer = (Stemmer) Class.forName(stemmerString).newInstance();
 		}
+		String numThreadsString = Utils.getOption('p', options);
+		if (numThreadsString.length() > 0) {
+			this.numThreads = Integer.parseInt(numThreadsString);
+		}
+		String workDirectoryString = Utils.getOption('w', options);
+		if (workDirectoryString.length() > 0) {
+			this.workDirectoryName = workDirectoryString;
+		}
+		String sampleRateString = Utils.getOption('r', options);
+		if (sampleRateString.length() > 0) {
+			this.sampleRate = Double.parseDouble(sampleRateString);
+		}
+		String negativeSampleRateString = Utils.getOption('n', options);
+		if (negativeSampleRateString.length() > 0) {
+			this.negativeSampleRate = Double.parseDouble(negativeSampleRateString);
+		}
+		String sketchWidthString = Utils.getOption('k', options);
+		if (sketchWidthString.length() > 0) {
+			this.sketchWidth = Integer.parseInt(sketchWidthString);
+		}
+		String sketchDepthString = Utils.getOption('d', options);
+		if (sketchDepthString.length() > 0) {
+			this.sketchDepth = Integer.parseInt(sketchDepthString);
+		}
+		String minExactFrequencyString = Utils.getOption('h', options);
+		if (minExactFrequencyString.length() > 0) {
+			this.minExactFrequency = Integer.parseInt(minExactFrequencyString);
+		}
+		String updateModelString = Utils.getOption('u', options);
+		if (updateModelString.length() > 0) {
+			this.updateModelName = updateModelString;
+		}
+		String featureCacheOutputString = Utils.getOption('c', options);
+		if (featureCacheOutputString.length() > 0) {
+			this.featureCacheOutput = featureCacheOutputString;
+		}
 		this.serialize = Utils.getFlag('z', options);
 		Utils.checkForRemainingOptions(options);
 	}
@@ -430,7 +577,7 @@ public class MauiModelBuilder implements OptionHandler {
 	@Override
 	public String[] getOptions() {
 
-		String[] options = new String[23];
+		String[] options = new String[43];
 		int current = 0;
 
 		options[current++] = "-l";
@@ -452,6 +599,36 @@ public class MauiModelBuilder implements OptionHandler {
 		options[current++] = "" + (this.minPhraseLength);
 		options[current++] = "-o";
 		options[current++] = "" + (this.minNumOccur);
+		options[current++] = "-p";
+		options[current++] = "" + (this.numThreads);
+		if (workDirectoryName != null) {
+			options[current++] = "-w";
+			options[current++] = "" + (this.workDirectoryName);
+			options[current++] = "-r";
+			options[current++] = "" + (this.sampleRate);
+		}
+		options[current++] = "-n";
+		options[current++] = "" + (this.negativeSampleRate);
+		if (sketchWidth > 0) {
+			options[current++] = "-k";
+			options[current++] = "" + (this.sketchWidth);
+			options[current++] = "-d";
+			options[current++] = "" + (this.sketchDepth);
+			options[current++] = "-h";
+			options[current++] = "" + (this.minExactFrequency);
+		}
+		if (featureCacheOutput != null) {
+			options[current++] = "-c";
+			options[current++] = "" + (this.featureCacheOutput);
+		}
+		if (updateModelName != null) {
+			options[current++] = "-u";
+			options[current++] = "" + (this.updateModelName);
+		}
+		if (featureCacheInput != null) {
+			options[current++] = "-b";
+			options[current++] = "" + (this.featureCacheInput);
+		}
 		options[current++] = "-s";
 		options[current++] = "" + (stopwords.getClass().getName());
 		options[current++] = "-t";
@@ -473,7 +650,7 @@ public class MauiModelBuilder implements OptionHandler {
 
 		ArrayList<Option> newVector = new ArrayList<Option>(12);
 
-		newVector.add(new Option("\tSpecifies name of directory.", "l",
+		newVector.add(new Option("\tSpecifies name of directory, or of a .zip, .tar(.gz) or .jsonl(.gz) file of documents.", "l",
 				1, "-l <directory name>"));
 		newVector.add(new Option("\tSpecifies name of model.", "m", 1,
 				"-m <model name>"));
@@ -498,6 +675,36 @@ public class MauiModelBuilder implements OptionHandler {
 		newVector.add(new Option(
 				"\tSet the minimum number of occurences (default: 2).", "o", 1,
 				"-o"));
+		newVector.add(new Option(
+				"\tSets the number of threads that extract candidates (default: 1).", "p", 1,
+				"-p <number of threads>"));
+		newVector.add(new Option(
+				"\tBuilds the model out of core, with temporary files in the given directory.", "w", 1,
+				"-w <work directory>"));
+		newVector.add(new Option(
+				"\tSets the fraction of candidates to train on out of core (default: 1.0).", "r", 1,
+				"-r <sample rate>"));
+		newVector.add(new Option(
+				"\tSets the fraction of negative candidates to train on (default: 1.0).", "n", 1,
+				"-n <negative sample rate>"));
+		newVector.add(new Option(
+				"\tCounts rare document frequencies in a Count-Min sketch of the given width.", "k", 1,
+				"-k <sketch width>"));
+		newVector.add(new Option(
+				"\tSets the depth of the document frequency sketch (default: 4).", "d", 1,
+				"-d <sketch depth>"));
+		newVector.add(new Option(
+				"\tSets the smallest document frequency counted exactly with a sketch (default: 5).", "h", 1,
+				"-h <frequency>"));
+		newVector.add(new Option(
+				"\tWrites the feature values of the training candidates to the given file.", "c", 1,
+				"-c <feature cache>"));
+		newVector.add(new Option(
+				"\tBuilds the model from feature caches instead of documents.", "b", 1,
+				"-b <feature caches, separated by " + File.pathSeparator + ">"));
+		newVector.add(new Option(
+				"\tUpdates the given model with the documents.", "u", 1,
+				"-u <model to update>"));
 		newVector
 		.add(new Option(
 				"\tSets the list of stopwords to use (default: StopwordsEnglish).",
@@ -509,19 +716,195 @@ public class MauiModelBuilder implements OptionHandler {
 		return Collections.enumeration(newVector);
 	}
 
+	/**
+	 * Returns the documents of the input directory, archive or JSON Lines
+	 * file, which are read while they are processed rather than all at once.
+	 * This bounds the memory for reading only; see buildModel.
+	 * @return
+	 */
+	public Iterable<MauiDocument> streamDocuments() {
+		return DataLoader.streamDocuments(inputDirectoryName, DataLoader.getCharset(documentEncoding));
+	}
+
 	public MauiFilter buildModel() throws MauiFilterException {
-		List<MauiDocument> testDocuments = DataLoader.loadTestDocuments(inputDirectoryName);
-		return buildModel(testDocuments);
+		if (featureCacheInput != null) {
+			return buildModelFromFeatureCache(featureCacheInput);
+		}
+		if (updateModelName != null) {
+			MauiFilter model;
+			try {
+				model = DataLoader.loadModel(new FileInputStream(updateModelName));
+			} catch (FileNotFoundException e) {
+				log.error("Model to update not found: " + updateModelName, e);
+				throw new RuntimeException();
+			}
+			return updateModel(model, streamDocuments());
+		}
+		Iterable<MauiDocument> documents = streamDocuments();
+		if (workDirectoryName != null) {
+			return buildModelOutOfCore(documents);
+		}
+		return buildModel(documents);
 	}
 
 	/**
-	 * Builds the model from the training data
+	 * Builds the model from the training data. The filter keeps every
+	 * document until the last one has been read, so memory grows with the
+	 * corpus even if the documents are streamed; buildModelOutOfCore (the
+	 * -w option) does not keep them.
 	 * @throws MauiFilterException 
 	 */
-	public MauiFilter buildModel(List<MauiDocument> documents) throws MauiFilterException {
+	public MauiFilter buildModel(Iterable<MauiDocument> documents) throws MauiFilterException {
+
+		log.info("-- Building the model... ");
+
+		Instances data = createFilter();
+
+		log.info("-- Adding documents as instances... ");
+
+		for (MauiDocument document : documents) {
+
+			double[] newInst = new double[3];
+			newInst[0] = data.attribute(0).addStringValue(document.getFileName());
+
+			// Adding the text and the topics for the document to the instance
+			if (document.getTextContent().length() > 0) {
+				newInst[1] = data.attribute(1).addStringValue(document.getTextContent());
+			} else {
+				newInst[1] = Instance.missingValue();
+			}
+
+			if (document.getTopicsString().length() > 0) {
+				newInst[2] = data.attribute(2).addStringValue(document.getTopicsString());
+			} else {
+				newInst[2] = Instance.missingValue();
+			}
 
+			data.add(new Instance(1.0, newInst));
+
+			mauiFilter.input(data.instance(0));
+			data = data.stringFreeStructure();
+		}
 		log.info("-- Building the model... ");
 
+		mauiFilter.batchFinished();
+
+		while ((mauiFilter.output()) != null) {
+		}
+
+		return mauiFilter;
+
+	}
+
+	/**
+	 * Builds the model from training documents that are read from disk
+	 * twice, rather than kept in memory, with temporary files in
+	 * workDirectoryName.
+	 * @param documents the training documents, iterated twice in the same order
+	 * @throws MauiFilterException
+	 */
+	public MauiFilter buildModelOutOfCore(Iterable<MauiDocument> documents) throws MauiFilterException {
+
+		log.info("-- Building the model out of core... ");
+
+		createFilter();
+		File workDirectory = workDirectoryName == null ? null : new File(workDirectoryName);
+		mauiFilter.buildOutOfCore(documents, workDirectory, sampleRate);
+		return mauiFilter;
+	}
+
+	/**
+	 * Builds the model from the feature values in a cache written while
+	 * building a model with the same settings. Features that are switched
+	 * off are left out without computing the others again.
+	 * @param featureCache path to the cache file, or the paths of the caches
+	 *  of the shards of a corpus separated by File.pathSeparator
+	 * @throws MauiFilterException
+	 */
+	public MauiFilter buildModelFromFeatureCache(String featureCache) throws MauiFilterException {
+
+		log.info("-- Building the model from feature cache " + featureCache);
+
+		List<File> cacheFiles = new ArrayList<File>();
+		for (String path : featureCache.split(File.pathSeparator)) {
+			cacheFiles.add(new File(path));
+		}
+		createFilter();
+		mauiFilter.buildFromFeatureCaches(cacheFiles);
+		return mauiFilter;
+	}
+
+	/**
+	 * Counts the statistics of a shard of the training corpus, with
+	 * temporary files in workDirectoryName.
+	 * @param documents the documents of the shard
+	 * @throws MauiFilterException
+	 */
+	public CorpusStatistics countCorpusStatistics(Iterable<MauiDocument> documents) throws MauiFilterException {
+
+		log.info("-- Counting corpus statistics... ");
+
+		createFilter();
+		File workDirectory = workDirectoryName == null ? null : new File(workDirectoryName);
+		return mauiFilter.countCorpusStatistics(documents, workDirectory);
+	}
+
+	/**
+	 * Writes the feature values of a shard of the training corpus to a
+	 * feature cache, computed with the merged statistics of all shards.
+	 * @param documents the documents of the shard
+	 * @param statistics the merged statistics
+	 * @param featureCache path to the cache file
+	 * @throws MauiFilterException
+	 */
+	public void writeFeatureCache(Iterable<MauiDocument> documents, CorpusStatistics statistics,
+			String featureCache) throws MauiFilterException {
+
+		log.info("-- Writing feature cache " + featureCache + "... ");
+
+		createFilter();
+		mauiFilter.writeFeatureCache(documents, statistics, new File(featureCache));
+	}
+
+	/**
+	 * Updates a model with new training documents. Unless the classifier of
+	 * the model is updateable, the feature cache written while building the
+	 * model must be given in featureCacheOutput; it is rewritten with the
+	 * new documents.
+	 * @param model a model built with the same settings
+	 * @param documents the new training documents
+	 * @throws MauiFilterException
+	 */
+	public MauiFilter updateModel(MauiFilter model, Iterable<MauiDocument> documents) throws MauiFilterException {
+
+		log.info("-- Updating the model... ");
+
+		mauiFilter = model;
+		mauiFilter.setNumThreads(numThreads);
+		mauiFilter.setNegativeSampling(negativeSampleRate, negativeSampleBands, negativeSampleSeed);
+		mauiFilter.setDocumentFrequencySketch(sketchWidth, sketchDepth, minExactFrequency);
+		if (!vocabularyName.equals("none")) {
+			loadVocabulary();
+			mauiFilter.setVocabulary(vocabulary);
+		}
+		File featureCache = featureCacheOutput == null ? null : new File(featureCacheOutput);
+		mauiFilter.update(documents, featureCache);
+		return mauiFilter;
+	}
+
+	/**
+	 * Creates a filter with the settings of this builder, to be trained by the caller.
+	 */
+	MauiFilter newFilter() throws MauiFilterException {
+		createFilter();
+		return mauiFilter;
+	}
+
+	/**
+	 * Creates and configures the filter, and returns its input structure.
+	 */
+	private Instances createFilter() throws MauiFilterException {
+
 		FastVector atts = new FastVector(3);
 		atts.addElement(new Attribute("filename", (FastVector) null));
 		atts.addElement(new Attribute("document", (FastVector) null));
@@ -532,6 +915,12 @@ public class MauiModelBuilder implements OptionHandler {
 		mauiFilter.setMaxPhraseLength(maxPhraseLength);
 		mauiFilter.setMinPhraseLength(minPhraseLength);
 		mauiFilter.setMinNumOccur(minNumOccur);
+		mauiFilter.setNumThreads(numThreads);
+		mauiFilter.setNegativeSampling(negativeSampleRate, negativeSampleBands, negativeSampleSeed);
+		mauiFilter.setDocumentFrequencySketch(sketchWidth, sketchDepth, minExactFrequency);
+		if (featureCacheOutput != null) {
+			mauiFilter.setFeatureCacheFile(new File(featureCacheOutput));
+		}
 		mauiFilter.setStemmer(stemmer);
 		mauiFilter.setDocumentLanguage(documentLanguage);
 		mauiFilter.setVocabularyName(vocabularyName);
@@ -560,55 +949,23 @@ public class MauiModelBuilder implements OptionHandler {
 			loadVocabulary();
 			mauiFilter.setVocabulary(vocabulary);
 		}
-
-		log.info("-- Adding documents as instances... ");
-
-		for (MauiDocument document : documents) {
-
-			double[] newInst = new double[3];
-			newInst[0] = data.attribute(0).addStringValue(document.getFileName());
-
-			// Adding the text and the topics for the document to the instance
-			if (document.getTextContent().length() > 0) {
-				newInst[1] = data.attribute(1).addStringValue(document.getTextContent());
-			} else {
-				newInst[1] = Instance.missingValue();
-			}
-
-			if (document.getTopicsString().length() > 0) {
-				newInst[2] = data.attribute(2).addStringValue(document.getTopicsString());
-			} else {
-				newInst[2] = Instance.missingValue();
-			}
-
-			data.add(new Instance(1.0, newInst));
-
-			mauiFilter.input(data.instance(0));
-			data = data.stringFreeStructure();
-		}
-		log.info("-- Building the model... ");
-
-		mauiFilter.batchFinished();
-
-		while ((mauiFilter.output()) != null) {
-		}
-
-		return mauiFilter;
-
+		return data;
 	}
 
 	/**
-	 * Saves the extraction model to the file.
+	 * Saves the extraction model to the file, in the model file format
+	 * (see MauiFilter.writeModel).
 	 * @param mauiFilter 
 	 */
 	public void saveModel(MauiFilter mauiFilter) throws Exception {
 
-		BufferedOutputStream bufferedOut = new BufferedOutputStream(
+		BufferedOutputStream out = new BufferedOutputStream(
 				new FileOutputStream(modelName));
-		ObjectOutputStream out = new ObjectOutputStream(bufferedOut);
-		out.writeObject(mauiFilter);
-		out.flush();
-		out.close();
+		try {
+			mauiFilter.writeModel(out);
+		} finally {
+			out.close();
+		}
 	}
 
 	/**
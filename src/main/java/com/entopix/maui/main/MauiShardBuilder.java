@@ -0,0 +1,104 @@
+package com.entopix.maui.main;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import weka.core.Option;
+
+import com.entopix.maui.util.CorpusStatistics;
+import com.entopix.maui.vocab.VocabularyStoreFactory;
+import com.entopix.maui.vocab.VocabularyStore_HT;
+
+/**
+ * Builds a model from a corpus that is split into shards, each of which
+ * is processed by a separate process or machine:
+ *
+ * <pre>
+ * count &lt;statistics file&gt; -l &lt;shard directory or archive&gt; [options]
+ * merge &lt;statistics file&gt; &lt;shard statistics file&gt;...
+ * features &lt;statistics file&gt; &lt;feature cache&gt; -l &lt;shard directory or archive&gt; [options]
+ * </pre>
+ *
+ * First the statistics of each shard are counted, then they are merged
+ * into the statistics of the whole corpus, and then the feature values
+ * of each shard are written to a feature cache with the merged
+ * statistics. The model is built from the caches of all shards with
+ * MauiModelBuilder -b. The options are those of MauiModelBuilder, and
+ * must be the same for all steps; no model name is needed.
+ */
+public class MauiShardBuilder {
+
+	private static final Logger log = LoggerFactory.getLogger(MauiShardBuilder.class);
+
+	/**
+	 * The main method.
+	 */
+	public static void main(String[] ops) {
+
+		MauiModelBuilder modelBuilder = new MauiModelBuilder();
+		modelBuilder.modelRequired = false;
+		VocabularyStoreFactory.setPrefferedVocabStoreType(VocabularyStore_HT.class);
+
+		try {
+			if (ops.length < 2) {
+				throw new Exception("A command and a statistics file are required arguments.");
+			}
+			String command = ops[0];
+			File statisticsFile = new File(ops[1]);
+
+			if (command.equals("count")) {
+				modelBuilder.setOptions(Arrays.copyOfRange(ops, 2, ops.length));
+				CorpusStatistics statistics = modelBuilder.countCorpusStatistics(
+						modelBuilder.streamDocuments());
+				statistics.write(statisticsFile);
+				log.info("Counted " + statistics.getNumDocs() + " documents into " + statisticsFile);
+
+			} else if (command.equals("merge")) {
+				List<CorpusStatistics> shards = new ArrayList<CorpusStatistics>();
+				for (int i = 2; i < ops.length; i++) {
+					shards.add(CorpusStatistics.read(new File(ops[i])));
+				}
+				CorpusStatistics statistics = CorpusStatistics.merge(shards);
+				statistics.write(statisticsFile);
+				log.info("Merged " + shards.size() + " shards of " + statistics.getNumDocs()
+						+ " documents into " + statisticsFile);
+
+			} else if (command.equals("features")) {
+				if (ops.length < 3) {
+					throw new Exception("Name of feature cache required argument.");
+				}
+				modelBuilder.setOptions(Arrays.copyOfRange(ops, 3, ops.length));
+				modelBuilder.writeFeatureCache(modelBuilder.streamDocuments(),
+						CorpusStatistics.read(statisticsFile), ops[2]);
+
+			} else {
+				throw new Exception("Unknown command " + command + ", expected count, merge or features.");
+			}
+			log.info("Done!");
+
+		} catch (Exception e) {
+
+			// Output information on how to use this class
+			log.error("Error running MauiShardBuilder..", e);
+			log.error(e.getMessage());
+			log.error("\nCommands:\n");
+			log.error("count <statistics file> [options]");
+			log.error("merge <statistics file> <shard statistics file>...");
+			log.error("features <statistics file> <feature cache> [options]");
+			log.error("\nOptions:\n");
+			Enumeration<Option> en = modelBuilder.listOptions();
+			while (en.hasMoreElements()) {
+				Option option = en.nextElement();
+				log.error(option.synopsis());
+				log.error(option.description());
+			}
+			System.exit(1);
+		}
+	}
+}
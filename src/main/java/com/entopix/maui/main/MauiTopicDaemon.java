@@ -0,0 +1,239 @@
+package com.entopix.maui.main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.util.DataLoader;
+import com.entopix.maui.util.MauiDocument;
+import com.entopix.maui.util.MauiTopics;
+import com.entopix.maui.util.StreamTopicWriter;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * Extracts topics from documents read as JSON Lines from an input stream,
+ * such as standard input, and writes the topics of each document as a
+ * JSON line to an output stream as soon as they are extracted. The model
+ * and vocabulary are loaded once, so that a pipeline can keep a single
+ * process running. Input lines have the format
+ *
+ * <pre>
+ * {"id": "doc1", "text": "..."}
+ * </pre>
+ *
+ * and output lines the format of StreamTopicWriter, with the id of the
+ * document. Documents without an id are named after their line number.
+ * Documents that cannot be read or processed are logged and written
+ * without topics, so that every input line has an output line.
+ *
+ * Documents are processed on several threads, each with its own filter.
+ * Their topics are written in the order they are completed, or in the
+ * order of the input. Log output must not go to standard output while
+ * the results are written there: in daemon mode, MauiTopicExtractor
+ * sends System.out, which the console appender of the bundled log4j.xml
+ * follows, to standard error, and the progress on single documents is
+ * only logged at debug level.
+ */
+public class MauiTopicDaemon {
+
+	private static final Logger log = LoggerFactory.getLogger(MauiTopicDaemon.class);
+
+	/** Number of documents read ahead of the output, for each thread */
+	private static final int PENDING_PER_THREAD = 4;
+
+	/** Marks the end of the results in the queue */
+	private static final Object END = new Object();
+
+	private MauiTopicExtractor extractor;
+	private int numThreads;
+	private boolean preserveOrder;
+	private int maxPending;
+
+	private BlockingQueue<MauiFilter> filters;
+	private StreamTopicWriter writer;
+	private Semaphore pending;
+	private volatile IOException writeError = null;
+
+	public MauiTopicDaemon(MauiTopicExtractor extractor, int numThreads, boolean preserveOrder) {
+		this.extractor = extractor;
+		this.numThreads = numThreads;
+		this.preserveOrder = preserveOrder;
+		this.maxPending = PENDING_PER_THREAD * numThreads;
+	}
+
+	/**
+	 * Loads the model and processes the documents of the input until it
+	 * ends. Returns when all topics have been written.
+	 *
+	 * @throws IOException if the model cannot be loaded, or the input
+	 * cannot be read or the output written
+	 */
+	public void run(InputStream in, OutputStream out) throws IOException {
+		log.info("-- Loading the model for " + numThreads + " threads... ");
+		List<MauiFilter> loaded = extractor.loadModels(numThreads);
+		filters = new ArrayBlockingQueue<MauiFilter>(numThreads, false, loaded);
+
+		Charset charset = DataLoader.getCharset(extractor.documentEncoding);
+		writer = new StreamTopicWriter(out, charset, StreamTopicWriter.JSONL, maxPending);
+		pending = new Semaphore(maxPending);
+
+		ExecutorService executor = new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					private int count = 0;
+
+					public synchronized Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, "maui-daemon-" + (++count));
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		BlockingQueue<Object> ordered = null;
+		Thread orderedWriter = null;
+		if (preserveOrder) {
+			ordered = new LinkedBlockingQueue<Object>();
+			orderedWriter = startOrderedWriter(ordered);
+		}
+
+		log.info("-- Reading documents... ");
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, charset), 1 << 16);
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.trim().length() == 0) {
+					continue;
+				}
+				checkWriteError();
+				pending.acquire();
+				Future<MauiTopics> result = executor.submit(new Extraction(line, lineNumber));
+				if (preserveOrder) {
+					ordered.put(result);
+				}
+			}
+			// all permits are back once all topics are written
+			pending.acquire(maxPending);
+			if (preserveOrder) {
+				ordered.put(END);
+				orderedWriter.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while processing documents");
+		} finally {
+			executor.shutdownNow();
+			reader.close();
+			writer.close();
+		}
+		checkWriteError();
+	}
+
+	/**
+	 * Starts the thread that writes the results in the order in which the
+	 * documents were read.
+	 */
+	private Thread startOrderedWriter(final BlockingQueue<Object> ordered) {
+		Thread thread = new Thread("maui-daemon-writer") {
+			@SuppressWarnings("unchecked")
+			public void run() {
+				try {
+					Object result;
+					while ((result = ordered.take()) != END) {
+						write(((Future<MauiTopics>) result).get());
+					}
+				} catch (InterruptedException e) {
+					// the daemon has stopped
+				} catch (ExecutionException e) {
+					// extractions catch their errors
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Writes the topics of a document and makes room for the next one.
+	 */
+	private void write(MauiTopics topics) {
+		try {
+			if (writeError == null) {
+				writer.write(topics);
+			}
+		} catch (IOException e) {
+			writeError = e;
+		} finally {
+			pending.release();
+		}
+	}
+
+	private void checkWriteError() throws IOException {
+		if (writeError != null) {
+			throw new IOException("Failed to write topics", writeError);
+		}
+	}
+
+	/**
+	 * Extracts the topics of the document on one line of the input.
+	 */
+	private class Extraction implements Callable<MauiTopics> {
+
+		private String line;
+		private int lineNumber;
+
+		private Extraction(String line, int lineNumber) {
+			this.line = line;
+			this.lineNumber = lineNumber;
+		}
+
+		public MauiTopics call() throws InterruptedException {
+			String id = "line" + lineNumber;
+			MauiTopics topics;
+			MauiFilter filter = filters.take();
+			try {
+				JsonObject object = new JsonParser().parse(line).getAsJsonObject();
+				if (object.has("id")) {
+					id = object.get("id").getAsString();
+				}
+				String text = object.has("text") ? object.get("text").getAsString() : "";
+				topics = extractor.extractTopics(filter, new MauiDocument(id, id, text, ""));
+			} catch (JsonParseException e) {
+				log.error("Invalid JSON on line " + lineNumber + ": " + e.getMessage());
+				topics = new MauiTopics(id);
+			} catch (Exception e) {
+				log.error("Failed to extract topics from " + id + " on line " + lineNumber, e);
+				topics = new MauiTopics(id);
+			} finally {
+				filters.put(filter);
+			}
+			if (!preserveOrder) {
+				write(topics);
+			}
+			return topics;
+		}
+	}
+}
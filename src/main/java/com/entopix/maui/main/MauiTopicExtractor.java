@@ -1,11 +1,11 @@
 package com.entopix.maui.main;
 
+import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
@@ -24,15 +24,22 @@ import weka.core.Utils;
 
 import com.entopix.maui.filters.MauiFilter;
 import com.entopix.maui.filters.MauiFilter.MauiFilterException;
+import com.entopix.maui.filters.MauiModel;
 import com.entopix.maui.stemmers.PorterStemmer;
 import com.entopix.maui.stemmers.Stemmer;
 import com.entopix.maui.stopwords.Stopwords;
 import com.entopix.maui.stopwords.StopwordsEnglish;
+import com.entopix.maui.util.ArchiveDocumentReader;
 import com.entopix.maui.util.DataLoader;
 import com.entopix.maui.util.Evaluator;
+import com.entopix.maui.util.JsonLinesDocumentReader;
 import com.entopix.maui.util.MauiDocument;
+import com.entopix.maui.util.MauiFileTopicWriter;
 import com.entopix.maui.util.MauiTopics;
+import com.entopix.maui.util.ModelFile;
+import com.entopix.maui.util.StreamTopicWriter;
 import com.entopix.maui.util.Topic;
+import com.entopix.maui.util.TopicWriter;
 import com.entopix.maui.vocab.Vocabulary;
 import com.entopix.maui.vocab.VocabularyStoreFactory;
 import com.entopix.maui.vocab.VocabularyStore_HT;
@@ -40,7 +47,9 @@ import com.entopix.maui.vocab.VocabularyStore_HT;
 /**
  * Extracts topics from the documents in a given directory. Assumes that the
  * file names for the documents end with ".txt". Puts extracted topics into
- * corresponding files ending with ".maui".
+ * corresponding files ending with ".maui", or into a single output file.
+ * In daemon mode, documents are read as JSON Lines from standard input
+ * instead, and their topics are written to standard output.
  * Optionally an encoding for the documents/keyphrases can be defined (e.g. for
  * Chinese text). Corresponding ".key" files (if such exists) are used for evaluation.
  *
@@ -92,6 +101,28 @@ import com.entopix.maui.vocab.VocabularyStore_HT;
  * -c<br>
  * Cut off threshold for the topic probability.<p>
  *
+ * -o "output file"<br>
+ * Writes the topics of all documents into a single file instead of
+ * ".maui" files. Required for documents read from an archive or a
+ * JSON Lines file, which have no file to put a ".maui" file next to.<p>
+ *
+ * -w "output format"<br>
+ * Format of the output file (jsonl, tsv or arff, default: from the file
+ * extension).<p>
+ *
+ * -d<br>
+ * Runs as a daemon, which loads the model and vocabulary once, reads
+ * documents as JSON Lines from standard input and writes their topics to
+ * standard output as soon as they are extracted. The documents directory
+ * is not needed in this mode.<p>
+ *
+ * -p "number of threads"<br>
+ * Number of documents processed at the same time in daemon mode
+ * (default: number of processors).<p>
+ *
+ * -k<br>
+ * Keeps the order of the input in daemon mode.<p>
+ *
  * @author Eibe Frank (eibe@cs.waikato.ac.nz), zelandiya (medelyan@gmail.com)
  * 
  * @version 1.3
@@ -110,6 +141,11 @@ public class MauiTopicExtractor implements OptionHandler {
 	 */
 	public FileInputStream modelName = null;
 
+	/**
+	 * Path of the model, to load it again for each thread in daemon mode
+	 */
+	private String modelPath = null;
+
 	/**
 	 * Vocabulary name
 	 */
@@ -178,6 +214,31 @@ public class MauiTopicExtractor implements OptionHandler {
 	 */
 	boolean buildGlobalDictionary = false;
 
+	/**
+	 * Single file for the topics of all documents, instead of .maui files
+	 */
+	public String outputFile = null;
+
+	/**
+	 * Format of the output file, or null to follow its extension
+	 */
+	public String outputFormat = null;
+
+	/**
+	 * Read documents from standard input and write topics to standard output
+	 */
+	boolean daemon = false;
+
+	/**
+	 * Number of documents processed at the same time in daemon mode
+	 */
+	int numThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Keep the order of the input in daemon mode
+	 */
+	boolean preserveOrder = false;
+
 	/**
 	 * Parses a given list of options controlling the behaviour of this object.
 	 * Valid options are:
@@ -230,23 +291,50 @@ public class MauiTopicExtractor implements OptionHandler {
 	 * -c<br>
 	 * Cut off threshold for the topic probability.<p>
 	 *
+	 * -o "output file"<br>
+	 * Writes the topics of all documents into a single file instead of
+	 * ".maui" files. Required for documents read from an archive or a
+	 * JSON Lines file, which have no file to put a ".maui" file next to.<p>
+	 *
+	 * -w "output format"<br>
+	 * Format of the output file (jsonl, tsv or arff, default: from the file
+	 * extension).<p>
+	 *
+	 * -d<br>
+	 * Runs as a daemon, which loads the model and vocabulary once, reads
+	 * documents as JSON Lines from standard input and writes their topics to
+	 * standard output as soon as they are extracted. The documents directory
+	 * is not needed in this mode.<p>
+	 *
+	 * -p "number of threads"<br>
+	 * Number of documents processed at the same time in daemon mode
+	 * (default: number of processors).<p>
+	 *
+	 * -k<br>
+	 * Keeps the order of the input in daemon mode.<p>
+	 *
 	 * @param options the list of options as an array of strings
 	 * @exception Exception if an option is not supported
 	 */
 	@Override
 	public void setOptions(String[] options) throws Exception {
 
+		this.daemon = Utils.getFlag('d', options);
+
 		String dirName = Utils.getOption('l', options);
 		if (dirName.length() > 0) {
 			inputDirectoryName = dirName;
 		} else {
 			inputDirectoryName = null;
-			throw new Exception("Name of directory required argument.");
+			if (!daemon) {
+				throw new Exception("Name of directory required argument.");
+			}
 		}
 
 		String modelName = Utils.getOption('m', options);
 		if (modelName.length() > 0) {
 			this.modelName = new FileInputStream(modelName);
+			this.modelPath = modelName;
 		} else {
 			this.modelName = null;
 			throw new Exception("Path to the model file is a required argument.");
@@ -312,6 +400,37 @@ public class MauiTopicExtractor implements OptionHandler {
 			this.cutOffTopicProbability = Double.parseDouble(cutOffProbability);
 		}
 
+		String outputFile = Utils.getOption('o', options);
+		this.outputFile = outputFile.length() > 0 ? outputFile : null;
+		if (this.outputFile == null && !daemon && !hasDocumentFiles()) {
+			throw new Exception("An output file is required for documents read from an archive or a JSON Lines file.");
+		}
+
+		String outputFormat = Utils.getOption('w', options);
+		if (outputFormat.length() > 0) {
+			if (outputFormat.equals(StreamTopicWriter.JSONL) || outputFormat.equals(StreamTopicWriter.TSV)
+					|| outputFormat.equals(StreamTopicWriter.ARFF)) {
+				this.outputFormat = outputFormat;
+			} else {
+				throw new Exception("Unsupported output format. It should be \"jsonl\", \"tsv\" or \"arff\".");
+			}
+		} else {
+			this.outputFormat = null;
+		}
+
+		String numThreads = Utils.getOption('p', options);
+		if (numThreads.length() > 0) {
+			this.numThreads = Integer.parseInt(numThreads);
+			if (this.numThreads < 1) {
+				throw new Exception("The number of threads should be positive.");
+			}
+		}
+		this.preserveOrder = Utils.getFlag('k', options);
+
+		if (daemon && buildGlobalDictionary) {
+			throw new Exception("Global dictionaries cannot be built from the test set in daemon mode.");
+		}
+
 		Utils.checkForRemainingOptions(options);
 	}
 
@@ -323,7 +442,7 @@ public class MauiTopicExtractor implements OptionHandler {
 	@Override
 	public String[] getOptions() {
 
-		String[] options = new String[22];
+		String[] options = new String[30];
 		int current = 0;
 
 		options[current++] = "-l";
@@ -360,6 +479,25 @@ public class MauiTopicExtractor implements OptionHandler {
 			options[current++] = "-a";
 		}
 
+		if (outputFile != null) {
+			options[current++] = "-o";
+			options[current++] = "" + (this.outputFile);
+		}
+
+		if (outputFormat != null) {
+			options[current++] = "-w";
+			options[current++] = "" + (this.outputFormat);
+		}
+
+		if (daemon) {
+			options[current++] = "-d";
+			options[current++] = "-p";
+			options[current++] = "" + (this.numThreads);
+			if (preserveOrder) {
+				options[current++] = "-k";
+			}
+		}
+
 		while (current < options.length) {
 			options[current++] = "";
 		}
@@ -382,10 +520,10 @@ public class MauiTopicExtractor implements OptionHandler {
 	@Override
 	public Enumeration<Option> listOptions() {
 
-		Vector<Option> newVector = new Vector<Option>(13);
+		Vector<Option> newVector = new Vector<Option>(18);
 
 		newVector.addElement(new Option(
-				"\tSpecifies name of directory.",
+				"\tSpecifies name of directory, or of a .zip, .tar(.gz) or .jsonl(.gz) file of documents.",
 				"l", 1, "-l <directory name>"));
 		newVector.addElement(new Option(
 				"\tSpecifies name of model.",
@@ -423,6 +561,22 @@ public class MauiTopicExtractor implements OptionHandler {
 		newVector.addElement(new Option(
 				"\tAlso write stemmed phrase and score into \".key\" file.",
 				"a", 0, "-a"));
+		newVector.addElement(new Option(
+				"\tWrites the topics of all documents into a single file instead of \".maui\" files"
+				+ " (required for archives and JSON Lines files).",
+				"o", 1, "-o <output file>"));
+		newVector.addElement(new Option(
+				"\tSpecifies format of the output file (jsonl, tsv or arff, default: from its extension).",
+				"w", 1, "-w <output format>"));
+		newVector.addElement(new Option(
+				"\tRuns as a daemon, reading JSON Lines documents from standard input and writing topics to standard output.",
+				"d", 0, "-d"));
+		newVector.addElement(new Option(
+				"\tSpecifies number of documents processed at the same time in daemon mode (default: number of processors).",
+				"p", 1, "-p <number of threads>"));
+		newVector.addElement(new Option(
+				"\tKeeps the order of the input in daemon mode.",
+				"k", 0, "-k"));
 
 		return newVector.elements();
 	}
@@ -459,101 +613,155 @@ public class MauiTopicExtractor implements OptionHandler {
 		return DataLoader.loadTestDocuments(inputDirectoryName);
 	}
 
+	/**
+	 * Returns the documents of the input directory, which are read while
+	 * they are processed rather than all at once
+	 * @return
+	 */
+	public Iterable<MauiDocument> streamDocuments() {
+		return DataLoader.streamDocuments(inputDirectoryName, DataLoader.getCharset(documentEncoding));
+	}
+
 	/**
 	 * Extracts topics from all documents
 	 * @throws MauiFilterException 
 	 */
-	public List<MauiTopics> extractTopics(List<MauiDocument> documents) throws MauiFilterException {
+	public List<MauiTopics> extractTopics(Iterable<MauiDocument> documents) throws MauiFilterException {
 
 		List<MauiTopics> allDocumentTopics = new ArrayList<MauiTopics>();
 
-		// Weka data structures
-		FastVector atts = new FastVector(3);
-		atts.addElement(new Attribute("filename", (FastVector) null));
-		atts.addElement(new Attribute("doc", (FastVector) null));
-		atts.addElement(new Attribute("keyphrases", (FastVector) null));
-		Instances data = new Instances("keyphrase_training_data", atts, 0);
-
 		log.info("-- Extracting keyphrases... ");
 
 		for (MauiDocument document : documents) {
+			allDocumentTopics.add(extractTopics(mauiFilter, document));
+		}
 
-			double[] newInst = new double[3];
+		mauiFilter.batchFinished();
+		return allDocumentTopics;
+	}
 
-			newInst[0] = data.attribute(0).addStringValue(document.getFileName());
+	/**
+	 * Extracts topics from all documents, passing the topics of each
+	 * document to the writer as soon as they are extracted. The topics are
+	 * not kept, only the statistics to evaluate them, so that memory does
+	 * not grow with the number of documents.
+	 * @return precision, recall and F-measure, as from Evaluator.evaluateTopics
+	 * @throws MauiFilterException 
+	 * @throws IOException if the writer fails
+	 */
+	public double[] writeTopics(Iterable<MauiDocument> documents, TopicWriter writer)
+			throws MauiFilterException, IOException {
 
-			// Adding the text of the document to the instance
-			if (document.getTextContent().length() > 0) {
-				newInst[1] = data.attribute(1).addStringValue(document.getTextContent());
-			} else {
-				newInst[1] = Instance.missingValue();
-			}
+		Evaluator.Accumulator evaluation = new Evaluator.Accumulator();
 
-			if (document.getTopicsString().length() > 0) {
-				newInst[2] = data.attribute(2).addStringValue(document.getTopicsString());
-			} else {
-				newInst[2] = Instance.missingValue();
-			}
+		log.info("-- Extracting keyphrases... ");
 
-			data.add(new Instance(1.0, newInst));
+		for (MauiDocument document : documents) {
+			MauiTopics documentTopics = extractTopics(mauiFilter, document);
+			writer.write(documentTopics);
+			evaluation.add(documentTopics);
+		}
+
+		mauiFilter.batchFinished();
+		return evaluation.report();
+	}
 
-			mauiFilter.input(data.instance(0));
+	/**
+	 * Extracts topics from a single document with the given filter, which
+	 * must not be used by another thread at the same time
+	 * @throws MauiFilterException 
+	 */
+	MauiTopics extractTopics(MauiFilter filter, MauiDocument document) throws MauiFilterException {
 
-			data = data.stringFreeStructure();
-			log.info("-- Processing document: " + document.getFileName());
+		// Weka data structures
+		FastVector atts = new FastVector(3);
+		atts.addElement(new Attribute("filename", (FastVector) null));
+		atts.addElement(new Attribute("doc", (FastVector) null));
+		atts.addElement(new Attribute("keyphrases", (FastVector) null));
+		Instances data = new Instances("keyphrase_training_data", atts, 0);
 
+		double[] newInst = new double[3];
 
-			Instance[] topRankedInstances = new Instance[topicsPerDocument];
-			
-			MauiTopics documentTopics = new MauiTopics(document.getFilePath());
+		newInst[0] = data.attribute(0).addStringValue(document.getFileName());
 
-			documentTopics.setPossibleCorrect(document.getTopicsString().split("\n").length);
+		// Adding the text of the document to the instance
+		if (document.getTextContent().length() > 0) {
+			newInst[1] = data.attribute(1).addStringValue(document.getTextContent());
+		} else {
+			newInst[1] = Instance.missingValue();
+		}
 
-			Instance inst;
-			int index = 0;
-			double probability;
-			Topic topic;
-			String title, id;
+		if (document.getTopicsString().length() > 0) {
+			newInst[2] = data.attribute(2).addStringValue(document.getTopicsString());
+		} else {
+			newInst[2] = Instance.missingValue();
+		}
 
-			log.info("-- Keyphrases and feature values:");
+		data.add(new Instance(1.0, newInst));
 
-			// Iterating over all extracted topic instances
-			while ((inst = mauiFilter.output()) != null) {
-				probability = inst.value(mauiFilter.getProbabilityIndex());
-				if (index < topicsPerDocument) {
-					if (probability > cutOffTopicProbability) {
-						topRankedInstances[index] = inst;
-						title = topRankedInstances[index].
-								stringValue(mauiFilter.getOutputFormIndex());
-						id = "1"; // topRankedInstances[index].
-						//stringValue(mauiFilter.getOutputFormIndex() + 1); // TODO: Check
-						topic = new Topic(title,  id,  probability);
+		filter.input(data.instance(0));
 
-						if ((int) topRankedInstances[index].
-								value(topRankedInstances[index].numAttributes() - 1) == 1) {
-							topic.setCorrectness(true);
-						} else {
-							topic.setCorrectness(false);
-						}
+		logDocument("-- Processing document: " + document.getFileName());
 
-						documentTopics.addTopic(topic);
-						log.info("Topic " + title + " " + id + " " + probability + " > " + topic.isCorrect());
 
-						index++;
+		Instance[] topRankedInstances = new Instance[topicsPerDocument];
+		
+		MauiTopics documentTopics = new MauiTopics(document.getFilePath());
+
+		documentTopics.setPossibleCorrect(document.getTopicsString().split("\n").length);
+
+		Instance inst;
+		int index = 0;
+		double probability;
+		Topic topic;
+		String title, id;
+
+		logDocument("-- Keyphrases and feature values:");
+
+		// Iterating over all extracted topic instances
+		while ((inst = filter.output()) != null) {
+			probability = inst.value(filter.getProbabilityIndex());
+			if (index < topicsPerDocument) {
+				if (probability > cutOffTopicProbability) {
+					topRankedInstances[index] = inst;
+					title = topRankedInstances[index].
+							stringValue(filter.getOutputFormIndex());
+					id = "1"; // topRankedInstances[index].
+					//stringValue(filter.getOutputFormIndex() + 1); // TODO: Check
+					topic = new Topic(title,  id,  probability);
+
+					if ((int) topRankedInstances[index].
+							value(topRankedInstances[index].numAttributes() - 1) == 1) {
+						topic.setCorrectness(true);
+					} else {
+						topic.setCorrectness(false);
 					}
-				}
-			}
 
+					documentTopics.addTopic(topic);
+					logDocument("Topic " + title + " " + id + " " + probability + " > " + topic.isCorrect());
 
-			allDocumentTopics.add(documentTopics);
+					index++;
+				}
+			}
 		}
 
-		mauiFilter.batchFinished();
-		return allDocumentTopics;
+		return documentTopics;
 	}
 
 
 
+	/**
+	 * Logs the progress on a single document. In daemon mode, this is only
+	 * of interest for debugging.
+	 */
+	private void logDocument(String message) {
+		if (daemon) {
+			log.debug(message);
+		} else {
+			log.info(message);
+		}
+	}
+
 	/**
 	 * Loads the extraction model from the file.
 	 */
@@ -567,48 +775,84 @@ public class MauiTopicExtractor implements OptionHandler {
 			mauiFilter.globalDictionary = null;
 		}
 		
+		configureFilter(mauiFilter);
+	}
+
+	/**
+	 * Loads the given number of filters of the extraction model, for
+	 * extracting topics on as many threads at the same time. Filters of a
+	 * model file share all its sections but the classifier, and all
+	 * filters share the vocabulary. Models serialized by earlier versions
+	 * are loaded once for each filter.
+	 */
+	List<MauiFilter> loadModels(int count) throws IOException {
+		if (modelPath == null) {
+			throw new IOException("Path to the model file is required to load it for several threads.");
+		}
+		InputStream in = new BufferedInputStream(new FileInputStream(modelPath));
+		boolean isModelFile;
+		try {
+			isModelFile = ModelFile.isModelFile(in);
+		} finally {
+			in.close();
+		}
+
+		List<MauiFilter> filters = new ArrayList<MauiFilter>();
+		MauiModel model = isModelFile ? MauiModel.open(new File(modelPath)) : null;
+		for (int i = 0; i < count; i++) {
+			MauiFilter filter = isModelFile ? model.newFilter() : DataLoader.loadModel(new FileInputStream(modelPath));
+			configureFilter(filter);
+			filters.add(filter);
+		}
+		return filters;
+	}
 
+	/**
+	 * Sets the vocabulary, language and stemmer of this extractor on a filter.
+	 */
+	private void configureFilter(MauiFilter filter) {
 		// initialize vocabulary
-		mauiFilter.setVocabularyName(vocabularyName);
-		mauiFilter.setVocabularyFormat(vocabularyFormat);
-		mauiFilter.setDocumentLanguage(documentLanguage);
-		mauiFilter.setStemmer(stemmer);
+		filter.setVocabularyName(vocabularyName);
+		filter.setVocabularyFormat(vocabularyFormat);
+		filter.setDocumentLanguage(documentLanguage);
+		filter.setStemmer(stemmer);
 
 		if (!vocabularyName.equals("none")) {
 			loadVocabulary();
-			mauiFilter.setVocabulary(vocabulary);
+			filter.setVocabulary(vocabulary);
 		}
+	}
 
+	/**
+	 * Creates the writer for the extracted topics: a single output file if
+	 * one is set, otherwise a ".maui" file per document.
+	 */
+	public TopicWriter createTopicWriter() throws IOException {
+		if (outputFile != null) {
+			return StreamTopicWriter.open(new File(outputFile), DataLoader.getCharset(documentEncoding), outputFormat);
+		}
+		if (!hasDocumentFiles()) {
+			throw new IOException("An output file is required for documents read from " + inputDirectoryName);
+		}
+		return new MauiFileTopicWriter(DataLoader.getCharset(documentEncoding), additionalInfo);
 	}
 
-	public void printTopics(List<MauiTopics> allDocumentsTopics) {
-		FileOutputStream out = null;
-		PrintWriter printer = null;
+	/**
+	 * Tells whether the documents are files of their own, rather than
+	 * entries of an archive or lines of a JSON Lines file.
+	 */
+	private boolean hasDocumentFiles() {
+		if (inputDirectoryName == null) {
+			return true;
+		}
+		File input = new File(inputDirectoryName);
+		return !ArchiveDocumentReader.isArchive(input) && !JsonLinesDocumentReader.isJsonLines(input);
+	}
 
+	public void printTopics(List<MauiTopics> allDocumentsTopics) {
+		MauiFileTopicWriter writer = new MauiFileTopicWriter(DataLoader.getCharset(documentEncoding), additionalInfo);
 		for (MauiTopics documentTopics : allDocumentsTopics) { 
-			try {
-				out = new FileOutputStream(documentTopics.getFilePath().replace(".txt", ".maui"));
-				if (!documentEncoding.equals("default")) {
-					printer = new PrintWriter(new OutputStreamWriter(out, documentEncoding));
-				} else {
-					printer = new PrintWriter(out);
-				}
-
-				for (Topic topic : documentTopics.getTopics()) {
-					printer.print(topic.getTitle());
-					if (additionalInfo) {
-						printer.print("\t");
-						printer.print(topic.getProbability());
-					}
-					printer.println();
-				}
-				printer.close();
-				out.close();
-			} catch (FileNotFoundException e) {
-				log.error(e.getMessage());
-			} catch (IOException e) {
-				log.error(e.getMessage());
-			}
+			writer.write(documentTopics);
 		}	
 	}
 
@@ -624,9 +868,16 @@ public class MauiTopicExtractor implements OptionHandler {
 		MauiTopicExtractor topicExtractor = new MauiTopicExtractor();
 		VocabularyStoreFactory.setPrefferedVocabStoreType(VocabularyStore_HT.class);
 
+		PrintStream results = System.out;
 		try {
 			// Checking and Setting Options selected by the user:
 			topicExtractor.setOptions(ops);
+
+			// In daemon mode, only the results go to standard output: the console
+			// appender follows System.out, so log output goes to standard error
+			if (topicExtractor.daemon) {
+				System.setOut(System.err);
+			}
 			log.info("Extracting keyphrases with options: ");
 
 			// Reading Options, which were set above and output them:
@@ -637,15 +888,24 @@ public class MauiTopicExtractor implements OptionHandler {
 			}
 			log.info(options);
 
+			if (topicExtractor.daemon) {
+				new MauiTopicDaemon(topicExtractor, topicExtractor.numThreads, topicExtractor.preserveOrder)
+						.run(System.in, results);
+				return;
+			}
+
 			// Loading selected Model:
 			log.info("-- Loading the model... ");
 			topicExtractor.loadModel();
 
-			// Extracting Keyphrases from all files in the input directory
-			List<MauiDocument> documents = topicExtractor.loadDocuments();
-			List<MauiTopics> topics = topicExtractor.extractTopics(documents);
-			topicExtractor.printTopics(topics);
-			Evaluator.evaluateTopics(topics);
+			// Extracting Keyphrases from all files in the input directory,
+			// writing them as they are extracted
+			TopicWriter writer = topicExtractor.createTopicWriter();
+			try {
+				topicExtractor.writeTopics(topicExtractor.streamDocuments(), writer);
+			} finally {
+				writer.close();
+			}
 
 
 		} catch (Exception e) {
@@ -660,6 +920,8 @@ public class MauiTopicExtractor implements OptionHandler {
 				log.error(option.synopsis());
 				log.error(option.description());
 			}
+		} finally {
+			System.setOut(results);
 		}
 	}
 
@@ -25,6 +25,7 @@ import com.entopix.maui.stopwords.StopwordsMap;
 import com.entopix.maui.util.DataLoader;
 import com.entopix.maui.util.Topic;
 import com.entopix.maui.vocab.Vocabulary;
+import com.entopix.maui.vocab.VocabularyDelta;
 
 /**
  * This class shows how to use Maui on a single document or just a string of
@@ -44,7 +45,7 @@ public final class MauiWrapper {
     
     // these need to be loaded either from a file, or from a pre-loaded object
     private MauiFilter extractionModel = null;
-    private Vocabulary vocabulary = null;
+    private volatile Vocabulary vocabulary = null;
     
     /**
      * Constructor to initialize MauiWrapper with default
@@ -130,6 +131,20 @@ public final class MauiWrapper {
         	extractionModel.setMinNumOccur(2);
     }
 
+    /**
+     * Applies changes to the vocabulary and replaces the vocabulary
+     * of the model with the updated one. Extraction can go on meanwhile,
+     * using the previous vocabulary until the update is complete.
+     * Concurrent updates are applied one after the other, so that none
+     * of them is lost.
+     * @param delta
+     */
+    public synchronized void updateVocabulary(VocabularyDelta delta) {
+        Vocabulary updated = vocabulary.applyDelta(delta);
+        vocabulary = updated;
+        extractionModel.setVocabulary(updated);
+    }
+
     /**
      * Main method to extract the main topics from a given text
      *
@@ -13,7 +13,7 @@ public class SpanishStemmer extends Stemmer {
 
     private SpanishStemmerSB stemmer = new SpanishStemmerSB();
 
-    public String stemSB(String str) {
+    public synchronized String stemSB(String str) {
         stemmer.setCurrent(str);
         stemmer.stem();
         return stemmer.getCurrent();
@@ -6,6 +6,12 @@ import java.io.Serializable;
 /**
  * Abstract class for stemmers.
  *
+ * One stemmer is shared by the threads that extract candidates in
+ * MauiFilter and by the folds of MauiCrossValidator, so stem must be
+ * thread-safe. The stemmers in this package either keep no state between
+ * calls, or synchronize on the instance (FrenchStemmer, GermanStemmer and
+ * SpanishStemmer.stemSB).
+ *
  * @author Eibe Frank (eibe@cs.waikato.ac.nz)
  * @version 1.0
  */
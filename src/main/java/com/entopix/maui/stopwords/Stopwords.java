@@ -6,6 +6,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
@@ -18,6 +20,9 @@ import org.slf4j.LoggerFactory;
  * Class that can test whether a given string is a stop word. Lowercases all
  * words before the test.
  *
+ * isStopword only reads the set of words, so one instance can be shared by
+ * several threads once its words have been set.
+ *
  * @author Eibe Frank (eibe@cs.waikato.ac.nz)
  * @version 2.0
  */
@@ -56,4 +61,18 @@ public abstract class Stopwords implements Serializable {
 	public boolean isStopword(String word) {
 		return stopwords.contains(word.toLowerCase());
 	}
+
+	/**
+	 * Returns the stop words, so that they can be stored with a model.
+	 */
+	public Set<String> getWords() {
+		return Collections.unmodifiableSet(stopwords);
+	}
+
+	/**
+	 * Replaces the stop words with those read from a model.
+	 */
+	public void setWords(Collection<String> words) {
+		stopwords = new HashSet<String>(words);
+	}
 }
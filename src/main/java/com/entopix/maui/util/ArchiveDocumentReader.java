@@ -0,0 +1,152 @@
+package com.entopix.maui.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the documents of a .zip, .tar, .tar.gz or .tgz archive directly
+ * from the archive, in the layout of a document directory: each document
+ * is a .txt entry, with its keyphrases in a .key entry of the same name.
+ *
+ * The archive is read once from start to end, so a document is only
+ * complete when both of its entries have been read. Entries that wait for
+ * their counterpart are held in memory; if more than
+ * <code>maxPending</code> are waiting, the oldest document is passed on
+ * without keyphrases. Documents whose .key entry is missing are passed on
+ * at the end of the archive.
+ */
+public class ArchiveDocumentReader extends QueuedDocumentReader {
+
+	private static final Logger log = LoggerFactory.getLogger(ArchiveDocumentReader.class);
+
+	/** Default number of entries held while waiting for their counterpart */
+	public static final int DEFAULT_MAX_PENDING = 10000;
+
+	private File archive;
+	private Charset charset;
+	private int maxPending;
+
+	/**
+	 * Text and keyphrases of a document, as far as they have been read.
+	 */
+	private static class Pending {
+
+		private String entryName;
+		private String text;
+		private String keyphrases;
+	}
+
+	public ArchiveDocumentReader(File archive, Charset charset, int readAhead, int maxPending) {
+		super(readAhead);
+		this.archive = archive;
+		this.charset = charset;
+		this.maxPending = maxPending;
+	}
+
+	/**
+	 * Tells whether a file is an archive that this reader can read.
+	 */
+	public static boolean isArchive(File file) {
+		String name = file.getName().toLowerCase();
+		return name.endsWith(".zip") || name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tgz");
+	}
+
+	protected String getSourceName() {
+		return archive.getName();
+	}
+
+	protected void read(Output output) throws IOException, InterruptedException {
+		ArchiveInputStream in = open();
+		try {
+			LinkedHashMap<String, Pending> pending = new LinkedHashMap<String, Pending>();
+			ArchiveEntry entry;
+			while ((entry = in.getNextEntry()) != null) {
+				String entryName = entry.getName();
+				boolean text = entryName.endsWith(".txt");
+				if (entry.isDirectory() || !(text || entryName.endsWith(".key"))) {
+					continue;
+				}
+				String base = entryName.substring(0, entryName.length() - 4);
+				String content = new String(IOUtils.toByteArray(in), charset);
+
+				Pending document = pending.remove(base);
+				if (document == null) {
+					document = new Pending();
+				}
+				if (text) {
+					document.entryName = entryName;
+					document.text = content;
+				} else {
+					document.keyphrases = content;
+				}
+				if (document.text != null && document.keyphrases != null) {
+					output.add(toDocument(document));
+				} else {
+					pending.put(base, document);
+					if (pending.size() > maxPending) {
+						evictOldest(pending, output);
+					}
+				}
+			}
+			for (Pending document : pending.values()) {
+				if (document.text != null) {
+					output.add(toDocument(document));
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private void evictOldest(LinkedHashMap<String, Pending> pending, Output output) throws InterruptedException {
+		Iterator<Map.Entry<String, Pending>> iterator = pending.entrySet().iterator();
+		Map.Entry<String, Pending> oldest = iterator.next();
+		iterator.remove();
+		if (oldest.getValue().text != null) {
+			log.warn("No keyphrases found near " + oldest.getValue().entryName + " in " + archive
+					+ ", reading it without keyphrases");
+			output.add(toDocument(oldest.getValue()));
+		} else {
+			log.warn("No text found near " + oldest.getKey() + ".key in " + archive + ", ignoring it");
+		}
+	}
+
+	private MauiDocument toDocument(Pending document) {
+		String fileName = document.entryName.substring(document.entryName.lastIndexOf('/') + 1);
+		String keyphrases = document.keyphrases == null ? "" : document.keyphrases;
+		return new MauiDocument(fileName, archive.getPath() + "!/" + document.entryName, document.text, keyphrases);
+	}
+
+	private ArchiveInputStream open() throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(archive), 1 << 16);
+		String name = archive.getName().toLowerCase();
+		try {
+			if (name.endsWith(".zip")) {
+				return new ZipArchiveInputStream(in);
+			}
+			if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+				in = new GZIPInputStream(in, 1 << 16);
+			}
+			return new TarArchiveInputStream(in);
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package com.entopix.maui.util;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Data input stream that reads the length-prefixed blocks written by
+ * {@link BlockOutputStream}. Each block is read with a single bulk read.
+ */
+public class BlockInputStream extends DataInputStream {
+
+	public BlockInputStream(InputStream in) {
+		super(in);
+	}
+
+	/**
+	 * Reads a block of strings.
+	 */
+	public String[] readStringBlock() throws IOException {
+		int[] lengths = readIntBlock();
+		byte[] bytes = new byte[readInt()];
+		readFully(bytes);
+
+		String[] strings = new String[lengths.length];
+		int offset = 0;
+		for (int i = 0; i < lengths.length; i++) {
+			strings[i] = new String(bytes, offset, lengths[i], BlockOutputStream.UTF8);
+			offset += lengths[i];
+		}
+		return strings;
+	}
+
+	/**
+	 * Reads a block of ints.
+	 */
+	public int[] readIntBlock() throws IOException {
+		int length = readInt();
+		byte[] bytes = new byte[length * 4];
+		readFully(bytes);
+		int[] values = new int[length];
+		ByteBuffer.wrap(bytes).asIntBuffer().get(values);
+		return values;
+	}
+
+	/**
+	 * Reads a block of longs.
+	 */
+	public long[] readLongBlock() throws IOException {
+		int length = readInt();
+		byte[] bytes = new byte[length * 8];
+		readFully(bytes);
+		long[] values = new long[length];
+		ByteBuffer.wrap(bytes).asLongBuffer().get(values);
+		return values;
+	}
+
+	/**
+	 * Reads a block of doubles.
+	 */
+	public double[] readDoubleBlock() throws IOException {
+		int length = readInt();
+		byte[] bytes = new byte[length * 8];
+		readFully(bytes);
+		double[] values = new double[length];
+		ByteBuffer.wrap(bytes).asDoubleBuffer().get(values);
+		return values;
+	}
+
+	/**
+	 * Skips a block of doubles or longs without reading it.
+	 */
+	public void skipLongBlock() throws IOException {
+		long remaining = 8L * readInt();
+		while (remaining > 0) {
+			long skipped = skip(remaining);
+			if (skipped <= 0) {
+				throw new EOFException();
+			}
+			remaining -= skipped;
+		}
+	}
+
+	/**
+	 * Reads a block of bytes.
+	 */
+	public byte[] readByteBlock() throws IOException {
+		byte[] values = new byte[readInt()];
+		readFully(values);
+		return values;
+	}
+}
@@ -0,0 +1,129 @@
+package com.entopix.maui.util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collection;
+
+/**
+ * Data output stream that writes whole arrays as length-prefixed blocks,
+ * so that they can be read back with a single bulk read by
+ * {@link BlockInputStream}.
+ *
+ * String blocks are stored as a count, an int block with the UTF-8 length
+ * of each string, and the concatenated UTF-8 bytes.
+ */
+public class BlockOutputStream extends DataOutputStream {
+
+	public static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Scratch buffer for primitive blocks */
+	private byte[] scratch = new byte[8192];
+
+	public BlockOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	/**
+	 * Writes a block of strings.
+	 */
+	public void writeStringBlock(Collection<String> strings) throws IOException {
+		writeStringBlock(strings.toArray(new String[strings.size()]));
+	}
+
+	/**
+	 * Writes a block of strings.
+	 */
+	public void writeStringBlock(String[] strings) throws IOException {
+		byte[][] encoded = new byte[strings.length][];
+		int[] lengths = new int[strings.length];
+		int total = 0;
+		for (int i = 0; i < strings.length; i++) {
+			encoded[i] = strings[i].getBytes(UTF8);
+			lengths[i] = encoded[i].length;
+			total += lengths[i];
+		}
+		writeIntBlock(lengths);
+		writeInt(total);
+		for (byte[] bytes : encoded) {
+			write(bytes);
+		}
+	}
+
+	/**
+	 * Writes a block of ints.
+	 */
+	public void writeIntBlock(int[] values) throws IOException {
+		writeIntBlock(values, values.length);
+	}
+
+	/**
+	 * Writes the first <code>length</code> values of an int array as a block.
+	 */
+	public void writeIntBlock(int[] values, int length) throws IOException {
+		writeInt(length);
+		int chunk = scratch.length / 4;
+		for (int start = 0; start < length; start += chunk) {
+			int n = Math.min(chunk, length - start);
+			ByteBuffer.wrap(scratch).asIntBuffer().put(values, start, n);
+			write(scratch, 0, n * 4);
+		}
+	}
+
+	/**
+	 * Writes a block of longs.
+	 */
+	public void writeLongBlock(long[] values) throws IOException {
+		writeLongBlock(values, values.length);
+	}
+
+	/**
+	 * Writes the first <code>length</code> values of a long array as a block.
+	 */
+	public void writeLongBlock(long[] values, int length) throws IOException {
+		writeInt(length);
+		int chunk = scratch.length / 8;
+		for (int start = 0; start < length; start += chunk) {
+			int n = Math.min(chunk, length - start);
+			ByteBuffer.wrap(scratch).asLongBuffer().put(values, start, n);
+			write(scratch, 0, n * 8);
+		}
+	}
+
+	/**
+	 * Writes a block of doubles.
+	 */
+	public void writeDoubleBlock(double[] values) throws IOException {
+		writeDoubleBlock(values, values.length);
+	}
+
+	/**
+	 * Writes the first <code>length</code> values of a double array as a block.
+	 */
+	public void writeDoubleBlock(double[] values, int length) throws IOException {
+		writeInt(length);
+		int chunk = scratch.length / 8;
+		for (int start = 0; start < length; start += chunk) {
+			int n = Math.min(chunk, length - start);
+			ByteBuffer.wrap(scratch).asDoubleBuffer().put(values, start, n);
+			write(scratch, 0, n * 8);
+		}
+	}
+
+	/**
+	 * Writes a block of bytes.
+	 */
+	public void writeByteBlock(byte[] values) throws IOException {
+		writeByteBlock(values, values.length);
+	}
+
+	/**
+	 * Writes the first <code>length</code> values of a byte array as a block.
+	 */
+	public void writeByteBlock(byte[] values, int length) throws IOException {
+		writeInt(length);
+		write(values, 0, length);
+	}
+}
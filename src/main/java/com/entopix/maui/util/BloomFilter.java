@@ -0,0 +1,93 @@
+package com.entopix.maui.util;
+
+/**
+ * Bloom filter over 64 bit hashes.
+ *
+ * Answers whether a value might have been added, with no false negatives
+ * and a false positive rate close to the one it was sized for.
+ */
+public class BloomFilter {
+
+	private long[] bits;
+	private int numBits;
+	private int numHashes;
+
+	/**
+	 * Creates a filter sized for the given number of values and false positive rate.
+	 */
+	public BloomFilter(int expectedInsertions, double falsePositiveRate) {
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+		}
+		int n = Math.max(expectedInsertions, 1);
+		long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		numBits = (int) Math.min(Math.max(m, 64), Integer.MAX_VALUE - 63);
+		numHashes = Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+		bits = new long[(numBits + 63) >>> 6];
+	}
+
+	public void add(long hash) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= numHashes; i++) {
+			int combined = h1 + i * h2;
+			if (combined < 0) {
+				combined = ~combined;
+			}
+			int bit = combined % numBits;
+			bits[bit >>> 6] |= 1L << bit;
+		}
+	}
+
+	public boolean mightContain(long hash) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= numHashes; i++) {
+			int combined = h1 + i * h2;
+			if (combined < 0) {
+				combined = ~combined;
+			}
+			int bit = combined % numBits;
+			if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getNumBits() {
+		return numBits;
+	}
+
+	public int getNumHashes() {
+		return numHashes;
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of a string, followed by a final mixing step.
+	 */
+	public static long hash(CharSequence s) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < s.length(); i++) {
+			h ^= s.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return mix(h);
+	}
+
+	/**
+	 * Hash of an ordered pair of hashes.
+	 */
+	public static long hash(long first, long second) {
+		return mix(first * 0x9e3779b97f4a7c15L + second);
+	}
+
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
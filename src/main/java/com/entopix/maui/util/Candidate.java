@@ -31,6 +31,11 @@ public class Candidate {
      */
     String title;
 
+    /**
+     * Integer id of the vocabulary concept, -1 if unknown
+     */
+    int conceptId = -1;
+
     /**
      * Number of occurrences of the candidate in the document
      */
@@ -95,9 +100,18 @@ public class Candidate {
         newCandidate.firstOccurrence = this.firstOccurrence;
         newCandidate.lastOccurrence = this.lastOccurrence;
         newCandidate.fullForms = this.fullForms;
+        newCandidate.conceptId = this.conceptId;
         return newCandidate;
     }
 
+    public void setConceptId(int conceptId) {
+        this.conceptId = conceptId;
+    }
+
+    public int getConceptId() {
+        return conceptId;
+    }
+
     public void setTitle(String title) {
         this.title = title;
     }
@@ -0,0 +1,226 @@
+package com.entopix.maui.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Document frequencies, keyphrase frequencies and number of documents of
+ * a corpus or of a shard of it, so that shards can be counted in separate
+ * processes and merged into the statistics of the whole corpus.
+ *
+ * A statistics file holds the settings the phrases were extracted with,
+ * the number of documents and both frequency tables. The phrases of each
+ * table are sorted by their UTF-8 bytes, so the tables of several shards
+ * are merged with a k-way merge, adding up the counts of equal phrases.
+ */
+public class CorpusStatistics {
+
+	private static final int MAGIC = 0x4D435354;
+	public static final int FORMAT_VERSION = 1;
+
+	private String settings;
+	private int numDocs;
+	private FrequencyDictionary documentFrequencies;
+	private FrequencyDictionary keyphraseFrequencies;
+
+	/**
+	 * @param settings settings that the phrases depend on
+	 * @param numDocs number of documents
+	 * @param documentFrequencies number of documents that contain each phrase
+	 * @param keyphraseFrequencies frequency of each phrase as a given keyphrase
+	 */
+	public CorpusStatistics(String settings, int numDocs, FrequencyDictionary documentFrequencies,
+			FrequencyDictionary keyphraseFrequencies) {
+		this.settings = settings;
+		this.numDocs = numDocs;
+		this.documentFrequencies = documentFrequencies;
+		this.keyphraseFrequencies = keyphraseFrequencies;
+	}
+
+	public String getSettings() {
+		return settings;
+	}
+
+	public int getNumDocs() {
+		return numDocs;
+	}
+
+	public FrequencyDictionary getDocumentFrequencies() {
+		return documentFrequencies;
+	}
+
+	public FrequencyDictionary getKeyphraseFrequencies() {
+		return keyphraseFrequencies;
+	}
+
+	/**
+	 * Returns a checksum of the number of documents and both frequency
+	 * tables, which is stored with the feature values computed from these
+	 * statistics.
+	 */
+	public long getFingerprint() {
+		return fingerprint(numDocs, documentFrequencies, keyphraseFrequencies);
+	}
+
+	/**
+	 * Returns a checksum of the statistics of a corpus, the same as
+	 * getFingerprint of statistics with these values.
+	 */
+	public static long fingerprint(int numDocs, FrequencyDictionary documentFrequencies,
+			FrequencyDictionary keyphraseFrequencies) {
+		CRC32 checksum = new CRC32();
+		BlockOutputStream out = new BlockOutputStream(new CheckedOutputStream(new OutputStream() {
+			public void write(int b) {
+			}
+
+			public void write(byte[] b, int off, int len) {
+			}
+		}, checksum));
+		try {
+			out.writeInt(numDocs);
+			documentFrequencies.write(out);
+			keyphraseFrequencies.write(out);
+			out.flush();
+		} catch (IOException e) {
+			// nothing is written
+			throw new IllegalStateException(e);
+		}
+		return checksum.getValue();
+	}
+
+	/**
+	 * Merges the statistics of shards.
+	 *
+	 * @throws IllegalArgumentException if the shards were counted with different settings
+	 */
+	public static CorpusStatistics merge(List<CorpusStatistics> shards) {
+		if (shards.isEmpty()) {
+			throw new IllegalArgumentException("No statistics to merge");
+		}
+		String settings = shards.get(0).settings;
+		int numDocs = 0;
+		List<FrequencyDictionary> documentFrequencies = new ArrayList<FrequencyDictionary>();
+		List<FrequencyDictionary> keyphraseFrequencies = new ArrayList<FrequencyDictionary>();
+		for (CorpusStatistics shard : shards) {
+			if (!shard.settings.equals(settings)) {
+				throw new IllegalArgumentException("Statistics counted with other settings: " + shard.settings);
+			}
+			numDocs += shard.numDocs;
+			documentFrequencies.add(shard.documentFrequencies);
+			keyphraseFrequencies.add(shard.keyphraseFrequencies);
+		}
+		return new CorpusStatistics(settings, numDocs, mergeTables(documentFrequencies),
+				mergeTables(keyphraseFrequencies));
+	}
+
+	/**
+	 * The next phrase of a table, in the order of the merge.
+	 */
+	private static class Cursor implements Comparable<Cursor> {
+
+		private FrequencyDictionary dictionary;
+		private int index = -1;
+		private String phrase;
+		private byte[] bytes;
+
+		Cursor(FrequencyDictionary dictionary) {
+			this.dictionary = dictionary;
+		}
+
+		/**
+		 * Moves to the next phrase, returns false at the end of the table.
+		 */
+		boolean next() {
+			if (++index >= dictionary.size()) {
+				return false;
+			}
+			phrase = dictionary.getPhrase(index);
+			bytes = phrase.getBytes(BlockOutputStream.UTF8);
+			return true;
+		}
+
+		public int compareTo(Cursor other) {
+			return FrontCodedDictionary.UTF8_ORDER.compare(bytes, other.bytes);
+		}
+	}
+
+	private static FrequencyDictionary mergeTables(List<FrequencyDictionary> tables) {
+		PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>();
+		for (FrequencyDictionary table : tables) {
+			Cursor cursor = new Cursor(table);
+			if (cursor.next()) {
+				queue.add(cursor);
+			}
+		}
+		ArrayList<String> phrases = new ArrayList<String>();
+		int[] counts = new int[16];
+		while (!queue.isEmpty()) {
+			Cursor cursor = queue.poll();
+			String phrase = cursor.phrase;
+			byte[] bytes = cursor.bytes;
+			int count = cursor.dictionary.getCount(cursor.index);
+			if (cursor.next()) {
+				queue.add(cursor);
+			}
+			while (!queue.isEmpty() && Arrays.equals(queue.peek().bytes, bytes)) {
+				Cursor same = queue.poll();
+				count += same.dictionary.getCount(same.index);
+				if (same.next()) {
+					queue.add(same);
+				}
+			}
+			if (phrases.size() == counts.length) {
+				counts = Arrays.copyOf(counts, 2 * counts.length);
+			}
+			counts[phrases.size()] = count;
+			phrases.add(phrase);
+		}
+		return FrequencyDictionary.fromSorted(phrases, Arrays.copyOf(counts, phrases.size()));
+	}
+
+	public void write(File file) throws IOException {
+		BlockOutputStream out = new BlockOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(settings);
+			out.writeInt(numDocs);
+			documentFrequencies.write(out);
+			keyphraseFrequencies.write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a statistics file.
+	 *
+	 * @throws IOException if the file cannot be read or is not a statistics file
+	 */
+	public static CorpusStatistics read(File file) throws IOException {
+		BlockInputStream in = new BlockInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+				throw new IOException(file + " is not a corpus statistics file of version " + FORMAT_VERSION);
+			}
+			String settings = in.readUTF();
+			int numDocs = in.readInt();
+			FrequencyDictionary documentFrequencies = FrequencyDictionary.read(in);
+			FrequencyDictionary keyphraseFrequencies = FrequencyDictionary.read(in);
+			return new CorpusStatistics(settings, numDocs, documentFrequencies, keyphraseFrequencies);
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.entopix.maui.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Count-Min sketch of string counts with conservative update.
+ *
+ * Each string is hashed to one cell in each of <code>depth</code> rows of
+ * <code>width</code> cells, and its count is estimated as the smallest
+ * of these cells. Adding a count only raises the cells that are below
+ * the new estimate, which keeps the overestimates caused by collisions
+ * small. Estimates are never below the true count.
+ */
+public class CountMinSketch implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private int width;
+	private int depth;
+	/** row after row */
+	private int[] cells;
+
+	/**
+	 * @param width number of cells in each row
+	 * @param depth number of rows
+	 */
+	public CountMinSketch(int width, int depth) {
+		if (width < 1 || depth < 1) {
+			throw new IllegalArgumentException("Width and depth must be positive");
+		}
+		this.width = width;
+		this.depth = depth;
+		this.cells = new int[width * depth];
+	}
+
+	private CountMinSketch(int width, int depth, int[] cells) {
+		this.width = width;
+		this.depth = depth;
+		this.cells = cells;
+	}
+
+	/**
+	 * Adds a number of occurrences of a string.
+	 */
+	public void add(String key, int count) {
+		long hash = BloomFilter.hash(key);
+		int estimate = estimate(hash);
+		int target = estimate + count;
+		for (int row = 0; row < depth; row++) {
+			int cell = cell(hash, row);
+			if (cells[cell] < target) {
+				cells[cell] = target;
+			}
+		}
+	}
+
+	/**
+	 * Returns an estimate of the count of a string, at least its true count.
+	 */
+	public int estimate(String key) {
+		return estimate(BloomFilter.hash(key));
+	}
+
+	private int estimate(long hash) {
+		int estimate = Integer.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			estimate = Math.min(estimate, cells[cell(hash, row)]);
+		}
+		return estimate;
+	}
+
+	private int cell(long hash, int row) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		int combined = h1 + (row + 1) * h2;
+		if (combined < 0) {
+			combined = ~combined;
+		}
+		return row * width + combined % width;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public int getNumBytes() {
+		return 4 * cells.length;
+	}
+
+	public void write(BlockOutputStream out) throws IOException {
+		out.writeInt(width);
+		out.writeInt(depth);
+		out.writeIntBlock(cells);
+	}
+
+	public static CountMinSketch read(BlockInputStream in) throws IOException {
+		int width = in.readInt();
+		int depth = in.readInt();
+		return new CountMinSketch(width, depth, in.readIntBlock());
+	}
+}
@@ -2,11 +2,16 @@ package com.entopix.maui.util;
 
 import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.commons.io.FileUtils;
@@ -14,14 +19,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.filters.MauiModel;
 
 public class DataLoader {
 
 	private static final Logger log = LoggerFactory.getLogger(DataLoader.class);
 
+	/** Number of documents that streamDocuments reads ahead */
+	public static final int DEFAULT_READ_AHEAD = 32;
+
+	/** Number of threads that streamDocuments reads with */
+	public static final int DEFAULT_READ_THREADS = 2;
+
 	
     /**
-     * Loads model from a file path
+     * Loads model from a stream, in the model file format or serialized
+     * by earlier versions
      * @param modelPath
      * @return
      * @throws ClassNotFoundException 
@@ -31,9 +44,14 @@ public class DataLoader {
 		MauiFilter model = null;
 		try {
 			inStream = new BufferedInputStream(input);
-			ObjectInputStream in = new ObjectInputStream(inStream);
-			model = (MauiFilter) in.readObject();
-			in.close();
+			if (ModelFile.isModelFile(inStream)) {
+				model = MauiFilter.readModel(ModelFile.read(inStream));
+			} else {
+				// models saved by earlier versions are serialized filters
+				ObjectInputStream in = new ObjectInputStream(inStream);
+				model = (MauiFilter) in.readObject();
+				in.close();
+			}
 			inStream.close();
 			
 		} catch (IOException e) {
@@ -55,6 +73,23 @@ public class DataLoader {
 	}
 
 
+	/**
+	 * Opens a model file without reading its sections, which are read when
+	 * they are first needed. Models serialized by earlier versions cannot
+	 * be opened this way; use loadModel.
+	 * @param modelPath
+	 * @return
+	 */
+	public static MauiModel openModel(String modelPath) {
+		try {
+			return MauiModel.open(new File(modelPath));
+		} catch (IOException e) {
+			log.error("Error while opening extraction model!\n", e);
+			throw new RuntimeException();
+		}
+	}
+
+
 	/**
 	 * Loads MauiDocument objects from data in a given directory.
 	 * Assumes that each document to extract keywords from is stored as a .txt file,
@@ -64,34 +99,148 @@ public class DataLoader {
 	 */
 	public static List<MauiDocument> loadTestDocuments(String datasetPath) {
 		List<MauiDocument> testDocuments = new ArrayList<MauiDocument>();
+		for (File file : listDocumentFiles(datasetPath)) {
+			testDocuments.add(readDocument(file));
+		}
+		return testDocuments;
+	}
+
+	/**
+	 * Iterates over the documents in a given directory, in the same order and
+	 * format as loadTestDocuments, but reads each document only when it is
+	 * reached, so that the documents do not need to fit in memory.
+	 * Each iteration reads the documents again.
+	 * @param datasetPath
+	 * @return
+	 */
+	public static Iterable<MauiDocument> iterateDocuments(String datasetPath) {
+		final List<File> files = listDocumentFiles(datasetPath);
+		return new Iterable<MauiDocument>() {
+			public Iterator<MauiDocument> iterator() {
+				final Iterator<File> iterator = files.iterator();
+				return new Iterator<MauiDocument>() {
+					public boolean hasNext() {
+						return iterator.hasNext();
+					}
+
+					public MauiDocument next() {
+						return readDocument(iterator.next());
+					}
+
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
 
+	/**
+	 * Iterates over the documents in a given directory, in the same order and
+	 * format as loadTestDocuments, reading the next documents on background
+	 * threads while the current one is processed. Each iteration reads the
+	 * documents again.
+	 * The path may also be a .zip, .tar, .tar.gz or .tgz archive of such a
+	 * directory (see ArchiveDocumentReader), or a JSON Lines file, which
+	 * may be gzipped (see JsonLinesDocumentReader); their documents are
+	 * read without extracting them to disk.
+	 * Only the documents read ahead are held by the iteration itself.
+	 * @param datasetPath
+	 * @param charset the encoding of the files
+	 * @return
+	 */
+	public static Iterable<MauiDocument> streamDocuments(String datasetPath, Charset charset) {
+		return streamDocuments(datasetPath, charset, DEFAULT_READ_AHEAD, DEFAULT_READ_THREADS);
+	}
+
+	/**
+	 * Iterates over the documents in a given directory, archive or JSON Lines
+	 * file like streamDocuments, with the given number of documents read
+	 * ahead and threads reading a directory.
+	 * @param datasetPath
+	 * @param charset the encoding of the files
+	 * @param readAhead
+	 * @param numThreads
+	 * @return
+	 */
+	public static Iterable<MauiDocument> streamDocuments(String datasetPath, Charset charset,
+			int readAhead, int numThreads) {
+		File dataset = new File(datasetPath);
+		if (dataset.isFile() && ArchiveDocumentReader.isArchive(dataset)) {
+			return new ArchiveDocumentReader(dataset, charset, readAhead, ArchiveDocumentReader.DEFAULT_MAX_PENDING);
+		}
+		if (dataset.isFile() && JsonLinesDocumentReader.isJsonLines(dataset)) {
+			return new JsonLinesDocumentReader(dataset, charset, readAhead);
+		}
+		return new PrefetchingDocumentReader(listDocumentFiles(datasetPath), charset, readAhead, numThreads);
+	}
+
+	private static List<File> listDocumentFiles(String datasetPath) {
 		File datasetDir = new File(datasetPath);
 		if (!datasetDir.exists()) {
 			log.error("Directory " + datasetDir.getAbsolutePath() + " not found!");
 			throw new RuntimeException();
 		}
 
+		List<File> files = new ArrayList<File>();
 		for (File file : datasetDir.listFiles()) {
-			if (!file.getName().endsWith(".txt")) {
-				continue;
+			if (file.getName().endsWith(".txt")) {
+				files.add(file);
 			}
-			try {
-				String textContent = FileUtils.readFileToString(file);
-				File keyFile = new File(file.getAbsoluteFile().toString().replace(".txt", ".key"));
-				String manualTopics = "";
-				if (keyFile.exists()) {
-					manualTopics = FileUtils.readFileToString(keyFile);
-				}
-				MauiDocument testDocument = new MauiDocument(file.getName(), file.getAbsolutePath(), textContent, manualTopics);
-				testDocuments.add(testDocument);
+		}
+		return files;
+	}
 
-			} catch (IOException e) {
-				log.error("Error while loading documents: " + e.getMessage());
-				throw new RuntimeException();
+	private static MauiDocument readDocument(File file) {
+		return readDocument(file, Charset.defaultCharset());
+	}
+
+	/**
+	 * Reads a document and its keyphrases, decoding them with the given charset.
+	 */
+	static MauiDocument readDocument(File file, Charset charset) {
+		try {
+			String textContent = readFile(file, charset);
+			File keyFile = new File(file.getAbsoluteFile().toString().replace(".txt", ".key"));
+			String manualTopics = "";
+			if (keyFile.exists()) {
+				manualTopics = readFile(keyFile, charset);
 			}
+			return new MauiDocument(file.getName(), file.getAbsolutePath(), textContent, manualTopics);
+
+		} catch (IOException e) {
+			log.error("Error while loading documents: " + e.getMessage());
+			throw new RuntimeException();
 		}
+	}
 
-		return testDocuments;
+	/**
+	 * Reads a whole file with a single channel read and decodes it.
+	 */
+	private static String readFile(File file, Charset charset) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+				// a read may return fewer bytes than requested
+			}
+			buffer.flip();
+			return charset.decode(buffer).toString();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the charset of a document encoding option, where "default"
+	 * is the platform default.
+	 */
+	public static Charset getCharset(String documentEncoding) {
+		if (documentEncoding == null || documentEncoding.equals("default")) {
+			return Charset.defaultCharset();
+		}
+		return Charset.forName(documentEncoding);
 	}
 
 	public static List<IndexerTopics> readIndexersTopics(String pathToIndexersDirs) {
@@ -18,15 +18,29 @@ public class Evaluator {
 
 
 	public static double[] evaluateTopics(List<MauiTopics> allDocumentsTopics) {
+		Accumulator evaluation = new Accumulator();
+		for (MauiTopics documentTopics : allDocumentsTopics) {
+			evaluation.add(documentTopics);
+		}
+		return evaluation.report();
+	}
 
-		double[] PRF = null;
+	/**
+	 * Collects the number of correct topics, the precision and the recall
+	 * of one document at a time, so that the topics of all documents need
+	 * not be kept until they are evaluated.
+	 */
+	public static class Accumulator {
 
-		double[] correctStatistics = new double[allDocumentsTopics.size()];
-		double[] precisionStatistics = new double[allDocumentsTopics.size()];
-		double[] recallStatistics = new double[allDocumentsTopics.size()];
+		private static final int CORRECT = 0;
+		private static final int PRECISION = 1;
+		private static final int RECALL = 2;
 
-		int i = 0;
-		for (MauiTopics documentTopics : allDocumentsTopics) {
+		private int numDocuments = 0;
+		private double[] sums = new double[3];
+		private double[] sumsSquared = new double[3];
+
+		public void add(MauiTopics documentTopics) {
 
 			log.debug("Document " + documentTopics.getFilePath());
 
@@ -40,62 +54,85 @@ public class Evaluator {
 
 			if (numExtracted > 0 && documentTopics.getPossibleCorrect() > 0) {
 				log.debug("-- " + numCorrect + " correct");
-				correctStatistics[i] = numCorrect;
-				precisionStatistics[i] = numCorrect / numExtracted;				
-				recallStatistics[i] = numCorrect / documentTopics.getPossibleCorrect();
-
-			} else {
-				correctStatistics[i] = 0.0;
-				precisionStatistics[i] = 0.0;	
-				recallStatistics[i] = 0.0;
+				add(CORRECT, numCorrect);
+				add(PRECISION, numCorrect / numExtracted);
+				add(RECALL, numCorrect / documentTopics.getPossibleCorrect());
 			}
-			i++;
+			numDocuments++;
 		}
 
-		if (correctStatistics.length != 0) {
-
+		private void add(int statistic, double value) {
+			sums[statistic] += value;
+			sumsSquared[statistic] += value * value;
+		}
 
-			double avg = Utils.mean(correctStatistics);
-			double stdDev = Math.sqrt(Utils.variance(correctStatistics));
+		public int getNumDocuments() {
+			return numDocuments;
+		}
 
-			if (correctStatistics.length == 1) {
-				log.info("\n-- Evaluation results based on 1 document:");
+		private double mean(int statistic) {
+			return sums[statistic] / numDocuments;
+		}
 
-			} else {
-				log.info("\n-- Evaluation results based on " + correctStatistics.length + " documents:");
+		/**
+		 * Returns the standard deviation, computed as Utils.variance does.
+		 */
+		private double stdDev(int statistic) {
+			if (numDocuments <= 1) {
+				return 0;
 			}
-			log.info("Avg. number of correct keyphrases per document: "
-					+ Utils.doubleToString(avg, 2) + " +/- "
-					+ Utils.doubleToString(stdDev, 2));
+			double variance = (sumsSquared[statistic] - sums[statistic] * sums[statistic] / numDocuments)
+					/ (numDocuments - 1);
+			return variance < 0 ? 0 : Math.sqrt(variance);
+		}
 
+		/**
+		 * Logs the evaluation results and returns the precision, recall and
+		 * F-measure, or null if no document was added.
+		 */
+		public double[] report() {
 
-			double avgPrecision = Utils.mean(precisionStatistics);
-			double stdDevPrecision = Math.sqrt(Utils.variance(precisionStatistics));
+			double[] PRF = null;
 
-			log.info("Precision: "
-					+ Utils.doubleToString(avgPrecision * 100, 2) + " +/- "
-					+ Utils.doubleToString(stdDevPrecision * 100, 2));
+			if (numDocuments != 0) {
 
+				if (numDocuments == 1) {
+					log.info("\n-- Evaluation results based on 1 document:");
 
-			double avgRecall = Utils.mean(recallStatistics);
-			double stdDevRecall = Math.sqrt(Utils.variance(recallStatistics));
+				} else {
+					log.info("\n-- Evaluation results based on " + numDocuments + " documents:");
+				}
+				log.info("Avg. number of correct keyphrases per document: "
+						+ Utils.doubleToString(mean(CORRECT), 2) + " +/- "
+						+ Utils.doubleToString(stdDev(CORRECT), 2));
 
-			log.info("Recall: "
-					+ Utils.doubleToString(avgRecall * 100, 2) + " +/- "
-					+ Utils.doubleToString(stdDevRecall * 100, 2));
 
-			double fMeasure = 0.0;
-			if (avgPrecision > 0 && avgRecall > 0) {
-				fMeasure = 2 * avgRecall * avgPrecision / (avgRecall + avgPrecision);
-			}
+				double avgPrecision = mean(PRECISION);
+
+				log.info("Precision: "
+						+ Utils.doubleToString(avgPrecision * 100, 2) + " +/- "
+						+ Utils.doubleToString(stdDev(PRECISION) * 100, 2));
 
-			PRF = new double[] {avgPrecision, avgRecall, fMeasure};
 
-			log.info("F-Measure: " + Utils.doubleToString(fMeasure * 100, 2));
+				double avgRecall = mean(RECALL);
 
-			log.info("");
+				log.info("Recall: "
+						+ Utils.doubleToString(avgRecall * 100, 2) + " +/- "
+						+ Utils.doubleToString(stdDev(RECALL) * 100, 2));
+
+				double fMeasure = 0.0;
+				if (avgPrecision > 0 && avgRecall > 0) {
+					fMeasure = 2 * avgRecall * avgPrecision / (avgRecall + avgPrecision);
+				}
+
+				PRF = new double[] {avgPrecision, avgRecall, fMeasure};
+
+				log.info("F-Measure: " + Utils.doubleToString(fMeasure * 100, 2));
+
+				log.info("");
+			}
+			return PRF;
 		}
-		return PRF;
 	}
 
 
@@ -0,0 +1,224 @@
+package com.entopix.maui.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counts strings with a bounded number of counts in memory.
+ *
+ * Counts are collected in memory until there are a given number of
+ * distinct strings, and are then written to a temporary file, sorted by
+ * string. At the end, the sorted runs are merged and the counts of each
+ * string are added up.
+ */
+public class ExternalCounter {
+
+	private static final Logger log = LoggerFactory.getLogger(ExternalCounter.class);
+
+	private File directory;
+	private int maxEntriesInMemory;
+
+	private HashMap<String, Counter> counts = new HashMap<String, Counter>();
+	private ArrayList<File> runs = new ArrayList<File>();
+
+	/**
+	 * @param directory directory for the temporary files, or null for the default one
+	 * @param maxEntriesInMemory number of distinct strings counted in memory before they are spilled
+	 */
+	public ExternalCounter(File directory, int maxEntriesInMemory) {
+		this.directory = directory;
+		this.maxEntriesInMemory = maxEntriesInMemory;
+	}
+
+	/**
+	 * Adds a number of occurrences of a string.
+	 */
+	public void add(String key, int count) {
+		Counter counter = counts.get(key);
+		if (counter == null) {
+			counts.put(key, new Counter(count));
+			if (counts.size() >= maxEntriesInMemory) {
+				spill();
+			}
+		} else {
+			counter.increment(count);
+		}
+	}
+
+	/**
+	 * Returns the number of sorted runs written to disk so far.
+	 */
+	public int getNumRuns() {
+		return runs.size();
+	}
+
+	/**
+	 * Takes over the counts of another counter, spilling those it still
+	 * has in memory, so that they are merged with the counts of this one.
+	 */
+	public void addRuns(ExternalCounter other) {
+		if (!other.counts.isEmpty()) {
+			other.spill();
+		}
+		runs.addAll(other.runs);
+		other.runs.clear();
+	}
+
+	/**
+	 * Writes the counts in memory to disk as a sorted run.
+	 */
+	public void spill() {
+		if (counts.isEmpty()) {
+			return;
+		}
+		try {
+			File run = File.createTempFile("maui_counts", ".run", directory);
+			run.deleteOnExit();
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+			try {
+				for (Map.Entry<String, Counter> entry : new TreeMap<String, Counter>(counts).entrySet()) {
+					out.writeUTF(entry.getKey());
+					out.writeInt(entry.getValue().value());
+				}
+			} finally {
+				out.close();
+			}
+			runs.add(run);
+		} catch (IOException e) {
+			log.error("Error while writing counts to " + directory, e);
+			throw new RuntimeException();
+		}
+		counts = new HashMap<String, Counter>();
+	}
+
+	/**
+	 * The next string and count of a sorted run.
+	 */
+	private static class Run implements Comparable<Run> {
+
+		private DataInputStream in;
+		private String key;
+		private int count;
+
+		Run(File file) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		}
+
+		/**
+		 * Reads the next string, returns false at the end of the run.
+		 */
+		boolean next() throws IOException {
+			try {
+				key = in.readUTF();
+			} catch (EOFException e) {
+				in.close();
+				return false;
+			}
+			count = in.readInt();
+			return true;
+		}
+
+		public int compareTo(Run other) {
+			return key.compareTo(other.key);
+		}
+	}
+
+	/**
+	 * Merges the sorted runs and returns the total count of each string.
+	 * The temporary files are deleted.
+	 */
+	public HashMap<String, Counter> merge() {
+		return merge(0, null);
+	}
+
+	/**
+	 * Merges the sorted runs and returns the total count of each string
+	 * that occurs at least minCount times. The counts of the other strings
+	 * are added to the sketch, so that they are never all in memory.
+	 * The temporary files are deleted.
+	 *
+	 * @param minCount smallest count returned exactly
+	 * @param sketch sketch for the smaller counts, or null if minCount is 0
+	 */
+	public HashMap<String, Counter> merge(int minCount, CountMinSketch sketch) {
+		if (runs.isEmpty() && sketch == null) {
+			return counts;
+		}
+		if (runs.isEmpty()) {
+			HashMap<String, Counter> results = new HashMap<String, Counter>();
+			for (Map.Entry<String, Counter> entry : counts.entrySet()) {
+				put(results, entry.getKey(), entry.getValue().value(), minCount, sketch);
+			}
+			counts = new HashMap<String, Counter>();
+			return results;
+		}
+		if (!counts.isEmpty()) {
+			spill();
+		}
+		HashMap<String, Counter> results = new HashMap<String, Counter>();
+		PriorityQueue<Run> queue = new PriorityQueue<Run>();
+		try {
+			try {
+				for (File file : runs) {
+					Run run = new Run(file);
+					if (run.next()) {
+						queue.add(run);
+					}
+				}
+				while (!queue.isEmpty()) {
+					Run run = queue.poll();
+					String key = run.key;
+					int count = run.count;
+					if (run.next()) {
+						queue.add(run);
+					}
+					while (!queue.isEmpty() && queue.peek().key.equals(key)) {
+						Run same = queue.poll();
+						count += same.count;
+						if (same.next()) {
+							queue.add(same);
+						}
+					}
+					put(results, key, count, minCount, sketch);
+				}
+			} finally {
+				for (Run run : queue) {
+					run.in.close();
+				}
+			}
+		} catch (IOException e) {
+			log.error("Error while merging counts in " + directory, e);
+			throw new RuntimeException();
+		} finally {
+			for (File file : runs) {
+				file.delete();
+			}
+			runs.clear();
+		}
+		return results;
+	}
+
+	private static void put(HashMap<String, Counter> results, String key, int count,
+			int minCount, CountMinSketch sketch) {
+		if (count >= minCount) {
+			results.put(key, new Counter(count));
+		} else {
+			sketch.add(key, count);
+		}
+	}
+}
@@ -0,0 +1,328 @@
+package com.entopix.maui.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Feature values of the training candidates of a corpus, stored by column,
+ * so that models can be built again without extracting candidates and
+ * computing features, e.g. with another classifier or fewer features.
+ *
+ * A cache file holds the settings it was computed with, the document
+ * frequencies (with the sketch of the rare ones, if the model has one)
+ * and keyphrase frequencies of the corpus with a checksum of them and the
+ * number of documents, the document of each
+ * candidate, and a block for the weights and for each feature column,
+ * the last of which is the class. A bit mask records which
+ * features were computed; the others are zero. Columns that are not
+ * needed are skipped when reading.
+ *
+ * The columns are written to temporary files while the candidates are
+ * added, and are joined into the cache file when it is closed. The cache
+ * file is written next to its final path and renamed only once it is
+ * complete, so that a cache that is rewritten, e.g. by a model update,
+ * is kept if writing fails.
+ */
+public class FeatureCache {
+
+	private static final Logger log = LoggerFactory.getLogger(FeatureCache.class);
+
+	private static final int MAGIC = 0x4D464343;
+	public static final int FORMAT_VERSION = 4;
+
+	private String settings;
+	private long computedColumns;
+	private int numDocs;
+	private long statisticsFingerprint;
+	private String[] documents;
+	private int[] documentOfRow;
+	private double[] weights;
+	/** null for the columns that were skipped */
+	private double[][] columns;
+	private FrequencyDictionary globalDictionary;
+	private CountMinSketch documentFrequencySketch;
+	private FrequencyDictionary keyphraseDictionary;
+
+	/**
+	 * Writes a cache file.
+	 */
+	public static class Writer {
+
+		private File file;
+		private String settings;
+		private long computedColumns;
+		private int numColumns;
+		private int numRows = 0;
+
+		private ArrayList<String> documents = new ArrayList<String>();
+		/** temporary files of the document column, the weights and the feature columns */
+		private File[] columnFiles;
+		private DataOutputStream[] columnOuts;
+
+		/**
+		 * @param file the cache file
+		 * @param settings settings the features depend on
+		 * @param numColumns number of feature columns, including the class
+		 * @param computedColumns bit mask of the computed columns
+		 */
+		public Writer(File file, String settings, int numColumns, long computedColumns) {
+			this.file = file;
+			this.settings = settings;
+			this.numColumns = numColumns;
+			this.computedColumns = computedColumns;
+			columnFiles = new File[numColumns + 2];
+			columnOuts = new DataOutputStream[numColumns + 2];
+			try {
+				for (int i = 0; i < columnFiles.length; i++) {
+					columnFiles[i] = File.createTempFile("maui_column", ".bin", file.getAbsoluteFile().getParentFile());
+					columnFiles[i].deleteOnExit();
+					columnOuts[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(columnFiles[i])));
+				}
+			} catch (IOException e) {
+				delete();
+				log.error("Error while creating feature cache " + file, e);
+				throw new RuntimeException();
+			}
+		}
+
+		/**
+		 * Starts a document, whose candidates are added next.
+		 */
+		public void addDocument(String id) {
+			documents.add(id);
+		}
+
+		/**
+		 * Adds a candidate of the last document.
+		 */
+		public void add(double weight, double[] values) {
+			try {
+				columnOuts[0].writeInt(documents.size() - 1);
+				columnOuts[1].writeDouble(weight);
+				for (int i = 0; i < numColumns; i++) {
+					columnOuts[i + 2].writeDouble(values[i]);
+				}
+			} catch (IOException e) {
+				delete();
+				log.error("Error while writing feature cache " + file, e);
+				throw new RuntimeException();
+			}
+			numRows++;
+		}
+
+		/**
+		 * Writes the cache file with the dictionaries of the corpus
+		 * and deletes the temporary files. The cache file is replaced
+		 * only once it has been written completely.
+		 */
+		public void close(int numDocs, FrequencyDictionary globalDictionary,
+				CountMinSketch documentFrequencySketch, FrequencyDictionary keyphraseDictionary) {
+			File partFile = null;
+			try {
+				for (DataOutputStream out : columnOuts) {
+					out.close();
+				}
+				partFile = File.createTempFile(file.getName(), ".part", file.getAbsoluteFile().getParentFile());
+				BlockOutputStream out = new BlockOutputStream(new BufferedOutputStream(new FileOutputStream(partFile)));
+				try {
+					out.writeInt(MAGIC);
+					out.writeInt(FORMAT_VERSION);
+					out.writeUTF(settings);
+					out.writeLong(computedColumns);
+					out.writeInt(numDocs);
+					out.writeLong(CorpusStatistics.fingerprint(numDocs, globalDictionary, keyphraseDictionary));
+					out.writeInt(numColumns);
+					out.writeStringBlock(documents);
+					globalDictionary.write(out);
+					out.writeBoolean(documentFrequencySketch != null);
+					if (documentFrequencySketch != null) {
+						documentFrequencySketch.write(out);
+					}
+					keyphraseDictionary.write(out);
+					// each temporary file is the body of an int or double block
+					for (File columnFile : columnFiles) {
+						out.writeInt(numRows);
+						InputStream in = new BufferedInputStream(new FileInputStream(columnFile));
+						try {
+							byte[] buffer = new byte[8192];
+							int n;
+							while ((n = in.read(buffer)) != -1) {
+								out.write(buffer, 0, n);
+							}
+						} finally {
+							in.close();
+						}
+					}
+				} finally {
+					out.close();
+				}
+				replace(partFile, file);
+			} catch (IOException e) {
+				if (partFile != null) {
+					partFile.delete();
+				}
+				log.error("Error while writing feature cache " + file, e);
+				throw new RuntimeException();
+			} finally {
+				delete();
+			}
+			log.info("Wrote " + numRows + " candidates of " + documents.size() + " documents to " + file);
+		}
+
+		/**
+		 * Renames a completely written file over the file it replaces.
+		 */
+		private static void replace(File source, File target) throws IOException {
+			if (source.renameTo(target)) {
+				return;
+			}
+			// some platforms do not rename over an existing file
+			if (!target.delete() || !source.renameTo(target)) {
+				throw new IOException("Cannot rename " + source + " to " + target);
+			}
+		}
+
+		/**
+		 * Deletes the temporary files without writing the cache file.
+		 */
+		public void delete() {
+			for (int i = 0; i < columnFiles.length; i++) {
+				try {
+					if (columnOuts[i] != null) {
+						columnOuts[i].close();
+					}
+				} catch (IOException e) {
+					log.warn("Error while closing " + columnFiles[i]);
+				}
+				if (columnFiles[i] != null) {
+					columnFiles[i].delete();
+				}
+			}
+		}
+	}
+
+	private FeatureCache() {
+	}
+
+	/**
+	 * Reads a cache file.
+	 *
+	 * @param file the cache file
+	 * @param neededColumns bit mask of the feature columns to read, the class column is always read
+	 * @throws IOException if the file cannot be read or is not a feature cache
+	 */
+	public static FeatureCache read(File file, long neededColumns) throws IOException {
+		BlockInputStream in = new BlockInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+				throw new IOException(file + " is not a feature cache of version " + FORMAT_VERSION);
+			}
+			FeatureCache cache = new FeatureCache();
+			cache.settings = in.readUTF();
+			cache.computedColumns = in.readLong();
+			cache.numDocs = in.readInt();
+			cache.statisticsFingerprint = in.readLong();
+			int numColumns = in.readInt();
+			cache.documents = in.readStringBlock();
+			cache.globalDictionary = FrequencyDictionary.read(in);
+			if (in.readBoolean()) {
+				cache.documentFrequencySketch = CountMinSketch.read(in);
+			}
+			cache.keyphraseDictionary = FrequencyDictionary.read(in);
+			cache.documentOfRow = in.readIntBlock();
+			cache.weights = in.readDoubleBlock();
+			cache.columns = new double[numColumns][];
+			for (int i = 0; i < numColumns; i++) {
+				if (i == numColumns - 1 || (neededColumns & (1L << i)) != 0) {
+					cache.columns[i] = in.readDoubleBlock();
+				} else {
+					in.skipLongBlock();
+				}
+			}
+			return cache;
+		} finally {
+			in.close();
+		}
+	}
+
+	public String getSettings() {
+		return settings;
+	}
+
+	/**
+	 * Returns the bit mask of the columns whose features were computed.
+	 */
+	public long getComputedColumns() {
+		return computedColumns;
+	}
+
+	public int getNumDocs() {
+		return numDocs;
+	}
+
+	/**
+	 * Returns the checksum of the statistics the features were computed
+	 * with, see CorpusStatistics.getFingerprint.
+	 */
+	public long getStatisticsFingerprint() {
+		return statisticsFingerprint;
+	}
+
+	public int numRows() {
+		return weights.length;
+	}
+
+	public int numColumns() {
+		return columns.length;
+	}
+
+	/**
+	 * Returns the id of the document of a candidate.
+	 */
+	public String getDocument(int row) {
+		return documents[documentOfRow[row]];
+	}
+
+	public double getWeight(int row) {
+		return weights[row];
+	}
+
+	/**
+	 * Returns the values of a candidate, with zeros in the columns that were not read.
+	 */
+	public double[] getValues(int row) {
+		double[] values = new double[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i] != null) {
+				values[i] = columns[i][row];
+			}
+		}
+		return values;
+	}
+
+	public FrequencyDictionary getGlobalDictionary() {
+		return globalDictionary;
+	}
+
+	/**
+	 * Returns the sketch of the document frequencies that are not in the
+	 * global dictionary, or null if they were all counted exactly.
+	 */
+	public CountMinSketch getDocumentFrequencySketch() {
+		return documentFrequencySketch;
+	}
+
+	public FrequencyDictionary getKeyphraseDictionary() {
+		return keyphraseDictionary;
+	}
+}
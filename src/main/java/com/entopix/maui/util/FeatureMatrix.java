@@ -0,0 +1,142 @@
+package com.entopix.maui.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Rows of feature values written to a temporary file, to be read back
+ * into memory as Weka instances once all rows are known.
+ *
+ * Each row is stored as its weight, a bit mask of its non-zero columns
+ * and the values of these columns only, since most features of most
+ * candidates are zero.
+ */
+public class FeatureMatrix {
+
+	private static final Logger log = LoggerFactory.getLogger(FeatureMatrix.class);
+
+	private File file;
+	private int numColumns;
+	private int numRows = 0;
+	private DataOutputStream out;
+
+	/**
+	 * @param directory directory for the temporary file, or null for the default one
+	 * @param numColumns number of values of each row, at most 64
+	 */
+	public FeatureMatrix(File directory, int numColumns) {
+		if (numColumns > 64) {
+			throw new IllegalArgumentException("At most 64 columns are supported");
+		}
+		this.numColumns = numColumns;
+		try {
+			file = File.createTempFile("maui_features", ".bin", directory);
+			file.deleteOnExit();
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		} catch (IOException e) {
+			log.error("Error while creating feature matrix in " + directory, e);
+			throw new RuntimeException();
+		}
+	}
+
+	/**
+	 * Appends a row.
+	 */
+	public void add(double weight, double[] values) {
+		long nonZero = 0;
+		for (int i = 0; i < numColumns; i++) {
+			// keeps -0.0 and NaN
+			if (Double.doubleToRawLongBits(values[i]) != 0) {
+				nonZero |= 1L << i;
+			}
+		}
+		try {
+			out.writeDouble(weight);
+			out.writeLong(nonZero);
+			for (int i = 0; i < numColumns; i++) {
+				if ((nonZero & (1L << i)) != 0) {
+					out.writeDouble(values[i]);
+				}
+			}
+		} catch (IOException e) {
+			log.error("Error while writing feature matrix " + file, e);
+			throw new RuntimeException();
+		}
+		numRows++;
+	}
+
+	public int numRows() {
+		return numRows;
+	}
+
+	/**
+	 * Returns the size of the temporary file.
+	 */
+	public long getNumBytes() {
+		return file.length();
+	}
+
+	/**
+	 * Adds the rows to a data set, in the order they were added, and deletes
+	 * the temporary file. If sampleRate is below 1, each row is only added
+	 * with that probability.
+	 *
+	 * @param data data set with numColumns attributes
+	 * @param sampleRate fraction of the rows to add
+	 * @param seed seed of the random sample
+	 */
+	public void readInto(Instances data, double sampleRate, long seed) {
+		Random random = new Random(seed);
+		try {
+			out.close();
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				for (int row = 0; row < numRows; row++) {
+					double weight = in.readDouble();
+					long nonZero = in.readLong();
+					double[] values = new double[numColumns];
+					for (int i = 0; i < numColumns; i++) {
+						if ((nonZero & (1L << i)) != 0) {
+							values[i] = in.readDouble();
+						}
+					}
+					if (sampleRate >= 1 || random.nextDouble() < sampleRate) {
+						data.add(new Instance(weight, values));
+					}
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			log.error("Error while reading feature matrix " + file, e);
+			throw new RuntimeException();
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Deletes the temporary file without reading it.
+	 */
+	public void delete() {
+		try {
+			out.close();
+		} catch (IOException e) {
+			log.warn("Error while closing feature matrix " + file);
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,132 @@
+package com.entopix.maui.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable table of phrase counts, such as the document frequencies and
+ * keyphrase frequencies of a model's training corpus.
+ *
+ * The phrases are kept in a {@link FrontCodedDictionary} and their counts
+ * in an int array indexed by the number of the phrase, instead of a
+ * HashMap with a String key and a Counter for each phrase. When a model
+ * is serialized, the table is written as a single byte array.
+ */
+public class FrequencyDictionary implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private transient FrontCodedDictionary phrases;
+	private transient int[] counts;
+
+	private FrequencyDictionary(FrontCodedDictionary phrases, int[] counts) {
+		this.phrases = phrases;
+		this.counts = counts;
+	}
+
+	/**
+	 * Builds the table of the given counts. A null phrase, which the
+	 * HashMaps of models trained by earlier versions may hold for
+	 * keyphrases made only of stopwords, is left out.
+	 */
+	public static FrequencyDictionary freeze(Map<String, Counter> frequencies) {
+		Set<String> keys = frequencies.keySet();
+		if (keys.contains(null)) {
+			keys = new HashSet<String>(keys);
+			keys.remove(null);
+		}
+		FrontCodedDictionary phrases = FrontCodedDictionary.build(keys);
+		int[] counts = new int[phrases.size()];
+		for (Map.Entry<String, Counter> entry : frequencies.entrySet()) {
+			if (entry.getKey() != null) {
+				counts[phrases.indexOf(entry.getKey())] = entry.getValue().value();
+			}
+		}
+		return new FrequencyDictionary(phrases, counts);
+	}
+
+	/**
+	 * Builds the table of distinct phrases that are already in the order
+	 * of their UTF-8 bytes, with their counts.
+	 */
+	static FrequencyDictionary fromSorted(List<String> phrases, int[] counts) {
+		FrontCodedDictionary dictionary = FrontCodedDictionary.build(phrases);
+		if (dictionary.size() != phrases.size()) {
+			throw new IllegalArgumentException("Phrases are not distinct");
+		}
+		return new FrequencyDictionary(dictionary, counts);
+	}
+
+	/**
+	 * Returns the count of a phrase, or 0 if it is not in the table.
+	 */
+	public int get(String phrase) {
+		int index = phrases.indexOf(phrase);
+		return index == -1 ? 0 : counts[index];
+	}
+
+	public int size() {
+		return counts.length;
+	}
+
+	/**
+	 * Returns the phrase with the given number; phrases are numbered in the order of their UTF-8 bytes.
+	 */
+	public String getPhrase(int index) {
+		return phrases.get(index);
+	}
+
+	/**
+	 * Returns the count of the phrase with the given number.
+	 */
+	public int getCount(int index) {
+		return counts[index];
+	}
+
+	/**
+	 * Returns the counts as a map that can be changed and frozen again.
+	 */
+	public HashMap<String, Counter> toHashMap() {
+		HashMap<String, Counter> frequencies = new HashMap<String, Counter>(counts.length * 4 / 3 + 1);
+		for (int i = 0; i < counts.length; i++) {
+			frequencies.put(phrases.get(i), new Counter(counts[i]));
+		}
+		return frequencies;
+	}
+
+	public void write(BlockOutputStream out) throws IOException {
+		phrases.write(out);
+		out.writeIntBlock(counts);
+	}
+
+	public static FrequencyDictionary read(BlockInputStream in) throws IOException {
+		FrontCodedDictionary phrases = FrontCodedDictionary.read(in);
+		int[] counts = in.readIntBlock();
+		return new FrequencyDictionary(phrases, counts);
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BlockOutputStream blockOut = new BlockOutputStream(bytes);
+		write(blockOut);
+		blockOut.flush();
+		out.defaultWriteObject();
+		out.writeObject(bytes.toByteArray());
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		BlockInputStream blockIn = new BlockInputStream(new ByteArrayInputStream((byte[]) in.readObject()));
+		phrases = FrontCodedDictionary.read(blockIn);
+		counts = blockIn.readIntBlock();
+	}
+}
@@ -0,0 +1,226 @@
+package com.entopix.maui.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * Immutable dictionary of distinct strings, front-coded in blocks.
+ *
+ * The strings are sorted by their UTF-8 bytes and numbered in that
+ * order. Within each block of {@link #BLOCK_SIZE} strings, the first
+ * string is stored in full and every following one as the length of the
+ * prefix it shares with its predecessor plus the remaining bytes. Sorted
+ * URIs and labels share long prefixes, so this takes a fraction of the
+ * memory of separate String objects.
+ *
+ * The string with a given number is decoded from its block, and the number
+ * of a string is found with a binary search over the first strings of the
+ * blocks followed by a scan of one block, without creating any strings.
+ */
+public class FrontCodedDictionary extends AbstractList<String> {
+
+	public static final int BLOCK_SIZE = 16;
+
+	/** Order of the strings, by their UTF-8 bytes */
+	static final Comparator<byte[]> UTF8_ORDER = new Comparator<byte[]>() {
+		public int compare(byte[] a, byte[] b) {
+			return FrontCodedDictionary.compare(a, 0, a.length, b);
+		}
+	};
+
+	private int size;
+	/** front-coded blocks */
+	private byte[] data;
+	/** start of each block in data */
+	private int[] blocks;
+
+	private FrontCodedDictionary(int size, byte[] data, int[] blocks) {
+		this.size = size;
+		this.data = data;
+		this.blocks = blocks;
+	}
+
+	/**
+	 * Builds the dictionary of the given strings. Repeated strings are stored once.
+	 */
+	public static FrontCodedDictionary build(Collection<String> strings) {
+		byte[][] encoded = new byte[strings.size()][];
+		int n = 0;
+		for (String s : strings) {
+			encoded[n++] = s.getBytes(BlockOutputStream.UTF8);
+		}
+		Arrays.sort(encoded, UTF8_ORDER);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int[] blocks = new int[(n + BLOCK_SIZE - 1) / BLOCK_SIZE];
+		int size = 0;
+		byte[] previous = null;
+		for (int i = 0; i < n; i++) {
+			byte[] current = encoded[i];
+			if (previous != null && UTF8_ORDER.compare(previous, current) == 0) {
+				continue;
+			}
+			if (size % BLOCK_SIZE == 0) {
+				blocks[size / BLOCK_SIZE] = out.size();
+				writeVarInt(out, current.length);
+				out.write(current, 0, current.length);
+			} else {
+				int prefix = 0;
+				int max = Math.min(previous.length, current.length);
+				while (prefix < max && previous[prefix] == current[prefix]) {
+					prefix++;
+				}
+				writeVarInt(out, prefix);
+				writeVarInt(out, current.length - prefix);
+				out.write(current, prefix, current.length - prefix);
+			}
+			previous = current;
+			size++;
+		}
+		return new FrontCodedDictionary(size, out.toByteArray(),
+				Arrays.copyOf(blocks, (size + BLOCK_SIZE - 1) / BLOCK_SIZE));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the string with the given number.
+	 */
+	public String get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+		int[] position = {blocks[index / BLOCK_SIZE]};
+		int length = readVarInt(data, position);
+		byte[] buffer = new byte[Math.max(length, 64)];
+		System.arraycopy(data, position[0], buffer, 0, length);
+		position[0] += length;
+		for (int i = 0; i < index % BLOCK_SIZE; i++) {
+			int prefix = readVarInt(data, position);
+			int suffix = readVarInt(data, position);
+			length = prefix + suffix;
+			if (length > buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.max(length, 2 * buffer.length));
+			}
+			System.arraycopy(data, position[0], buffer, prefix, suffix);
+			position[0] += suffix;
+		}
+		return new String(buffer, 0, length, BlockOutputStream.UTF8);
+	}
+
+	/**
+	 * Returns the number of the string, or -1 if it is not in the dictionary.
+	 */
+	public int indexOf(Object o) {
+		if (!(o instanceof String) || size == 0) {
+			return -1;
+		}
+		byte[] key = ((String) o).getBytes(BlockOutputStream.UTF8);
+
+		// last block whose first string is not greater than the key
+		int low = 0;
+		int high = blocks.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			int[] position = {blocks[mid]};
+			int length = readVarInt(data, position);
+			if (compare(data, position[0], length, key) <= 0) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+
+		int[] position = {blocks[low]};
+		int length = readVarInt(data, position);
+		byte[] buffer = new byte[Math.max(length, key.length)];
+		System.arraycopy(data, position[0], buffer, 0, length);
+		position[0] += length;
+		int end = Math.min(size, (low + 1) * BLOCK_SIZE);
+		for (int index = low * BLOCK_SIZE; index < end; index++) {
+			if (index > low * BLOCK_SIZE) {
+				int prefix = readVarInt(data, position);
+				int suffix = readVarInt(data, position);
+				length = prefix + suffix;
+				if (length > buffer.length) {
+					buffer = Arrays.copyOf(buffer, Math.max(length, 2 * buffer.length));
+				}
+				System.arraycopy(data, position[0], buffer, prefix, suffix);
+				position[0] += suffix;
+			}
+			int c = compare(buffer, 0, length, key);
+			if (c == 0) {
+				return index;
+			}
+			if (c > 0) {
+				break;
+			}
+		}
+		return -1;
+	}
+
+	public boolean contains(Object o) {
+		return indexOf(o) != -1;
+	}
+
+	/**
+	 * Returns the number of bytes taken by the front-coded strings.
+	 */
+	public int getNumBytes() {
+		return data.length + 4 * blocks.length;
+	}
+
+	/**
+	 * Compares the bytes at an offset of an array with a key, as unsigned bytes.
+	 */
+	private static int compare(byte[] bytes, int offset, int length, byte[] key) {
+		int n = Math.min(length, key.length);
+		for (int i = 0; i < n; i++) {
+			int a = bytes[offset + i] & 0xff;
+			int b = key[i] & 0xff;
+			if (a != b) {
+				return a - b;
+			}
+		}
+		return length - key.length;
+	}
+
+	private static void writeVarInt(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7f) != 0) {
+			out.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static int readVarInt(byte[] bytes, int[] position) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = bytes[position[0]++];
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	public void write(BlockOutputStream out) throws IOException {
+		out.writeInt(size);
+		out.writeByteBlock(data);
+		out.writeIntBlock(blocks);
+	}
+
+	public static FrontCodedDictionary read(BlockInputStream in) throws IOException {
+		int size = in.readInt();
+		byte[] data = in.readByteBlock();
+		int[] blocks = in.readIntBlock();
+		return new FrontCodedDictionary(size, data, blocks);
+	}
+}
@@ -0,0 +1,97 @@
+package com.entopix.maui.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * Reads documents from a JSON Lines file, optionally gzipped, with one
+ * document per line:
+ *
+ * <pre>
+ * {"id": "doc1", "text": "...", "keyphrases": ["topic one", "topic two"]}
+ * </pre>
+ *
+ * The keyphrases may also be a single string with one keyphrase per line,
+ * as in a .key file, and may be left out. Documents without an id are
+ * named after their line number.
+ */
+public class JsonLinesDocumentReader extends QueuedDocumentReader {
+
+	private File file;
+	private Charset charset;
+
+	public JsonLinesDocumentReader(File file, Charset charset, int readAhead) {
+		super(readAhead);
+		this.file = file;
+		this.charset = charset;
+	}
+
+	/**
+	 * Tells whether a file is a JSON Lines file that this reader can read.
+	 */
+	public static boolean isJsonLines(File file) {
+		String name = file.getName().toLowerCase();
+		return name.endsWith(".jsonl") || name.endsWith(".jsonl.gz")
+				|| name.endsWith(".json.gz") || name.endsWith(".ndjson");
+	}
+
+	protected String getSourceName() {
+		return file.getName();
+	}
+
+	protected void read(Output output) throws IOException, InterruptedException {
+		InputStream in = new FileInputStream(file);
+		if (file.getName().toLowerCase().endsWith(".gz")) {
+			in = new GZIPInputStream(in, 1 << 16);
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, charset), 1 << 16);
+		try {
+			JsonParser parser = new JsonParser();
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.trim().length() == 0) {
+					continue;
+				}
+				try {
+					output.add(toDocument(parser.parse(line).getAsJsonObject(), lineNumber));
+				} catch (JsonParseException e) {
+					throw new IOException("Invalid JSON on line " + lineNumber + " of " + file, e);
+				} catch (IllegalStateException e) {
+					throw new IOException("Line " + lineNumber + " of " + file + " is not a JSON object", e);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private MauiDocument toDocument(JsonObject object, int lineNumber) {
+		String id = object.has("id") ? object.get("id").getAsString() : "line" + lineNumber;
+		String text = object.has("text") ? object.get("text").getAsString() : "";
+		StringBuilder keyphrases = new StringBuilder();
+		JsonElement element = object.get("keyphrases");
+		if (element != null && element.isJsonArray()) {
+			JsonArray array = element.getAsJsonArray();
+			for (int i = 0; i < array.size(); i++) {
+				keyphrases.append(array.get(i).getAsString()).append('\n');
+			}
+		} else if (element != null && !element.isJsonNull()) {
+			keyphrases.append(element.getAsString());
+		}
+		return new MauiDocument(id, file.getPath() + "#" + id, text, keyphrases.toString());
+	}
+}
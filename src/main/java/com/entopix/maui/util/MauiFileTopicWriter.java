@@ -0,0 +1,54 @@
+package com.entopix.maui.util;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the topics of each document into a ".maui" file next to the
+ * document, one topic per line. Only for documents that are files of
+ * their own; entries of archives and lines of JSON Lines files have no
+ * such place, so their topics go to a StreamTopicWriter instead.
+ */
+public class MauiFileTopicWriter implements TopicWriter {
+
+	private static final Logger log = LoggerFactory.getLogger(MauiFileTopicWriter.class);
+
+	private Charset charset;
+
+	/** Also write the probability of each topic */
+	private boolean additionalInfo;
+
+	public MauiFileTopicWriter(Charset charset, boolean additionalInfo) {
+		this.charset = charset;
+		this.additionalInfo = additionalInfo;
+	}
+
+	public void write(MauiTopics documentTopics) {
+		String fileName = documentTopics.getFilePath().replace(".txt", ".maui");
+		try {
+			PrintWriter printer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(fileName), charset));
+			for (Topic topic : documentTopics.getTopics()) {
+				printer.print(topic.getTitle());
+				if (additionalInfo) {
+					printer.print("\t");
+					printer.print(topic.getProbability());
+				}
+				printer.println();
+			}
+			printer.close();
+		} catch (FileNotFoundException e) {
+			log.error(e.getMessage());
+		}
+	}
+
+	public void close() throws IOException {
+		// each file is closed once it is written
+	}
+}
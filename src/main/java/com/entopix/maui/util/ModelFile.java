@@ -0,0 +1,227 @@
+package com.entopix.maui.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * File of named sections, in which a model is stored.
+ *
+ * A model file starts with a magic number, the format version and a
+ * manifest that lists the name, length and CRC-32 checksum of each
+ * section. The sections follow in the order of the manifest, each
+ * prefixed with its length. A section of a file can be read without
+ * reading the sections before it, and its checksum is verified when it
+ * is read.
+ */
+public class ModelFile {
+
+	private static final int MAGIC = 0x4D4D444C;
+	public static final int FORMAT_VERSION = 1;
+
+	/**
+	 * Entry of the manifest.
+	 */
+	private static class Section {
+
+		private String name;
+		private int length;
+		private int checksum;
+		/** position of the data in the file */
+		private long offset;
+		/** the data, or null if it is still in the file */
+		private byte[] data;
+	}
+
+	/**
+	 * Collects the sections of a model file and writes them.
+	 */
+	public static class Writer {
+
+		private List<String> names = new ArrayList<String>();
+		private List<ByteArrayOutputStream> buffers = new ArrayList<ByteArrayOutputStream>();
+		private List<BlockOutputStream> streams = new ArrayList<BlockOutputStream>();
+
+		/**
+		 * Starts a new section and returns the stream to write its data to.
+		 */
+		public BlockOutputStream addSection(String name) {
+			if (names.contains(name)) {
+				throw new IllegalArgumentException("Duplicate section " + name);
+			}
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			names.add(name);
+			buffers.add(buffer);
+			streams.add(new BlockOutputStream(buffer));
+			return streams.get(streams.size() - 1);
+		}
+
+		/**
+		 * Writes the manifest and the sections.
+		 */
+		public void write(OutputStream output) throws IOException {
+			List<byte[]> sections = new ArrayList<byte[]>();
+			for (int i = 0; i < names.size(); i++) {
+				streams.get(i).flush();
+				sections.add(buffers.get(i).toByteArray());
+			}
+			DataOutputStream out = new DataOutputStream(output);
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(names.size());
+			for (int i = 0; i < names.size(); i++) {
+				out.writeUTF(names.get(i));
+				out.writeInt(sections.get(i).length);
+				out.writeInt(checksum(sections.get(i)));
+			}
+			for (byte[] data : sections) {
+				out.writeInt(data.length);
+				out.write(data);
+			}
+			out.flush();
+		}
+	}
+
+	/** the file the sections are read from, or null if they are all in memory */
+	private File file;
+	private LinkedHashMap<String, Section> sections;
+
+	private ModelFile(File file, LinkedHashMap<String, Section> sections) {
+		this.file = file;
+		this.sections = sections;
+	}
+
+	/**
+	 * Opens a model file, reading only its manifest. The sections are read
+	 * when they are requested.
+	 *
+	 * @throws IOException if the file cannot be read or is not a model file
+	 */
+	public static ModelFile open(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			LinkedHashMap<String, Section> sections = readManifest(in, file.getPath());
+			long offset = in.getFilePointer();
+			for (Section section : sections.values()) {
+				section.offset = offset + 4;
+				offset = section.offset + section.length;
+			}
+			if (offset > in.length()) {
+				throw new IOException(file + " is truncated");
+			}
+			return new ModelFile(file, sections);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads a model file with all its sections from a stream.
+	 *
+	 * @throws IOException if the stream cannot be read or is not a model file
+	 */
+	public static ModelFile read(InputStream input) throws IOException {
+		DataInputStream in = new DataInputStream(input);
+		LinkedHashMap<String, Section> sections = readManifest(in, "Model stream");
+		for (Section section : sections.values()) {
+			if (in.readInt() != section.length) {
+				throw new IOException("Length of section " + section.name + " does not match the manifest");
+			}
+			section.data = new byte[section.length];
+			in.readFully(section.data);
+		}
+		return new ModelFile(null, sections);
+	}
+
+	/**
+	 * Tells whether a stream starts with a model file, without consuming
+	 * it. The stream must support mark and reset.
+	 */
+	public static boolean isModelFile(InputStream in) throws IOException {
+		in.mark(4);
+		try {
+			return new DataInputStream(in).readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			in.reset();
+		}
+	}
+
+	private static LinkedHashMap<String, Section> readManifest(DataInput in, String source) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException(source + " is not a model file");
+		}
+		int version = in.readInt();
+		if (version != FORMAT_VERSION) {
+			throw new IOException(source + " has model format version " + version
+					+ ", expected " + FORMAT_VERSION);
+		}
+		int numSections = in.readInt();
+		LinkedHashMap<String, Section> sections = new LinkedHashMap<String, Section>();
+		for (int i = 0; i < numSections; i++) {
+			Section section = new Section();
+			section.name = in.readUTF();
+			section.length = in.readInt();
+			section.checksum = in.readInt();
+			sections.put(section.name, section);
+		}
+		return sections;
+	}
+
+	private static int checksum(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		return (int) crc.getValue();
+	}
+
+	public boolean hasSection(String name) {
+		return sections.containsKey(name);
+	}
+
+	/**
+	 * Returns the length of a section in bytes, or -1 if there is no such section.
+	 */
+	public int getSectionLength(String name) {
+		Section section = sections.get(name);
+		return section == null ? -1 : section.length;
+	}
+
+	/**
+	 * Returns a stream over the data of a section, after checking its checksum.
+	 *
+	 * @throws IOException if there is no such section, or it cannot be read or is corrupt
+	 */
+	public BlockInputStream getSection(String name) throws IOException {
+		Section section = sections.get(name);
+		if (section == null) {
+			throw new IOException("No section " + name + " in model");
+		}
+		byte[] data = section.data;
+		if (data == null) {
+			data = new byte[section.length];
+			RandomAccessFile in = new RandomAccessFile(file, "r");
+			try {
+				in.seek(section.offset);
+				in.readFully(data);
+			} finally {
+				in.close();
+			}
+		}
+		if (checksum(data) != section.checksum) {
+			throw new IOException("Checksum of section " + name + " does not match, the model is corrupt");
+		}
+		return new BlockInputStream(new ByteArrayInputStream(data));
+	}
+}
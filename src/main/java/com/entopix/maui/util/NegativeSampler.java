@@ -0,0 +1,122 @@
+package com.entopix.maui.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Reduces the training data of the classifier by keeping all positive
+ * candidates and a sample of the negative ones.
+ *
+ * The negatives of each document are sorted by the value of one feature,
+ * normally TFxIDF, and split into bands of equal size. Each band keeps the
+ * same fraction of its candidates, at least one, and the weights of the
+ * kept candidates are multiplied by the size of the band divided by the
+ * number kept. So the total weight of the negatives of each document and
+ * band, and with it the class priors the classifier sees, do not change.
+ */
+public class NegativeSampler {
+
+	/** Default number of bands the negatives of a document are split into */
+	public static final int DEFAULT_NUM_BANDS = 4;
+
+	/** Default seed of the random sample, so that models are reproducible */
+	public static final long DEFAULT_SEED = 1;
+
+	private double rate;
+	private int numBands;
+	private long seed;
+
+	/**
+	 * @param rate fraction of the negatives to keep, in (0, 1]
+	 * @param numBands number of bands the negatives of a document are split into
+	 * @param seed seed of the random sample
+	 */
+	public NegativeSampler(double rate, int numBands, long seed) {
+		if (rate <= 0 || rate > 1) {
+			throw new IllegalArgumentException("Sample rate must be in (0, 1]: " + rate);
+		}
+		this.rate = rate;
+		this.numBands = Math.max(1, numBands);
+		this.seed = seed;
+	}
+
+	/**
+	 * Returns the sampled data, keeping the order of the rows.
+	 *
+	 * @param data rows of all documents, with their class set
+	 * @param documentStarts first row of each document, in increasing order;
+	 *        if empty, all rows are treated as one document
+	 * @param bandAttribute attribute the bands are formed on
+	 */
+	public Instances sample(Instances data, List<Integer> documentStarts, int bandAttribute) {
+		Instances sample = new Instances(data, data.numInstances());
+		Random random = new Random(seed);
+		int numDocuments = Math.max(1, documentStarts.size());
+		for (int document = 0; document < numDocuments; document++) {
+			int start = documentStarts.isEmpty() ? 0 : documentStarts.get(document);
+			int end = document + 1 < documentStarts.size() ? documentStarts.get(document + 1) : data.numInstances();
+			sampleDocument(data, start, end, bandAttribute, random, sample);
+		}
+		return sample;
+	}
+
+	private void sampleDocument(final Instances data, int start, int end, final int bandAttribute,
+			Random random, Instances sample) {
+
+		ArrayList<Integer> negatives = new ArrayList<Integer>();
+		for (int row = start; row < end; row++) {
+			if (data.instance(row).classValue() == 0) {
+				negatives.add(row);
+			}
+		}
+		Collections.sort(negatives, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(data.instance(a).value(bandAttribute),
+						data.instance(b).value(bandAttribute));
+			}
+		});
+
+		// weight factor of each negative row of the document, 0 if it is left out
+		double[] factors = new double[end - start];
+		int numNegatives = negatives.size();
+		for (int band = 0; band < numBands; band++) {
+			int first = (int) ((long) numNegatives * band / numBands);
+			int last = (int) ((long) numNegatives * (band + 1) / numBands);
+			int size = last - first;
+			if (size == 0) {
+				continue;
+			}
+			int keep = Math.max(1, (int) Math.round(size * rate));
+			// the first keep rows of a partial shuffle of the band
+			Integer[] rows = negatives.subList(first, last).toArray(new Integer[size]);
+			for (int i = 0; i < keep; i++) {
+				int j = i + random.nextInt(size - i);
+				Integer row = rows[j];
+				rows[j] = rows[i];
+				rows[i] = row;
+				factors[row - start] = (double) size / keep;
+			}
+		}
+
+		boolean[] negative = new boolean[end - start];
+		for (int row : negatives) {
+			negative[row - start] = true;
+		}
+		for (int row = start; row < end; row++) {
+			Instance instance = data.instance(row);
+			if (!negative[row - start]) {
+				sample.add(instance);
+			} else if (factors[row - start] > 0) {
+				Instance copy = (Instance) instance.copy();
+				copy.setWeight(instance.weight() * factors[row - start]);
+				sample.add(copy);
+			}
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package com.entopix.maui.util;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the documents of a list of files in order, while reading up to
+ * <code>readAhead</code> of the following documents on background
+ * threads, so that processing a document overlaps with reading the next
+ * ones. At most <code>readAhead</code> documents are held in memory by
+ * the reader; this does not bound the memory of a consumer that keeps
+ * the documents, such as MauiModelBuilder.buildModel.
+ *
+ * Each iteration reads the documents again. The threads end when the
+ * iteration is complete or has been idle for a few seconds.
+ */
+public class PrefetchingDocumentReader implements Iterable<MauiDocument> {
+
+	private List<File> files;
+	private Charset charset;
+	private int readAhead;
+	private int numThreads;
+
+	/**
+	 * @param files the .txt files of the documents
+	 * @param charset the encoding of the files
+	 * @param readAhead number of documents read ahead of the current one
+	 * @param numThreads number of threads that read the documents
+	 */
+	public PrefetchingDocumentReader(List<File> files, Charset charset, int readAhead, int numThreads) {
+		if (readAhead < 1 || numThreads < 1) {
+			throw new IllegalArgumentException("Read-ahead and number of threads must be positive");
+		}
+		this.files = files;
+		this.charset = charset;
+		this.readAhead = readAhead;
+		this.numThreads = numThreads;
+	}
+
+	public Iterator<MauiDocument> iterator() {
+		return new Iterator<MauiDocument>() {
+
+			private Iterator<File> remaining = files.iterator();
+			private LinkedList<Future<MauiDocument>> pending = new LinkedList<Future<MauiDocument>>();
+			private ThreadPoolExecutor executor = createExecutor();
+
+			{
+				fill();
+			}
+
+			/**
+			 * Starts reading documents until readAhead of them are pending.
+			 */
+			private void fill() {
+				while (pending.size() < readAhead && remaining.hasNext()) {
+					final File file = remaining.next();
+					pending.add(executor.submit(new Callable<MauiDocument>() {
+						public MauiDocument call() {
+							return DataLoader.readDocument(file, charset);
+						}
+					}));
+				}
+				if (pending.isEmpty()) {
+					executor.shutdown();
+				}
+			}
+
+			public boolean hasNext() {
+				return !pending.isEmpty();
+			}
+
+			public MauiDocument next() {
+				if (pending.isEmpty()) {
+					throw new NoSuchElementException();
+				}
+				MauiDocument document;
+				try {
+					document = pending.removeFirst().get();
+				} catch (ExecutionException e) {
+					executor.shutdownNow();
+					if (e.getCause() instanceof RuntimeException) {
+						throw (RuntimeException) e.getCause();
+					}
+					throw new RuntimeException(e.getCause());
+				} catch (InterruptedException e) {
+					executor.shutdownNow();
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(e);
+				}
+				fill();
+				return document;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private ThreadPoolExecutor createExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads, 5, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						// an iteration that is not completed does not keep the JVM alive
+						Thread thread = new Thread(runnable, "maui-document-reader");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+}
@@ -0,0 +1,143 @@
+package com.entopix.maui.util;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads documents from a single stream, such as an archive, on a
+ * background thread, which decompresses and decodes up to
+ * <code>readAhead</code> documents ahead of the one being processed.
+ *
+ * Each iteration reads the stream again. If no document is taken for
+ * the idle timeout, for example because the iteration was abandoned,
+ * the thread stops reading and closes the stream; the iteration then
+ * fails if it is continued.
+ */
+public abstract class QueuedDocumentReader implements Iterable<MauiDocument> {
+
+	/**
+	 * Receives the documents that are read.
+	 */
+	protected interface Output {
+
+		void add(MauiDocument document) throws InterruptedException;
+	}
+
+	/** Marks the end of the documents in the queue */
+	private static final Object END = new Object();
+
+	/** Default number of seconds the thread waits for a document to be taken */
+	public static final long DEFAULT_IDLE_TIMEOUT = 60;
+
+	private int readAhead;
+	private long idleTimeoutMillis = TimeUnit.SECONDS.toMillis(DEFAULT_IDLE_TIMEOUT);
+
+	protected QueuedDocumentReader(int readAhead) {
+		if (readAhead < 1) {
+			throw new IllegalArgumentException("Read-ahead must be positive");
+		}
+		this.readAhead = readAhead;
+	}
+
+	/**
+	 * Sets how long the reading thread waits for the next document to be
+	 * taken before it stops reading.
+	 */
+	public void setIdleTimeout(long timeout, TimeUnit unit) {
+		idleTimeoutMillis = unit.toMillis(timeout);
+	}
+
+	/**
+	 * Reads all documents in order, passing each of them to the output.
+	 * An InterruptedException from the output stops the reading; the
+	 * stream must be closed all the same.
+	 */
+	protected abstract void read(Output output) throws IOException, InterruptedException;
+
+	/**
+	 * Returns the name of the source, for the reading thread and errors.
+	 */
+	protected abstract String getSourceName();
+
+	public Iterator<MauiDocument> iterator() {
+		final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(readAhead);
+		final Thread reader = new Thread("maui-reader " + getSourceName()) {
+			public void run() {
+				Object last = END;
+				try {
+					read(new Output() {
+						public void add(MauiDocument document) throws InterruptedException {
+							put(queue, document);
+						}
+					});
+				} catch (InterruptedException e) {
+					return;
+				} catch (Exception e) {
+					last = e;
+				}
+				try {
+					put(queue, last);
+				} catch (InterruptedException e) {
+					// the iteration has been abandoned
+				}
+			}
+		};
+		reader.setDaemon(true);
+		reader.start();
+
+		return new Iterator<MauiDocument>() {
+
+			private Object next = null;
+
+			public boolean hasNext() {
+				try {
+					while (next == null) {
+						next = queue.poll(1, TimeUnit.SECONDS);
+						if (next == null && !reader.isAlive()) {
+							// the thread may have ended right after its last put
+							next = queue.poll();
+							if (next == null) {
+								throw new IllegalStateException("Stopped reading " + getSourceName()
+										+ " because no document was taken for " + idleTimeoutMillis + " ms");
+							}
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(e);
+				}
+				if (next instanceof Exception) {
+					throw new RuntimeException("Error while reading " + getSourceName(), (Exception) next);
+				}
+				return next != END;
+			}
+
+			public MauiDocument next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				MauiDocument document = (MauiDocument) next;
+				next = null;
+				return document;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Adds a document, or the end of the documents, to the queue, and
+	 * throws InterruptedException if it is not taken within the idle timeout.
+	 */
+	private void put(BlockingQueue<Object> queue, Object element) throws InterruptedException {
+		if (!queue.offer(element, idleTimeoutMillis, TimeUnit.MILLISECONDS)) {
+			throw new InterruptedException("No document was taken for " + idleTimeoutMillis + " ms");
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package com.entopix.maui.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import weka.core.Utils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Writes the topics of all documents into a single stream, in one of the
+ * following formats:
+ *
+ * <pre>
+ * jsonl  {"document": "...", "topics": [{"title": "...", "probability": 0.5}]}
+ * tsv    document, rank, topic and probability, one topic per line
+ * arff   the same columns as tsv, as a Weka data set
+ * </pre>
+ *
+ * Records are formatted by the calling thread and written by a background
+ * thread, which writes the queued records in batches and flushes the
+ * stream whenever the queue runs empty. An error of the background thread
+ * is thrown by the next call to write or close.
+ */
+public class StreamTopicWriter implements TopicWriter {
+
+	public static final String JSONL = "jsonl";
+	public static final String TSV = "tsv";
+	public static final String ARFF = "arff";
+
+	/** Number of records that may wait for the background thread */
+	public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+	/** Maximum number of records written between two checks of the queue */
+	private static final int BATCH_SIZE = 256;
+
+	/** Marks the end of the records in the queue */
+	private static final Object END = new Object();
+
+	private String format;
+	private Writer writer;
+	private BlockingQueue<Object> queue;
+	private Thread writerThread;
+	private volatile IOException error = null;
+	private boolean closed = false;
+
+	public StreamTopicWriter(OutputStream out, Charset charset, String format, int queueSize) throws IOException {
+		if (!format.equals(JSONL) && !format.equals(TSV) && !format.equals(ARFF)) {
+			throw new IllegalArgumentException("Unsupported output format " + format
+					+ ", it should be " + JSONL + ", " + TSV + " or " + ARFF);
+		}
+		this.format = format;
+		this.writer = new BufferedWriter(new OutputStreamWriter(out, charset), 1 << 16);
+		this.queue = new ArrayBlockingQueue<Object>(queueSize);
+		writeHeader();
+
+		writerThread = new Thread("maui-topic-writer") {
+			public void run() {
+				writeQueued();
+			}
+		};
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Opens a writer for the given file. Without a format, the format
+	 * follows from the file extension.
+	 */
+	public static StreamTopicWriter open(File file, Charset charset, String format) throws IOException {
+		if (format == null) {
+			format = getFormat(file);
+		}
+		return new StreamTopicWriter(new FileOutputStream(file), charset, format, DEFAULT_QUEUE_SIZE);
+	}
+
+	/**
+	 * Returns the format that matches the extension of a file, JSON Lines
+	 * if the extension is not known.
+	 */
+	public static String getFormat(File file) {
+		String name = file.getName().toLowerCase();
+		if (name.endsWith(".tsv") || name.endsWith(".tab")) {
+			return TSV;
+		} else if (name.endsWith(".arff")) {
+			return ARFF;
+		}
+		return JSONL;
+	}
+
+	public void write(MauiTopics documentTopics) throws IOException {
+		if (closed) {
+			throw new IOException("The topic writer is closed");
+		}
+		checkError();
+		try {
+			queue.put(format(documentTopics));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing topics");
+		}
+	}
+
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			queue.put(END);
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while closing the topic writer");
+		} finally {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				if (error == null) {
+					error = e;
+				}
+			}
+		}
+		checkError();
+	}
+
+	private void checkError() throws IOException {
+		if (error != null) {
+			throw new IOException("Failed to write topics", error);
+		}
+	}
+
+	/**
+	 * Runs on the background thread until the end of the records. After an
+	 * error, records are still taken from the queue, so that writers are
+	 * not blocked, but they are no longer written.
+	 */
+	private void writeQueued() {
+		List<Object> batch = new ArrayList<Object>(BATCH_SIZE);
+		while (true) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			queue.drainTo(batch, BATCH_SIZE - 1);
+			try {
+				for (Object record : batch) {
+					if (record == END) {
+						if (error == null) {
+							writer.flush();
+						}
+						return;
+					}
+					if (error == null) {
+						writer.write((String) record);
+					}
+				}
+				if (error == null && queue.isEmpty()) {
+					writer.flush();
+				}
+			} catch (IOException e) {
+				error = e;
+			}
+			batch.clear();
+		}
+	}
+
+	private void writeHeader() throws IOException {
+		if (format.equals(TSV)) {
+			writer.write("document\trank\ttopic\tprobability\n");
+		} else if (format.equals(ARFF)) {
+			writer.write("@relation maui_topics\n\n"
+					+ "@attribute document string\n"
+					+ "@attribute rank numeric\n"
+					+ "@attribute topic string\n"
+					+ "@attribute probability numeric\n\n"
+					+ "@data\n");
+		}
+	}
+
+	/**
+	 * Formats the topics of a document as one or more lines of output.
+	 */
+	String format(MauiTopics documentTopics) {
+		String document = documentTopics.getFilePath();
+		if (format.equals(JSONL)) {
+			JsonObject object = new JsonObject();
+			object.addProperty("document", document);
+			JsonArray topics = new JsonArray();
+			for (Topic topic : documentTopics.getTopics()) {
+				JsonObject entry = new JsonObject();
+				entry.addProperty("title", topic.getTitle());
+				entry.addProperty("probability", topic.getProbability());
+				topics.add(entry);
+			}
+			object.add("topics", topics);
+			return object.toString() + "\n";
+		}
+
+		StringBuilder lines = new StringBuilder();
+		int rank = 1;
+		for (Topic topic : documentTopics.getTopics()) {
+			if (format.equals(TSV)) {
+				lines.append(toField(document)).append('\t').append(rank).append('\t')
+						.append(toField(topic.getTitle())).append('\t').append(topic.getProbability());
+			} else {
+				lines.append(Utils.quote(document)).append(',').append(rank).append(',')
+						.append(Utils.quote(topic.getTitle())).append(',').append(topic.getProbability());
+			}
+			lines.append('\n');
+			rank++;
+		}
+		return lines.toString();
+	}
+
+	/**
+	 * Replaces the characters that separate fields and lines in a TSV file.
+	 */
+	private static String toField(String value) {
+		return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+	}
+}
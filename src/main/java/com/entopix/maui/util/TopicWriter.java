@@ -0,0 +1,19 @@
+package com.entopix.maui.util;
+
+import java.io.IOException;
+
+/**
+ * Receives the topics of each document as soon as they are extracted.
+ */
+public interface TopicWriter {
+
+	/**
+	 * Writes the topics of one document.
+	 */
+	void write(MauiTopics documentTopics) throws IOException;
+
+	/**
+	 * Writes whatever is still pending and releases the output.
+	 */
+	void close() throws IOException;
+}
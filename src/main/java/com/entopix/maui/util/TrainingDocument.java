@@ -0,0 +1,46 @@
+package com.entopix.maui.util;
+
+import java.util.HashMap;
+
+/**
+ * The candidates and given keyphrases of a training document. They do not
+ * depend on the other training documents, so they can be extracted once
+ * and used to train several models, e.g. the models of cross-validation.
+ */
+public class TrainingDocument {
+
+	private String fileName;
+	private double weight;
+	private HashMap<String, Candidate> candidates;
+	private HashMap<String, Counter> keyphrases;
+
+	/**
+	 * @param fileName name of the document
+	 * @param weight weight of the document's candidates
+	 * @param candidates the candidates, by name
+	 * @param keyphrases the given keyphrases with their frequencies, or null if there are none
+	 */
+	public TrainingDocument(String fileName, double weight, HashMap<String, Candidate> candidates,
+			HashMap<String, Counter> keyphrases) {
+		this.fileName = fileName;
+		this.weight = weight;
+		this.candidates = candidates;
+		this.keyphrases = keyphrases;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public double getWeight() {
+		return weight;
+	}
+
+	public HashMap<String, Candidate> getCandidates() {
+		return candidates;
+	}
+
+	public HashMap<String, Counter> getKeyphrases() {
+		return keyphrases;
+	}
+}
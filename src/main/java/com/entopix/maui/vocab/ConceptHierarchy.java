@@ -0,0 +1,204 @@
+package com.entopix.maui.vocab;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.entopix.maui.util.BlockInputStream;
+import com.entopix.maui.util.BlockOutputStream;
+
+/**
+ * Broader/narrower hierarchy of the concepts in a vocabulary.
+ *
+ * The depth of each concept, the number of its descendants and its
+ * distance to the closest top concept are computed once, when the
+ * vocabulary is loaded, and kept in arrays indexed by concept id.
+ *
+ * Real thesauri contain cycles in their broader/narrower relations.
+ * The values are computed with a breadth first search that visits each
+ * concept once, so a cycle is cut at the first concept reached from
+ * a root. Descendants are counted on the resulting spanning tree.
+ *
+ * Concepts without any broader or narrower relation, such as the
+ * non-descriptors of a thesaurus, are outside the hierarchy: their
+ * depth and distance are -1 and their generality is neutral.
+ */
+public class ConceptHierarchy {
+
+	/** Generality of concepts outside the hierarchy, halfway between a root and a leaf */
+	public static final double NEUTRAL_GENERALITY = 0.5;
+
+	/** concept id --> shortest distance from a root, -1 outside the hierarchy */
+	private int[] depth;
+	/** concept id --> number of descendants in the spanning tree */
+	private int[] descendants;
+	/** concept id --> shortest distance from a top concept, -1 if none is reachable */
+	private int[] topConceptDistance;
+
+	private int maxDepth;
+
+	private ConceptHierarchy(int[] depth, int[] descendants, int[] topConceptDistance) {
+		this.depth = depth;
+		this.descendants = descendants;
+		this.topConceptDistance = topConceptDistance;
+		for (int d : depth) {
+			if (d > maxDepth) {
+				maxDepth = d;
+			}
+		}
+	}
+
+	/**
+	 * Computes the hierarchy from broader/narrower relations between concepts.
+	 *
+	 * @param numConcepts number of concepts, all ids are below this number
+	 * @param children narrower concept of each relation
+	 * @param parents broader concept of each relation
+	 * @param topConcepts concepts declared as top concepts of the scheme
+	 * @return the hierarchy, or null if there are no relations
+	 */
+	public static ConceptHierarchy build(int numConcepts, int[] children, int[] parents, int[] topConcepts) {
+		if (children.length == 0) {
+			return null;
+		}
+
+		// narrower concepts of each concept, as offsets into one array
+		int[] offsets = new int[numConcepts + 1];
+		boolean[] hasParent = new boolean[numConcepts];
+		for (int i = 0; i < children.length; i++) {
+			offsets[parents[i] + 1]++;
+			hasParent[children[i]] = true;
+		}
+		for (int c = 0; c < numConcepts; c++) {
+			offsets[c + 1] += offsets[c];
+		}
+		int[] narrower = new int[children.length];
+		int[] fill = Arrays.copyOf(offsets, numConcepts);
+		for (int i = 0; i < children.length; i++) {
+			narrower[fill[parents[i]]++] = children[i];
+		}
+
+		int[] depth = new int[numConcepts];
+		Arrays.fill(depth, -1);
+		int[] treeParent = new int[numConcepts];
+		Arrays.fill(treeParent, -1);
+		int[] order = new int[numConcepts];
+		int visited = 0;
+
+		// concepts without broader concepts are roots, unless they have no narrower ones either
+		for (int c = 0; c < numConcepts; c++) {
+			if (!hasParent[c] && offsets[c + 1] > offsets[c]) {
+				depth[c] = 0;
+				order[visited++] = c;
+			}
+		}
+		visited = search(0, visited, order, offsets, narrower, depth, treeParent);
+
+		// concepts that can only be reached through a cycle
+		for (int c = 0; c < numConcepts; c++) {
+			if (depth[c] == -1 && hasParent[c]) {
+				depth[c] = 0;
+				order[visited] = c;
+				visited = search(visited, visited + 1, order, offsets, narrower, depth, treeParent);
+			}
+		}
+
+		// children are visited after their parents
+		int[] descendants = new int[numConcepts];
+		for (int i = visited - 1; i >= 0; i--) {
+			int c = order[i];
+			if (treeParent[c] != -1) {
+				descendants[treeParent[c]] += descendants[c] + 1;
+			}
+		}
+
+		int[] topConceptDistance;
+		if (topConcepts.length == 0) {
+			topConceptDistance = depth.clone();
+		} else {
+			topConceptDistance = new int[numConcepts];
+			Arrays.fill(topConceptDistance, -1);
+			int queued = 0;
+			for (int c : topConcepts) {
+				if (topConceptDistance[c] == -1) {
+					topConceptDistance[c] = 0;
+					order[queued++] = c;
+				}
+			}
+			search(0, queued, order, offsets, narrower, topConceptDistance, null);
+		}
+
+		return new ConceptHierarchy(depth, descendants, topConceptDistance);
+	}
+
+	/**
+	 * Breadth first search over the narrower relations, starting with
+	 * the concepts in the queue between head and tail.
+	 *
+	 * @return the new tail of the queue
+	 */
+	private static int search(int head, int tail, int[] queue, int[] offsets, int[] narrower,
+			int[] distance, int[] treeParent) {
+		while (head < tail) {
+			int c = queue[head++];
+			for (int i = offsets[c]; i < offsets[c + 1]; i++) {
+				int child = narrower[i];
+				if (distance[child] == -1) {
+					distance[child] = distance[c] + 1;
+					if (treeParent != null) {
+						treeParent[child] = c;
+					}
+					queue[tail++] = child;
+				}
+			}
+		}
+		return tail;
+	}
+
+	public int getDepth(int conceptId) {
+		return isKnown(conceptId) ? depth[conceptId] : -1;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public int getDescendants(int conceptId) {
+		return isKnown(conceptId) ? descendants[conceptId] : 0;
+	}
+
+	public int getTopConceptDistance(int conceptId) {
+		return isKnown(conceptId) ? topConceptDistance[conceptId] : -1;
+	}
+
+	/**
+	 * Generality of a concept: 1 for roots of the hierarchy,
+	 * decreasing linearly with depth, {@link #NEUTRAL_GENERALITY}
+	 * for concepts outside the hierarchy, 0 for unknown concepts.
+	 */
+	public double getGenerality(int conceptId) {
+		if (!isKnown(conceptId)) {
+			return 0.0;
+		}
+		if (depth[conceptId] == -1) {
+			return NEUTRAL_GENERALITY;
+		}
+		return 1.0 - depth[conceptId] / (double) (maxDepth + 1);
+	}
+
+	private boolean isKnown(int conceptId) {
+		return conceptId >= 0 && conceptId < depth.length;
+	}
+
+	public void write(BlockOutputStream out) throws IOException {
+		out.writeIntBlock(depth);
+		out.writeIntBlock(descendants);
+		out.writeIntBlock(topConceptDistance);
+	}
+
+	public static ConceptHierarchy read(BlockInputStream in) throws IOException {
+		int[] depth = in.readIntBlock();
+		int[] descendants = in.readIntBlock();
+		int[] topConceptDistance = in.readIntBlock();
+		return new ConceptHierarchy(depth, descendants, topConceptDistance);
+	}
+}
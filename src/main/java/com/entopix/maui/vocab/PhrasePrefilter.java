@@ -0,0 +1,188 @@
+package com.entopix.maui.vocab;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.entopix.maui.stemmers.Stemmer;
+import com.entopix.maui.stopwords.Stopwords;
+import com.entopix.maui.util.BloomFilter;
+
+/**
+ * Probabilistic pre-filter in front of vocabulary sense lookups.
+ *
+ * Holds a Bloom filter over the words and the pairs of adjacent words
+ * of all normalized vocabulary labels. A phrase is rejected if one of
+ * the words or word pairs of its normalized form is not in the filter,
+ * which means that the phrase cannot be a vocabulary label. Words are
+ * normalized one by one, using a cache, so a rejected phrase is never
+ * normalized as a whole.
+ *
+ * Phrases with characters that normalization treats specially are
+ * always passed on, so the filter never rejects a phrase that has senses.
+ */
+public class PhrasePrefilter {
+
+	private static final int MAX_CACHED_WORDS = 200000;
+
+	/** marks cached words that are removed by normalization */
+	private static final String DROPPED = "\u0000";
+
+	private Vocabulary vocabulary;
+	private Stemmer stemmer;
+	private Stopwords stopwords;
+
+	private BloomFilter filter;
+
+	/** word --> normalized word */
+	private ConcurrentHashMap<String, String> words = new ConcurrentHashMap<String, String>();
+
+	private AtomicLong passed = new AtomicLong();
+	private AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Builds the filter over the normalized labels.
+	 *
+	 * @param vocabulary the vocabulary, used to normalize words the way its labels were normalized
+	 * @param stemmer stemmer of the labels
+	 * @param stopwords stopwords of the labels
+	 * @param labels normalized labels
+	 * @param falsePositiveRate rate at which impossible phrases are passed on
+	 */
+	public PhrasePrefilter(Vocabulary vocabulary, Stemmer stemmer, Stopwords stopwords,
+			Collection<String> labels, double falsePositiveRate) {
+		this.vocabulary = vocabulary;
+		this.stemmer = stemmer;
+		this.stopwords = stopwords;
+
+		int insertions = 0;
+		for (String label : labels) {
+			insertions += 2 * label.split(" ").length - 1;
+		}
+		filter = new BloomFilter(insertions, falsePositiveRate);
+
+		for (String label : labels) {
+			String[] tokens = label.split(" ");
+			long previous = 0;
+			for (int i = 0; i < tokens.length; i++) {
+				long hash = BloomFilter.hash(tokens[i]);
+				filter.add(hash);
+				if (i > 0) {
+					filter.add(BloomFilter.hash(previous, hash));
+				}
+				previous = hash;
+			}
+		}
+	}
+
+	/**
+	 * Returns false if the phrase is certainly not a vocabulary label,
+	 * true if it might be one.
+	 */
+	public boolean mightContain(String phrase) {
+		if (check(phrase)) {
+			passed.incrementAndGet();
+			return true;
+		}
+		rejected.incrementAndGet();
+		return false;
+	}
+
+	private boolean check(String phrase) {
+		for (int i = 0; i < phrase.length(); i++) {
+			if (isSpecial(phrase.charAt(i))) {
+				return true;
+			}
+		}
+		if (phrase.length() == 0) {
+			return true;
+		}
+
+		// the same steps as in Vocabulary.normalizePhrase and pseudoPhrase,
+		// but word by word
+		if (vocabulary.lowerCases(phrase)) {
+			phrase = phrase.toLowerCase();
+		}
+		String[] tokens = phrase.split(" ");
+		for (String token : tokens) {
+			if (token.length() == 0) {
+				// extra spaces are removed by normalization
+				return true;
+			}
+		}
+		if (!vocabulary.usesPseudoPhrases(stemmer, stopwords)) {
+			return contains(Arrays.asList(tokens));
+		}
+		if (vocabulary.reorders()) {
+			Arrays.sort(tokens);
+		}
+		ArrayList<String> normalized = new ArrayList<String>(tokens.length);
+		for (String token : tokens) {
+			String word = normalizeWord(token);
+			if (word.length() == 0) {
+				// leaves an extra space in the normalized phrase
+				return true;
+			}
+			if (!word.equals(DROPPED)) {
+				normalized.add(word);
+			}
+		}
+		if (normalized.isEmpty()) {
+			// normalization falls back to the phrase itself
+			return true;
+		}
+		return contains(normalized);
+	}
+
+	private boolean contains(Collection<String> tokens) {
+		long previous = 0;
+		boolean first = true;
+		for (String token : tokens) {
+			long hash = BloomFilter.hash(token);
+			if (!filter.mightContain(hash)) {
+				return false;
+			}
+			if (!first && !filter.mightContain(BloomFilter.hash(previous, hash))) {
+				return false;
+			}
+			previous = hash;
+			first = false;
+		}
+		return true;
+	}
+
+	private String normalizeWord(String token) {
+		String word = words.get(token);
+		if (word == null) {
+			word = vocabulary.normalizeWord(token, stemmer, stopwords);
+			if (word == null) {
+				word = DROPPED;
+			}
+			if (words.size() >= MAX_CACHED_WORDS) {
+				words.clear();
+			}
+			words.put(token, word);
+		}
+		return word;
+	}
+
+	private static boolean isSpecial(char c) {
+		return c <= ' ' && c != ' ' || c == '&' || c == '.' || c == '*' || c == ':'
+				|| c == '/' || c == '-';
+	}
+
+	public long getPassed() {
+		return passed.get();
+	}
+
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	public String toString() {
+		return "prefilter: " + passed.get() + " passed, " + rejected.get() + " rejected ("
+				+ filter.getNumBits() / 8 + " bytes, " + filter.getNumHashes() + " hashes)";
+	}
+}
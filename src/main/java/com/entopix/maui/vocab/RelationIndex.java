@@ -0,0 +1,168 @@
+package com.entopix.maui.vocab;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.entopix.maui.util.BlockInputStream;
+import com.entopix.maui.util.BlockOutputStream;
+
+/**
+ * Compact store of typed relations between concepts.
+ *
+ * Each relation is a (source, target) pair of concept ids packed into
+ * a long, kept sorted, with the relation type in a parallel byte array.
+ * All relations of a concept are therefore adjacent, and looking up
+ * the relation between two concepts is a binary search.
+ */
+public class RelationIndex {
+
+	private static final Vocabulary.Relation[] types = Vocabulary.Relation.values();
+
+	/** source << 32 | target, sorted */
+	private long[] pairs;
+	/** relation type of each pair, as Relation ordinal */
+	private byte[] relations;
+
+	private RelationIndex(long[] pairs, byte[] relations) {
+		this.pairs = pairs;
+		this.relations = relations;
+	}
+
+	private static long pair(int source, int target) {
+		return ((long) source << 32) | target;
+	}
+
+	/**
+	 * Builds the index from unsorted relations. Repeated relations are stored once.
+	 *
+	 * @param numConcepts number of concepts, all ids are below this number
+	 */
+	public static RelationIndex build(int numConcepts, int[] sources, int[] targets, byte[] relationTypes) {
+		int n = sources.length;
+
+		// group the relations by source concept
+		int[] offsets = new int[numConcepts + 1];
+		for (int source : sources) {
+			offsets[source + 1]++;
+		}
+		for (int c = 0; c < numConcepts; c++) {
+			offsets[c + 1] += offsets[c];
+		}
+		int[] fill = Arrays.copyOf(offsets, numConcepts);
+		long[] row = new long[n];
+		for (int i = 0; i < n; i++) {
+			row[fill[sources[i]]++] = ((long) targets[i] << 8) | relationTypes[i];
+		}
+
+		// sort each group by target and type
+		long[] pairs = new long[n];
+		byte[] relations = new byte[n];
+		int count = 0;
+		for (int c = 0; c < numConcepts; c++) {
+			Arrays.sort(row, offsets[c], offsets[c + 1]);
+			for (int i = offsets[c]; i < offsets[c + 1]; i++) {
+				if (i > offsets[c] && row[i] == row[i - 1]) {
+					continue;
+				}
+				pairs[count] = pair(c, (int) (row[i] >>> 8));
+				relations[count] = (byte) (row[i] & 0xff);
+				count++;
+			}
+		}
+		return new RelationIndex(Arrays.copyOf(pairs, count), Arrays.copyOf(relations, count));
+	}
+
+	public int size() {
+		return pairs.length;
+	}
+
+	/**
+	 * Position of the first relation that is not below the given pair.
+	 */
+	private int lowerBound(long key) {
+		int low = 0;
+		int high = pairs.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (pairs[mid] < key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Position of the first relation of a concept.
+	 * The relations of a concept are between firstRelation(id) and firstRelation(id + 1).
+	 */
+	public int firstRelation(int conceptId) {
+		return lowerBound(pair(conceptId, 0));
+	}
+
+	public int getSource(int position) {
+		return (int) (pairs[position] >>> 32);
+	}
+
+	public int getTarget(int position) {
+		return (int) pairs[position];
+	}
+
+	public Vocabulary.Relation getRelation(int position) {
+		return types[relations[position]];
+	}
+
+	/**
+	 * Returns the relation from one concept to another,
+	 * or null if they are not related.
+	 * If there are several, the first in the order of Relation is returned.
+	 */
+	public Vocabulary.Relation getRelation(int source, int target) {
+		int position = lowerBound(pair(source, target));
+		if (position < pairs.length && pairs[position] == pair(source, target)) {
+			return getRelation(position);
+		}
+		return null;
+	}
+
+	/**
+	 * Checks whether a concept has the given relation to another.
+	 */
+	public boolean hasRelation(int source, int target, Vocabulary.Relation relation) {
+		long key = pair(source, target);
+		for (int i = lowerBound(key); i < pairs.length && pairs[i] == key; i++) {
+			if (relations[i] == relation.ordinal()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the sorted ids of the concepts that a concept has the given relation to.
+	 */
+	public int[] getRelated(int source, Vocabulary.Relation relation) {
+		int start = firstRelation(source);
+		int end = firstRelation(source + 1);
+		int[] related = new int[end - start];
+		int count = 0;
+		for (int i = start; i < end; i++) {
+			if (relations[i] == relation.ordinal()) {
+				related[count++] = getTarget(i);
+			}
+		}
+		return Arrays.copyOf(related, count);
+	}
+
+	public void write(BlockOutputStream out) throws IOException {
+		out.writeLongBlock(pairs);
+		out.writeByteBlock(relations);
+	}
+
+	public static RelationIndex read(BlockInputStream in) throws IOException {
+		long[] pairs = in.readLongBlock();
+		byte[] relations = in.readByteBlock();
+		return new RelationIndex(pairs, relations);
+	}
+}
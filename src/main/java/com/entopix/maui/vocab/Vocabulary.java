@@ -8,6 +8,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.zip.GZIPInputStream;
 
 import org.slf4j.Logger;
@@ -30,6 +31,11 @@ import com.hp.hpl.jena.rdf.model.StmtIterator;
  * vocabulary_name.use (with "ID_NON-DESCR \t ID_DESCRIPTOR" per line)
  * vocabulary_name.rel (with "ID \t RELATED_ID1 RELATED_ID2 ... " per line)
  *
+ * Once the vocabulary is initialized, its lookups only read the store, so
+ * one vocabulary is shared by the threads of MauiFilter and
+ * MauiCrossValidator, with its stemmers and stopwords, which are
+ * thread-safe as well. Initializing and configuring it are not.
+ *
  * @author Alyona Medelyan (medelyan@gmail.com)
  */
 public class Vocabulary {
@@ -67,6 +73,13 @@ public class Vocabulary {
 	/** Normalization via alphabetic reordering - default true*/
 	private boolean reorder = true;
 	private boolean serialize = false;
+	/** Checksum of the vocabulary source files, recorded in the snapshot header */
+	private long sourceChecksum = 0;
+	/** Optional pre-filter that rejects phrases without senses */
+	private transient PhrasePrefilter prefilter = null;
+	private double prefilterFalsePositiveRate = 0;
+	/** Additional languages, with their own labels over the same concepts */
+	private LinkedHashMap<String, VocabularyLanguage> languages = new LinkedHashMap<String, VocabularyLanguage>();
 
 
 	/** Initializes vocabulary from a file path
@@ -101,6 +114,9 @@ public class Vocabulary {
 				log.error("Error while loading vocabulary from " + vocabularyName);
 				throw new RuntimeException(skosFile.getAbsolutePath() + " does not exist!");
 			}
+			if (serialize) {
+				sourceChecksum = VocabularySnapshot.checksum(skosFile);
+			}
 			initializeFromSKOSFile(skosFile);
 
 		} else if (vocabularyFormat.equals("text")) {
@@ -128,6 +144,9 @@ public class Vocabulary {
 				log.error("Error while loading vocabulary from " + vocabularyName);
 				throw new RuntimeException(relFile.getAbsolutePath() + " does not exist!");
 			}
+			if (serialize) {
+				sourceChecksum = VocabularySnapshot.checksum(enFile, useFile, relFile);
+			}
 			initializeFromTXTFiles(enFile, useFile, relFile);
 
 		} else {
@@ -147,6 +166,9 @@ public class Vocabulary {
 	public void initializeVocabulary(String vocabularyName, Model model) throws VocabularyException {
 		this.vocabularyName = vocabularyName;
 		if (model != null) {
+			if (serialize) {
+				sourceChecksum = VocabularySnapshot.checksum(new File(vocabularyName));
+			}
 			initializeFromModel(model);
 		} else {
 			throw new VocabularyException("Model can't be null!");
@@ -183,19 +205,130 @@ public class Vocabulary {
 		this.serialize = serialize;
 	}
 
+	/**
+	 * Puts a Bloom filter over the words of all vocabulary labels
+	 * in front of sense lookups, so that most phrases that are not
+	 * vocabulary terms are rejected without being normalized.
+	 * Has to be called after the vocabulary is initialized.
+	 * 
+	 * @param falsePositiveRate rate at which such phrases are still looked up, e.g. 0.01
+	 */
+	public void enablePrefilter(double falsePositiveRate) {
+		prefilterFalsePositiveRate = falsePositiveRate;
+		long start = System.currentTimeMillis();
+		prefilter = new PhrasePrefilter(this, stemmer, stopwords, vocabStore.getSensePhrases(), falsePositiveRate);
+		for (VocabularyLanguage l : languages.values()) {
+			l.prefilter = new PhrasePrefilter(this, l.stemmer, l.stopwords, l.store.getSensePhrases(), falsePositiveRate);
+		}
+		log.info("--- Built vocabulary " + prefilter + " in " + (System.currentTimeMillis() - start) + "ms");
+	}
+
+	public void disablePrefilter() {
+		prefilterFalsePositiveRate = 0;
+		prefilter = null;
+		for (VocabularyLanguage l : languages.values()) {
+			l.prefilter = null;
+		}
+	}
+
+	/**
+	 * Returns the pre-filter, with its hit and reject counts, or null if it is not enabled.
+	 */
+	public PhrasePrefilter getPrefilter() {
+		return prefilter;
+	}
 
+	/**
+	 * Adds a language whose labels are indexed along with those
+	 * of the main language, in the same pass over the vocabulary.
+	 * The concepts and their relations are shared by all languages.
+	 * Has to be called before the vocabulary is initialized.
+	 * Only SKOS vocabularies have labels in several languages.
+	 * 
+	 * @param language language tag of the labels, e.g. "fr"
+	 * @param stemmer stemmer for this language
+	 * @param stopwords stopwords for this language
+	 */
+	public void addLanguage(String language, Stemmer stemmer, Stopwords stopwords) {
+		if (language.equals(this.language)) {
+			log.error("Language " + language + " is the main language of the vocabulary");
+			throw new RuntimeException("Language " + language + " is the main language of the vocabulary");
+		}
+		languages.put(language, new VocabularyLanguage(language, stemmer, stopwords));
+	}
+
+	/**
+	 * Returns true if the vocabulary has labels in the given language.
+	 */
+	public boolean hasLanguage(String language) {
+		return language.equals(this.language) || languages.containsKey(language);
+	}
+
+	private VocabularyLanguage getLanguage(String language) {
+		VocabularyLanguage l = languages.get(language);
+		if (l == null) {
+			log.error("Vocabulary " + vocabularyName + " has no labels in language " + language);
+			throw new RuntimeException("Vocabulary " + vocabularyName + " has no labels in language " + language);
+		}
+		return l;
+	}
+
+
+
+	/**
+	 * Header that a vocabulary snapshot has to match to be reused:
+	 * any change of the stemmer, stopwords, language, normalization
+	 * or the vocabulary source files invalidates the snapshot.
+	 */
+	private VocabularySnapshot snapshotHeader(Stemmer stemmer, Stopwords stopwords, String language) {
+		return VocabularyStoreFactory.snapshotHeader(stemmer, stopwords, language,
+				toLowerCase, reorder, sourceChecksum);
+	}
+
+	/**
+	 * Creates empty vocabulary stores for the main and the additional languages,
+	 * or loads them from their snapshots if serialization is on.
+	 * 
+	 * @return true if all stores were loaded from snapshots
+	 */
+	private boolean createVocabStores(boolean load) {
+		vocabStore = VocabularyStoreFactory.CreateVocabStore(vocabularyName, stemmer,
+				snapshotHeader(stemmer, stopwords, language), load && serialize);
+		boolean loaded = vocabStore.isInitialized();
+		for (VocabularyLanguage l : languages.values()) {
+			l.store = VocabularyStoreFactory.CreateVocabStore(vocabularyName + "_" + l.language, l.stemmer,
+					snapshotHeader(l.stemmer, l.stopwords, l.language), load && serialize);
+			loaded = loaded && l.store.isInitialized();
+		}
+		if (!loaded && load && serialize) {
+			// some snapshots are missing, build all stores again
+			createVocabStores(false);
+		}
+		return loaded;
+	}
+
+	private void serializeVocabStores() {
+		VocabularyStoreFactory.SerializeNewVocabStore(vocabularyName, vocabStore, stemmer,
+				snapshotHeader(stemmer, stopwords, language));
+		for (VocabularyLanguage l : languages.values()) {
+			VocabularyStoreFactory.SerializeNewVocabStore(vocabularyName + "_" + l.language, l.store, l.stemmer,
+					snapshotHeader(l.stemmer, l.stopwords, l.language));
+		}
+	}
 
 	/**
 	 * Loading RDF Model into a VocabularyStore structure for fast access.
 	 */
 	public void initializeFromModel(Model model) {
 
-		vocabStore = VocabularyStoreFactory.CreateVocabStore(vocabularyName, stemmer, serialize);
-
-		// we already have a de-serialized vocabStore
-		if (vocabStore.isInitialized()) {
+		// we already have de-serialized vocabStores
+		if (createVocabStores(true)) {
 			return;
 		}
+		buildFromModel(model);
+	}
+
+	private void buildFromModel(Model model) {
 
 		log.info("--- Building the Vocabulary index from the RDF model...");
 
@@ -239,6 +372,14 @@ public class Vocabulary {
 					if (language.equals(this.language)) {
 						descriptor = name;
 					} else {
+						VocabularyLanguage l = languages.get(language);
+						if (l != null) {
+							String normalized = normalizePhrase(name, l.stemmer, l.stopwords);
+							if (normalized.length() >= 1) {
+								l.store.addSense(normalized, id_string);
+								l.store.addDescriptor(id_string, name);
+							}
+						}
 						continue;
 					}
 
@@ -265,6 +406,15 @@ public class Vocabulary {
 					if (language.equals(this.language)) {
 						non_descriptor = name;
 					} else {
+						VocabularyLanguage l = languages.get(language);
+						if (l != null) {
+							String normalized = normalizePhrase(name, l.stemmer, l.stopwords);
+							if (normalized.length() >= 1) {
+								l.store.addSense(normalized, id_string);
+							}
+							addNonDescriptor(l.store, count, id_string, name, normalized);
+							count++;
+						}
 						continue;
 					}
 
@@ -277,7 +427,7 @@ public class Vocabulary {
 				if (non_descriptorNormalized.length() >= 1) {
 					vocabStore.addSense(non_descriptorNormalized, id_string);
 				}
-				addNonDescriptor(count, id_string, non_descriptor, non_descriptorNormalized);
+				addNonDescriptor(vocabStore, count, id_string, non_descriptor, non_descriptorNormalized);
 				count++;
 
 			} else if (rel == Relation.kRelationBroader
@@ -330,9 +480,14 @@ public class Vocabulary {
 		log.info("\t" + vocabStore.getNumRelatedTerms() + " terms have related terms");
 	
 		vocabStore.finishedInitialized();
+		for (VocabularyLanguage l : languages.values()) {
+			log.info("\t" + l.store.getNumTerms() + " terms in " + l.language);
+			l.store.finishedInitialized();
+		}
+		log.info("\t" + vocabStore.getStringBytes() + " bytes of ids, terms and phrases");
 
 		if (serialize) {
-			VocabularyStoreFactory.SerializeNewVocabStore(vocabularyName, vocabStore, stemmer);
+			serializeVocabStores();
 		}
 	}
 
@@ -345,20 +500,11 @@ public class Vocabulary {
 	 */
 	public void initializeFromSKOSFile(File skosFile) {
 
-		if (serialize) {
-			vocabStore = VocabularyStoreFactory.CreateVocabStore(vocabularyName, stemmer, serialize);
-
-			// we already have a de-serialized vocabStore
-			if (vocabStore.isInitialized()) {
-				return;
-			} else {
-				Model model = readModelFromFile(skosFile);
-				initializeFromModel(model);
-			}
-		} else {
-			Model model = readModelFromFile(skosFile);
-			initializeFromModel(model);
+		// we already have de-serialized vocabStores
+		if (createVocabStores(true)) {
+			return;
 		}
+		buildFromModel(readModelFromFile(skosFile));
 	}
 
 	private Model readModelFromFile(File skosFile) {
@@ -390,10 +536,12 @@ public class Vocabulary {
 	 */
 	public void initializeFromTXTFiles(File enFile, File useFile, File relFile) {
 
-		vocabStore = VocabularyStoreFactory.CreateVocabStore(vocabularyName, stemmer, serialize);
+		if (!languages.isEmpty()) {
+			log.warn("Text vocabularies have no labels in additional languages");
+		}
 
 		// we already have a de-serialized vocabStore
-		if (vocabStore.isInitialized()) {
+		if (createVocabStores(true)) {
 			return;
 		}
 
@@ -405,8 +553,165 @@ public class Vocabulary {
 		vocabStore.finishedInitialized();
 
 		if (serialize) {
-			VocabularyStoreFactory.SerializeNewVocabStore(vocabularyName, vocabStore, stemmer);
+			serializeVocabStores();
+		}
+	}
+
+	/**
+	 * Applies changes to the labels and relations of the vocabulary.
+	 *
+	 * The vocabulary itself is not modified: its stores are copied, the
+	 * changes are applied to the copies, and a new vocabulary with the same
+	 * settings is returned. Only the labels in the delta are normalized.
+	 * The new vocabulary can replace this one in running extractors,
+	 * e.g. with MauiFilter.setVocabulary. Concept ids stay the same,
+	 * so that ids from this vocabulary remain valid in the new one.
+	 *
+	 * @param delta changes, see {@link VocabularyDelta}
+	 * @return the updated vocabulary
+	 */
+	public Vocabulary applyDelta(VocabularyDelta delta) {
+		long start = System.currentTimeMillis();
+
+		Vocabulary updated = new Vocabulary();
+		updated.vocabularyName = vocabularyName;
+		updated.language = language;
+		updated.encoding = encoding;
+		updated.stemmer = stemmer;
+		updated.stopwords = stopwords;
+		updated.toLowerCase = toLowerCase;
+		updated.reorder = reorder;
+		updated.serialize = serialize;
+		updated.sourceChecksum = sourceChecksum;
+		updated.vocabStore = VocabularyStoreFactory.CopyVocabStore(vocabStore);
+		updated.vocabStore.reopen();
+		for (VocabularyLanguage l : languages.values()) {
+			VocabularyLanguage copy = new VocabularyLanguage(l.language, l.stemmer, l.stopwords);
+			copy.store = VocabularyStoreFactory.CopyVocabStore(l.store);
+			copy.store.reopen();
+			updated.languages.put(l.language, copy);
+		}
+
+		// removed labels first, so that changed labels are replaced
+		for (VocabularyDelta.Change change : delta.getRemoved()) {
+			if (change.isLabel()) {
+				updated.applyLabel(change, false);
+			} else {
+				updated.removeRelation(change, delta, vocabStore);
+			}
+		}
+		for (VocabularyDelta.Change change : delta.getAdded()) {
+			if (change.isLabel()) {
+				updated.applyLabel(change, true);
+			} else {
+				updated.vocabStore.addRelatedTerm(change.getId(), change.getValue());
+				updated.vocabStore.addRelationship(change.getId(), change.getValue(), change.getRelation());
+				if (change.getRelation() == Relation.kRelationRelated) {
+					updated.vocabStore.addRelationship(change.getValue(), change.getId(), change.getRelation());
+				}
+			}
+		}
+
+		updated.vocabStore.finishedInitialized();
+		for (VocabularyLanguage l : updated.languages.values()) {
+			l.store.finishedInitialized();
+		}
+		if (prefilterFalsePositiveRate > 0) {
+			updated.enablePrefilter(prefilterFalsePositiveRate);
 		}
+		log.info("--- Applied " + delta.size() + " vocabulary changes in "
+				+ (System.currentTimeMillis() - start) + "ms");
+		return updated;
+	}
+
+	/**
+	 * Adds or removes a label in the store of its language.
+	 * Labels in languages that the vocabulary has no labels in are ignored.
+	 */
+	private void applyLabel(VocabularyDelta.Change change, boolean add) {
+		String language = change.getLanguage();
+		if (language == null || language.equals(this.language)) {
+			applyLabel(change, add, vocabStore, stemmer, stopwords);
+		} else if (languages.containsKey(language)) {
+			VocabularyLanguage l = languages.get(language);
+			applyLabel(change, add, l.store, l.stemmer, l.stopwords);
+		}
+	}
+
+	private void applyLabel(VocabularyDelta.Change change, boolean add,
+			VocabularyStore store, Stemmer stemmer, Stopwords stopwords) {
+		String id = change.getId();
+		String label = change.getValue();
+		String normalized = normalizePhrase(label, stemmer, stopwords);
+		if (add) {
+			addLabel(store, change.getRelation(), id, label, normalized);
+		} else {
+			removeLabel(store, change.getRelation(), id, label, normalized);
+		}
+	}
+
+	private void addLabel(VocabularyStore store, Relation rel, String id, String label, String normalized) {
+		if (normalized.length() >= 1) {
+			store.addSense(normalized, id);
+		}
+		if (rel == Relation.kRelationPrefLabel) {
+			if (normalized.length() >= 1) {
+				store.addDescriptor(id, label);
+			}
+		} else {
+			// the first id of a non-descriptor that is not taken yet
+			int count = store.getNumNonDescriptors();
+			while (store.getTerm("d_" + count) != null) {
+				count++;
+			}
+			addNonDescriptor(store, count, id, label, normalized);
+		}
+	}
+
+	private void removeLabel(VocabularyStore store, Relation rel, String id, String label, String normalized) {
+		store.removeSense(normalized, id);
+		if (rel == Relation.kRelationPrefLabel) {
+			if (label.equals(store.getTerm(id))) {
+				store.removeDescriptor(id);
+			}
+		} else {
+			for (String nonDescriptor : store.getNonDescriptors(id)) {
+				if (label.equals(store.getTerm(nonDescriptor))) {
+					store.removeSense(normalized, nonDescriptor);
+					store.removeDescriptor(nonDescriptor);
+					store.removeNonDescriptor(nonDescriptor);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes a relation, and the related term unless the concepts
+	 * remain related in another way.
+	 * 
+	 * @param previous the store before the changes
+	 */
+	private void removeRelation(VocabularyDelta.Change change, VocabularyDelta delta, VocabularyStore previous) {
+		String id = change.getId();
+		String relatedId = change.getValue();
+		vocabStore.removeRelationship(id, relatedId, change.getRelation());
+		if (change.getRelation() == Relation.kRelationRelated) {
+			vocabStore.removeRelationship(relatedId, id, change.getRelation());
+		}
+
+		RelationIndex relations = previous.getRelations();
+		int source = previous.getConceptId(id);
+		int target = previous.getConceptId(relatedId);
+		if (relations != null && source != -1 && target != -1) {
+			for (Relation other : Relation.values()) {
+				if (relations.hasRelation(source, target, other)
+						&& !delta.removesRelation(id, other, relatedId)) {
+					return;
+				}
+			}
+		}
+		vocabStore.removeRelatedTerm(id, relatedId);
 	}
 
 	/**
@@ -417,7 +722,7 @@ public class Vocabulary {
 		this.stopwords = stopwords;
 	}
 
-	private Relation getRelationForString(String rel) {
+	static Relation getRelationForString(String rel) {
 		if (rel.equals("prefLabel")) {
 			return Relation.kRelationPrefLabel;
 		} else if (rel.equals("altLabel")) {
@@ -446,7 +751,7 @@ public class Vocabulary {
 	}
 
 
-	private void addNonDescriptor(int count, String idDescriptor,
+	private void addNonDescriptor(VocabularyStore vocabStore, int count, String idDescriptor,
 			String nonDescriptor, String normalizedNonDescriptor) {
 
 		if (vocabularyName.equals("lcsh") && nonDescriptor.indexOf('(') != -1) {
@@ -562,6 +867,23 @@ public class Vocabulary {
 		return vocabStore.getTerm(id);
 	}
 
+	/**
+	 * Returns the term for the given id in the given language,
+	 * or in the main language if there is no label in that language.
+	 * @param id - id of some phrase in the vocabulary
+	 * @param language - language of the term
+	 */
+	public String getTerm(String id, String language) {
+		if (language.equals(this.language)) {
+			return getTerm(id);
+		}
+		String term = getLanguage(language).store.getTerm(id);
+		if (term == null) {
+			return getTerm(id);
+		}
+		return term;
+	}
+
 	/**
 	 * Checks whether a normalized phrase
 	 * is a valid vocabulary term.
@@ -587,11 +909,31 @@ public class Vocabulary {
 	 * @return a vector list of all senses of a given term
 	 */
 	public ArrayList<String> getSenses(String phrase) {
+		if (prefilter != null && !prefilter.mightContain(phrase)) {
+			return new ArrayList<String>();
+		}
 		String normalized = normalizePhrase(phrase);
 		ArrayList<String> senses = vocabStore.getSensesForPhrase(normalized);
 		return senses;
 	}
 
+	/**
+	 * Retrieves all possible descriptors for a given phrase in the given language
+	 * @param phrase
+	 * @param language - the main language or one added with addLanguage
+	 * @return a vector list of all senses of a given term
+	 */
+	public ArrayList<String> getSenses(String phrase, String language) {
+		if (language.equals(this.language)) {
+			return getSenses(phrase);
+		}
+		VocabularyLanguage l = getLanguage(language);
+		if (l.prefilter != null && !l.prefilter.mightContain(phrase)) {
+			return new ArrayList<String>();
+		}
+		return l.store.getSensesForPhrase(normalizePhrase(phrase, l.stemmer, l.stopwords));
+	}
+
 	/**
 	 * Given id of a term returns the list with ids of terms related to this term.
 	 * @param id
@@ -601,6 +943,57 @@ public class Vocabulary {
 		return vocabStore.getRelatedTerms(id);
 	}
 
+	/**
+	 * Given id of a term returns the ids of terms it has the given relation to,
+	 * e.g. its broader terms.
+	 * @param id
+	 * @param relation
+	 * @return a vector with ids, empty if there are none
+	 */
+	public ArrayList<String> getRelated(String id, Relation relation) {
+		ArrayList<String> related = new ArrayList<String>();
+		RelationIndex relations = vocabStore.getRelations();
+		int conceptId = vocabStore.getConceptId(id);
+		if (relations != null && conceptId != -1) {
+			for (int relatedId : relations.getRelated(conceptId, relation)) {
+				related.add(vocabStore.getConceptURI(relatedId));
+			}
+		}
+		return related;
+	}
+
+	/**
+	 * Returns the relation of one term to another,
+	 * e.g. kRelationBroader if relatedId is a broader term of id.
+	 * @return the relation, or null if the terms are not related
+	 */
+	public Relation getRelation(String id, String relatedId) {
+		RelationIndex relations = vocabStore.getRelations();
+		int source = vocabStore.getConceptId(id);
+		int target = vocabStore.getConceptId(relatedId);
+		if (relations == null || source == -1 || target == -1) {
+			return null;
+		}
+		return relations.getRelation(source, target);
+	}
+
+	/**
+	 * Returns the integer id of a term, or -1 if it is not available.
+	 * @param id - id of some phrase in the vocabulary
+	 */
+	public int getConceptId(String id) {
+		return vocabStore.getConceptId(id);
+	}
+
+	/**
+	 * Given the integer id of a term returns the sorted integer ids of terms related to it.
+	 * @param conceptId
+	 * @return sorted ids, or null if there are no related terms
+	 */
+	public int[] getRelatedIds(int conceptId) {
+		return vocabStore.getRelatedIds(conceptId);
+	}
+
 	/***
 	 * Returns falls if the phrase only contains upper case characters
 	 * @param phrase
@@ -633,6 +1026,21 @@ public class Vocabulary {
 	 * which are stemmed and sorted into alphabetical order.
 	 */
 	public String normalizePhrase(String phrase) {
+		return normalizePhrase(phrase, stemmer, stopwords);
+	}
+
+	/**
+	 * Normalizes a phrase with the stemmer and stopwords of the given language.
+	 */
+	public String normalizePhrase(String phrase, String language) {
+		if (language.equals(this.language)) {
+			return normalizePhrase(phrase);
+		}
+		VocabularyLanguage l = getLanguage(language);
+		return normalizePhrase(phrase, l.stemmer, l.stopwords);
+	}
+
+	private String normalizePhrase(String phrase, Stemmer stemmer, Stopwords stopwords) {
 
 		String orig = phrase;
 		if (orig.endsWith("-") || orig.endsWith(".")) {
@@ -683,12 +1091,12 @@ public class Vocabulary {
 		//        }
 
 
-		if (isOkToLower(phrase) && toLowerCase) {
+		if (lowerCases(phrase)) {
 			phrase = phrase.toLowerCase();
 		}
 
-		if (reorder || stopwords != null || stemmer != null) {
-			phrase = pseudoPhrase(phrase);
+		if (usesPseudoPhrases(stemmer, stopwords)) {
+			phrase = pseudoPhrase(phrase, stemmer, stopwords);
 		}
 		if (phrase.equals("")) {
 			// to prevent cases where the term is a stop word (e.g. Back).
@@ -706,30 +1114,62 @@ public class Vocabulary {
 	 * which are stemmed and sorted into alphabetical order.
 	 */
 	public String pseudoPhrase(String str) {
+		return pseudoPhrase(str, stemmer, stopwords);
+	}
+
+	private String pseudoPhrase(String str, Stemmer stemmer, Stopwords stopwords) {
 		String result = "";
 		String[] words = str.split(" ");
 		if (reorder) {
 			Arrays.sort(words);
 		}
 		for (String word : words) {
-
-			if (stopwords != null) {
-				if (stopwords.isStopword(word)) {
-					continue;
-				}
+			word = normalizeWord(word, stemmer, stopwords);
+			if (word != null) {
+				result += word + " ";
 			}
-			int apostr = word.indexOf('\'');
-			if (apostr != -1 && apostr == word.length() - 2) {
-				word = word.substring(0, apostr);
-			}
-			if (stemmer != null) {
-				word = stemmer.stem(word);
-			}
-			result += word + " ";
 		}
 		return result.trim();
 	}
 
+	/**
+	 * Normalizes a single word of a pseudo phrase.
+	 * @return the stemmed word, or null if it is a stopword
+	 */
+	String normalizeWord(String word, Stemmer stemmer, Stopwords stopwords) {
+		if (stopwords != null) {
+			if (stopwords.isStopword(word)) {
+				return null;
+			}
+		}
+		int apostr = word.indexOf('\'');
+		if (apostr != -1 && apostr == word.length() - 2) {
+			word = word.substring(0, apostr);
+		}
+		if (stemmer != null) {
+			word = stemmer.stem(word);
+		}
+		return word;
+	}
+
+	/**
+	 * Whether normalizePhrase lower cases the phrase.
+	 */
+	boolean lowerCases(String phrase) {
+		return isOkToLower(phrase) && toLowerCase;
+	}
+
+	/**
+	 * Whether normalizePhrase turns phrases into pseudo phrases.
+	 */
+	boolean usesPseudoPhrases(Stemmer stemmer, Stopwords stopwords) {
+		return reorder || stopwords != null || stemmer != null;
+	}
+
+	boolean reorders() {
+		return reorder;
+	}
+
 
 	public void setVocabularyName(String vocabularyName) {
 		this.vocabularyName = vocabularyName;	
@@ -746,8 +1186,25 @@ public class Vocabulary {
 		}
 	}
 
+	/**
+	 * Returns the generality of a term, based on its depth
+	 * in the broader/narrower hierarchy of the vocabulary.
+	 * @param id - id of some phrase in the vocabulary
+	 * @return 1 for top terms, decreasing with depth, 0.5 for terms
+	 * without broader or narrower terms, 0 if unknown
+	 */
 	public double getGenerality(String id) {
-		// TODO: insert generality method using SPARQL query
-		return 0.0;
+		return getGenerality(vocabStore.getConceptId(id));
+	}
+
+	/**
+	 * Returns the generality of a term given its integer id.
+	 */
+	public double getGenerality(int conceptId) {
+		ConceptHierarchy hierarchy = vocabStore.getHierarchy();
+		if (hierarchy == null) {
+			return 0.0;
+		}
+		return hierarchy.getGenerality(conceptId);
 	}
 }
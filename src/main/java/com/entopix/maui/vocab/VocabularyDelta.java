@@ -0,0 +1,281 @@
+package com.entopix.maui.vocab;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.entopix.maui.vocab.Vocabulary.Relation;
+import com.hp.hpl.jena.rdf.model.Literal;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+
+/**
+ * Changes to a vocabulary: labels and relations of concepts
+ * that were added or removed, e.g. by an update of the thesaurus.
+ * A changed label is a removed label and an added one.
+ *
+ * A delta is computed as the difference of two SKOS models, or read
+ * from a text file, and applied with {@link Vocabulary#applyDelta(VocabularyDelta)}.
+ * The text format has one change per line, with tab separated fields:<br>
+ * <code>+ ID PROPERTY VALUE</code> for an added label or relation<br>
+ * <code>- ID PROPERTY VALUE</code> for a removed one<br>
+ * where PROPERTY is the name of a SKOS property, e.g. prefLabel or broader,
+ * and VALUE is a label, optionally followed by @language, or the id of the
+ * related concept. Empty lines and lines starting with # are ignored.
+ */
+public class VocabularyDelta {
+
+	private static final Logger log = LoggerFactory.getLogger(VocabularyDelta.class);
+
+	/**
+	 * A label or a relation of a concept.
+	 */
+	public static class Change {
+
+		private String id;
+		private Relation relation;
+		private String value;
+		private String language;
+
+		private Change(String id, Relation relation, String value, String language) {
+			this.id = id;
+			this.relation = relation;
+			this.value = value;
+			this.language = language;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public Relation getRelation() {
+			return relation;
+		}
+
+		/**
+		 * Returns the label, or the id of the related concept.
+		 */
+		public String getValue() {
+			return value;
+		}
+
+		/**
+		 * Returns the language of the label, or null for the main language.
+		 */
+		public String getLanguage() {
+			return language;
+		}
+
+		public boolean isLabel() {
+			return VocabularyDelta.isLabel(relation);
+		}
+
+		public String toString() {
+			return id + "\t" + relation + "\t" + value + (language == null ? "" : "@" + language);
+		}
+	}
+
+	private ArrayList<Change> added = new ArrayList<Change>();
+	private ArrayList<Change> removed = new ArrayList<Change>();
+	/** keys of the removed relations */
+	private HashSet<String> removedRelations = new HashSet<String>();
+
+	private static boolean isLabel(Relation relation) {
+		return relation == Relation.kRelationPrefLabel
+				|| relation == Relation.kRelationAltLabel
+				|| relation == Relation.kRelationHiddenLabel;
+	}
+
+	private static boolean isRelation(Relation relation) {
+		return relation == Relation.kRelationBroader
+				|| relation == Relation.kRelationNarrower
+				|| relation == Relation.kRelationComposite
+				|| relation == Relation.kRelationCompositeOf
+				|| relation == Relation.kRelationHasTopConcept
+				|| relation == Relation.kRelationRelated;
+	}
+
+	private static String relationKey(String id, Relation relation, String relatedId) {
+		return id + '\t' + relatedId + '\t' + relation.ordinal();
+	}
+
+	/**
+	 * Records an added label.
+	 * @param relation kRelationPrefLabel, kRelationAltLabel or kRelationHiddenLabel
+	 * @param language language of the label, or null for the main language
+	 */
+	public void addLabel(String id, Relation relation, String label, String language) {
+		checkLabel(relation);
+		added.add(new Change(id, relation, label, language));
+	}
+
+	/**
+	 * Records a removed label.
+	 * @param relation kRelationPrefLabel, kRelationAltLabel or kRelationHiddenLabel
+	 * @param language language of the label, or null for the main language
+	 */
+	public void removeLabel(String id, Relation relation, String label, String language) {
+		checkLabel(relation);
+		removed.add(new Change(id, relation, label, language));
+	}
+
+	/**
+	 * Records an added relation from one concept to another,
+	 * e.g. kRelationBroader if relatedId is a new broader concept of id.
+	 */
+	public void addRelation(String id, Relation relation, String relatedId) {
+		checkRelation(relation);
+		added.add(new Change(id, relation, relatedId, null));
+	}
+
+	/**
+	 * Records a removed relation from one concept to another.
+	 */
+	public void removeRelation(String id, Relation relation, String relatedId) {
+		checkRelation(relation);
+		removed.add(new Change(id, relation, relatedId, null));
+		removedRelations.add(relationKey(id, relation, relatedId));
+	}
+
+	private void checkLabel(Relation relation) {
+		if (!isLabel(relation)) {
+			throw new IllegalArgumentException(relation + " is not a label");
+		}
+	}
+
+	private void checkRelation(Relation relation) {
+		if (!isRelation(relation)) {
+			throw new IllegalArgumentException(relation + " is not a relation between concepts");
+		}
+	}
+
+	/**
+	 * Returns true if the delta removes the given relation.
+	 */
+	boolean removesRelation(String id, Relation relation, String relatedId) {
+		return removedRelations.contains(relationKey(id, relation, relatedId));
+	}
+
+	public List<Change> getAdded() {
+		return added;
+	}
+
+	public List<Change> getRemoved() {
+		return removed;
+	}
+
+	public int size() {
+		return added.size() + removed.size();
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Computes the changes between two versions of a SKOS vocabulary.
+	 * Statements that are not labels or relations between concepts are ignored.
+	 */
+	public static VocabularyDelta diff(Model oldModel, Model newModel) {
+		VocabularyDelta delta = new VocabularyDelta();
+		delta.addStatements(oldModel.difference(newModel), false);
+		delta.addStatements(newModel.difference(oldModel), true);
+		return delta;
+	}
+
+	private void addStatements(Model model, boolean add) {
+		StmtIterator iter = model.listStatements();
+		while (iter.hasNext()) {
+			Statement stmt = iter.nextStatement();
+			String id = stmt.getSubject().getURI();
+			Relation relation = Vocabulary.getRelationForString(stmt.getPredicate().getLocalName());
+			RDFNode value = stmt.getObject();
+			if (id == null) {
+				continue;
+			}
+			if (isLabel(relation) && value.isLiteral()) {
+				Literal literal = value.asLiteral();
+				String language = literal.getLanguage().length() > 0 ? literal.getLanguage() : null;
+				if (add) {
+					addLabel(id, relation, literal.getLexicalForm(), language);
+				} else {
+					removeLabel(id, relation, literal.getLexicalForm(), language);
+				}
+			} else if (isRelation(relation) && value.isURIResource()) {
+				if (add) {
+					addRelation(id, relation, value.asResource().getURI());
+				} else {
+					removeRelation(id, relation, value.asResource().getURI());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads a delta in the text format.
+	 */
+	public static VocabularyDelta read(File deltaFile, String encoding) {
+		VocabularyDelta delta = new VocabularyDelta();
+		String readline;
+		int lineNumber = 0;
+		try {
+			BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(deltaFile), encoding));
+			try {
+				while ((readline = br.readLine()) != null) {
+					lineNumber++;
+					if (readline.trim().length() == 0 || readline.startsWith("#")) {
+						continue;
+					}
+					String[] entry = readline.split("\t");
+					if (entry.length != 4 || !(entry[0].equals("+") || entry[0].equals("-"))) {
+						log.error("Error in line " + lineNumber + " of " + deltaFile.getAbsolutePath());
+						throw new RuntimeException("Line " + lineNumber + " of " + deltaFile.getName()
+								+ " is not of the form +/- ID PROPERTY VALUE");
+					}
+					delta.addLine(entry[0].equals("+"), entry[1], entry[2], entry[3], lineNumber);
+				}
+			} finally {
+				br.close();
+			}
+		} catch (IOException e) {
+			log.error("Error while loading vocabulary delta from " + deltaFile.getAbsolutePath() + "!\n", e);
+			throw new RuntimeException();
+		}
+		return delta;
+	}
+
+	private void addLine(boolean add, String id, String property, String value, int lineNumber) {
+		Relation relation = Vocabulary.getRelationForString(property);
+		if (isLabel(relation)) {
+			String language = null;
+			int atPosition = value.lastIndexOf('@');
+			if (atPosition > 0 && value.substring(atPosition + 1).matches("[A-Za-z]+(-[A-Za-z0-9]+)*")) {
+				language = value.substring(atPosition + 1);
+				value = value.substring(0, atPosition);
+			}
+			if (add) {
+				addLabel(id, relation, value, language);
+			} else {
+				removeLabel(id, relation, value, language);
+			}
+		} else if (isRelation(relation)) {
+			if (add) {
+				addRelation(id, relation, value);
+			} else {
+				removeRelation(id, relation, value);
+			}
+		} else {
+			log.warn("Ignoring unknown property " + property + " in line " + lineNumber);
+		}
+	}
+}
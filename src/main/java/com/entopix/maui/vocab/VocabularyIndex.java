@@ -0,0 +1,314 @@
+package com.entopix.maui.vocab;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+import com.entopix.maui.util.BlockInputStream;
+import com.entopix.maui.util.BlockOutputStream;
+import com.entopix.maui.util.FrontCodedDictionary;
+
+/**
+ * Contents of an initialized vocabulary store, in compact form.
+ *
+ * Concept ids, terms and normalized phrases are each kept once, in a
+ * front-coded dictionary, and everything else refers to them by number.
+ * Concepts keep the integer ids that the store assigned to them; the
+ * dictionary numbers of their URIs are mapped to these ids.
+ */
+class VocabularyIndex {
+
+	/** ids of all concepts and non-descriptors */
+	private FrontCodedDictionary uris;
+	/** dictionary number of a URI --> concept id */
+	private int[] conceptOfUri;
+	/** concept id --> dictionary number of its URI */
+	private int[] uriOfConcept;
+
+	private FrontCodedDictionary terms;
+	/** concept id --> dictionary number of its term, or -1 */
+	private int[] termOfConcept;
+
+	/** non-descriptor id --> descriptor id, -1 for descriptors */
+	private int[] descriptorOfConcept;
+
+	private FrontCodedDictionary phrases;
+	/** senses of a phrase are between senseOffsets[phrase] and senseOffsets[phrase + 1] */
+	private int[] senseOffsets;
+	/** concept ids of the senses of all phrases */
+	private int[] senses;
+
+	private int numTerms;
+	private int numNonDescriptors;
+
+	private VocabularyIndex() {
+	}
+
+	/**
+	 * Collects the contents of a store by concept id.
+	 */
+	static class Builder {
+
+		private String[] uris;
+		private String[] terms;
+		private int[] descriptors;
+		private HashMap<String, int[]> senses = new HashMap<String, int[]>();
+
+		/**
+		 * @param uris the id of each concept, indexed by concept id
+		 */
+		Builder(String[] uris) {
+			this.uris = uris;
+			terms = new String[uris.length];
+			descriptors = new int[uris.length];
+			Arrays.fill(descriptors, -1);
+		}
+
+		void setTerm(int conceptId, String term) {
+			terms[conceptId] = term;
+		}
+
+		void setDescriptor(int nonDescriptorId, int descriptorId) {
+			descriptors[nonDescriptorId] = descriptorId;
+		}
+
+		/**
+		 * Sets the concept ids of the senses of a phrase, in the order they were added.
+		 */
+		void setSenses(String phrase, int[] conceptIds) {
+			senses.put(phrase, conceptIds);
+		}
+
+		VocabularyIndex build() {
+			VocabularyIndex index = new VocabularyIndex();
+			int n = uris.length;
+
+			index.uris = FrontCodedDictionary.build(Arrays.asList(uris));
+			index.conceptOfUri = new int[n];
+			index.uriOfConcept = new int[n];
+			for (int c = 0; c < n; c++) {
+				int uri = index.uris.indexOf(uris[c]);
+				index.uriOfConcept[c] = uri;
+				index.conceptOfUri[uri] = c;
+			}
+
+			ArrayList<String> distinctTerms = new ArrayList<String>();
+			for (String term : terms) {
+				if (term != null) {
+					distinctTerms.add(term);
+					index.numTerms++;
+				}
+			}
+			index.terms = FrontCodedDictionary.build(distinctTerms);
+			index.termOfConcept = new int[n];
+			for (int c = 0; c < n; c++) {
+				index.termOfConcept[c] = terms[c] == null ? -1 : index.terms.indexOf(terms[c]);
+			}
+
+			index.descriptorOfConcept = descriptors;
+			for (int descriptor : descriptors) {
+				if (descriptor != -1) {
+					index.numNonDescriptors++;
+				}
+			}
+
+			index.phrases = FrontCodedDictionary.build(senses.keySet());
+			index.senseOffsets = new int[index.phrases.size() + 1];
+			int total = 0;
+			for (int[] ids : senses.values()) {
+				total += ids.length;
+			}
+			index.senses = new int[total];
+			for (int p = 0; p < index.phrases.size(); p++) {
+				int[] ids = senses.get(index.phrases.get(p));
+				System.arraycopy(ids, 0, index.senses, index.senseOffsets[p], ids.length);
+				index.senseOffsets[p + 1] = index.senseOffsets[p] + ids.length;
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Returns the number of concepts, including non-descriptors.
+	 */
+	int size() {
+		return uriOfConcept.length;
+	}
+
+	int getConceptId(String uri) {
+		int number = uris.indexOf(uri);
+		return number == -1 ? -1 : conceptOfUri[number];
+	}
+
+	String getConceptURI(int conceptId) {
+		if (conceptId < 0 || conceptId >= uriOfConcept.length) {
+			return null;
+		}
+		return uris.get(uriOfConcept[conceptId]);
+	}
+
+	String getTerm(int conceptId) {
+		if (conceptId < 0 || conceptId >= termOfConcept.length || termOfConcept[conceptId] == -1) {
+			return null;
+		}
+		return terms.get(termOfConcept[conceptId]);
+	}
+
+	String getTerm(String uri) {
+		return getTerm(getConceptId(uri));
+	}
+
+	int getNumTerms() {
+		return numTerms;
+	}
+
+	int getNumNonDescriptors() {
+		return numNonDescriptors;
+	}
+
+	/**
+	 * Returns the ids of the non-descriptors of a descriptor.
+	 */
+	ArrayList<String> getNonDescriptors(String uri) {
+		ArrayList<String> results = new ArrayList<String>();
+		int conceptId = getConceptId(uri);
+		if (conceptId != -1) {
+			for (int c = 0; c < descriptorOfConcept.length; c++) {
+				if (descriptorOfConcept[c] == conceptId) {
+					results.add(getConceptURI(c));
+				}
+			}
+		}
+		return results;
+	}
+
+	Collection<String> getPhrases() {
+		return phrases;
+	}
+
+	int getNumSenses(String phrase) {
+		int p = phrases.indexOf(phrase);
+		return p == -1 ? 0 : senseOffsets[p + 1] - senseOffsets[p];
+	}
+
+	/**
+	 * Returns the descriptors of the senses of a normalized phrase,
+	 * the same way as the stores do before they are initialized.
+	 */
+	ArrayList<String> getSensesForPhrase(String phrase) {
+		int p = phrases.indexOf(phrase);
+		if (p == -1) {
+			return new ArrayList<String>();
+		}
+		ArrayList<Integer> found = new ArrayList<Integer>();
+		for (int i = senseOffsets[p]; i < senseOffsets[p + 1]; i++) {
+			int senseId = senses[i];
+			// 1. retrieve a descriptor if this sense is a non-descriptor
+			if (descriptorOfConcept[senseId] != -1) {
+				senseId = descriptorOfConcept[senseId];
+			}
+			if (termOfConcept[senseId] == -1) {
+				continue;
+			}
+			if (!found.contains(senseId)) {
+				// if ambiguous sense, check if there's a nonambiguous one.
+				// helps with LCSHs!
+				if (getTerm(senseId).indexOf('(') == -1) {
+					found.add(senseId);
+				}
+			}
+		}
+		ArrayList<String> results = new ArrayList<String>(found.size());
+		for (int senseId : found) {
+			results.add(getConceptURI(senseId));
+		}
+		return results;
+	}
+
+	/**
+	 * Returns the id of each concept, indexed by concept id.
+	 */
+	String[] getConceptURIs() {
+		String[] results = new String[size()];
+		for (int c = 0; c < results.length; c++) {
+			results[c] = getConceptURI(c);
+		}
+		return results;
+	}
+
+	/**
+	 * Adds the contents back to a store that has been reopened,
+	 * with the related terms given by relatedIds.
+	 */
+	void replay(VocabularyStore store, int[][] relatedIds) {
+		String[] ids = getConceptURIs();
+		for (int c = 0; c < ids.length; c++) {
+			if (termOfConcept[c] != -1) {
+				store.addDescriptor(ids[c], terms.get(termOfConcept[c]));
+			}
+			if (descriptorOfConcept[c] != -1) {
+				store.addNonDescriptor(ids[c], ids[descriptorOfConcept[c]]);
+			}
+		}
+		for (int p = 0; p < phrases.size(); p++) {
+			String phrase = phrases.get(p);
+			for (int i = senseOffsets[p]; i < senseOffsets[p + 1]; i++) {
+				store.addSense(phrase, ids[senses[i]]);
+			}
+		}
+		for (int c = 0; c < relatedIds.length; c++) {
+			if (relatedIds[c] != null) {
+				for (int related : relatedIds[c]) {
+					store.addRelatedTerm(ids[c], ids[related]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of bytes taken by the strings of the index.
+	 */
+	int getStringBytes() {
+		return uris.getNumBytes() + terms.getNumBytes() + phrases.getNumBytes();
+	}
+
+	void write(BlockOutputStream out) throws IOException {
+		uris.write(out);
+		out.writeIntBlock(uriOfConcept);
+		terms.write(out);
+		out.writeIntBlock(termOfConcept);
+		out.writeIntBlock(descriptorOfConcept);
+		phrases.write(out);
+		out.writeIntBlock(senseOffsets);
+		out.writeIntBlock(senses);
+	}
+
+	static VocabularyIndex read(BlockInputStream in) throws IOException {
+		VocabularyIndex index = new VocabularyIndex();
+		index.uris = FrontCodedDictionary.read(in);
+		index.uriOfConcept = in.readIntBlock();
+		index.conceptOfUri = new int[index.uriOfConcept.length];
+		for (int c = 0; c < index.uriOfConcept.length; c++) {
+			index.conceptOfUri[index.uriOfConcept[c]] = c;
+		}
+		index.terms = FrontCodedDictionary.read(in);
+		index.termOfConcept = in.readIntBlock();
+		for (int term : index.termOfConcept) {
+			if (term != -1) {
+				index.numTerms++;
+			}
+		}
+		index.descriptorOfConcept = in.readIntBlock();
+		for (int descriptor : index.descriptorOfConcept) {
+			if (descriptor != -1) {
+				index.numNonDescriptors++;
+			}
+		}
+		index.phrases = FrontCodedDictionary.read(in);
+		index.senseOffsets = in.readIntBlock();
+		index.senses = in.readIntBlock();
+		return index;
+	}
+}
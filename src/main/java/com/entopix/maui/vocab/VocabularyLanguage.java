@@ -0,0 +1,30 @@
+package com.entopix.maui.vocab;
+
+import com.entopix.maui.stemmers.Stemmer;
+import com.entopix.maui.stopwords.Stopwords;
+
+/**
+ * Labels of a vocabulary in an additional language.
+ *
+ * The concepts, their relations and their hierarchy are shared with the
+ * main language of the vocabulary. Only the labels and the index from
+ * normalized labels to concepts are kept per language, normalized with
+ * the stemmer and stopwords of that language.
+ */
+class VocabularyLanguage {
+
+	String language;
+	Stemmer stemmer;
+	Stopwords stopwords;
+
+	/** labels and senses in this language */
+	VocabularyStore store;
+
+	PhrasePrefilter prefilter = null;
+
+	VocabularyLanguage(String language, Stemmer stemmer, Stopwords stopwords) {
+		this.language = language;
+		this.stemmer = stemmer;
+		this.stopwords = stopwords;
+	}
+}
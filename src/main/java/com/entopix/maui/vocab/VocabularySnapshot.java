@@ -0,0 +1,229 @@
+package com.entopix.maui.vocab;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.entopix.maui.stemmers.Stemmer;
+import com.entopix.maui.stopwords.Stopwords;
+import com.entopix.maui.util.BlockInputStream;
+import com.entopix.maui.util.BlockOutputStream;
+
+/**
+ * Versioned binary snapshot of a loaded VocabularyStore.
+ *
+ * The file starts with a header that records everything the contents of
+ * the store depend on: the store type, the stemmer, the stopwords, the
+ * language, the normalization settings and a checksum of the vocabulary
+ * source files. A snapshot is only used if its header matches the current
+ * settings, so changing any of them rebuilds the store instead of
+ * silently picking up a stale file.
+ *
+ * The header is followed by the store contents, written by the store
+ * itself as length-prefixed blocks, and by a CRC32 of these contents.
+ */
+public class VocabularySnapshot {
+
+	private static final Logger log = LoggerFactory.getLogger(VocabularySnapshot.class);
+
+	/** "MVOC" */
+	private static final int MAGIC = 0x4D564F43;
+
+	public static final int FORMAT_VERSION = 6;
+
+	private String storeType;
+	private String stemmer;
+	private String stopwords;
+	private String language;
+	private boolean toLowerCase;
+	private boolean reorder;
+	private long sourceChecksum;
+
+	public VocabularySnapshot(String storeType, Stemmer stemmer, Stopwords stopwords,
+			String language, boolean toLowerCase, boolean reorder, long sourceChecksum) {
+		this(storeType, className(stemmer), className(stopwords), language,
+				toLowerCase, reorder, sourceChecksum);
+	}
+
+	private VocabularySnapshot(String storeType, String stemmer, String stopwords,
+			String language, boolean toLowerCase, boolean reorder, long sourceChecksum) {
+		this.storeType = storeType;
+		this.stemmer = stemmer;
+		this.stopwords = stopwords;
+		this.language = language;
+		this.toLowerCase = toLowerCase;
+		this.reorder = reorder;
+		this.sourceChecksum = sourceChecksum;
+	}
+
+	private static String className(Object o) {
+		return o == null ? "none" : o.getClass().getName();
+	}
+
+	public String getStoreType() {
+		return storeType;
+	}
+
+	/**
+	 * Returns a copy of this header for a different store type.
+	 */
+	public VocabularySnapshot forStoreType(String storeType) {
+		return new VocabularySnapshot(storeType, stemmer, stopwords, language,
+				toLowerCase, reorder, sourceChecksum);
+	}
+
+	public long getSourceChecksum() {
+		return sourceChecksum;
+	}
+
+	/**
+	 * Returns a description of the first header field that differs
+	 * from the expected header, or null if both headers match.
+	 */
+	public String mismatch(VocabularySnapshot expected) {
+		if (!storeType.equals(expected.storeType)) {
+			return "store type " + storeType + " != " + expected.storeType;
+		}
+		if (!stemmer.equals(expected.stemmer)) {
+			return "stemmer " + stemmer + " != " + expected.stemmer;
+		}
+		if (!stopwords.equals(expected.stopwords)) {
+			return "stopwords " + stopwords + " != " + expected.stopwords;
+		}
+		if (!language.equals(expected.language)) {
+			return "language " + language + " != " + expected.language;
+		}
+		if (toLowerCase != expected.toLowerCase || reorder != expected.reorder) {
+			return "normalization settings";
+		}
+		if (sourceChecksum != expected.sourceChecksum) {
+			return "source checksum " + Long.toHexString(sourceChecksum)
+					+ " != " + Long.toHexString(expected.sourceChecksum);
+		}
+		return null;
+	}
+
+	/**
+	 * Computes a CRC32 over the contents of the given files.
+	 * Files that do not exist are skipped.
+	 */
+	public static long checksum(File... files) {
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[65536];
+		for (File file : files) {
+			if (!file.exists()) {
+				continue;
+			}
+			InputStream in = null;
+			try {
+				in = new FileInputStream(file);
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					crc.update(buffer, 0, read);
+				}
+			} catch (IOException e) {
+				log.warn("Unable to compute checksum of " + file.getAbsolutePath(), e);
+			} finally {
+				if (in != null) {
+					try {
+						in.close();
+					} catch (IOException e) {
+						log.warn("Error closing " + file.getAbsolutePath());
+					}
+				}
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Writes the header and the contents of the store to the file.
+	 */
+	public static void write(File file, VocabularySnapshot header, VocabularyStore store) throws IOException {
+		BlockOutputStream out = new BlockOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(header.storeType);
+			out.writeUTF(header.stemmer);
+			out.writeUTF(header.stopwords);
+			out.writeUTF(header.language);
+			out.writeBoolean(header.toLowerCase);
+			out.writeBoolean(header.reorder);
+			out.writeLong(header.sourceChecksum);
+			out.flush();
+
+			CRC32 crc = new CRC32();
+			BlockOutputStream body = new BlockOutputStream(new CheckedOutputStream(out, crc));
+			store.writeSnapshot(body);
+			body.flush();
+			out.writeLong(crc.getValue());
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads the header of a snapshot file.
+	 * @return the header, or null if the file is not a snapshot of a supported version
+	 */
+	public static VocabularySnapshot readHeader(BlockInputStream in) throws IOException {
+		if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+			return null;
+		}
+		String storeType = in.readUTF();
+		String stemmer = in.readUTF();
+		String stopwords = in.readUTF();
+		String language = in.readUTF();
+		boolean toLowerCase = in.readBoolean();
+		boolean reorder = in.readBoolean();
+		long sourceChecksum = in.readLong();
+		return new VocabularySnapshot(storeType, stemmer, stopwords, language,
+				toLowerCase, reorder, sourceChecksum);
+	}
+
+	/**
+	 * Reads the contents of the snapshot file into the given store,
+	 * provided that the header of the file matches the expected header.
+	 *
+	 * @return true if the store was loaded, false if the file is stale
+	 * @throws IOException if the file is unreadable or corrupt
+	 */
+	public static boolean read(File file, VocabularySnapshot expected, VocabularyStore store) throws IOException {
+		BlockInputStream in = new BlockInputStream(
+				new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			VocabularySnapshot header = readHeader(in);
+			if (header == null) {
+				log.info("Ignoring " + file + ": not a vocabulary snapshot of version " + FORMAT_VERSION);
+				return false;
+			}
+			String mismatch = header.mismatch(expected);
+			if (mismatch != null) {
+				log.info("Ignoring stale vocabulary snapshot " + file + ": " + mismatch);
+				return false;
+			}
+
+			CRC32 crc = new CRC32();
+			BlockInputStream body = new BlockInputStream(new CheckedInputStream(in, crc));
+			store.readSnapshot(body);
+			if (in.readLong() != crc.getValue()) {
+				throw new IOException("Checksum mismatch in vocabulary snapshot " + file);
+			}
+			return true;
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -1,7 +1,14 @@
 package com.entopix.maui.vocab;
 
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+
+import com.entopix.maui.util.BlockInputStream;
+import com.entopix.maui.util.BlockOutputStream;
 
 /**
  *
@@ -15,9 +22,171 @@ public abstract class VocabularyStore {
 
     protected String vocabularyName = "";
 
+    /** concept id --> sorted ids of related concepts */
+    protected int[][] relatedIds = null;
+
+    /** typed relations, recorded by addRelationship until the relation index is built */
+    private ArrayList<String> relationSources = new ArrayList<String>();
+    private ArrayList<String> relationTargets = new ArrayList<String>();
+    private ArrayList<Vocabulary.Relation> relationTypes = new ArrayList<Vocabulary.Relation>();
+    /** relations removed by removeRelationship since the store was reopened */
+    private HashSet<String> removedRelations = new HashSet<String>();
+
+    protected RelationIndex relations = null;
+
+    protected ConceptHierarchy hierarchy = null;
+
+    /** contents of the store once it is initialized */
+    protected VocabularyIndex index = null;
+
     public boolean isInitialized(){ return initialized; }
 
-    public void finishedInitialized(){ initialized = true; }
+    public void finishedInitialized(){
+        relatedIds = buildRelatedIds();
+        if (relations == null) {
+            relations = buildRelations();
+            hierarchy = buildHierarchy();
+        }
+        index = buildIndex();
+        initialized = true;
+    }
+
+    public void addRelationship( String id_string, String name, Vocabulary.Relation rel )
+    {
+        relationSources.add(id_string);
+        relationTargets.add(name);
+        relationTypes.add(rel);
+        removedRelations.remove(relationKey(id_string, name, rel));
+    }
+
+    /**
+     * Removes a relation recorded with addRelationship, or a relation
+     * of the index if the store was reopened.
+     */
+    public void removeRelationship( String id_string, String name, Vocabulary.Relation rel )
+    {
+        removedRelations.add(relationKey(id_string, name, rel));
+    }
+
+    private static String relationKey( String source, String target, Vocabulary.Relation rel )
+    {
+        return source + '\t' + target + '\t' + rel.ordinal();
+    }
+
+    /**
+     * Makes an initialized store accept changes again. The relations of
+     * the index are recorded as if they were added with addRelationship,
+     * and finishedInitialized has to be called once the changes are made.
+     * Concept ids that were assigned before stay the same.
+     */
+    public void reopen()
+    {
+        if (relations != null) {
+            for (int i = 0; i < relations.size(); i++) {
+                relationSources.add(getConceptURI(relations.getSource(i)));
+                relationTargets.add(getConceptURI(relations.getTarget(i)));
+                relationTypes.add(relations.getRelation(i));
+            }
+        }
+        if (index != null) {
+            VocabularyIndex contents = index;
+            index = null;
+            restoreConcepts(contents.getConceptURIs());
+            contents.replay(this, relatedIds);
+        }
+        relations = null;
+        hierarchy = null;
+        initialized = false;
+    }
+
+    private RelationIndex buildRelations()
+    {
+        int[] sources = new int[relationSources.size()];
+        int[] targets = new int[relationSources.size()];
+        byte[] types = new byte[relationSources.size()];
+        int count = 0;
+        for (int i = 0; i < sources.length; i++) {
+            if (!removedRelations.isEmpty() && removedRelations.contains(
+                    relationKey(relationSources.get(i), relationTargets.get(i), relationTypes.get(i)))) {
+                continue;
+            }
+            int source = getConceptId(relationSources.get(i));
+            int target = getConceptId(relationTargets.get(i));
+            if (source != -1 && target != -1) {
+                sources[count] = source;
+                targets[count] = target;
+                types[count] = (byte) relationTypes.get(i).ordinal();
+                count++;
+            }
+        }
+        relationSources = new ArrayList<String>();
+        relationTargets = new ArrayList<String>();
+        relationTypes = new ArrayList<Vocabulary.Relation>();
+        removedRelations = new HashSet<String>();
+
+        return RelationIndex.build(relatedIds.length, Arrays.copyOf(sources, count),
+                Arrays.copyOf(targets, count), Arrays.copyOf(types, count));
+    }
+
+    /**
+     * Builds the hierarchy from the broader, narrower and top concept relations.
+     */
+    private ConceptHierarchy buildHierarchy()
+    {
+        int[] children = new int[relations.size()];
+        int[] parents = new int[relations.size()];
+        int[] tops = new int[relations.size()];
+        int count = 0;
+        int numTops = 0;
+        for (int i = 0; i < relations.size(); i++) {
+            Vocabulary.Relation rel = relations.getRelation(i);
+            if (rel == Vocabulary.Relation.kRelationBroader) {
+                children[count] = relations.getSource(i);
+                parents[count++] = relations.getTarget(i);
+            } else if (rel == Vocabulary.Relation.kRelationNarrower) {
+                children[count] = relations.getTarget(i);
+                parents[count++] = relations.getSource(i);
+            } else if (rel == Vocabulary.Relation.kRelationHasTopConcept) {
+                tops[numTops++] = relations.getTarget(i);
+            }
+        }
+        return ConceptHierarchy.build(relatedIds.length, Arrays.copyOf(children, count),
+                Arrays.copyOf(parents, count), Arrays.copyOf(tops, numTops));
+    }
+
+    /**
+     * Returns the typed relations between concepts.
+     */
+    public RelationIndex getRelations()
+    {
+        return relations;
+    }
+
+    /**
+     * Returns the broader/narrower hierarchy, or null if the vocabulary has none.
+     */
+    public ConceptHierarchy getHierarchy()
+    {
+        return hierarchy;
+    }
+
+    /**
+     * Writes the relation index and the hierarchy as part of a snapshot.
+     */
+    protected void writeRelations( BlockOutputStream out ) throws IOException
+    {
+        relations.write(out);
+        out.writeBoolean(hierarchy != null);
+        if (hierarchy != null) {
+            hierarchy.write(out);
+        }
+    }
+
+    protected void readRelations( BlockInputStream in ) throws IOException
+    {
+        relations = RelationIndex.read(in);
+        hierarchy = in.readBoolean() ? ConceptHierarchy.read(in) : null;
+    }
 
     public String getFormatedName( String in )
     {
@@ -42,7 +211,21 @@ public abstract class VocabularyStore {
 
     public abstract void addRelatedTerm( String term, String relatedTerm );
 
-    public abstract void addRelationship( String id_string, String name, Vocabulary.Relation rel);
+    /**
+     * Removes one occurrence of the id from the senses of a normalized phrase.
+     */
+    public abstract void removeSense( String descriptor, String id );
+
+    public abstract void removeDescriptor( String id_string );
+
+    public abstract void removeNonDescriptor( String id );
+
+    public abstract void removeRelatedTerm( String term, String relatedTerm );
+
+    /**
+     * Returns the ids of the non-descriptors that refer to the given descriptor.
+     */
+    public abstract ArrayList<String> getNonDescriptors( String id );
 
     public abstract int getNumTerms();
 
@@ -56,5 +239,165 @@ public abstract class VocabularyStore {
 
     public abstract String getTerm(String id);
 
+    /**
+     * Returns the id of the concept with the given integer id, or null if there is none.
+     */
+    public abstract String getConceptURI( int conceptId );
+
     public abstract ArrayList<String> getSensesForPhrase( String phrase );
+
+    /**
+     * Returns all normalized phrases that have senses.
+     */
+    public abstract Collection<String> getSensePhrases();
+
+    /**
+     * Returns the integer id of a concept, or -1 if the concept is unknown
+     * or the store is not initialized yet. Never adds the concept to the store.
+     */
+    public abstract int getConceptId( String id );
+
+    /**
+     * Builds the rows of related concept ids, indexed by concept id.
+     * Called once the store is initialized.
+     */
+    protected abstract int[][] buildRelatedIds();
+
+    /**
+     * Returns the sorted ids of the concepts related to the given concept,
+     * or null if it has none.
+     */
+    public int[] getRelatedIds( int conceptId )
+    {
+        if (relatedIds == null || conceptId < 0 || conceptId >= relatedIds.length) {
+            return null;
+        }
+        return relatedIds[conceptId];
+    }
+
+    /**
+     * Returns the ids as a sorted array. Duplicates are kept, so that
+     * each occurrence of a relation is counted as before.
+     */
+    protected static int[] toSortedArray( Collection<Integer> ids )
+    {
+        int[] values = toArray(ids);
+        Arrays.sort(values);
+        return values;
+    }
+
+    protected static int[] toArray( Collection<Integer> ids )
+    {
+        int[] values = new int[ids.size()];
+        int i = 0;
+        for (Integer id : ids) {
+            values[i++] = id;
+        }
+        return values;
+    }
+
+    /**
+     * Returns the number of concepts with related concepts, once the store is initialized.
+     */
+    protected int countRelatedRows()
+    {
+        int count = 0;
+        for (int[] row : relatedIds) {
+            if (row != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the ids of the concepts related to the given concept,
+     * or null if it has none, once the store is initialized.
+     */
+    protected ArrayList<String> getRelatedTermsFromIds( String id )
+    {
+        int[] row = getRelatedIds(getConceptId(id));
+        if (row == null) {
+            return null;
+        }
+        ArrayList<String> results = new ArrayList<String>(row.length);
+        for (int related : row) {
+            results.add(getConceptURI(related));
+        }
+        return results;
+    }
+
+    /**
+     * Builds the compact index of the contents, with the concept ids
+     * used by buildRelatedIds, and releases the maps used while adding
+     * the contents. Called once the store is initialized.
+     */
+    protected abstract VocabularyIndex buildIndex();
+
+    /**
+     * Prepares a reopened store to get its contents back,
+     * giving each concept its previous id.
+     *
+     * @param uris the id of each concept, indexed by concept id
+     */
+    protected abstract void restoreConcepts( String[] uris );
+
+    /**
+     * Returns the number of bytes taken by the strings of an initialized store.
+     */
+    public int getStringBytes()
+    {
+        return index == null ? 0 : index.getStringBytes();
+    }
+
+    /**
+     * Writes the contents of the store as blocks of a vocabulary snapshot.
+     * @see VocabularySnapshot
+     */
+    public void writeSnapshot( BlockOutputStream out ) throws IOException
+    {
+        index.write(out);
+
+        /** concept id --> related concept ids, -1 for concepts without a row */
+        int[] lengths = new int[relatedIds.length];
+        int total = 0;
+        for (int i = 0; i < relatedIds.length; i++) {
+            lengths[i] = relatedIds[i] == null ? -1 : relatedIds[i].length;
+            total += Math.max(lengths[i], 0);
+        }
+        int[] related = new int[total];
+        total = 0;
+        for (int[] row : relatedIds) {
+            if (row != null) {
+                System.arraycopy(row, 0, related, total, row.length);
+                total += row.length;
+            }
+        }
+        out.writeIntBlock(lengths);
+        out.writeIntBlock(related);
+
+        writeRelations(out);
+    }
+
+    /**
+     * Reads the contents written by writeSnapshot and marks the store as initialized.
+     */
+    public void readSnapshot( BlockInputStream in ) throws IOException
+    {
+        index = VocabularyIndex.read(in);
+
+        int[] lengths = in.readIntBlock();
+        int[] related = in.readIntBlock();
+        relatedIds = new int[lengths.length][];
+        int offset = 0;
+        for (int i = 0; i < lengths.length; i++) {
+            if (lengths[i] != -1) {
+                relatedIds[i] = Arrays.copyOfRange(related, offset, offset + lengths[i]);
+                offset += lengths[i];
+            }
+        }
+
+        readRelations(in);
+        initialized = true;
+    }
 }
@@ -4,16 +4,18 @@
  */
 package com.entopix.maui.vocab;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.entopix.maui.stemmers.Stemmer;
+import com.entopix.maui.stopwords.Stopwords;
+import com.entopix.maui.util.BlockInputStream;
+import com.entopix.maui.util.BlockOutputStream;
 
 /**
  *
@@ -32,30 +34,35 @@ public class VocabularyStoreFactory {
             preferredClassType = preffered_type;
     }
 
-    private static String filenameForVocabulary(String vocabularyName, Stemmer stemmer) {
-        return vocabularyName + "_" + preferredClassType.getName() + "_" + stemmer.getClass().getSimpleName() + ".serialized";
+    static File snapshotFileForVocabulary(String vocabularyName, Stemmer stemmer) {
+        return new File(vocabularyName + "_" + preferredClassType.getName() + "_" + stemmer.getClass().getSimpleName() + ".snapshot");
+    }
+
+    /**
+     * Describes the settings a vocabulary snapshot has to match to be reused.
+     * 
+     * @param sourceChecksum checksum of the vocabulary source files, see {@link VocabularySnapshot#checksum(File...)}
+     */
+    public static VocabularySnapshot snapshotHeader(Stemmer stemmer, Stopwords stopwords, String language,
+            boolean toLowerCase, boolean reorder, long sourceChecksum) {
+        return new VocabularySnapshot(preferredClassType.getName(), stemmer, stopwords, language,
+                toLowerCase, reorder, sourceChecksum);
+    }
+
+    private static VocabularySnapshot defaultHeader(String vocabularyName, Stemmer stemmer) {
+        return snapshotHeader(stemmer, null, "", true, true, VocabularySnapshot.checksum(new File(vocabularyName)));
     }
 
     public static VocabularyStore CreateVocabStore(String vocabularyName, Stemmer stemmer, boolean serialize) {
-        VocabularyStore vocab_store = null;
-        if (serialize) {
-	        String filename = filenameForVocabulary(vocabularyName, stemmer);
-        	log.info("Deserializing vocabulary from " + filename);
-	        try {
-	            FileInputStream fis = new FileInputStream(filename);
-	            ObjectInputStream in = new ObjectInputStream(fis);
-	            vocab_store = (VocabularyStore) in.readObject();
-	            in.close();
-	        } catch (IOException ex) {
-	            log.info("Serialized version of the vocabulary doesn't exist. Checked " + filename);
-	        } catch (ClassNotFoundException ex) {
-	            log.error("Class not found while reading " + filename, ex);
-	        }
-        }
-        if (vocab_store != null) {
-            return vocab_store;
-        }
+        return CreateVocabStore(vocabularyName, stemmer, serialize ? defaultHeader(vocabularyName, stemmer) : null, serialize);
+    }
 
+    /**
+     * Creates an empty store of the preferred type, or, if serialization is on
+     * and a snapshot with a matching header exists, a store loaded from that snapshot.
+     */
+    public static VocabularyStore CreateVocabStore(String vocabularyName, Stemmer stemmer, VocabularySnapshot header, boolean serialize) {
+        VocabularyStore vocab_store = null;
         try {
         	vocab_store = (VocabularyStore) preferredClassType.newInstance();
             vocab_store.setVocabularyName(vocabularyName);
@@ -63,22 +70,70 @@ public class VocabularyStoreFactory {
         } catch (IllegalAccessException ex) {
         }
 
+        if (serialize && vocab_store != null) {
+	        File file = snapshotFileForVocabulary(vocabularyName, stemmer);
+	        if (!file.exists()) {
+	        	log.info("Serialized version of the vocabulary doesn't exist. Checked " + file);
+	        	return vocab_store;
+	        }
+        	log.info("Deserializing vocabulary from " + file);
+	        try {
+	            long start = System.currentTimeMillis();
+	            if (VocabularySnapshot.read(file, header, vocab_store)) {
+	                log.info("Loaded vocabulary snapshot in " + (System.currentTimeMillis() - start) + "ms");
+	                return vocab_store;
+	            }
+	        } catch (IOException ex) {
+	            log.error("Error while reading " + file, ex);
+	        }
+	        // discard a partially read store
+	        return CreateVocabStore(vocabularyName, stemmer, header, false);
+        }
+
         return vocab_store;
     }
 
     public static void SerializeNewVocabStore(String vocabularyName, VocabularyStore vocabStore, Stemmer stemmer) {
+        SerializeNewVocabStore(vocabularyName, vocabStore, stemmer, defaultHeader(vocabularyName, stemmer));
+    }
+
+    public static void SerializeNewVocabStore(String vocabularyName, VocabularyStore vocabStore, Stemmer stemmer, VocabularySnapshot header) {
         if (!vocabStore.getWantsSerialization()) {
             return;
         }
         log.info("Serializing loaded vocabulary");
-        String filename = filenameForVocabulary(vocabularyName, stemmer);
+        File file = snapshotFileForVocabulary(vocabularyName, stemmer);
         try {
-            FileOutputStream fos = new FileOutputStream(filename);
-            ObjectOutputStream out = new ObjectOutputStream(fos);
-            out.writeObject(vocabStore);
-            out.close();
+            VocabularySnapshot.write(file, header.forStoreType(vocabStore.getClass().getName()), vocabStore);
         } catch (IOException ex) {
             log.error("Error serializing vocabstore", ex);
         }
     }
+
+    /**
+     * Creates an independent copy of an initialized store, passing its
+     * contents through the snapshot blocks in memory, so that none of
+     * the labels have to be normalized again.
+     */
+    public static VocabularyStore CopyVocabStore(VocabularyStore vocabStore) {
+        try {
+            VocabularyStore copy = vocabStore.getClass().newInstance();
+            copy.setVocabularyName(vocabStore.vocabularyName);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            BlockOutputStream out = new BlockOutputStream(bytes);
+            vocabStore.writeSnapshot(out);
+            out.close();
+            copy.readSnapshot(new BlockInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            return copy;
+        } catch (InstantiationException ex) {
+            log.error("Error copying vocabstore", ex);
+            throw new RuntimeException(ex);
+        } catch (IllegalAccessException ex) {
+            log.error("Error copying vocabstore", ex);
+            throw new RuntimeException(ex);
+        } catch (IOException ex) {
+            log.error("Error copying vocabstore", ex);
+            throw new RuntimeException(ex);
+        }
+    }
 }
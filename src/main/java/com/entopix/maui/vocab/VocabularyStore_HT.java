@@ -1,9 +1,8 @@
 package com.entopix.maui.vocab;
 
-import java.io.Externalizable;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -12,7 +11,7 @@ import java.util.Map;
  *
  * @author nathanholmberg
  */
-public class VocabularyStore_HT extends VocabularyStore implements Externalizable {
+public class VocabularyStore_HT extends VocabularyStore {
 
 	private String conceptURIPrefix = null;
 	/** reverse index : id --> descriptor */
@@ -23,20 +22,16 @@ public class VocabularyStore_HT extends VocabularyStore implements Externalizabl
 	private HashMap<Integer, Integer> nonDescriptorIndex = null;
 	/** id -->  list of related ids */
 	private HashMap<Integer, ArrayList<Integer>> listsOfRelatedTerms = null;
-	/** id-relatedId --> relation */
-	private HashMap<Long, Vocabulary.Relation> relationIndex = null;
 	private int currentID = 0;
 	private HashMap<String, Integer> URItoIDMap = null;
 	private HashMap<Integer, String> IDtoURIMap = null;
+	/** ids whose URI does not start with the prefix and is kept in full */
+	private BitSet unprefixed = new BitSet();
 
 
-	public long CantorPairingFunction(int n1, int n2) {
-		// from http://en.wikipedia.org/wiki/Cantor_pairing_function
-		return (long) (0.5 * (n1 + n2) * (n1 + n2 + 1) + n2);
-	}
-
 	public int createIDFromURI(String in) {
 		String prefix_current = in.substring(0, in.lastIndexOf('/') + 1);
+		boolean prefixed = true;
 		if (conceptURIPrefix == null) {
 			conceptURIPrefix = prefix_current;
 			in = in.substring(prefix_current.length());
@@ -44,6 +39,7 @@ public class VocabularyStore_HT extends VocabularyStore implements Externalizabl
 			in = in.substring(prefix_current.length());
 		} else {
 			// log.info("Not saving anything by cutting off prefix?");
+			prefixed = false;
 		}
 
 		if (URItoIDMap == null) {
@@ -55,13 +51,32 @@ public class VocabularyStore_HT extends VocabularyStore implements Externalizabl
 		if (URItoIDMap.get(in) == null) {
 			IDtoURIMap.put(currentID, in);
 			URItoIDMap.put(in, currentID);
+			unprefixed.set(currentID, !prefixed);
 			currentID++;
 		}
 
 		return URItoIDMap.get(in);
 	}
 
+	/**
+	 * Returns the id of the URI without creating one, or -1 if the URI is unknown.
+	 */
+	private int lookupIDFromURI(String in) {
+		if (URItoIDMap == null) {
+			return -1;
+		}
+		String prefix_current = in.substring(0, in.lastIndexOf('/') + 1);
+		if (prefix_current.equals(conceptURIPrefix)) {
+			in = in.substring(prefix_current.length());
+		}
+		Integer id = URItoIDMap.get(in);
+		return id == null ? -1 : id;
+	}
+
 	public String createURIFromID(Integer id) {
+		if (unprefixed.get(id)) {
+			return IDtoURIMap.get(id);
+		}
 		return conceptURIPrefix + IDtoURIMap.get(id);
 	}
 
@@ -72,7 +87,6 @@ public class VocabularyStore_HT extends VocabularyStore implements Externalizabl
 
 		nonDescriptorIndex = new HashMap<Integer, Integer>();
 		listsOfRelatedTerms = new HashMap<Integer, ArrayList<Integer>>();
-		relationIndex = new HashMap<Long, Vocabulary.Relation>();
 	}
 
 	public void addSense(String descriptor, String id_string) {
@@ -111,24 +125,75 @@ public class VocabularyStore_HT extends VocabularyStore implements Externalizabl
 		listsOfRelatedTerms.put(term_id, related_terms);
 	}
 
-	public void addRelationship(String id_string, String name, Vocabulary.Relation rel) {
-		//      relationIndex.put(CantorPairingFunction(createIDFromURI(id_string), createIDFromURI(name)), rel);
+	public void removeSense(String descriptor, String id_string) {
+		ArrayList<Integer> ids = listsOfSenses.get(descriptor);
+		if (ids != null) {
+			ids.remove(Integer.valueOf(lookupIDFromURI(id_string)));
+			if (ids.isEmpty()) {
+				listsOfSenses.remove(descriptor);
+			}
+		}
+	}
+
+	public void removeDescriptor(String id_string) {
+		idTermIndex.remove(lookupIDFromURI(id_string));
+	}
+
+	public void removeNonDescriptor(String id_string) {
+		nonDescriptorIndex.remove(lookupIDFromURI(id_string));
+	}
+
+	public void removeRelatedTerm(String term, String relatedTerm) {
+		int term_id = lookupIDFromURI(term);
+		ArrayList<Integer> related_terms = listsOfRelatedTerms.get(term_id);
+		if (related_terms != null) {
+			related_terms.remove(Integer.valueOf(lookupIDFromURI(relatedTerm)));
+			if (related_terms.isEmpty()) {
+				listsOfRelatedTerms.remove(term_id);
+			}
+		}
+	}
+
+	public ArrayList<String> getNonDescriptors(String id_string) {
+		if (index != null) {
+			return index.getNonDescriptors(id_string);
+		}
+		Integer desc_id = lookupIDFromURI(id_string);
+		ArrayList<String> results = new ArrayList<String>();
+		for (Map.Entry<Integer, Integer> e : nonDescriptorIndex.entrySet()) {
+			if (e.getValue().equals(desc_id)) {
+				results.add(createURIFromID(e.getKey()));
+			}
+		}
+		return results;
 	}
 
 	public int getNumTerms() {
+		if (index != null) {
+			return index.getNumTerms();
+		}
 		return idTermIndex.size();
 	}
 
 	public int getNumNonDescriptors() {
+		if (index != null) {
+			return index.getNumNonDescriptors();
+		}
 		return nonDescriptorIndex.size();
 	}
 
 	public int getNumRelatedTerms() {
+		if (index != null) {
+			return countRelatedRows();
+		}
 		return listsOfRelatedTerms.size();
 	}
 
 	public ArrayList<String> getRelatedTerms(String id) {
-		int term_id = createIDFromURI(id);
+		if (index != null) {
+			return getRelatedTermsFromIds(id);
+		}
+		int term_id = lookupIDFromURI(id);
 
 		ArrayList<String> results = null;
 
@@ -144,6 +209,9 @@ public class VocabularyStore_HT extends VocabularyStore implements Externalizabl
 	}
 
 	public int getNumSenses(String sense) {
+		if (index != null) {
+			return index.getNumSenses(sense);
+		}
 		ArrayList<Integer> meanings = listsOfSenses.get(sense);
 		if (meanings != null) {
 			return meanings.size();
@@ -152,11 +220,52 @@ public class VocabularyStore_HT extends VocabularyStore implements Externalizabl
 	}
 
 	public String getTerm(String id) {
-		int term_id = createIDFromURI(id);
+		if (index != null) {
+			return index.getTerm(id);
+		}
+		int term_id = lookupIDFromURI(id);
 		return idTermIndex.get(term_id);
 	}
 
+	public String getConceptURI(int conceptId) {
+		if (index != null) {
+			return index.getConceptURI(conceptId);
+		}
+		if (IDtoURIMap == null || !IDtoURIMap.containsKey(conceptId)) {
+			return null;
+		}
+		return createURIFromID(conceptId);
+	}
+
+	public int getConceptId(String id) {
+		if (index != null) {
+			return index.getConceptId(id);
+		}
+		if (relatedIds == null) {
+			return -1;
+		}
+		return lookupIDFromURI(id);
+	}
+
+	protected int[][] buildRelatedIds() {
+		int[][] rows = new int[currentID][];
+		for (Map.Entry<Integer, ArrayList<Integer>> e : listsOfRelatedTerms.entrySet()) {
+			rows[e.getKey()] = toSortedArray(e.getValue());
+		}
+		return rows;
+	}
+
+	public Collection<String> getSensePhrases() {
+		if (index != null) {
+			return index.getPhrases();
+		}
+		return listsOfSenses.keySet();
+	}
+
 	public ArrayList<String> getSensesForPhrase(String phrase) {
+		if (index != null) {
+			return index.getSensesForPhrase(phrase);
+		}
 
 		ArrayList<Integer> senses = new ArrayList<Integer>();
 		if (listsOfSenses.containsKey(phrase)) {
@@ -188,141 +297,43 @@ public class VocabularyStore_HT extends VocabularyStore implements Externalizabl
 		return results;
 	}
 
-	public void writeExternal(ObjectOutput out) throws java.io.IOException {
-		// Write non-hashmap objects
-		out.writeUTF(conceptURIPrefix);
-
-		/** reverse index : id --> descriptor */
-		out.writeInt(idTermIndex.size());
-
-		for (Map.Entry<Integer, String> e : idTermIndex.entrySet()) {
-			out.writeInt(e.getKey());
-			out.writeUTF(e.getValue());
+	protected VocabularyIndex buildIndex() {
+		String[] uris = new String[currentID];
+		for (int id = 0; id < currentID; id++) {
+			uris[id] = createURIFromID(id);
 		}
-
-
-		/** normalized descriptor --> list of all possible meanings */
-		out.writeInt(listsOfSenses.size());
-
-		for (Map.Entry<String, ArrayList<Integer>> e : listsOfSenses.entrySet()) {
-			out.writeUTF(e.getKey());
-			ArrayList<Integer> senses = e.getValue();
-			out.writeInt(senses.size());
-			for (int i = 0; i < senses.size(); i++) {
-				out.writeInt(senses.get(i));
-			}
+		VocabularyIndex.Builder builder = new VocabularyIndex.Builder(uris);
+		for (Map.Entry<Integer, String> e : idTermIndex.entrySet()) {
+			builder.setTerm(e.getKey(), e.getValue());
 		}
-
-		/** non-descriptor id  --> descriptors id */
-		out.writeInt(nonDescriptorIndex.size());
-
 		for (Map.Entry<Integer, Integer> e : nonDescriptorIndex.entrySet()) {
-			out.writeInt(e.getKey());
-			out.writeInt(e.getValue());
-		}
-
-		/** id -->  list of related ids */
-		out.writeInt(listsOfRelatedTerms.size());
-
-		for (Map.Entry<Integer, ArrayList<Integer>> e : listsOfRelatedTerms.entrySet()) {
-			out.writeInt(e.getKey());
-			ArrayList<Integer> relatedTerms = e.getValue();
-			out.writeInt(relatedTerms.size());
-			for (int i = 0; i < relatedTerms.size(); i++) {
-				out.writeInt(relatedTerms.get(i));
-			}
+			builder.setDescriptor(e.getKey(), e.getValue());
 		}
-
-		/** id-relatedId --> relation */
-		out.writeInt(relationIndex.size());
-
-		for (Map.Entry<Long, Vocabulary.Relation> e : relationIndex.entrySet()) {
-			out.writeLong(e.getKey());
-			out.writeObject(e.getValue());
+		for (Map.Entry<String, ArrayList<Integer>> e : listsOfSenses.entrySet()) {
+			builder.setSenses(e.getKey(), toArray(e.getValue()));
 		}
+		VocabularyIndex built = builder.build();
 
+		clear();
+		return built;
+	}
 
-		out.writeInt(IDtoURIMap.size());
-
-		for (Map.Entry<Integer, String> e : IDtoURIMap.entrySet()) {
-			out.writeInt(e.getKey());
-			out.writeUTF(e.getValue());
+	protected void restoreConcepts(String[] uris) {
+		clear();
+		for (String uri : uris) {
+			createIDFromURI(uri);
 		}
-
-
 	}
 
-	public void readExternal(ObjectInput in) throws java.io.IOException, ClassNotFoundException {
-
-		conceptURIPrefix = in.readUTF();
-
-		int size = 0;
-		/** reverse index : id --> descriptor */
-		size = in.readInt();
+	private void clear() {
 		idTermIndex = new HashMap<Integer, String>();
-		for (int i = 0; i < size; i++) {
-			idTermIndex.put(in.readInt(), in.readUTF());
-		}
-
-
-		/** normalized descriptor --> list of all possible meanings */
-		size = in.readInt();
 		listsOfSenses = new HashMap<String, ArrayList<Integer>>();
-
-		for (int i = 0; i < size; i++) {
-			String sense = in.readUTF();
-			int size_2 = in.readInt();
-			ArrayList<Integer> senses = new ArrayList<Integer>();
-			for (int j = 0; j < size_2; j++) {
-				senses.add(in.readInt());
-			}
-			listsOfSenses.put(sense, senses);
-		}
-
-		/** non-descriptor id  --> descriptors id */
-		size = in.readInt();
-
 		nonDescriptorIndex = new HashMap<Integer, Integer>();
-		for (int i = 0; i < size; i++) {
-			nonDescriptorIndex.put(in.readInt(), in.readInt());
-		}
-
-		/** id -->  list of related ids */
-		size = in.readInt();
-
 		listsOfRelatedTerms = new HashMap<Integer, ArrayList<Integer>>();
-		for (int i = 0; i < size; i++) {
-			int term = in.readInt();
-			int size_2 = in.readInt();
-			ArrayList<Integer> relations = new ArrayList<Integer>();
-			for (int j = 0; j < size_2; j++) {
-				relations.add(in.readInt());
-			}
-			listsOfRelatedTerms.put(term, relations);
-		}
-
-		/** id-relatedId --> relation */
-		size = in.readInt();
-
-		relationIndex = new HashMap<Long, Vocabulary.Relation>();
-		for (int i = 0; i < size; i++) {
-			Long id = in.readLong();
-			Vocabulary.Relation rel = (Vocabulary.Relation) in.readObject();
-			relationIndex.put(id, rel);
-		}
-
-
-		size = in.readInt();
-
-		IDtoURIMap = new HashMap<Integer, String>();
-		URItoIDMap = new HashMap<String, Integer>();
-		for (int i = 0; i < size; i++) {
-			int id = in.readInt();
-			String name = in.readUTF();
-			IDtoURIMap.put(id, name);
-			URItoIDMap.put(name, id);
-		}
-
-		finishedInitialized();
+		conceptURIPrefix = null;
+		URItoIDMap = null;
+		IDtoURIMap = null;
+		unprefixed = new BitSet();
+		currentID = 0;
 	}
 }
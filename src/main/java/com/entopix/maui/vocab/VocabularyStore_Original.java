@@ -1,9 +1,9 @@
 package com.entopix.maui.vocab;
 
-import java.io.Externalizable;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -11,7 +11,7 @@ import java.util.Map;
  *
  * @author nathanholmberg
  */
-public class VocabularyStore_Original extends VocabularyStore implements Externalizable {
+public class VocabularyStore_Original extends VocabularyStore {
 
 	//private static final Logger log = LoggerFactory.getLogger(VocabularyStore_Original.class);
 
@@ -23,8 +23,10 @@ public class VocabularyStore_Original extends VocabularyStore implements Externa
 	private HashMap<String, String> nonDescriptorIndex = null;
 	/** id -->  list of related ids */
 	private HashMap<String, ArrayList<String>> listsOfRelatedTerms = null;
-	/** id-relatedId --> relation */
-	private HashMap<String, Vocabulary.Relation> relationIndex = null;
+	/** id --> concept id, assigned once the store is initialized */
+	private HashMap<String, Integer> conceptIds = null;
+	/** concept id --> id */
+	private String[] conceptURIs = null;
 
 
 
@@ -35,7 +37,6 @@ public class VocabularyStore_Original extends VocabularyStore implements Externa
 
 		nonDescriptorIndex = new HashMap<String, String>();
 		listsOfRelatedTerms = new HashMap<String, ArrayList<String>>();
-		relationIndex = new HashMap<String, Vocabulary.Relation>();
 	}
 
 	public void addSense(String descriptor, String id) {
@@ -66,28 +67,80 @@ public class VocabularyStore_Original extends VocabularyStore implements Externa
 		listsOfRelatedTerms.put(term, related_terms);
 	}
 
-	public void addRelationship(String id_string, String name, Vocabulary.Relation rel){
-		// relationIndex.put(id_string+"-"+ name, rel);
+	public void removeSense(String descriptor, String id) {
+		ArrayList<String> ids = listsOfSenses.get(descriptor);
+		if (ids != null) {
+			ids.remove(id);
+			if (ids.isEmpty()) {
+				listsOfSenses.remove(descriptor);
+			}
+		}
+	}
+
+	public void removeDescriptor(String id_string) {
+		idTermIndex.remove(id_string);
+	}
+
+	public void removeNonDescriptor(String id) {
+		nonDescriptorIndex.remove(id);
+	}
+
+	public void removeRelatedTerm(String term, String relatedTerm) {
+		ArrayList<String> related_terms = listsOfRelatedTerms.get(term);
+		if (related_terms != null) {
+			related_terms.remove(relatedTerm);
+			if (related_terms.isEmpty()) {
+				listsOfRelatedTerms.remove(term);
+			}
+		}
+	}
+
+	public ArrayList<String> getNonDescriptors(String id) {
+		if (index != null) {
+			return index.getNonDescriptors(id);
+		}
+		ArrayList<String> results = new ArrayList<String>();
+		for (Map.Entry<String, String> e : nonDescriptorIndex.entrySet()) {
+			if (e.getValue().equals(id)) {
+				results.add(e.getKey());
+			}
+		}
+		return results;
 	}
 
 	public int getNumTerms() {
+		if (index != null) {
+			return index.getNumTerms();
+		}
 		return idTermIndex.size();
 	}
 
 	public int getNumNonDescriptors() {
+		if (index != null) {
+			return index.getNumNonDescriptors();
+		}
 		return nonDescriptorIndex.size();
 	}
 
 	public int getNumRelatedTerms() {
+		if (index != null) {
+			return countRelatedRows();
+		}
 		return listsOfRelatedTerms.size();
 	}
 
 	public ArrayList<String> getRelatedTerms(String id) {
+		if (index != null) {
+			return getRelatedTermsFromIds(id);
+		}
 		return listsOfRelatedTerms.get(id);
 	}
 
 	public int getNumSenses(String sense)
 	{
+		if (index != null) {
+			return index.getNumSenses(sense);
+		}
 		ArrayList<String> meanings = listsOfSenses.get(sense);
 		if (meanings != null) {
 			return meanings.size();
@@ -96,9 +149,84 @@ public class VocabularyStore_Original extends VocabularyStore implements Externa
 	}
 
 	public String getTerm(String id){
+		if (index != null) {
+			return index.getTerm(id);
+		}
 		return idTermIndex.get(id);
 	}
+
+	public String getConceptURI(int conceptId) {
+		if (index != null) {
+			return index.getConceptURI(conceptId);
+		}
+		if (conceptURIs == null || conceptId < 0 || conceptId >= conceptURIs.length) {
+			return null;
+		}
+		return conceptURIs[conceptId];
+	}
+
+	public int getConceptId(String id) {
+		if (index != null) {
+			return index.getConceptId(id);
+		}
+		if (conceptIds == null) {
+			return -1;
+		}
+		Integer conceptId = conceptIds.get(id);
+		return conceptId == null ? -1 : conceptId;
+	}
+
+	protected int[][] buildRelatedIds() {
+		// new concept ids follow the sorted order of the ids, so that they
+		// are the same whichever way the store was built; ids assigned
+		// before the store was reopened are kept
+		ArrayList<String> ids = new ArrayList<String>(idTermIndex.keySet());
+		for (Map.Entry<String, ArrayList<String>> e : listsOfRelatedTerms.entrySet()) {
+			ids.add(e.getKey());
+			ids.addAll(e.getValue());
+		}
+		for (ArrayList<String> senses : listsOfSenses.values()) {
+			ids.addAll(senses);
+		}
+		ids.addAll(nonDescriptorIndex.keySet());
+		ids.addAll(nonDescriptorIndex.values());
+		Collections.sort(ids);
+		ArrayList<String> uris = new ArrayList<String>(ids.size());
+		if (conceptURIs == null) {
+			conceptIds = new HashMap<String, Integer>(ids.size() * 2);
+		} else {
+			uris.addAll(Arrays.asList(conceptURIs));
+		}
+		for (String id : ids) {
+			if (!conceptIds.containsKey(id)) {
+				conceptIds.put(id, conceptIds.size());
+				uris.add(id);
+			}
+		}
+		conceptURIs = uris.toArray(new String[uris.size()]);
+
+		int[][] rows = new int[conceptIds.size()][];
+		for (Map.Entry<String, ArrayList<String>> e : listsOfRelatedTerms.entrySet()) {
+			ArrayList<Integer> related = new ArrayList<Integer>(e.getValue().size());
+			for (String id : e.getValue()) {
+				related.add(conceptIds.get(id));
+			}
+			rows[conceptIds.get(e.getKey())] = toSortedArray(related);
+		}
+		return rows;
+	}
+
+	public Collection<String> getSensePhrases() {
+		if (index != null) {
+			return index.getPhrases();
+		}
+		return listsOfSenses.keySet();
+	}
+
 	public ArrayList<String> getSensesForPhrase(String phrase) {
+		if (index != null) {
+			return index.getSensesForPhrase(phrase);
+		}
 
 		ArrayList<String> senses = new ArrayList<String>();
 		if (listsOfSenses.containsKey(phrase)) {
@@ -125,114 +253,37 @@ public class VocabularyStore_Original extends VocabularyStore implements Externa
 		return senses;
 	}
 
-	public void writeExternal(ObjectOutput out) throws java.io.IOException {
-		/** reverse index : id --> descriptor */
-		out.writeInt(idTermIndex.size());
-
+	protected VocabularyIndex buildIndex() {
+		VocabularyIndex.Builder builder = new VocabularyIndex.Builder(conceptURIs);
 		for (Map.Entry<String, String> e : idTermIndex.entrySet()) {
-			out.writeUTF(e.getKey());
-			out.writeUTF(e.getValue());
+			builder.setTerm(conceptIds.get(e.getKey()), e.getValue());
 		}
-
-
-		/** normalized descriptor --> list of all possible meanings */
-		out.writeInt(listsOfSenses.size());
-
-		for (Map.Entry<String, ArrayList<String>> e : listsOfSenses.entrySet()) {
-			out.writeUTF(e.getKey());
-			ArrayList<String> senses = e.getValue();
-			out.writeInt(senses.size());
-			for (int i = 0; i < senses.size(); i++) {
-				out.writeUTF(senses.get(i));
-			}
-		}
-
-		/** non-descriptor id  --> descriptors id */
-		out.writeInt(nonDescriptorIndex.size());
-
 		for (Map.Entry<String, String> e : nonDescriptorIndex.entrySet()) {
-			out.writeUTF(e.getKey());
-			out.writeUTF(e.getValue());
+			builder.setDescriptor(conceptIds.get(e.getKey()), conceptIds.get(e.getValue()));
 		}
-
-		/** id -->  list of related ids */
-		out.writeInt(listsOfRelatedTerms.size());
-
-		for (Map.Entry<String, ArrayList<String>> e : listsOfRelatedTerms.entrySet()) {
-			out.writeUTF(e.getKey());
-			ArrayList<String> relatedTerms = e.getValue();
-			out.writeInt(relatedTerms.size());
-			for (int i = 0; i < relatedTerms.size(); i++) {
-				out.writeUTF(relatedTerms.get(i));
+		for (Map.Entry<String, ArrayList<String>> e : listsOfSenses.entrySet()) {
+			int[] ids = new int[e.getValue().size()];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = conceptIds.get(e.getValue().get(i));
 			}
+			builder.setSenses(e.getKey(), ids);
 		}
+		VocabularyIndex built = builder.build();
 
-		/** id-relatedId --> relation */
-		out.writeInt(relationIndex.size());
-
-		for (Map.Entry<String, Vocabulary.Relation> e : relationIndex.entrySet()) {
-			out.writeUTF(e.getKey());
-			out.writeObject(e.getValue());
-		}
-
+		idTermIndex = new HashMap<String, String>();
+		listsOfSenses = new HashMap<String, ArrayList<String>>();
+		nonDescriptorIndex = new HashMap<String, String>();
+		listsOfRelatedTerms = new HashMap<String, ArrayList<String>>();
+		conceptIds = null;
+		conceptURIs = null;
+		return built;
 	}
 
-	public void readExternal(ObjectInput in) throws java.io.IOException, ClassNotFoundException {
-		int size = 0;
-		/** reverse index : id --> descriptor */
-		size = in.readInt();
-		idTermIndex = new HashMap<String, String>(size);
-		for (int i = 0; i < size; i++) {
-			idTermIndex.put(in.readUTF(), in.readUTF());
+	protected void restoreConcepts(String[] uris) {
+		conceptURIs = uris;
+		conceptIds = new HashMap<String, Integer>(uris.length * 2);
+		for (int i = 0; i < uris.length; i++) {
+			conceptIds.put(uris[i], i);
 		}
-
-
-		/** normalized descriptor --> list of all possible meanings */
-		size = in.readInt();
-		listsOfSenses = new HashMap<String, ArrayList<String>>(size);
-
-		for (int i = 0; i < size; i++) {
-			String sense = in.readUTF();
-			int size_2 = in.readInt();
-			ArrayList<String> senses = new ArrayList<String>(size_2);
-			for (int j = 0; j < size_2; j++) {
-				senses.add(in.readUTF());
-			}
-			listsOfSenses.put(sense, senses);
-		}
-
-		/** non-descriptor id  --> descriptors id */
-		size = in.readInt();
-
-		nonDescriptorIndex = new HashMap<String, String>(size);
-		for (int i = 0; i < size; i++) {
-			nonDescriptorIndex.put(in.readUTF(), in.readUTF());
-		}
-
-		/** id -->  list of related ids */
-		size = in.readInt();
-
-		listsOfRelatedTerms = new HashMap<String, ArrayList<String>>(size);
-		for (int i = 0; i < size; i++) {
-			String term = in.readUTF();
-			int size_2 = in.readInt();
-			ArrayList<String> relations = new ArrayList<String>(size_2);
-			for (int j = 0; j < size_2; j++) {
-				relations.add(in.readUTF());
-			}
-			listsOfRelatedTerms.put(term, relations);
-		}
-
-		/** id-relatedId --> relation */
-		size = in.readInt();
-
-		relationIndex = new HashMap<String, Vocabulary.Relation>(size);
-		for (int i = 0; i < size; i++) {
-			String id = in.readUTF();
-			Vocabulary.Relation rel = (Vocabulary.Relation) in.readObject();
-			relationIndex.put(id, rel);
-		}
-
-		finishedInitialized();
 	}
 }
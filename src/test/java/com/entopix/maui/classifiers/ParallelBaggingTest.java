@@ -0,0 +1,81 @@
+package com.entopix.maui.classifiers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import weka.classifiers.meta.Bagging;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Checks that the ensembles built on several threads are the same
+ * as the ones built by Bagging, for the classifiers Maui trains.
+ */
+public class ParallelBaggingTest {
+
+	@Test
+	public void testJ48() throws Exception {
+		compare(createData(true), "-P 10 -S 1 -I 10 -W weka.classifiers.trees.J48 -- -U -M 2");
+	}
+
+	@Test
+	public void testM5P() throws Exception {
+		compare(createData(false), "-P 100 -S 1 -I 10 -W weka.classifiers.trees.M5P -- -U -M 7.0");
+	}
+
+	private void compare(Instances data, String options) throws Exception {
+		Bagging bagging = new Bagging();
+		bagging.setOptions(Utils.splitOptions(options));
+		bagging.buildClassifier(data);
+
+		ParallelBagging parallelBagging = new ParallelBagging();
+		parallelBagging.setOptions(Utils.splitOptions(options));
+		parallelBagging.setNumThreads(3);
+		parallelBagging.buildClassifier(data);
+
+		assertEquals(bagging.toString(), parallelBagging.toString());
+		for (int i = 0; i < data.numInstances(); i++) {
+			assertArrayEquals(bagging.distributionForInstance(data.instance(i)),
+					parallelBagging.distributionForInstance(data.instance(i)), 0);
+		}
+	}
+
+	/**
+	 * Creates candidates with a few features that the class depends on.
+	 */
+	private Instances createData(boolean nominalClass) {
+		FastVector atts = new FastVector();
+		for (int i = 0; i < 4; i++) {
+			atts.addElement(new Attribute("feature" + i));
+		}
+		if (nominalClass) {
+			FastVector vals = new FastVector(2);
+			vals.addElement("False");
+			vals.addElement("True");
+			atts.addElement(new Attribute("Keyphrase?", vals));
+		} else {
+			atts.addElement(new Attribute("Keyphrase?"));
+		}
+		Instances data = new Instances("ClassifierData", atts, 0);
+		data.setClassIndex(4);
+
+		Random random = new Random(7);
+		for (int i = 0; i < 2000; i++) {
+			double[] vals = new double[5];
+			for (int j = 0; j < 4; j++) {
+				vals[j] = random.nextDouble();
+			}
+			double score = vals[0] + 0.5 * vals[1] - vals[2] + 0.2 * random.nextGaussian();
+			vals[4] = nominalClass ? (score > 0.6 ? 1 : 0) : score;
+			data.add(new Instance(1.0, vals));
+		}
+		return data;
+	}
+}
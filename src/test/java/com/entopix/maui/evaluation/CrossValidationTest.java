@@ -1,5 +1,8 @@
 package com.entopix.maui.evaluation;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -11,6 +14,7 @@ import weka.core.Utils;
 
 import com.entopix.maui.filters.MauiFilter;
 import com.entopix.maui.filters.MauiFilter.MauiFilterException;
+import com.entopix.maui.main.MauiCrossValidator;
 import com.entopix.maui.main.MauiModelBuilder;
 import com.entopix.maui.main.MauiTopicExtractor;
 import com.entopix.maui.stemmers.PorterStemmer;
@@ -26,8 +30,27 @@ import com.entopix.maui.vocab.Vocabulary;
 public class CrossValidationTest {
 
 	private static final Logger log = LoggerFactory.getLogger(CrossValidationTest.class);
+
+	/** Result of the last run of the cross-validator */
+	private MauiCrossValidator.Result lastResult = null;
 	
-	public void testCrossValidation() throws MauiFilterException {
+	public double[][] testCrossValidation() throws MauiFilterException {
+		return testCrossValidation(false);
+	}
+
+	/**
+	 * Returns the precision, recall and F-measure of each fold.
+	 */
+	public double[][] testCrossValidation(boolean useCrossValidator) throws MauiFilterException {
+		return testCrossValidation(useCrossValidator, 1.0);
+	}
+
+	/**
+	 * Returns the precision, recall and F-measure of each fold, training
+	 * on the given fraction of the negative candidates.
+	 */
+	public double[][] testCrossValidation(boolean useCrossValidator, double negativeSampleRate)
+			throws MauiFilterException {
 		
 		// Input data
 		String vocabularyFormat = "skos";
@@ -74,13 +97,24 @@ public class CrossValidationTest {
 		modelBuilder.setVocabulary(vocabulary);
 		modelBuilder.setVocabularyName(vocabularyPath);
 		modelBuilder.modelName = "test";
+		modelBuilder.negativeSampleRate = negativeSampleRate;
 		
 		List<MauiDocument> testDocuments = DataLoader.loadTestDocuments(datasetPath);
 
+		if (useCrossValidator) {
+			MauiCrossValidator.Result result = crossValidate(modelBuilder, fold, testDocuments);
+			double[][] foldPRF = new double[fold][];
+			for (int i = 0; i < fold; i++) {
+				foldPRF[i] = result.getFoldPRF(i);
+			}
+			return foldPRF;
+		}
+
 		int numDocs = testDocuments.size();
 		int part = numDocs/fold;
 		int startTest, endTest;
 		
+		double[][] foldPRF = new double[fold][];
 		double[] precision = new double[fold];
 		double[] recall = new double[fold];
 		double[] fmeasure = new double[fold];
@@ -108,6 +142,7 @@ public class CrossValidationTest {
 			topicExtractor.setModel(mauiFilter);
 			List<MauiTopics> topics = topicExtractor.extractTopics(test);
 			double[] PRF = Evaluator.evaluateTopics(topics);
+			foldPRF[run - 1] = PRF;
 			precision[run - 1] = PRF[0];
 			recall[run - 1] = PRF[1];
 			fmeasure[run - 1] = PRF[2];
@@ -120,9 +155,21 @@ public class CrossValidationTest {
 		
 		log.info("Precision " + avgPrecision + "; Recall " + avgRecall + "; F-Measure " + avgFmeasure);
 		
-		
+		return foldPRF;
 	}
 	
+	/**
+	 * Cross-validates with the fold-parallel cross-validator.
+	 */
+	private MauiCrossValidator.Result crossValidate(MauiModelBuilder modelBuilder, int fold,
+			List<MauiDocument> documents) throws MauiFilterException {
+		MauiCrossValidator crossValidator = new MauiCrossValidator(modelBuilder);
+		crossValidator.numFolds = fold;
+		crossValidator.numThreads = 4;
+		lastResult = crossValidator.crossValidate(documents);
+		return lastResult;
+	}
+
 	@Test
 	public void crossValidationTest() throws Exception {
 		CrossValidationTest validationTest = new CrossValidationTest();
@@ -133,4 +180,38 @@ public class CrossValidationTest {
 		long elapsedTime = stopTime - startTime;
 		log.info("Completed in " + elapsedTime + "ms.");
 	}
+
+	@Test
+	public void crossValidatorTest() throws Exception {
+		CrossValidationTest validationTest = new CrossValidationTest();
+		double[][] expected = validationTest.testCrossValidation(false);
+
+		long startTime = System.currentTimeMillis();
+		double[][] actual = validationTest.testCrossValidation(true);
+		long stopTime = System.currentTimeMillis();
+		log.info("Cross-validator completed in " + (stopTime - startTime) + "ms.");
+
+		for (int i = 0; i < expected.length; i++) {
+			assertArrayEquals(expected[i], actual[i], 0);
+		}
+	}
+
+	@Test
+	public void negativeSamplingTest() throws Exception {
+		CrossValidationTest validationTest = new CrossValidationTest();
+		validationTest.testCrossValidation(true, 1.0);
+		MauiCrossValidator.Result full = validationTest.lastResult;
+		validationTest.testCrossValidation(true, 0.2);
+		MauiCrossValidator.Result sampled = validationTest.lastResult;
+
+		double fullF = full.getPRF()[2];
+		double sampledF = sampled.getPRF()[2];
+		log.info("Training took " + full.getTrainingTime() + "ms on all negatives, "
+				+ sampled.getTrainingTime() + "ms on a fifth of them ("
+				+ Utils.doubleToString(100.0 * sampled.getTrainingTime() / Math.max(1, full.getTrainingTime()), 1)
+				+ "%)");
+		log.info("Mean F-Measure " + fullF + " on all negatives, " + sampledF + " on a fifth of them");
+		// within five points of F-measure of the model trained on all negatives
+		assertEquals(fullF, sampledF, 0.05);
+	}
 }
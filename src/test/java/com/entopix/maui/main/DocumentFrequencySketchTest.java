@@ -0,0 +1,109 @@
+package com.entopix.maui.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static com.entopix.maui.main.ModelTestSupport.TEST_DIR;
+import static com.entopix.maui.main.ModelTestSupport.TRAIN_DIR;
+import static com.entopix.maui.main.ModelTestSupport.createTopicExtractor;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import weka.classifiers.bayes.NaiveBayesUpdateable;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.util.DataLoader;
+import com.entopix.maui.util.Evaluator;
+import com.entopix.maui.util.MauiDocument;
+
+/**
+ * Compares a model whose rare document frequencies are counted in a
+ * Count-Min sketch with a model that counts all of them exactly.
+ */
+public class DocumentFrequencySketchTest {
+
+	private static final Logger log = LoggerFactory.getLogger(DocumentFrequencySketchTest.class);
+
+	@Test
+	public void testSketchedFrequencies() throws Exception {
+		List<MauiDocument> documents = DataLoader.loadTestDocuments(TRAIN_DIR);
+		MauiFilter exact = createModelBuilder(0).buildModel(documents);
+		MauiFilter sketched = createModelBuilder(4096).buildModel(documents);
+		MauiFilter outOfCore = createModelBuilder(4096).buildModelOutOfCore(DataLoader.iterateDocuments(TRAIN_DIR));
+
+		assertTrue(sketched.globalDictionary.size() < exact.globalDictionary.size());
+		long error = 0;
+		for (int i = 0; i < exact.globalDictionary.size(); i++) {
+			String phrase = exact.globalDictionary.getPhrase(i);
+			int frequency = exact.globalDictionary.getCount(i);
+			if (frequency >= 5) {
+				assertEquals(phrase, frequency, sketched.globalDictionary.get(phrase));
+			}
+			assertTrue(phrase, sketched.getDocumentFrequency(phrase) >= frequency);
+			// the out-of-core sketch is filled in another order, so its estimates may differ
+			assertTrue(phrase, outOfCore.getDocumentFrequency(phrase) >= frequency);
+			error += sketched.getDocumentFrequency(phrase) - frequency;
+		}
+		log.info(exact.globalDictionary.size() + " phrases, " + sketched.globalDictionary.size()
+				+ " counted exactly, mean overestimate " + (double) error / exact.globalDictionary.size());
+
+		double[] exactPRF = evaluate(exact);
+		double[] sketchedPRF = evaluate(sketched);
+		log.info("F-Measure " + exactPRF[2] + " with exact, " + sketchedPRF[2] + " with sketched frequencies");
+		assertTrue(sketchedPRF[2] > exactPRF[2] * 0.8);
+	}
+
+	@Test
+	public void testPromotionOnUpdate() throws Exception {
+		List<MauiDocument> documents = DataLoader.loadTestDocuments(TRAIN_DIR);
+		MauiFilter exact = createModelBuilder(0).buildModel(documents);
+
+		MauiModelBuilder modelBuilder = createModelBuilder(4096);
+		modelBuilder.setClassifier(new NaiveBayesUpdateable());
+		MauiFilter updated = modelBuilder.buildModel(documents.subList(0, 25));
+		int exactBefore = updated.globalDictionary.size();
+		updated = modelBuilder.updateModel(updated, documents.subList(25, documents.size()));
+
+		// new phrases only enter the exact table by promotion from the sketch
+		assertTrue(updated.globalDictionary.size() > exactBefore);
+		for (int i = 0; i < exact.globalDictionary.size(); i++) {
+			String phrase = exact.globalDictionary.getPhrase(i);
+			int frequency = exact.globalDictionary.getCount(i);
+			if (frequency >= 5) {
+				assertTrue(phrase, updated.globalDictionary.get(phrase) >= frequency);
+			}
+			assertTrue(phrase, updated.getDocumentFrequency(phrase) >= frequency);
+		}
+	}
+
+	@Test
+	public void testParallelCounting() throws Exception {
+		List<MauiDocument> documents = DataLoader.loadTestDocuments(TRAIN_DIR);
+		MauiFilter exact = createModelBuilder(0).buildModel(documents);
+		MauiFilter sequential = createModelBuilder(4096).buildModel(documents);
+		MauiModelBuilder modelBuilder = createModelBuilder(4096);
+		modelBuilder.numThreads = 3;
+		MauiFilter parallel = modelBuilder.buildModel(documents);
+
+		assertEquals(sequential.globalDictionary.size(), parallel.globalDictionary.size());
+		for (int i = 0; i < exact.globalDictionary.size(); i++) {
+			String phrase = exact.globalDictionary.getPhrase(i);
+			assertEquals(phrase, sequential.getDocumentFrequency(phrase), parallel.getDocumentFrequency(phrase));
+		}
+	}
+
+	private MauiModelBuilder createModelBuilder(int sketchWidth) {
+		MauiModelBuilder modelBuilder = ModelTestSupport.createModelBuilder();
+		modelBuilder.sketchWidth = sketchWidth;
+		return modelBuilder;
+	}
+
+	private double[] evaluate(MauiFilter mauiFilter) throws Exception {
+		MauiTopicExtractor topicExtractor = createTopicExtractor();
+		topicExtractor.setModel(mauiFilter);
+		return Evaluator.evaluateTopics(topicExtractor.extractTopics(DataLoader.loadTestDocuments(TEST_DIR)));
+	}
+}
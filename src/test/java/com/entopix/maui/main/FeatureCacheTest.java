@@ -0,0 +1,80 @@
+package com.entopix.maui.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static com.entopix.maui.main.ModelTestSupport.TRAIN_DIR;
+import static com.entopix.maui.main.ModelTestSupport.createModelBuilder;
+import static com.entopix.maui.main.ModelTestSupport.extractTopics;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.filters.MauiFilter.MauiFilterException;
+import com.entopix.maui.util.DataLoader;
+import com.entopix.maui.util.FeatureCache;
+import com.entopix.maui.util.MauiDocument;
+
+/**
+ * Checks that models built from a feature cache are the same as the
+ * models built from the documents, with all or with fewer features.
+ */
+public class FeatureCacheTest {
+
+	@Test
+	public void testSameModel() throws Exception {
+		File cacheFile = File.createTempFile("maui_cache", ".bin");
+		try {
+			List<MauiDocument> documents = DataLoader.loadTestDocuments(TRAIN_DIR);
+			MauiModelBuilder modelBuilder = createModelBuilder();
+			modelBuilder.featureCacheOutput = cacheFile.getPath();
+			MauiFilter direct = modelBuilder.buildModel(documents);
+
+			FeatureCache cache = FeatureCache.read(cacheFile, -1L);
+			assertEquals(documents.size(), cache.getNumDocs());
+			assertTrue(cache.numRows() > 0);
+			assertEquals(direct.globalDictionary.size(), cache.getGlobalDictionary().size());
+
+			MauiFilter cached = createModelBuilder().buildModelFromFeatureCache(cacheFile.getPath());
+			assertEquals(extractTopics(direct), extractTopics(cached));
+
+			// switching features off masks the cached columns
+			MauiModelBuilder withoutPositions = createModelBuilder();
+			withoutPositions.setPositionsFeatures(false);
+			withoutPositions.setFrequencyFeatures(false);
+			MauiFilter fewerFeatures = withoutPositions.buildModel(documents);
+
+			withoutPositions = createModelBuilder();
+			withoutPositions.setPositionsFeatures(false);
+			withoutPositions.setFrequencyFeatures(false);
+			MauiFilter fewerCached = withoutPositions.buildModelFromFeatureCache(cacheFile.getPath());
+			assertEquals(extractTopics(fewerFeatures), extractTopics(fewerCached));
+		} finally {
+			cacheFile.delete();
+		}
+	}
+
+	@Test
+	public void testOtherSettings() throws Exception {
+		File cacheFile = File.createTempFile("maui_cache", ".bin");
+		try {
+			MauiModelBuilder modelBuilder = createModelBuilder();
+			modelBuilder.featureCacheOutput = cacheFile.getPath();
+			modelBuilder.buildModel(DataLoader.loadTestDocuments(TRAIN_DIR));
+
+			modelBuilder = createModelBuilder();
+			modelBuilder.maxPhraseLength = 3;
+			try {
+				modelBuilder.buildModelFromFeatureCache(cacheFile.getPath());
+				fail("A cache computed with other settings was used");
+			} catch (MauiFilterException e) {
+				// expected
+			}
+		} finally {
+			cacheFile.delete();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package com.entopix.maui.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static com.entopix.maui.main.ModelTestSupport.TEST_DIR;
+import static com.entopix.maui.main.ModelTestSupport.TRAIN_DIR;
+import static com.entopix.maui.main.ModelTestSupport.VOCABULARY;
+import static com.entopix.maui.main.ModelTestSupport.createModelBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.util.DataLoader;
+import com.entopix.maui.util.MauiDocument;
+import com.entopix.maui.util.MauiTopics;
+import com.entopix.maui.util.Topic;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Checks that the daemon extracts the same topics as a single extractor,
+ * writing one line for each input line, in the order of the input if
+ * requested.
+ */
+public class MauiTopicDaemonTest {
+
+	private File buildModelFile() throws Exception {
+		MauiModelBuilder modelBuilder = createModelBuilder();
+		MauiFilter model = modelBuilder.buildModel(DataLoader.loadTestDocuments(TRAIN_DIR));
+		File file = File.createTempFile("maui_model", ".model");
+		modelBuilder.modelName = file.getPath();
+		modelBuilder.saveModel(model);
+		return file;
+	}
+
+	@Test
+	public void testDaemon() throws Exception {
+		File file = buildModelFile();
+		try {
+			List<MauiDocument> documents = DataLoader.loadTestDocuments(TEST_DIR);
+			MauiTopicExtractor topicExtractor = createExtractor(file);
+			topicExtractor.modelName = new FileInputStream(file);
+			topicExtractor.loadModel();
+			Map<String, String> expected = new HashMap<String, String>();
+			for (MauiTopics topics : topicExtractor.extractTopics(documents)) {
+				expected.put(new File(topics.getFilePath()).getName(), toString(topics.getTopics()));
+			}
+
+			StringBuilder input = new StringBuilder();
+			List<String> ids = new ArrayList<String>();
+			for (MauiDocument document : documents) {
+				JsonObject object = new JsonObject();
+				object.addProperty("id", document.getFileName());
+				object.addProperty("text", document.getTextContent());
+				input.append(object.toString()).append('\n');
+				ids.add(document.getFileName());
+				if (ids.size() == 2) {
+					input.append("not a document\n\n");
+					ids.add("line3");
+					expected.put("line3", "");
+				}
+			}
+
+			for (boolean preserveOrder : new boolean[] {true, false}) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				new MauiTopicDaemon(createExtractor(file), 3, preserveOrder).run(
+						new ByteArrayInputStream(input.toString().getBytes("UTF-8")), out);
+
+				String[] lines = new String(out.toByteArray(), "UTF-8").split("\n");
+				assertEquals(ids.size(), lines.length);
+				List<String> written = new ArrayList<String>();
+				JsonParser parser = new JsonParser();
+				for (String line : lines) {
+					JsonObject object = parser.parse(line).getAsJsonObject();
+					String id = object.get("document").getAsString();
+					written.add(id);
+					assertEquals(expected.get(id), toString(object.get("topics").getAsJsonArray()));
+				}
+				if (preserveOrder) {
+					assertEquals(ids, written);
+				} else {
+					assertTrue(written.containsAll(ids));
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testStandardOutput() throws Exception {
+		File file = buildModelFile();
+		StringBuilder input = new StringBuilder();
+		List<MauiDocument> documents = DataLoader.loadTestDocuments(TEST_DIR);
+		for (MauiDocument document : documents) {
+			JsonObject object = new JsonObject();
+			object.addProperty("id", document.getFileName());
+			object.addProperty("text", document.getTextContent());
+			input.append(object.toString()).append('\n');
+		}
+		input.append("not a document\n");
+
+		PrintStream out = System.out;
+		InputStream in = System.in;
+		ByteArrayOutputStream results = new ByteArrayOutputStream();
+		try {
+			System.setOut(new PrintStream(results, true, "UTF-8"));
+			System.setIn(new ByteArrayInputStream(input.toString().getBytes("UTF-8")));
+			MauiTopicExtractor.main(new String[] {"-d", "-m", file.getPath(), "-p", "2",
+					"-v", VOCABULARY, "-f", "skos", "-e", "UTF-8"});
+		} finally {
+			System.setOut(out);
+			System.setIn(in);
+			file.delete();
+		}
+
+		// log output must not be mixed into the results
+		String[] lines = new String(results.toByteArray(), "UTF-8").split("\n");
+		assertEquals(documents.size() + 1, lines.length);
+		JsonParser parser = new JsonParser();
+		for (String line : lines) {
+			assertTrue(line, parser.parse(line).isJsonObject());
+		}
+	}
+
+	private MauiTopicExtractor createExtractor(File modelFile) throws Exception {
+		MauiTopicExtractor topicExtractor = new MauiTopicExtractor();
+		topicExtractor.setOptions(new String[] {"-d", "-m", modelFile.getPath(),
+				"-v", VOCABULARY, "-f", "skos", "-e", "UTF-8"});
+		return topicExtractor;
+	}
+
+	private String toString(List<Topic> topics) {
+		StringBuilder result = new StringBuilder();
+		for (Topic topic : topics) {
+			result.append(topic.getTitle()).append('\t').append(topic.getProbability()).append('\n');
+		}
+		return result.toString();
+	}
+
+	private String toString(JsonArray topics) {
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < topics.size(); i++) {
+			JsonObject topic = topics.get(i).getAsJsonObject();
+			result.append(topic.get("title").getAsString()).append('\t')
+					.append(topic.get("probability").getAsDouble()).append('\n');
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,103 @@
+package com.entopix.maui.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static com.entopix.maui.main.ModelTestSupport.TRAIN_DIR;
+import static com.entopix.maui.main.ModelTestSupport.createModelBuilder;
+import static com.entopix.maui.main.ModelTestSupport.createTopicExtractor;
+import static com.entopix.maui.main.ModelTestSupport.extractTopics;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.filters.MauiModel;
+import com.entopix.maui.util.DataLoader;
+import com.entopix.maui.util.ModelFile;
+
+/**
+ * Checks that a model written in the model file format extracts the same
+ * topics as the model it was written from, that corrupt sections are
+ * detected without affecting the others, and that serialized models can
+ * still be loaded.
+ */
+public class ModelFileTest {
+
+	@Test
+	public void testModelFile() throws Exception {
+		MauiModelBuilder modelBuilder = createModelBuilder();
+		MauiFilter model = modelBuilder.buildModel(DataLoader.loadTestDocuments(TRAIN_DIR));
+		File file = File.createTempFile("maui_model", ".model");
+		try {
+			modelBuilder.modelName = file.getPath();
+			modelBuilder.saveModel(model);
+			assertEquals(extractTopics(model), extractTopicsWithSavedModel(file));
+
+			ModelFile modelFile = ModelFile.open(file);
+			assertTrue(modelFile.hasSection("classifier"));
+			MauiFilter loaded = MauiFilter.readModel(modelFile);
+			assertEquals(model.globalDictionary.size(), loaded.globalDictionary.size());
+			assertEquals(model.getKeyphraseDictionary().size(), loaded.getKeyphraseDictionary().size());
+
+			// a changed byte in the last section is detected by its checksum
+			RandomAccessFile out = new RandomAccessFile(file, "rw");
+			out.seek(out.length() - 1);
+			int last = out.read();
+			out.seek(out.length() - 1);
+			out.write(last ^ 1);
+			out.close();
+			try {
+				MauiFilter.readModel(ModelFile.open(file));
+				fail("Corrupt model was read");
+			} catch (IOException e) {
+				// expected
+			}
+
+			// the other sections can still be read on their own
+			MauiModel handle = DataLoader.openModel(file.getPath());
+			assertEquals(model.getKeyphraseDictionary().size(), handle.getKeyphraseDictionary().size());
+			assertEquals(DataLoader.loadTestDocuments(TRAIN_DIR).size(), handle.getNumDocs());
+			assertTrue(handle.getSettings().contains("vocabulary=agrovoc_sample"));
+			try {
+				handle.getClassifier();
+				fail("Corrupt classifier was read");
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testSerializedModel() throws Exception {
+		MauiFilter model = createModelBuilder().buildModel(DataLoader.loadTestDocuments(TRAIN_DIR));
+		File file = File.createTempFile("maui_model", ".model");
+		try {
+			ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
+			out.writeObject(model);
+			out.close();
+			assertEquals(extractTopics(model), extractTopicsWithSavedModel(file));
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Returns the topics and probabilities extracted with a saved model.
+	 */
+	private List<String> extractTopicsWithSavedModel(File modelFile) throws Exception {
+		MauiTopicExtractor topicExtractor = createTopicExtractor();
+		topicExtractor.modelName = new FileInputStream(modelFile);
+		topicExtractor.loadModel();
+		return extractTopics(topicExtractor);
+	}
+}
@@ -0,0 +1,65 @@
+package com.entopix.maui.main;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.util.DataLoader;
+import com.entopix.maui.util.MauiTopics;
+import com.entopix.maui.util.Topic;
+
+/**
+ * The term assignment corpus and sample vocabulary that the model tests
+ * train on, with the builder settings they share, and the topics that a
+ * model extracts from the test documents, to compare models.
+ */
+final class ModelTestSupport {
+
+	static final String TRAIN_DIR = "src/test/resources/data/term_assignment/train";
+	static final String TEST_DIR = "src/test/resources/data/term_assignment/test";
+	static final String VOCABULARY = "src/test/resources/data/vocabularies/agrovoc_sample.rdf";
+
+	private ModelTestSupport() {
+	}
+
+	static MauiModelBuilder createModelBuilder() {
+		MauiModelBuilder modelBuilder = new MauiModelBuilder();
+		modelBuilder.vocabularyName = VOCABULARY;
+		modelBuilder.vocabularyFormat = "skos";
+		modelBuilder.minNumOccur = 2;
+		return modelBuilder;
+	}
+
+	static MauiTopicExtractor createTopicExtractor() {
+		MauiTopicExtractor topicExtractor = new MauiTopicExtractor();
+		topicExtractor.vocabularyName = VOCABULARY;
+		topicExtractor.vocabularyFormat = "skos";
+		return topicExtractor;
+	}
+
+	/**
+	 * Returns the topics and probabilities extracted from the test documents.
+	 */
+	static List<String> extractTopics(MauiFilter mauiFilter) throws Exception {
+		MauiTopicExtractor topicExtractor = createTopicExtractor();
+		topicExtractor.setModel(mauiFilter);
+		return extractTopics(topicExtractor);
+	}
+
+	/**
+	 * Returns the topics and probabilities extracted from the test documents
+	 * with the model of an extractor.
+	 */
+	static List<String> extractTopics(MauiTopicExtractor topicExtractor) throws Exception {
+		List<String> results = new ArrayList<String>();
+		for (MauiTopics topics : topicExtractor.extractTopics(DataLoader.loadTestDocuments(TEST_DIR))) {
+			for (Topic topic : topics.getTopics()) {
+				results.add(topic.getTitle() + "\t" + topic.getProbability());
+			}
+		}
+		assertTrue(results.size() > 0);
+		return results;
+	}
+}
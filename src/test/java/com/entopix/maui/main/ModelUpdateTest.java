@@ -0,0 +1,122 @@
+package com.entopix.maui.main;
+
+import static org.junit.Assert.assertEquals;
+import static com.entopix.maui.main.ModelTestSupport.TRAIN_DIR;
+import static com.entopix.maui.main.ModelTestSupport.createModelBuilder;
+import static com.entopix.maui.main.ModelTestSupport.extractTopics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import org.junit.Test;
+
+import weka.classifiers.bayes.NaiveBayesUpdateable;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.util.DataLoader;
+import com.entopix.maui.util.FeatureCache;
+import com.entopix.maui.util.MauiDocument;
+import com.google.gson.JsonObject;
+
+/**
+ * Checks that a model updated with new documents has the same
+ * dictionaries as a model built from all documents.
+ */
+public class ModelUpdateTest {
+
+	@Test
+	public void testUpdateFromCache() throws Exception {
+		File fullCacheFile = File.createTempFile("maui_cache", ".bin");
+		File cacheFile = File.createTempFile("maui_cache", ".bin");
+		try {
+			List<MauiDocument> documents = DataLoader.loadTestDocuments(TRAIN_DIR);
+			MauiModelBuilder modelBuilder = createModelBuilder();
+			modelBuilder.featureCacheOutput = fullCacheFile.getPath();
+			MauiFilter full = modelBuilder.buildModel(documents);
+
+			modelBuilder = createModelBuilder();
+			modelBuilder.featureCacheOutput = cacheFile.getPath();
+			MauiFilter updated = modelBuilder.buildModel(documents.subList(0, 25));
+			updated = modelBuilder.updateModel(updated, documents.subList(25, documents.size()));
+
+			assertSameDictionaries(full, updated);
+			FeatureCache fullCache = FeatureCache.read(fullCacheFile, -1L);
+			FeatureCache cache = FeatureCache.read(cacheFile, -1L);
+			assertEquals(documents.size(), cache.getNumDocs());
+			assertEquals(fullCache.numRows(), cache.numRows());
+			assertEquals(fullCache.getDocument(cache.numRows() - 1), cache.getDocument(cache.numRows() - 1));
+			extractTopics(updated);
+		} finally {
+			fullCacheFile.delete();
+			cacheFile.delete();
+		}
+	}
+
+	@Test
+	public void testUpdateClassifier() throws Exception {
+		List<MauiDocument> documents = DataLoader.loadTestDocuments(TRAIN_DIR);
+		MauiModelBuilder modelBuilder = createModelBuilder();
+		modelBuilder.setClassifier(new NaiveBayesUpdateable());
+		MauiFilter full = modelBuilder.buildModel(documents);
+
+		modelBuilder = createModelBuilder();
+		modelBuilder.setClassifier(new NaiveBayesUpdateable());
+		MauiFilter updated = modelBuilder.buildModel(documents.subList(0, 25));
+		updated = modelBuilder.updateModel(updated, documents.subList(25, documents.size()));
+
+		assertSameDictionaries(full, updated);
+		extractTopics(updated);
+	}
+
+	@Test
+	public void testUpdateFromJsonLines() throws Exception {
+		List<MauiDocument> documents = DataLoader.loadTestDocuments(TRAIN_DIR);
+		MauiModelBuilder modelBuilder = createModelBuilder();
+		modelBuilder.setClassifier(new NaiveBayesUpdateable());
+		MauiFilter full = modelBuilder.buildModel(documents);
+
+		File modelFile = File.createTempFile("maui_model", ".model");
+		File input = File.createTempFile("maui_documents", ".jsonl");
+		try {
+			modelBuilder = createModelBuilder();
+			modelBuilder.setClassifier(new NaiveBayesUpdateable());
+			modelBuilder.modelName = modelFile.getPath();
+			modelBuilder.saveModel(modelBuilder.buildModel(documents.subList(0, 25)));
+
+			Writer writer = new OutputStreamWriter(new FileOutputStream(input), "UTF-8");
+			try {
+				for (MauiDocument document : documents.subList(25, documents.size())) {
+					JsonObject object = new JsonObject();
+					object.addProperty("id", document.getFileName());
+					object.addProperty("text", document.getTextContent());
+					object.addProperty("keyphrases", document.getTopicsString());
+					writer.write(object.toString() + "\n");
+				}
+			} finally {
+				writer.close();
+			}
+
+			modelBuilder = createModelBuilder();
+			modelBuilder.updateModelName = modelFile.getPath();
+			modelBuilder.inputDirectoryName = input.getPath();
+			MauiFilter updated = modelBuilder.buildModel();
+
+			assertSameDictionaries(full, updated);
+			extractTopics(updated);
+		} finally {
+			modelFile.delete();
+			input.delete();
+		}
+	}
+
+	private void assertSameDictionaries(MauiFilter expected, MauiFilter actual) {
+		assertEquals(expected.globalDictionary.size(), actual.globalDictionary.size());
+		for (int i = 0; i < expected.globalDictionary.size(); i++) {
+			String name = expected.globalDictionary.getPhrase(i);
+			assertEquals(name, expected.globalDictionary.getCount(i), actual.globalDictionary.get(name));
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package com.entopix.maui.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static com.entopix.maui.main.ModelTestSupport.TRAIN_DIR;
+import static com.entopix.maui.main.ModelTestSupport.createModelBuilder;
+import static com.entopix.maui.main.ModelTestSupport.extractTopics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.util.Counter;
+import com.entopix.maui.util.DataLoader;
+import com.entopix.maui.util.ExternalCounter;
+import com.entopix.maui.util.MauiDocument;
+
+/**
+ * Checks that a model built out of core is the same as the model
+ * built in memory, and that counts spilled to disk add up.
+ */
+public class OutOfCoreModelBuilderTest {
+
+	@Test
+	public void testSameModel() throws Exception {
+		List<MauiDocument> documents = DataLoader.loadTestDocuments(TRAIN_DIR);
+		MauiFilter inMemory = createModelBuilder().buildModel(documents);
+		MauiFilter outOfCore = createModelBuilder().buildModelOutOfCore(DataLoader.iterateDocuments(TRAIN_DIR));
+
+		assertEquals(inMemory.globalDictionary.size(), outOfCore.globalDictionary.size());
+		for (int i = 0; i < inMemory.globalDictionary.size(); i++) {
+			String name = inMemory.globalDictionary.getPhrase(i);
+			assertEquals(name, inMemory.globalDictionary.getCount(i), outOfCore.globalDictionary.get(name));
+		}
+		assertEquals(extractTopics(inMemory), extractTopics(outOfCore));
+	}
+
+	@Test
+	public void testSample() throws Exception {
+		MauiModelBuilder modelBuilder = createModelBuilder();
+		modelBuilder.sampleRate = 0.5;
+		MauiFilter mauiFilter = modelBuilder.buildModelOutOfCore(DataLoader.iterateDocuments(TRAIN_DIR));
+		assertTrue(mauiFilter.globalDictionary.size() > 0);
+	}
+
+	@Test
+	public void testSpilledCounts() {
+		ExternalCounter counter = new ExternalCounter(null, 10);
+		HashMap<String, Integer> expected = new HashMap<String, Integer>();
+		for (int i = 0; i < 1000; i++) {
+			String key = "phrase " + (i * 7919 % 97);
+			counter.add(key, i % 3 + 1);
+			Integer count = expected.get(key);
+			expected.put(key, (count == null ? 0 : count) + i % 3 + 1);
+		}
+		assertTrue(counter.getNumRuns() > 1);
+
+		HashMap<String, Counter> counts = counter.merge();
+		assertEquals(expected.size(), counts.size());
+		for (String key : expected.keySet()) {
+			assertEquals(key, expected.get(key).intValue(), counts.get(key).value());
+		}
+		assertEquals(0, counter.getNumRuns());
+		assertEquals(new ArrayList<String>(), new ArrayList<String>(new ExternalCounter(null, 10).merge().keySet()));
+	}
+}
@@ -0,0 +1,54 @@
+package com.entopix.maui.main;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.util.DataLoader;
+import com.entopix.maui.util.MauiDocument;
+
+/**
+ * Checks that a model built with several threads is the same,
+ * byte for byte, as the model built with one thread.
+ */
+public class ParallelModelBuilderTest {
+
+	@Test
+	public void testAutomaticTagging() throws Exception {
+		List<MauiDocument> documents = DataLoader.loadTestDocuments("src/test/resources/data/automatic_tagging/train");
+		assertArrayEquals(buildModel(documents, null, 1), buildModel(documents, null, 4));
+	}
+
+	@Test
+	public void testTermAssignment() throws Exception {
+		List<MauiDocument> documents = DataLoader.loadTestDocuments("src/test/resources/data/term_assignment/train");
+		String vocabulary = "src/test/resources/data/vocabularies/agrovoc_sample.rdf";
+		assertArrayEquals(buildModel(documents, vocabulary, 1), buildModel(documents, vocabulary, 3));
+	}
+
+	private byte[] buildModel(List<MauiDocument> documents, String vocabulary, int numThreads) throws Exception {
+		MauiModelBuilder modelBuilder = new MauiModelBuilder();
+		if (vocabulary != null) {
+			modelBuilder.vocabularyName = vocabulary;
+			modelBuilder.vocabularyFormat = "skos";
+		}
+		modelBuilder.minNumOccur = 2;
+		modelBuilder.numThreads = numThreads;
+		MauiFilter mauiFilter = modelBuilder.buildModel(documents);
+		return serialize(mauiFilter);
+	}
+
+	private byte[] serialize(MauiFilter mauiFilter) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(mauiFilter);
+		out.close();
+		return bytes.toByteArray();
+	}
+}
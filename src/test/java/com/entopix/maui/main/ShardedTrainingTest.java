@@ -0,0 +1,200 @@
+package com.entopix.maui.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static com.entopix.maui.main.ModelTestSupport.TRAIN_DIR;
+import static com.entopix.maui.main.ModelTestSupport.VOCABULARY;
+import static com.entopix.maui.main.ModelTestSupport.createModelBuilder;
+import static com.entopix.maui.main.ModelTestSupport.extractTopics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.filters.MauiFilter.MauiFilterException;
+import com.entopix.maui.util.CorpusStatistics;
+import com.entopix.maui.util.Counter;
+import com.entopix.maui.util.DataLoader;
+import com.entopix.maui.util.FrequencyDictionary;
+import com.entopix.maui.util.MauiDocument;
+
+/**
+ * Builds a model from a corpus split into shards, counting and computing
+ * the features of each shard in a separate process, and checks that the
+ * merged statistics and the model are the same as in a single process.
+ */
+public class ShardedTrainingTest {
+
+	private static final int NUM_SHARDS = 3;
+
+	@Test
+	public void testShardedModel() throws Exception {
+		File directory = File.createTempFile("maui_shards", "");
+		directory.delete();
+		directory.mkdir();
+		try {
+			// split the corpus into shard directories
+			File[] textFiles = new File(TRAIN_DIR).listFiles();
+			List<String> shardDirs = new ArrayList<String>();
+			for (int shard = 0; shard < NUM_SHARDS; shard++) {
+				File shardDir = new File(directory, "shard" + shard);
+				shardDir.mkdir();
+				shardDirs.add(shardDir.getPath());
+			}
+			int numTextFiles = 0;
+			for (File file : textFiles) {
+				if (file.getName().endsWith(".txt")) {
+					File shardDir = new File(shardDirs.get(numTextFiles++ % NUM_SHARDS));
+					FileUtils.copyFileToDirectory(file, shardDir);
+					File keyFile = new File(file.getPath().replace(".txt", ".key"));
+					if (keyFile.exists()) {
+						FileUtils.copyFileToDirectory(keyFile, shardDir);
+					}
+				}
+			}
+
+			List<String[]> commands = new ArrayList<String[]>();
+			List<String> statisticsFiles = new ArrayList<String>();
+			for (int shard = 0; shard < NUM_SHARDS; shard++) {
+				String statisticsFile = new File(directory, "shard" + shard + ".stats").getPath();
+				statisticsFiles.add(statisticsFile);
+				commands.add(withOptions(shardDirs.get(shard), "count", statisticsFile));
+			}
+			runProcesses(commands);
+
+			String mergedFile = new File(directory, "corpus.stats").getPath();
+			List<String> merge = new ArrayList<String>();
+			merge.add("merge");
+			merge.add(mergedFile);
+			merge.addAll(statisticsFiles);
+			commands.clear();
+			commands.add(merge.toArray(new String[merge.size()]));
+			runProcesses(commands);
+
+			commands.clear();
+			StringBuilder cacheFiles = new StringBuilder();
+			for (int shard = 0; shard < NUM_SHARDS; shard++) {
+				String cacheFile = new File(directory, "shard" + shard + ".cache").getPath();
+				if (shard > 0) {
+					cacheFiles.append(File.pathSeparator);
+				}
+				cacheFiles.append(cacheFile);
+				commands.add(withOptions(shardDirs.get(shard), "features", mergedFile, cacheFile));
+			}
+			runProcesses(commands);
+
+			// the documents in the order of the shards
+			List<MauiDocument> documents = new ArrayList<MauiDocument>();
+			for (String shardDir : shardDirs) {
+				documents.addAll(DataLoader.loadTestDocuments(shardDir));
+			}
+			MauiFilter single = createModelBuilder().buildModel(documents);
+
+			CorpusStatistics statistics = CorpusStatistics.read(new File(mergedFile));
+			assertEquals(documents.size(), statistics.getNumDocs());
+			assertSameCounts(single.globalDictionary, statistics.getDocumentFrequencies());
+			assertSameCounts(single.getKeyphraseDictionary(), statistics.getKeyphraseFrequencies());
+
+			MauiFilter sharded = createModelBuilder().buildModelFromFeatureCache(cacheFiles.toString());
+			assertEquals(extractTopics(single), extractTopics(sharded));
+		} finally {
+			FileUtils.deleteDirectory(directory);
+		}
+	}
+
+	@Test
+	public void testOtherStatistics() throws Exception {
+		File first = File.createTempFile("maui_cache", ".bin");
+		File second = File.createTempFile("maui_cache", ".bin");
+		try {
+			List<MauiDocument> documents = DataLoader.loadTestDocuments(TRAIN_DIR);
+			CorpusStatistics statistics = createModelBuilder().countCorpusStatistics(documents);
+
+			// the same number of documents and of phrases, but another count
+			HashMap<String, Counter> frequencies = statistics.getKeyphraseFrequencies().toHashMap();
+			frequencies.values().iterator().next().increment();
+			CorpusStatistics other = new CorpusStatistics(statistics.getSettings(), statistics.getNumDocs(),
+					statistics.getDocumentFrequencies(), FrequencyDictionary.freeze(frequencies));
+
+			createModelBuilder().writeFeatureCache(documents.subList(0, 25), statistics, first.getPath());
+			createModelBuilder().writeFeatureCache(documents.subList(25, documents.size()), other,
+					second.getPath());
+			try {
+				createModelBuilder().buildModelFromFeatureCache(first.getPath() + File.pathSeparator
+						+ second.getPath());
+			} catch (MauiFilterException e) {
+				assertTrue(e.getMessage().contains("other corpus statistics"));
+				return;
+			}
+			throw new AssertionError("Caches of other statistics were mixed");
+		} finally {
+			first.delete();
+			second.delete();
+		}
+	}
+
+	private String[] withOptions(String shardDir, String... arguments) {
+		List<String> command = new ArrayList<String>();
+		for (String argument : arguments) {
+			command.add(argument);
+		}
+		String[] options = {"-l", shardDir, "-v", VOCABULARY, "-f", "skos", "-o", "2"};
+		for (String option : options) {
+			command.add(option);
+		}
+		return command.toArray(new String[command.size()]);
+	}
+
+	/**
+	 * Runs MauiShardBuilder with each of the arguments in a separate process, all at the same time.
+	 */
+	private void runProcesses(List<String[]> commands) throws IOException, InterruptedException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		List<Process> processes = new ArrayList<Process>();
+		for (String[] arguments : commands) {
+			List<String> command = new ArrayList<String>();
+			command.add(java);
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(MauiShardBuilder.class.getName());
+			for (String argument : arguments) {
+				command.add(argument);
+			}
+			ProcessBuilder builder = new ProcessBuilder(command);
+			builder.redirectErrorStream(true);
+			final Process process = builder.start();
+			// the output is discarded, so that the process does not block on a full pipe
+			new Thread() {
+				public void run() {
+					InputStream in = process.getInputStream();
+					byte[] buffer = new byte[8192];
+					try {
+						while (in.read(buffer) != -1) {
+						}
+					} catch (IOException e) {
+						// the process has ended
+					}
+				}
+			}.start();
+			processes.add(process);
+		}
+		for (Process process : processes) {
+			assertEquals(0, process.waitFor());
+		}
+	}
+
+	private void assertSameCounts(FrequencyDictionary expected, FrequencyDictionary actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			String phrase = expected.getPhrase(i);
+			assertEquals(phrase, expected.getCount(i), actual.get(phrase));
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.entopix.maui.stemmers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ * Checks that every stemmer gives the same stems when one instance is
+ * used by several threads at the same time, as in MauiFilter and
+ * MauiCrossValidator, as a new instance gives on a single thread.
+ */
+public class StemmerThreadSafetyTest {
+
+	private static final String DOCUMENTS = "src/test/resources/data/term_assignment/train";
+	private static final int NUM_THREADS = 8;
+
+	/** Words with the endings and accents of the other languages */
+	private static final String[] WORDS = {"nationalisations", "chevaux", "maisonnettes", "continuellement",
+			"\u00e9l\u00e9gamment", "Fr\u00fchst\u00fccksbrettchen", "H\u00e4user", "Gesch\u00e4ftsf\u00fchrung",
+			"ungl\u00fccklicherweise", "corteses", "veces", "canciones", "r\u00e1pidamente", "ni\u00f1os"};
+
+	private Stemmer[] createStemmers() {
+		return new Stemmer[] {new PorterStemmer(), new SremovalStemmer(), new LovinsStemmer(),
+				new IteratedLovinsStemmer(), new NoStemmer(), new FrenchStemmer(), new GermanStemmer(),
+				new SpanishStemmer()};
+	}
+
+	@Test
+	public void testSharedStemmers() throws Exception {
+		final List<String> words = loadWords();
+		ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+		try {
+			for (final Stemmer stemmer : createStemmers()) {
+				List<String> expected = stem(stemmer.getClass().newInstance(), words);
+				List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+				for (int i = 0; i < NUM_THREADS; i++) {
+					results.add(executor.submit(new Callable<List<String>>() {
+						public List<String> call() {
+							return stem(stemmer, words);
+						}
+					}));
+				}
+				for (Future<List<String>> result : results) {
+					assertEquals(stemmer.getClass().getName(), expected, result.get());
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private List<String> loadWords() throws Exception {
+		List<String> words = new ArrayList<String>(Arrays.asList(WORDS));
+		for (File file : FileUtils.listFiles(new File(DOCUMENTS), new String[] {"txt"}, false)) {
+			for (String word : FileUtils.readFileToString(file, "UTF-8").split("[^\\p{L}]+")) {
+				if (word.length() > 0) {
+					words.add(word.toLowerCase());
+				}
+			}
+		}
+		return words;
+	}
+
+	private List<String> stem(Stemmer stemmer, List<String> words) {
+		List<String> stems = new ArrayList<String>(words.size());
+		for (String word : words) {
+			stems.add(stemmer.stem(word));
+		}
+		return stems;
+	}
+}
@@ -0,0 +1,170 @@
+package com.entopix.maui.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Checks that the documents of a directory are read the same from a zip
+ * archive, a gzipped tar archive and a JSON Lines file.
+ */
+public class ArchiveDocumentReaderTest {
+
+	private static final String TRAIN_DIR = "src/test/resources/data/term_assignment/train";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Test
+	public void testArchives() throws Exception {
+		File directory = File.createTempFile("maui_archives", "");
+		directory.delete();
+		directory.mkdir();
+		try {
+			List<MauiDocument> expected = new ArrayList<MauiDocument>();
+			for (MauiDocument document : DataLoader.streamDocuments(TRAIN_DIR, UTF8)) {
+				expected.add(document);
+			}
+			File[] files = new File(TRAIN_DIR).listFiles();
+
+			File zip = new File(directory, "train.zip");
+			ArchiveOutputStream out = new ZipArchiveOutputStream(zip);
+			for (File file : files) {
+				out.putArchiveEntry(out.createArchiveEntry(file, "train/" + file.getName()));
+				FileUtils.copyFile(file, out);
+				out.closeArchiveEntry();
+			}
+			out.close();
+			assertSameDocuments(expected, DataLoader.streamDocuments(zip.getPath(), UTF8));
+
+			// all .key entries after all .txt entries, so all documents wait for their keyphrases
+			File tar = new File(directory, "train.tar.gz");
+			out = new TarArchiveOutputStream(new GZIPOutputStream(new FileOutputStream(tar)));
+			for (String extension : new String[] {".txt", ".key"}) {
+				for (File file : files) {
+					if (file.getName().endsWith(extension)) {
+						ArchiveEntry entry = out.createArchiveEntry(file, file.getName());
+						out.putArchiveEntry(entry);
+						FileUtils.copyFile(file, out);
+						out.closeArchiveEntry();
+					}
+				}
+			}
+			out.close();
+			assertSameDocuments(expected, DataLoader.streamDocuments(tar.getPath(), UTF8));
+
+			File jsonLines = new File(directory, "train.jsonl.gz");
+			OutputStream gzip = new GZIPOutputStream(new FileOutputStream(jsonLines));
+			Writer writer = new OutputStreamWriter(gzip, UTF8);
+			for (MauiDocument document : expected) {
+				JsonObject object = new JsonObject();
+				object.addProperty("id", document.getFileName());
+				object.addProperty("text", document.getTextContent());
+				JsonArray keyphrases = new JsonArray();
+				for (String keyphrase : document.getTopicsString().split("\n")) {
+					if (keyphrase.length() > 0) {
+						keyphrases.add(new JsonPrimitive(keyphrase));
+					}
+				}
+				object.add("keyphrases", keyphrases);
+				writer.write(object.toString());
+				writer.write('\n');
+			}
+			writer.close();
+			assertSameDocuments(expected, DataLoader.streamDocuments(jsonLines.getPath(), UTF8));
+		} finally {
+			FileUtils.deleteDirectory(directory);
+		}
+	}
+
+	@Test
+	public void testAbandonedIteration() throws Exception {
+		File jsonLines = File.createTempFile("maui_abandoned", ".jsonl");
+		try {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(jsonLines), UTF8);
+			for (int i = 0; i < 10; i++) {
+				JsonObject object = new JsonObject();
+				object.addProperty("id", "document" + i);
+				object.addProperty("text", "Text of document " + i);
+				writer.write(object.toString());
+				writer.write('\n');
+			}
+			writer.close();
+
+			JsonLinesDocumentReader reader = new JsonLinesDocumentReader(jsonLines, UTF8, 1);
+			reader.setIdleTimeout(100, TimeUnit.MILLISECONDS);
+			Iterator<MauiDocument> documents = reader.iterator();
+			assertEquals("document0", documents.next().getFileName());
+
+			// the reading thread gives up on the abandoned iteration and ends
+			String threadName = "maui-reader " + jsonLines.getName();
+			long deadline = System.currentTimeMillis() + 10000;
+			while (isRunning(threadName) && System.currentTimeMillis() < deadline) {
+				Thread.sleep(50);
+			}
+			assertFalse(isRunning(threadName));
+		} finally {
+			jsonLines.delete();
+		}
+	}
+
+	private boolean isRunning(String threadName) {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals(threadName) && thread.isAlive()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compares documents by name, as archives may hold them in another order.
+	 */
+	private void assertSameDocuments(List<MauiDocument> expected, Iterable<MauiDocument> actual) {
+		Map<String, MauiDocument> documents = new HashMap<String, MauiDocument>();
+		for (MauiDocument document : actual) {
+			documents.put(document.getFileName(), document);
+		}
+		assertEquals(expected.size(), documents.size());
+		for (MauiDocument document : expected) {
+			MauiDocument read = documents.get(document.getFileName());
+			assertEquals(document.getTextContent(), read.getTextContent());
+			assertEquals(normalize(document.getTopicsString()), normalize(read.getTopicsString()));
+		}
+	}
+
+	/**
+	 * Returns the non-empty keyphrase lines, as JSON Lines keyphrases are not stored as text.
+	 */
+	private String normalize(String keyphrases) {
+		StringBuilder lines = new StringBuilder();
+		for (String keyphrase : keyphrases.split("\n")) {
+			if (keyphrase.length() > 0) {
+				lines.append(keyphrase).append('\n');
+			}
+		}
+		return lines.toString();
+	}
+}
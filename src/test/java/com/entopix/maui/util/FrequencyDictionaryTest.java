@@ -0,0 +1,96 @@
+package com.entopix.maui.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.main.MauiModelBuilder;
+
+/**
+ * Checks the counts of a frozen frequency dictionary, before and after
+ * Java serialization, and the dictionaries of models trained with
+ * keyphrases made only of stopwords or serialized by earlier versions.
+ */
+public class FrequencyDictionaryTest {
+
+	@Test
+	public void testCounts() throws IOException, ClassNotFoundException {
+		Random random = new Random(42);
+		HashMap<String, Counter> frequencies = new HashMap<String, Counter>();
+		for (int i = 0; i < 5000; i++) {
+			frequencies.put("phrase " + random.nextInt(100000) + " \u00e9tude", new Counter(1 + random.nextInt(50)));
+		}
+
+		FrequencyDictionary dictionary = FrequencyDictionary.freeze(frequencies);
+		check(frequencies, dictionary);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(dictionary);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		check(frequencies, (FrequencyDictionary) in.readObject());
+
+		HashMap<String, Counter> thawed = dictionary.toHashMap();
+		assertEquals(frequencies.size(), thawed.size());
+		for (String phrase : frequencies.keySet()) {
+			assertEquals(frequencies.get(phrase).value(), thawed.get(phrase).value());
+		}
+	}
+
+	@Test
+	public void testNullPhrase() {
+		HashMap<String, Counter> frequencies = new HashMap<String, Counter>();
+		frequencies.put("phrase", new Counter(3));
+		frequencies.put(null, new Counter(2));
+		FrequencyDictionary dictionary = FrequencyDictionary.freeze(frequencies);
+		assertEquals(1, dictionary.size());
+		assertEquals(3, dictionary.get("phrase"));
+	}
+
+	@Test
+	public void testStopwordKeyphrases() throws Exception {
+		List<MauiDocument> documents = new ArrayList<MauiDocument>();
+		for (MauiDocument document : DataLoader.loadTestDocuments("src/test/resources/data/automatic_tagging/train")) {
+			documents.add(new MauiDocument(document.getFileName(), document.getFilePath(),
+					document.getTextContent(), document.getTopicsString() + "\nthe\nof the"));
+		}
+		MauiModelBuilder modelBuilder = new MauiModelBuilder();
+		modelBuilder.minNumOccur = 2;
+		MauiFilter model = modelBuilder.buildModel(documents);
+		assertTrue(model.globalDictionary.size() > 0);
+		assertTrue(model.getKeyphraseDictionary().size() > 0);
+	}
+
+	@Test
+	public void testEarlierModel() throws Exception {
+		MauiFilter model = DataLoader.loadModel(new FileInputStream("src/test/resources/data/models/test"));
+		assertTrue(model.globalDictionary.size() > 0);
+		assertTrue(model.getKeyphraseDictionary().size() > 0);
+		assertTrue(model.globalDictionary.get(model.globalDictionary.getPhrase(0)) > 0);
+	}
+
+	private void check(HashMap<String, Counter> frequencies, FrequencyDictionary dictionary) {
+		assertEquals(frequencies.size(), dictionary.size());
+		for (String phrase : frequencies.keySet()) {
+			assertEquals(phrase, frequencies.get(phrase).value(), dictionary.get(phrase));
+		}
+		for (int i = 0; i < dictionary.size(); i++) {
+			assertEquals(frequencies.get(dictionary.getPhrase(i)).value(), dictionary.getCount(i));
+		}
+		assertEquals(0, dictionary.get("phrase that is not there"));
+	}
+}
@@ -0,0 +1,68 @@
+package com.entopix.maui.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks lookups in both directions on a front-coded dictionary,
+ * including strings that are not in it and non-ASCII strings.
+ */
+public class FrontCodedDictionaryTest {
+
+	private static final String[] parts = {"http://www.fao.org/aos/agrovoc#c_", "d_", "pollution",
+		"\u00e9tude", "\u0436", "\ud83c\udf3f", "\uff21", ""};
+
+	@Test
+	public void testLookups() throws IOException {
+		Random random = new Random(42);
+		ArrayList<String> strings = new ArrayList<String>();
+		for (int i = 0; i < 2000; i++) {
+			strings.add(parts[random.nextInt(parts.length)] + random.nextInt(500)
+					+ parts[random.nextInt(parts.length)]);
+		}
+		strings.add("");
+		HashSet<String> distinct = new HashSet<String>(strings);
+
+		FrontCodedDictionary dictionary = FrontCodedDictionary.build(strings);
+		check(dictionary, distinct, random);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BlockOutputStream out = new BlockOutputStream(bytes);
+		dictionary.write(out);
+		out.close();
+		FrontCodedDictionary read = FrontCodedDictionary.read(
+				new BlockInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals(dictionary, read);
+		check(read, distinct, random);
+	}
+
+	private void check(FrontCodedDictionary dictionary, HashSet<String> distinct, Random random) {
+		assertEquals(distinct.size(), dictionary.size());
+		for (int i = 0; i < dictionary.size(); i++) {
+			String s = dictionary.get(i);
+			assertTrue(distinct.contains(s));
+			assertEquals(i, dictionary.indexOf(s));
+		}
+		for (int i = 0; i < 1000; i++) {
+			String s = parts[random.nextInt(parts.length)] + (500 + random.nextInt(500));
+			assertEquals(-1, dictionary.indexOf(s));
+		}
+		assertEquals(-1, dictionary.indexOf("~"));
+	}
+
+	@Test
+	public void testEmpty() {
+		FrontCodedDictionary dictionary = FrontCodedDictionary.build(new ArrayList<String>());
+		assertEquals(0, dictionary.size());
+		assertEquals(-1, dictionary.indexOf("a"));
+	}
+}
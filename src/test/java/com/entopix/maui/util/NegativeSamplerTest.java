@@ -0,0 +1,70 @@
+package com.entopix.maui.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Checks that sampling keeps all positives and the total weight of the
+ * negatives of each document.
+ */
+public class NegativeSamplerTest {
+
+	@Test
+	public void testSample() {
+		FastVector classValues = new FastVector(2);
+		classValues.addElement("False");
+		classValues.addElement("True");
+		FastVector atts = new FastVector(2);
+		atts.addElement(new Attribute("TFxIDF"));
+		atts.addElement(new Attribute("Keyphrase?", classValues));
+		Instances data = new Instances("test", atts, 0);
+		data.setClassIndex(1);
+
+		Random random = new Random(42);
+		ArrayList<Integer> documentStarts = new ArrayList<Integer>();
+		int[] numPositives = new int[20];
+		for (int document = 0; document < numPositives.length; document++) {
+			documentStarts.add(data.numInstances());
+			int numRows = 1 + random.nextInt(200);
+			for (int row = 0; row < numRows; row++) {
+				double positive = random.nextInt(10) == 0 ? 1 : 0;
+				numPositives[document] += positive;
+				data.add(new Instance(1.0, new double[] {random.nextDouble(), positive}));
+			}
+		}
+
+		Instances sample = new NegativeSampler(0.2, 4, 1).sample(data, documentStarts, 0);
+
+		int row = 0;
+		for (int document = 0; document < documentStarts.size(); document++) {
+			int end = document + 1 < documentStarts.size() ? documentStarts.get(document + 1) : data.numInstances();
+			int numNegatives = end - documentStarts.get(document) - numPositives[document];
+			int sampledPositives = 0;
+			double negativeWeight = 0;
+			// the rows of a document keep their order, so they are matched by value
+			for (int i = documentStarts.get(document); i < end; i++) {
+				if (row < sample.numInstances()
+						&& sample.instance(row).value(0) == data.instance(i).value(0)) {
+					if (sample.instance(row).classValue() == 1) {
+						sampledPositives++;
+					} else {
+						negativeWeight += sample.instance(row).weight();
+					}
+					row++;
+				}
+			}
+			assertEquals(numPositives[document], sampledPositives);
+			assertEquals(numNegatives, negativeWeight, 1e-9);
+		}
+		assertEquals(sample.numInstances(), row);
+	}
+}
@@ -0,0 +1,62 @@
+package com.entopix.maui.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ * Checks that streamed documents are read in the same order and with the
+ * same content as loaded documents, for any read-ahead.
+ */
+public class PrefetchingDocumentReaderTest {
+
+	private static final String TRAIN_DIR = "src/test/resources/data/term_assignment/train";
+
+	@Test
+	public void testSameDocuments() {
+		List<MauiDocument> expected = DataLoader.loadTestDocuments(TRAIN_DIR);
+		int[][] settings = {{1, 1}, {4, 3}, {1000, 2}};
+		for (int[] setting : settings) {
+			Iterable<MauiDocument> documents = DataLoader.streamDocuments(TRAIN_DIR,
+					Charset.defaultCharset(), setting[0], setting[1]);
+			// each iteration reads the documents again
+			for (int iteration = 0; iteration < 2; iteration++) {
+				Iterator<MauiDocument> iterator = documents.iterator();
+				for (MauiDocument document : expected) {
+					MauiDocument streamed = iterator.next();
+					assertEquals(document.getFilePath(), streamed.getFilePath());
+					assertEquals(document.getTextContent(), streamed.getTextContent());
+					assertEquals(document.getTopicsString(), streamed.getTopicsString());
+				}
+				assertFalse(iterator.hasNext());
+			}
+		}
+	}
+
+	@Test
+	public void testCharset() throws Exception {
+		File directory = File.createTempFile("maui_documents", "");
+		directory.delete();
+		directory.mkdir();
+		try {
+			String text = "Caf\u00e9 cr\u00e8me br\u00fbl\u00e9e";
+			FileUtils.writeStringToFile(new File(directory, "a.txt"), text, "UTF-8");
+			FileUtils.writeStringToFile(new File(directory, "a.key"), "cr\u00e8me", "ISO-8859-1");
+			MauiDocument document = DataLoader.streamDocuments(directory.getPath(),
+					Charset.forName("UTF-8")).iterator().next();
+			assertEquals(text, document.getTextContent());
+			document = DataLoader.streamDocuments(directory.getPath(),
+					Charset.forName("ISO-8859-1")).iterator().next();
+			assertEquals("cr\u00e8me", document.getTopicsString());
+		} finally {
+			FileUtils.deleteDirectory(directory);
+		}
+	}
+}
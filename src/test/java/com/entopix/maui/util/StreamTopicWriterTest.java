@@ -0,0 +1,99 @@
+package com.entopix.maui.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import weka.core.Instances;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Checks that the topics of many documents are written completely and in
+ * order in each output format, and that write errors are reported.
+ */
+public class StreamTopicWriterTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int DOCUMENTS = 5000;
+
+	private MauiTopics createTopics(int document) {
+		MauiTopics topics = new MauiTopics("doc" + document + ".txt");
+		topics.addTopic(new Topic("topic " + document, "1", 0.75));
+		topics.addTopic(new Topic("caf\u00e9, \"tab\"\there", "1", 0.25));
+		return topics;
+	}
+
+	private String writeAll(String format) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// a small queue makes the writer thread fall behind
+		StreamTopicWriter writer = new StreamTopicWriter(out, UTF8, format, 4);
+		for (int i = 0; i < DOCUMENTS; i++) {
+			writer.write(createTopics(i));
+		}
+		writer.close();
+		return new String(out.toByteArray(), UTF8);
+	}
+
+	@Test
+	public void testJsonLines() throws Exception {
+		String[] lines = writeAll(StreamTopicWriter.JSONL).split("\n");
+		assertEquals(DOCUMENTS, lines.length);
+		JsonParser parser = new JsonParser();
+		for (int i = 0; i < DOCUMENTS; i++) {
+			JsonObject object = parser.parse(lines[i]).getAsJsonObject();
+			assertEquals("doc" + i + ".txt", object.get("document").getAsString());
+			JsonObject second = object.get("topics").getAsJsonArray().get(1).getAsJsonObject();
+			assertEquals("caf\u00e9, \"tab\"\there", second.get("title").getAsString());
+			assertEquals(0.25, second.get("probability").getAsDouble(), 0.0);
+		}
+	}
+
+	@Test
+	public void testTsv() throws Exception {
+		String[] lines = writeAll(StreamTopicWriter.TSV).split("\n");
+		assertEquals(1 + 2 * DOCUMENTS, lines.length);
+		assertEquals("document\trank\ttopic\tprobability", lines[0]);
+		assertEquals("doc7.txt\t1\ttopic 7\t0.75", lines[15]);
+		assertEquals("doc7.txt\t2\tcaf\u00e9, \"tab\" here\t0.25", lines[16]);
+	}
+
+	@Test
+	public void testArff() throws Exception {
+		Instances data = new Instances(new StringReader(writeAll(StreamTopicWriter.ARFF)));
+		assertEquals(2 * DOCUMENTS, data.numInstances());
+		assertEquals("doc7.txt", data.instance(14).stringValue(0));
+		assertEquals("topic 7", data.instance(14).stringValue(2));
+		assertEquals("caf\u00e9, \"tab\"\there", data.instance(15).stringValue(2));
+		assertEquals(2.0, data.instance(15).value(1), 0.0);
+		assertEquals(0.25, data.instance(15).value(3), 0.0);
+	}
+
+	@Test
+	public void testWriteError() throws Exception {
+		OutputStream failing = new OutputStream() {
+			public void write(int b) throws IOException {
+				throw new IOException("disk full");
+			}
+		};
+		StreamTopicWriter writer = new StreamTopicWriter(failing, UTF8, StreamTopicWriter.JSONL, 4);
+		try {
+			for (int i = 0; i < DOCUMENTS; i++) {
+				writer.write(createTopics(i));
+			}
+			writer.close();
+		} catch (IOException e) {
+			assertTrue(e.getCause().getMessage().contains("disk full"));
+			return;
+		}
+		throw new AssertionError("The write error was not reported");
+	}
+}
@@ -0,0 +1,63 @@
+package com.entopix.maui.vocab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Checks the hierarchy values on a small hierarchy with a cycle.
+ */
+public class ConceptHierarchyTest {
+
+	@Test
+	public void testHierarchy() {
+		// 0 is the top concept of 1 and 2, 3 is narrower than 1,
+		// 4 and 5 are broader than each other, 6 has no relations
+		int[] children = {1, 2, 3, 4, 5};
+		int[] parents = {0, 0, 1, 5, 4};
+		ConceptHierarchy hierarchy = ConceptHierarchy.build(7, children, parents, new int[] {0});
+
+		assertEquals(0, hierarchy.getDepth(0));
+		assertEquals(1, hierarchy.getDepth(2));
+		assertEquals(2, hierarchy.getDepth(3));
+		assertEquals(2, hierarchy.getMaxDepth());
+		assertEquals(-1, hierarchy.getDepth(6));
+
+		// the cycle is cut at the first concept reached
+		assertEquals(0, hierarchy.getDepth(4));
+		assertEquals(1, hierarchy.getDepth(5));
+		assertEquals(1, hierarchy.getDescendants(4));
+		assertEquals(0, hierarchy.getDescendants(5));
+
+		assertEquals(3, hierarchy.getDescendants(0));
+		assertEquals(1, hierarchy.getDescendants(1));
+
+		assertEquals(2, hierarchy.getTopConceptDistance(3));
+		assertEquals(-1, hierarchy.getTopConceptDistance(4));
+		assertEquals(-1, hierarchy.getTopConceptDistance(6));
+
+		assertEquals(1.0, hierarchy.getGenerality(0), 0.0);
+		assertEquals(1.0 / 3, hierarchy.getGenerality(3), 1e-9);
+		assertEquals(0.0, hierarchy.getGenerality(-1), 0.0);
+		// concepts outside the hierarchy are neither general nor specific
+		assertEquals(ConceptHierarchy.NEUTRAL_GENERALITY, hierarchy.getGenerality(6), 0.0);
+	}
+
+	@Test
+	public void testNoTopConcepts() {
+		// 0 is broader than 1, 2 has no relations
+		ConceptHierarchy hierarchy = ConceptHierarchy.build(3, new int[] {1}, new int[] {0}, new int[0]);
+
+		assertEquals(1.0, hierarchy.getGenerality(0), 0.0);
+		assertEquals(0.5, hierarchy.getGenerality(1), 1e-9);
+		assertEquals(ConceptHierarchy.NEUTRAL_GENERALITY, hierarchy.getGenerality(2), 0.0);
+		assertEquals(-1, hierarchy.getTopConceptDistance(2));
+		assertEquals(0, hierarchy.getDescendants(2));
+	}
+
+	@Test
+	public void testNoRelations() {
+		assertNull(ConceptHierarchy.build(3, new int[0], new int[0], new int[0]));
+	}
+}
@@ -0,0 +1,118 @@
+package com.entopix.maui.vocab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import com.entopix.maui.stemmers.FrenchStemmer;
+import com.entopix.maui.stemmers.PorterStemmer;
+import com.entopix.maui.stopwords.StopwordsEnglish;
+import com.entopix.maui.stopwords.StopwordsFrench;
+import com.entopix.maui.vocab.Vocabulary.VocabularyException;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/**
+ * Checks that labels in several languages are indexed in one pass
+ * over a SKOS model, sharing the concepts and their relations.
+ */
+public class MultilingualVocabularyTest {
+
+	private static final String SKOS = "http://www.w3.org/2004/02/skos/core#";
+	private static final String WATER_POLLUTION = "http://www.fao.org/aos/agrovoc#c_8321";
+	private static final String POLLUTION = "http://www.fao.org/aos/agrovoc#c_6049";
+
+	private File directory;
+
+	@After
+	public void cleanUp() throws IOException {
+		if (directory != null) {
+			FileUtils.deleteDirectory(directory);
+		}
+	}
+
+	private Model createModel() {
+		Model model = ModelFactory.createDefaultModel();
+		Property prefLabel = model.createProperty(SKOS, "prefLabel");
+		Property altLabel = model.createProperty(SKOS, "altLabel");
+		Property broader = model.createProperty(SKOS, "broader");
+
+		Resource waterPollution = model.createResource(WATER_POLLUTION);
+		waterPollution.addProperty(prefLabel, "Water pollution", "en");
+		waterPollution.addProperty(prefLabel, "Pollution de l'eau", "fr");
+		waterPollution.addProperty(altLabel, "Pollution des eaux", "fr");
+		waterPollution.addProperty(prefLabel, "Contaminación del agua", "es");
+
+		Resource pollution = model.createResource(POLLUTION);
+		pollution.addProperty(prefLabel, "Pollution", "en");
+		pollution.addProperty(prefLabel, "Pollution", "fr");
+
+		waterPollution.addProperty(broader, pollution);
+		return model;
+	}
+
+	private Vocabulary createVocabulary(String name, boolean serialize) throws VocabularyException {
+		Vocabulary vocabulary = new Vocabulary();
+		vocabulary.setStemmer(new PorterStemmer());
+		vocabulary.setStopwords(new StopwordsEnglish());
+		vocabulary.setLanguage("en");
+		vocabulary.addLanguage("fr", new FrenchStemmer(), new StopwordsFrench());
+		vocabulary.setSerialize(serialize);
+		vocabulary.initializeVocabulary(name, createModel());
+		return vocabulary;
+	}
+
+	@Test
+	public void testLanguages() throws VocabularyException {
+		Vocabulary vocabulary = createVocabulary("multilingual", false);
+		checkLanguages(vocabulary);
+
+		vocabulary.enablePrefilter(0.01);
+		checkLanguages(vocabulary);
+	}
+
+	@Test
+	public void testSnapshot() throws VocabularyException, IOException {
+		directory = new File(FileUtils.getTempDirectory(), "maui_multilingual_" + System.nanoTime());
+		directory.mkdirs();
+		String name = new File(directory, "multilingual").getPath();
+		createVocabulary(name, true);
+		assertTrue(VocabularyStoreFactory.snapshotFileForVocabulary(name + "_fr", new FrenchStemmer()).exists());
+
+		Vocabulary vocabulary = createVocabulary(name, true);
+		checkLanguages(vocabulary);
+	}
+
+	private void checkLanguages(Vocabulary vocabulary) {
+		ArrayList<String> waterPollution = new ArrayList<String>(Arrays.asList(WATER_POLLUTION));
+		ArrayList<String> none = new ArrayList<String>();
+
+		assertTrue(vocabulary.hasLanguage("fr"));
+		assertTrue(!vocabulary.hasLanguage("es"));
+
+		assertEquals(waterPollution, vocabulary.getSenses("water pollution"));
+		assertEquals(waterPollution, vocabulary.getSenses("water pollution", "en"));
+		assertEquals(none, vocabulary.getSenses("pollution de l'eau"));
+		assertEquals(waterPollution, vocabulary.getSenses("pollution de l'eau", "fr"));
+		assertEquals(waterPollution, vocabulary.getSenses("pollution des eaux", "fr"));
+		assertEquals(none, vocabulary.getSenses("water pollution", "fr"));
+
+		assertEquals("Water pollution", vocabulary.getTerm(WATER_POLLUTION));
+		assertEquals("Pollution de l'eau", vocabulary.getTerm(WATER_POLLUTION, "fr"));
+
+		// concepts and relations are shared
+		assertEquals(Vocabulary.Relation.kRelationBroader, vocabulary.getRelation(WATER_POLLUTION, POLLUTION));
+		assertEquals(POLLUTION, vocabulary.getSenses("pollution", "fr").get(0));
+		assertEquals(vocabulary.getRelated(WATER_POLLUTION), Arrays.asList(POLLUTION));
+	}
+}
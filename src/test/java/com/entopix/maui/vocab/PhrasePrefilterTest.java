@@ -0,0 +1,87 @@
+package com.entopix.maui.vocab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.filters.MauiPhraseFilter;
+import com.entopix.maui.stemmers.PorterStemmer;
+import com.entopix.maui.stopwords.StopwordsEnglish;
+import com.entopix.maui.util.Candidate;
+
+/**
+ * Compares candidate extraction on the term assignment documents
+ * with and without the vocabulary pre-filter: the candidates have to be
+ * the same, and the timings and filter counts are logged.
+ */
+public class PhrasePrefilterTest {
+
+	private static final Logger log = LoggerFactory.getLogger(PhrasePrefilterTest.class);
+
+	@Test
+	public void testPrefilter() throws IOException {
+		String vocabularyPath = "src/test/resources/data/vocabularies/agrovoc_sample.rdf";
+
+		Vocabulary vocabulary = new Vocabulary();
+		vocabulary.setStemmer(new PorterStemmer());
+		vocabulary.setStopwords(new StopwordsEnglish());
+		vocabulary.setLanguage("en");
+		vocabulary.initializeVocabulary(vocabularyPath, "skos");
+
+		MauiFilter filter = new MauiFilter();
+		filter.setVocabularyName(vocabularyPath);
+		filter.setVocabulary(vocabulary);
+
+		MauiPhraseFilter phraseFilter = new MauiPhraseFilter();
+		List<String> documents = new ArrayList<String>();
+		for (String directory : new String[] {"src/test/resources/data/term_assignment/test",
+				"src/test/resources/data/term_assignment/test_fao30/documents"}) {
+			for (File file : FileUtils.listFiles(new File(directory), new String[] {"txt"}, false)) {
+				documents.add(phraseFilter.tokenize(FileUtils.readFileToString(file, "UTF-8")));
+			}
+		}
+
+		// warm up
+		extract(filter, documents);
+
+		long start = System.currentTimeMillis();
+		List<HashMap<String, Candidate>> expected = extract(filter, documents);
+		long time = System.currentTimeMillis() - start;
+		log.info("Extracted candidates from " + documents.size() + " documents in " + time + "ms without the pre-filter");
+
+		vocabulary.enablePrefilter(0.01);
+		extract(filter, documents);
+		start = System.currentTimeMillis();
+		List<HashMap<String, Candidate>> actual = extract(filter, documents);
+		time = System.currentTimeMillis() - start;
+		log.info("Extracted candidates from " + documents.size() + " documents in " + time + "ms with the "
+				+ vocabulary.getPrefilter());
+
+		for (int i = 0; i < documents.size(); i++) {
+			assertEquals(expected.get(i).keySet(), actual.get(i).keySet());
+			for (String name : expected.get(i).keySet()) {
+				assertEquals(expected.get(i).get(name).getFrequency(), actual.get(i).get(name).getFrequency(), 0.0);
+			}
+		}
+		assertTrue(vocabulary.getPrefilter().getRejected() > 0);
+	}
+
+	private List<HashMap<String, Candidate>> extract(MauiFilter filter, List<String> documents) {
+		List<HashMap<String, Candidate>> candidates = new ArrayList<HashMap<String, Candidate>>();
+		for (String document : documents) {
+			candidates.add(filter.getCandidates(document));
+		}
+		return candidates;
+	}
+}
@@ -0,0 +1,51 @@
+package com.entopix.maui.vocab;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.entopix.maui.vocab.Vocabulary.Relation;
+
+/**
+ * Checks typed lookups in the relation index.
+ */
+public class RelationIndexTest {
+
+	private static byte type(Relation relation) {
+		return (byte) relation.ordinal();
+	}
+
+	@Test
+	public void testRelations() {
+		int[] sources = {2, 0, 2, 0, 1, 2};
+		int[] targets = {0, 1, 3, 2, 0, 0};
+		byte[] types = {type(Relation.kRelationBroader), type(Relation.kRelationNarrower),
+				type(Relation.kRelationRelated), type(Relation.kRelationNarrower),
+				type(Relation.kRelationBroader), type(Relation.kRelationBroader)};
+		RelationIndex relations = RelationIndex.build(4, sources, targets, types);
+
+		// the repeated relation is stored once
+		assertEquals(5, relations.size());
+
+		assertEquals(Relation.kRelationBroader, relations.getRelation(2, 0));
+		assertEquals(Relation.kRelationRelated, relations.getRelation(2, 3));
+		assertNull(relations.getRelation(0, 3));
+		assertNull(relations.getRelation(3, 2));
+
+		assertTrue(relations.hasRelation(0, 2, Relation.kRelationNarrower));
+		assertFalse(relations.hasRelation(0, 2, Relation.kRelationBroader));
+
+		assertArrayEquals(new int[] {1, 2}, relations.getRelated(0, Relation.kRelationNarrower));
+		assertArrayEquals(new int[] {0}, relations.getRelated(2, Relation.kRelationBroader));
+		assertArrayEquals(new int[0], relations.getRelated(3, Relation.kRelationBroader));
+
+		assertEquals(2, relations.firstRelation(1));
+		assertEquals(3, relations.firstRelation(2));
+		assertEquals(1, relations.getSource(2));
+		assertEquals(0, relations.getTarget(2));
+	}
+}
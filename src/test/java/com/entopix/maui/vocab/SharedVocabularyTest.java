@@ -0,0 +1,86 @@
+package com.entopix.maui.vocab;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.filters.MauiPhraseFilter;
+import com.entopix.maui.stemmers.PorterStemmer;
+import com.entopix.maui.stopwords.StopwordsEnglish;
+import com.entopix.maui.util.Candidate;
+
+/**
+ * Checks that candidates extracted on several threads at the same time,
+ * with one filter, vocabulary, pre-filter, stemmer and stopwords, are
+ * the same as those extracted on a single thread.
+ */
+public class SharedVocabularyTest {
+
+	private static final int NUM_THREADS = 8;
+
+	@Test
+	public void testSharedVocabulary() throws Exception {
+		String vocabularyPath = "src/test/resources/data/vocabularies/agrovoc_sample.rdf";
+
+		Vocabulary vocabulary = new Vocabulary();
+		vocabulary.setStemmer(new PorterStemmer());
+		vocabulary.setStopwords(new StopwordsEnglish());
+		vocabulary.setLanguage("en");
+		vocabulary.initializeVocabulary(vocabularyPath, "skos");
+		vocabulary.enablePrefilter(0.01);
+
+		final MauiFilter filter = new MauiFilter();
+		filter.setVocabularyName(vocabularyPath);
+		filter.setVocabulary(vocabulary);
+
+		MauiPhraseFilter phraseFilter = new MauiPhraseFilter();
+		final List<String> documents = new ArrayList<String>();
+		for (File file : FileUtils.listFiles(new File("src/test/resources/data/term_assignment/test"),
+				new String[] {"txt"}, false)) {
+			documents.add(phraseFilter.tokenize(FileUtils.readFileToString(file, "UTF-8")));
+		}
+		List<HashMap<String, Candidate>> expected = extract(filter, documents);
+
+		ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+		try {
+			List<Future<List<HashMap<String, Candidate>>>> results = new ArrayList<Future<List<HashMap<String, Candidate>>>>();
+			for (int i = 0; i < NUM_THREADS; i++) {
+				results.add(executor.submit(new Callable<List<HashMap<String, Candidate>>>() {
+					public List<HashMap<String, Candidate>> call() {
+						return extract(filter, documents);
+					}
+				}));
+			}
+			for (Future<List<HashMap<String, Candidate>>> result : results) {
+				List<HashMap<String, Candidate>> actual = result.get();
+				for (int i = 0; i < documents.size(); i++) {
+					assertEquals(expected.get(i).keySet(), actual.get(i).keySet());
+					for (String name : expected.get(i).keySet()) {
+						assertEquals(expected.get(i).get(name).getFrequency(), actual.get(i).get(name).getFrequency(), 0.0);
+					}
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private List<HashMap<String, Candidate>> extract(MauiFilter filter, List<String> documents) {
+		List<HashMap<String, Candidate>> candidates = new ArrayList<HashMap<String, Candidate>>();
+		for (String document : documents) {
+			candidates.add(filter.getCandidates(document));
+		}
+		return candidates;
+	}
+}
@@ -0,0 +1,198 @@
+package com.entopix.maui.vocab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import com.entopix.maui.stemmers.PorterStemmer;
+import com.entopix.maui.stopwords.StopwordsEnglish;
+import com.entopix.maui.vocab.Vocabulary.Relation;
+import com.entopix.maui.vocab.Vocabulary.VocabularyException;
+import com.hp.hpl.jena.rdf.model.Literal;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+
+/**
+ * Checks that applying the difference between two versions of a vocabulary
+ * gives the same vocabulary as building the new version from scratch.
+ */
+public class VocabularyDeltaTest {
+
+	private static final String SKOS = "http://www.w3.org/2004/02/skos/core#";
+	private static final String NEW_CONCEPT = "http://www.fao.org/aos/agrovoc#c_99999";
+
+	private File deltaFile;
+
+	@After
+	public void cleanUp() {
+		VocabularyStoreFactory.setPrefferedVocabStoreType(VocabularyStore_Original.class);
+		if (deltaFile != null) {
+			FileUtils.deleteQuietly(deltaFile);
+		}
+	}
+
+	@Test
+	public void testDeltaOriginal() throws Exception {
+		testDelta(VocabularyStore_Original.class);
+	}
+
+	@Test
+	public void testDeltaHT() throws Exception {
+		testDelta(VocabularyStore_HT.class);
+	}
+
+	private void testDelta(@SuppressWarnings("rawtypes") Class storeType) throws Exception {
+		VocabularyStoreFactory.setPrefferedVocabStoreType(storeType);
+
+		Model oldModel = readModel();
+		Model newModel = updateModel(oldModel);
+		VocabularyDelta delta = VocabularyDelta.diff(oldModel, newModel);
+		assertTrue(delta.getAdded().size() > 0);
+		assertTrue(delta.getRemoved().size() > 0);
+
+		Vocabulary previous = createVocabulary(oldModel);
+		Vocabulary rebuilt = createVocabulary(newModel);
+		Vocabulary updated = previous.applyDelta(delta);
+		assertNotSame(previous.getVocabularyStore(), updated.getVocabularyStore());
+
+		compare(rebuilt, updated, oldModel);
+		compare(rebuilt, updated, newModel);
+
+		// the previous vocabulary is unchanged
+		compare(createVocabulary(oldModel), previous, oldModel);
+
+		// concept ids stay the same
+		for (Resource concept : oldModel.listSubjects().toList()) {
+			assertEquals(previous.getConceptId(concept.getURI()), updated.getConceptId(concept.getURI()));
+		}
+
+		assertEquals(new ArrayList<String>(Collections.singletonList(NEW_CONCEPT)),
+				updated.getSenses("water pollution"));
+		assertTrue(previous.getSenses("water pollution").isEmpty());
+	}
+
+	@Test
+	public void testTextDelta() throws IOException, VocabularyException {
+		Model model = readModel();
+		Vocabulary vocabulary = createVocabulary(model);
+		String africa = vocabulary.getSenses("Africa").get(0);
+		String asia = vocabulary.getSenses("Asia").get(0);
+
+		deltaFile = File.createTempFile("maui_delta", ".txt");
+		FileUtils.writeStringToFile(deltaFile,
+				"# weekly update\n"
+				+ "-\t" + africa + "\tprefLabel\tAfrica@en\n"
+				+ "+\t" + africa + "\tprefLabel\tAfrican continent@en\n"
+				+ "+\t" + africa + "\taltLabel\tAfrique@fr\n"
+				+ "+\t" + NEW_CONCEPT + "\tprefLabel\tWater pollution\n"
+				+ "+\t" + NEW_CONCEPT + "\tbroader\t" + asia + "\n"
+				+ "\n", "UTF-8");
+		VocabularyDelta delta = VocabularyDelta.read(deltaFile, "UTF-8");
+		assertEquals(5, delta.size());
+		assertEquals("fr", delta.getAdded().get(1).getLanguage());
+
+		Vocabulary updated = vocabulary.applyDelta(delta);
+		assertTrue(updated.getSenses("Africa").isEmpty());
+		assertEquals(africa, updated.getSenses("African continent").get(0));
+		assertEquals("African continent", updated.getTerm(africa));
+		assertEquals(NEW_CONCEPT, updated.getSenses("water pollution").get(0));
+		assertEquals(Relation.kRelationBroader, updated.getRelation(NEW_CONCEPT, asia));
+		assertTrue(updated.getRelated(NEW_CONCEPT).contains(asia));
+		assertTrue(updated.getGenerality(NEW_CONCEPT) < updated.getGenerality(asia));
+		assertEquals("Africa", vocabulary.getTerm(africa));
+	}
+
+	private Model readModel() throws IOException {
+		Model model = ModelFactory.createDefaultModel();
+		InputStream in = new FileInputStream("src/test/resources/data/vocabularies/agrovoc_sample.rdf");
+		try {
+			model.read(in, "");
+		} finally {
+			in.close();
+		}
+		return model;
+	}
+
+	/**
+	 * Changes and removes some labels and relations, and adds a concept.
+	 */
+	private Model updateModel(Model oldModel) {
+		Model model = ModelFactory.createDefaultModel().add(oldModel);
+		Property prefLabel = model.createProperty(SKOS, "prefLabel");
+		Property altLabel = model.createProperty(SKOS, "altLabel");
+		Property broader = model.createProperty(SKOS, "broader");
+		Property related = model.createProperty(SKOS, "related");
+
+		List<Statement> prefLabels = model.listStatements(null, prefLabel, (RDFNode) null).toList();
+		for (int i = 0; i < 5; i++) {
+			Statement stmt = prefLabels.get(i);
+			Literal label = stmt.getLiteral();
+			model.remove(stmt);
+			model.add(stmt.getSubject(), prefLabel, label.getLexicalForm() + " systems", label.getLanguage());
+		}
+		List<Statement> altLabels = model.listStatements(null, altLabel, (RDFNode) null).toList();
+		for (int i = 0; i < altLabels.size(); i += 4) {
+			model.remove(altLabels.get(i));
+		}
+		List<Statement> broaderConcepts = model.listStatements(null, broader, (RDFNode) null).toList();
+		model.remove(broaderConcepts.subList(0, 10));
+		List<Statement> relatedConcepts = model.listStatements(null, related, (RDFNode) null).toList();
+		model.remove(relatedConcepts.subList(0, 5));
+
+		Resource concept = model.createResource(NEW_CONCEPT);
+		concept.addProperty(prefLabel, "Water pollution", "en");
+		concept.addProperty(altLabel, "Polluted water", "en");
+		concept.addProperty(broader, broaderConcepts.get(20).getObject());
+		concept.addProperty(related, relatedConcepts.get(20).getSubject());
+		return model;
+	}
+
+	private Vocabulary createVocabulary(Model model) throws VocabularyException {
+		Vocabulary vocabulary = new Vocabulary();
+		vocabulary.setStemmer(new PorterStemmer());
+		vocabulary.setStopwords(new StopwordsEnglish());
+		vocabulary.setLanguage("en");
+		vocabulary.initializeVocabulary("agrovoc_sample", model);
+		return vocabulary;
+	}
+
+	private void compare(Vocabulary expected, Vocabulary actual, Model model) {
+		for (Statement stmt : model.listStatements().toList()) {
+			if (stmt.getObject().isLiteral()) {
+				String label = stmt.getLiteral().getLexicalForm();
+				assertEquals(label, new TreeSet<String>(expected.getSenses(label)),
+						new TreeSet<String>(actual.getSenses(label)));
+			}
+		}
+		for (Resource concept : model.listSubjects().toList()) {
+			String id = concept.getURI();
+			assertEquals(id, expected.getTerm(id), actual.getTerm(id));
+			assertEquals(id, set(expected.getRelated(id)), set(actual.getRelated(id)));
+			for (Relation relation : Relation.values()) {
+				assertEquals(id, set(expected.getRelated(id, relation)), set(actual.getRelated(id, relation)));
+			}
+			assertEquals(id, expected.getGenerality(id), actual.getGenerality(id), 1e-9);
+		}
+	}
+
+	private static TreeSet<String> set(List<String> ids) {
+		return ids == null ? new TreeSet<String>() : new TreeSet<String>(ids);
+	}
+}
@@ -0,0 +1,145 @@
+package com.entopix.maui.vocab;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.entopix.maui.stemmers.PorterStemmer;
+import com.entopix.maui.stemmers.SremovalStemmer;
+import com.entopix.maui.stemmers.Stemmer;
+import com.entopix.maui.stopwords.Stopwords;
+import com.entopix.maui.stopwords.StopwordsEnglish;
+
+/**
+ * Checks that a vocabulary loaded from a snapshot
+ * is the same as the one built from the SKOS file,
+ * and that stale snapshots are not reused.
+ */
+public class VocabularySnapshotTest {
+
+	private static final Logger log = LoggerFactory.getLogger(VocabularySnapshotTest.class);
+
+	private static final String[] phrases = {"Africa", "Agricultural policies", "Agriculture", "Asia", "Balance of trade"};
+
+	private File directory;
+
+	@After
+	public void cleanUp() throws IOException {
+		VocabularyStoreFactory.setPrefferedVocabStoreType(VocabularyStore_Original.class);
+		if (directory != null) {
+			FileUtils.deleteDirectory(directory);
+		}
+	}
+
+	@Test
+	public void testSnapshotOriginal() throws IOException {
+		testSnapshot(VocabularyStore_Original.class);
+	}
+
+	@Test
+	public void testSnapshotHT() throws IOException {
+		testSnapshot(VocabularyStore_HT.class);
+	}
+
+	private void testSnapshot(@SuppressWarnings("rawtypes") Class storeType) throws IOException {
+		VocabularyStoreFactory.setPrefferedVocabStoreType(storeType);
+
+		directory = new File(FileUtils.getTempDirectory(), "maui_snapshot_" + System.nanoTime());
+		File skosFile = new File(directory, "agrovoc_sample.rdf");
+		FileUtils.copyFile(new File("src/test/resources/data/vocabularies/agrovoc_sample.rdf"), skosFile);
+
+		Stemmer stemmer = new PorterStemmer();
+		Stopwords stopwords = new StopwordsEnglish();
+
+		long start = System.currentTimeMillis();
+		Vocabulary built = createVocabulary(skosFile, stemmer, stopwords);
+		log.info("Built vocabulary from SKOS in " + (System.currentTimeMillis() - start) + "ms");
+
+		File snapshot = VocabularyStoreFactory.snapshotFileForVocabulary(skosFile.getPath(), stemmer);
+		assertTrue(snapshot.exists());
+
+		start = System.currentTimeMillis();
+		Vocabulary loaded = createVocabulary(skosFile, stemmer, stopwords);
+		log.info("Loaded vocabulary from snapshot in " + (System.currentTimeMillis() - start) + "ms");
+
+		VocabularyStore builtStore = built.getVocabularyStore();
+		VocabularyStore loadedStore = loaded.getVocabularyStore();
+		assertEquals(builtStore.getNumTerms(), loadedStore.getNumTerms());
+		assertEquals(builtStore.getNumNonDescriptors(), loadedStore.getNumNonDescriptors());
+		assertEquals(builtStore.getNumRelatedTerms(), loadedStore.getNumRelatedTerms());
+
+		for (String phrase : phrases) {
+			ArrayList<String> senses = built.getSenses(phrase);
+			assertEquals(senses, loaded.getSenses(phrase));
+			for (String sense : senses) {
+				assertEquals(built.getTerm(sense), loaded.getTerm(sense));
+				assertEquals(built.getRelated(sense), loaded.getRelated(sense));
+				assertRelatedIds(loaded, sense);
+				ArrayList<String> related = loaded.getRelated(sense);
+				if (related != null) {
+					for (String relatedId : related) {
+						assertNotNull(built.getRelation(sense, relatedId));
+						assertEquals(built.getRelation(sense, relatedId), loaded.getRelation(sense, relatedId));
+					}
+				}
+				assertEquals(built.getGenerality(sense), loaded.getGenerality(sense), 0.0);
+			}
+		}
+
+		// a snapshot built with a different stemmer or from a different file is stale
+		long checksum = VocabularySnapshot.checksum(skosFile);
+		VocabularySnapshot otherStemmer = VocabularyStoreFactory.snapshotHeader(new SremovalStemmer(), stopwords, "en", true, true, checksum);
+		assertFalse(VocabularySnapshot.read(snapshot, otherStemmer, (VocabularyStore) newStore(storeType)));
+		VocabularySnapshot otherSource = VocabularyStoreFactory.snapshotHeader(stemmer, stopwords, "en", true, true, checksum + 1);
+		assertFalse(VocabularySnapshot.read(snapshot, otherSource, (VocabularyStore) newStore(storeType)));
+	}
+
+	/**
+	 * The related concept ids have to match the related terms.
+	 */
+	private void assertRelatedIds(Vocabulary vocabulary, String id) {
+		ArrayList<String> related = vocabulary.getRelated(id);
+		int[] relatedIds = vocabulary.getRelatedIds(vocabulary.getConceptId(id));
+		if (related == null) {
+			assertTrue(relatedIds == null);
+			return;
+		}
+		int[] expected = new int[related.size()];
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = vocabulary.getConceptId(related.get(i));
+		}
+		Arrays.sort(expected);
+		assertArrayEquals(expected, relatedIds);
+	}
+
+	private Vocabulary createVocabulary(File skosFile, Stemmer stemmer, Stopwords stopwords) {
+		Vocabulary vocabulary = new Vocabulary();
+		vocabulary.setStemmer(stemmer);
+		vocabulary.setStopwords(stopwords);
+		vocabulary.setLanguage("en");
+		vocabulary.setSerialize(true);
+		vocabulary.initializeVocabulary(skosFile.getPath(), "skos");
+		return vocabulary;
+	}
+
+	private Object newStore(@SuppressWarnings("rawtypes") Class storeType) {
+		try {
+			return storeType.newInstance();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+}